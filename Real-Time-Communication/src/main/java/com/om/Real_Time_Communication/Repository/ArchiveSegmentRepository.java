@@ -0,0 +1,43 @@
+package com.om.Real_Time_Communication.Repository;
+
+import com.om.Real_Time_Communication.models.ArchiveSegment;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface ArchiveSegmentRepository extends JpaRepository<ArchiveSegment, Long> {
+
+    /** Newest first: segments holding anything at or before {@code ts}. */
+    @Query("""
+      select s from ArchiveSegment s
+      where s.roomId = :roomId and s.minTs <= :ts
+      order by s.roomId desc, s.maxTs desc, s.id desc
+    """)
+    List<ArchiveSegment> olderSegments(@Param("roomId") Long roomId, @Param("ts") Instant ts, Pageable pageable);
+
+    /** Oldest first: segments holding anything at or after {@code ts}. */
+    @Query("""
+      select s from ArchiveSegment s
+      where s.roomId = :roomId and s.maxTs >= :ts
+      order by s.roomId asc, s.maxTs asc, s.id asc
+    """)
+    List<ArchiveSegment> newerSegments(@Param("roomId") Long roomId, @Param("ts") Instant ts, Pageable pageable);
+
+    List<ArchiveSegment> findByRoomIdAndMonthOrderByMinTsAsc(Long roomId, int month);
+
+    Optional<ArchiveSegment> findTopByOrderByIdDesc();
+
+    /** (room, month) pairs before {@code month} still split over several segments. */
+    @Query("""
+      select s.roomId, s.month from ArchiveSegment s
+      where s.month < :month
+      group by s.roomId, s.month
+      having count(s) > 1
+    """)
+    List<Object[]> fragmentedMonths(@Param("month") int month, Pageable pageable);
+}
@@ -0,0 +1,14 @@
+package com.om.Real_Time_Communication.Repository;
+
+import com.om.Real_Time_Communication.models.ArchiveTombstone;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ArchiveTombstoneRepository extends JpaRepository<ArchiveTombstone, Long> {
+
+    List<ArchiveTombstone> findByMessageIdIn(Collection<String> messageIds);
+
+    boolean existsByMessageIdAndUserIdAndForEveryone(String messageId, Long userId, boolean forEveryone);
+}
@@ -1,15 +1,15 @@
 package com.om.Real_Time_Communication.Repository;
 
 import com.om.Real_Time_Communication.models.ChatMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 
-import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,54 +18,123 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     Optional<ChatMessage> findByRoomIdAndMessageId(Long roomId, String messageId);
     Optional<ChatMessage> findByMessageId(String messageId);
 
+    /** Superset lookup for a batch of (room, message) pairs; callers match the pairs themselves. */
+    List<ChatMessage> findByRoomIdInAndMessageIdIn(Collection<Long> roomIds, Collection<String> messageIds);
 
-    @Query(value =
-            "SELECT * FROM chat_message " +
-                    "WHERE room_id = :roomId " +
-                    "  AND (created_at > :cursorCreatedAt " +
-                    "       OR (created_at = :cursorCreatedAt AND id > :cursorId)) " +
-                    "ORDER BY created_at ASC, id ASC " +
-                    "LIMIT :limit",
-            nativeQuery = true)
-    List<ChatMessage> pageForward(@Param("roomId") Long roomId,
-                                  @Param("cursorCreatedAt") Timestamp cursorCreatedAt,
-                                  @Param("cursorId") Long cursorId,
-                                  @Param("limit") int limit);
-
-    @Query(value =
-            "SELECT * FROM chat_message " +
-                    "WHERE room_id = :roomId " +
-                    "  AND (created_at < :cursorCreatedAt " +
-                    "       OR (created_at = :cursorCreatedAt AND id < :cursorId)) " +
-                    "ORDER BY created_at DESC, id DESC " +
-                    "LIMIT :limit",
-            nativeQuery = true)
+
+    // Keyset pages over idx_chat_message_room_ts_id. The bare "server_ts >=/<=" bound keeps the
+    // scan a single index range; the OR only breaks ties inside one timestamp. The constant
+    // room_id leads the ORDER BY so it is an exact index prefix and no engine falls back to a sort.
+    // Rows the viewer deleted for themselves are dropped here rather than after the page is fetched.
+
+    // newest N visible to the viewer (no cursor yet)
+    @Query("""
+      select m from ChatMessage m
+      where m.roomId = :roomId
+        and m.deletedForEveryone = false
+        and ((m.senderId = :viewerId and m.deletedBySender = false)
+          or (m.senderId <> :viewerId and m.deletedByReceiver = false))
+      order by m.roomId desc, m.serverTs desc, m.id desc
+    """)
+    List<ChatMessage> newestVisible(@Param("roomId") Long roomId,
+                                    @Param("viewerId") Long viewerId,
+                                    Pageable pageable);
+
+    // older than the cursor: (ts,id) < (beforeTs,beforeId), newest first
+    @Query("""
+      select m from ChatMessage m
+      where m.roomId = :roomId
+        and m.serverTs <= :beforeTs
+        and (m.serverTs < :beforeTs or m.id < :beforeId)
+        and m.deletedForEveryone = false
+        and ((m.senderId = :viewerId and m.deletedBySender = false)
+          or (m.senderId <> :viewerId and m.deletedByReceiver = false))
+      order by m.roomId desc, m.serverTs desc, m.id desc
+    """)
     List<ChatMessage> pageBackward(@Param("roomId") Long roomId,
-                                   @Param("cursorCreatedAt") Timestamp cursorCreatedAt,
-                                   @Param("cursorId") Long cursorId,
-                                   @Param("limit") int limit);
+                                   @Param("viewerId") Long viewerId,
+                                   @Param("beforeTs") Instant beforeTs,
+                                   @Param("beforeId") Long beforeId,
+                                   Pageable pageable);
 
-    // newest N (when no cursor provided)
+    // newer than the cursor: (ts,id) > (afterTs,afterId), oldest first
     @Query("""
       select m from ChatMessage m
       where m.roomId = :roomId
-      order by m.serverTs desc, m.id desc
+        and m.serverTs >= :afterTs
+        and (m.serverTs > :afterTs or m.id > :afterId)
+        and m.deletedForEveryone = false
+        and ((m.senderId = :viewerId and m.deletedBySender = false)
+          or (m.senderId <> :viewerId and m.deletedByReceiver = false))
+      order by m.roomId asc, m.serverTs asc, m.id asc
     """)
-    List<ChatMessage> newest(@Param("roomId") Long roomId, org.springframework.data.domain.Pageable pageable);
+    List<ChatMessage> pageForward(@Param("roomId") Long roomId,
+                                  @Param("viewerId") Long viewerId,
+                                  @Param("afterTs") Instant afterTs,
+                                  @Param("afterId") Long afterId,
+                                  Pageable pageable);
 
-    // page backward (older): (ts,id) < (beforeTs,beforeId)
+    /** Messages of every room from {@code fromTs} on, oldest first; keyset paged like the history queries. */
     @Query("""
       select m from ChatMessage m
+      where m.serverTs >= :fromTs
+        and (m.serverTs > :fromTs or m.id > :afterId)
+      order by m.serverTs asc, m.id asc
+    """)
+    List<ChatMessage> pageByServerTs(@Param("fromTs") Instant fromTs,
+                                     @Param("afterId") Long afterId,
+                                     Pageable pageable);
+
+    /** (id, serverTs, searchTokens) of a room's messages that carry blind tokens, oldest first. */
+    @Query("""
+      select m.id, m.serverTs, m.searchTokens from ChatMessage m
       where m.roomId = :roomId
-        and (m.serverTs < :beforeTs or (m.serverTs = :beforeTs and m.id < :beforeId))
-      order by m.serverTs desc, m.id desc
+        and m.serverTs >= :afterTs
+        and (m.serverTs > :afterTs or m.id > :afterId)
+        and m.searchTokens is not null
+      order by m.roomId asc, m.serverTs asc, m.id asc
+    """)
+    List<Object[]> blindTokensPage(@Param("roomId") Long roomId,
+                                   @Param("afterTs") Instant afterTs,
+                                   @Param("afterId") Long afterId,
+                                   Pageable pageable);
+
+    // ----- chat-list read model (ReadModelService) -----
+
+    /** Latest message of each room that has one; one index probe per room on (room_id, ...). */
+    @Query("""
+      select m from ChatMessage m
+      where m.roomId in :roomIds
+        and m.id = (select max(x.id) from ChatMessage x
+                     where x.roomId = m.roomId and x.deletedForEveryone = false)
     """)
-    List<ChatMessage> pageBackward(
-            @Param("roomId") Long roomId,
-            @Param("beforeTs") Instant beforeTs,
-            @Param("beforeId") Long beforeId,
-            org.springframework.data.domain.Pageable pageable
-    );
+    List<ChatMessage> findLatestInRooms(@Param("roomIds") Collection<Long> roomIds);
 
+    /** [roomId, count] of messages from others since the user's last read; rooms with none are absent. */
+    @Query("""
+      select m.roomId, count(m) from ChatMessage m
+      where m.roomId in :roomIds
+        and m.senderId <> :userId
+        and m.deletedForEveryone = false
+        and m.serverTs > coalesce((select s.lastReadAt from UserRoomState s
+                                    where s.userId = :userId and s.roomId = m.roomId), :never)
+      group by m.roomId
+    """)
+    List<Object[]> countUnreadForUser(@Param("userId") Long userId,
+                                      @Param("roomIds") Collection<Long> roomIds,
+                                      @Param("never") Instant never);
 
+    /** [userId, roomId, count] for every member of the rooms with something unread. */
+    @Query("""
+      select p.userId, m.roomId, count(m) from ChatRoomParticipant p, ChatMessage m
+      where p.chatRoom.id in :roomIds
+        and m.roomId = p.chatRoom.id
+        and m.senderId <> p.userId
+        and m.deletedForEveryone = false
+        and m.serverTs > coalesce((select s.lastReadAt from UserRoomState s
+                                    where s.userId = p.userId and s.roomId = m.roomId), :never)
+      group by p.userId, m.roomId
+    """)
+    List<Object[]> countUnreadForRooms(@Param("roomIds") Collection<Long> roomIds,
+                                       @Param("never") Instant never);
 }
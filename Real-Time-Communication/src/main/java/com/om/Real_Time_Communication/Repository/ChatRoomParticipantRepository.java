@@ -9,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -58,4 +59,8 @@ public interface ChatRoomParticipantRepository extends JpaRepository<ChatRoomPar
 
     @Query("select p.chatRoom.id from ChatRoomParticipant p where p.userId = :userId and (p.hidden = false or p.hidden is null)")
     List<Long> findChatRoomIdsByUserId(@Param("userId") Long userId);
+
+    /** [roomId, userId] for every member of the rooms. */
+    @Query("select p.chatRoom.id, p.userId from ChatRoomParticipant p where p.chatRoom.id in :roomIds")
+    List<Object[]> findMembershipsByRoomIds(@Param("roomIds") Collection<Long> roomIds);
 }
@@ -3,12 +3,14 @@ package com.om.Real_Time_Communication.Repository;
 import com.om.Real_Time_Communication.models.ChatRoom;
 import com.om.Real_Time_Communication.models.ChatRoomType;
 import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -25,6 +27,11 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
             @Param("type") ChatRoomType type
     );
     Optional<ChatRoom> findByDirectPairKeyAndType(String pairKey, ChatRoomType type);
+
+    /** Room ids after {@code afterId}, ascending, for jobs that walk every room in chunks. */
+    @Query("select r.id from ChatRoom r where r.id > :afterId order by r.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, Pageable pageable);
+
     static String buildDirectPairKey(Long userA, Long userB) {
         if (userA == null || userB == null) {
             throw new IllegalArgumentException("Both user ids are required");
@@ -0,0 +1,18 @@
+package com.om.Real_Time_Communication.Repository;
+
+import com.om.Real_Time_Communication.models.JobState;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Optional;
+
+public interface JobStateRepository extends JpaRepository<JobState, String> {
+
+    /** The job's row, locked FOR UPDATE until the surrounding transaction ends. */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select j from JobState j where j.name = :name")
+    Optional<JobState> lockByName(@Param("name") String name);
+}
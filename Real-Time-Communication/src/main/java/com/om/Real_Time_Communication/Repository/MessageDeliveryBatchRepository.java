@@ -0,0 +1,22 @@
+package com.om.Real_Time_Communication.Repository;
+
+import java.util.Collection;
+
+/** Set-based writes for {@code message_delivery} that plain JPA saves cannot express. */
+public interface MessageDeliveryBatchRepository {
+
+    /**
+     * Inserts one PENDING row per user in a single multi-row statement (chunked for very large groups).
+     * Rows that already exist for (msg_id, user_id) are left untouched, so retries are idempotent.
+     *
+     * @return number of statements sent to the database
+     */
+    int insertPendingIgnoringExisting(String msgId, Long roomId, Collection<Long> userIds);
+
+    /**
+     * Inserts one PENDING row unless (msg_id, user_id) already has one.
+     *
+     * @return true when a row was inserted, false when it already existed
+     */
+    boolean insertPendingIfAbsent(String msgId, Long roomId, Long userId);
+}
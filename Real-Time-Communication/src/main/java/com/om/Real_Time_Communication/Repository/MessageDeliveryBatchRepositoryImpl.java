@@ -0,0 +1,78 @@
+package com.om.Real_Time_Communication.Repository;
+
+import com.om.Real_Time_Communication.models.MessageDelivery;
+import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import com.om.Real_Time_Communication.utility.SnowflakeIdGenerator;
+import com.om.Real_Time_Communication.utility.SnowflakeIds;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+class MessageDeliveryBatchRepositoryImpl implements MessageDeliveryBatchRepository {
+
+    // Keeps statements well below max_allowed_packet and the driver's placeholder limit
+    private static final int MAX_ROWS_PER_STATEMENT = 500;
+
+    private final JdbcTemplate jdbc;
+    private final SnowflakeIdGenerator idGen; // the one Hibernate uses for MessageDelivery
+
+    MessageDeliveryBatchRepositoryImpl(JdbcTemplate jdbc, SnowflakeIds ids) {
+        this.jdbc = jdbc;
+        this.idGen = ids.forTable(MessageDelivery.class);
+    }
+
+    @Override
+    public int insertPendingIgnoringExisting(String msgId, Long roomId, Collection<Long> userIds) {
+        if (msgId == null || userIds == null || userIds.isEmpty()) {
+            return 0;
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Long> ids = new ArrayList<>(userIds);
+        int statements = 0;
+        for (int from = 0; from < ids.size(); from += MAX_ROWS_PER_STATEMENT) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + MAX_ROWS_PER_STATEMENT));
+            StringBuilder sql = new StringBuilder(96 + chunk.size() * 22)
+                    .append("INSERT INTO message_delivery (id, msg_id, user_id, room_id, status, created_at, updated_at) VALUES ");
+            Object[] args = new Object[chunk.size() * 7];
+            int a = 0;
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?,?,?,?,?,?,?)" : ",(?,?,?,?,?,?,?)");
+                args[a++] = idGen.nextId();
+                args[a++] = msgId;
+                args[a++] = chunk.get(i);
+                args[a++] = roomId;
+                args[a++] = MessageDeliveryStatus.PENDING.name();
+                args[a++] = now;
+                args[a++] = now;
+            }
+            // Relies on uq_message_delivery_msg_user: existing rows keep their status
+            sql.append(" ON DUPLICATE KEY UPDATE msg_id = msg_id");
+            jdbc.update(sql.toString(), args);
+            statements++;
+        }
+        return statements;
+    }
+
+    @Override
+    public boolean insertPendingIfAbsent(String msgId, Long roomId, Long userId) {
+        if (msgId == null || userId == null) {
+            return false;
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        // ON DUPLICATE KEY's affected-row count differs between drivers; NOT EXISTS reports 0 everywhere
+        try {
+            return jdbc.update("INSERT INTO message_delivery (id, msg_id, user_id, room_id, status, created_at, updated_at) "
+                            + "SELECT ?,?,?,?,?,?,? FROM (SELECT 1 AS one) dual_row WHERE NOT EXISTS "
+                            + "(SELECT 1 FROM message_delivery WHERE msg_id = ? AND user_id = ?)",
+                    idGen.nextId(), msgId, userId, roomId,
+                    MessageDeliveryStatus.PENDING.name(), now, now, msgId, userId) == 1;
+        } catch (DuplicateKeyException raced) {
+            return false; // inserted concurrently; uq_message_delivery_msg_user kept it single
+        }
+    }
+}
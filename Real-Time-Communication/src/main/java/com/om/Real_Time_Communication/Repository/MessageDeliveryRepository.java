@@ -2,8 +2,13 @@ package com.om.Real_Time_Communication.Repository;
 
 import com.om.Real_Time_Communication.models.MessageDelivery;
 import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.Collection;
@@ -11,10 +16,161 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface MessageDeliveryRepository extends JpaRepository<MessageDelivery, Long> {
+public interface MessageDeliveryRepository extends JpaRepository<MessageDelivery, Long>, MessageDeliveryBatchRepository {
     Optional<MessageDelivery> findByMsgIdAndUserId(String msgId, Long userId);
 
-    List<MessageDelivery> findByUserIdAndStatusInOrderByCreatedAtAsc(Long userId, Collection<MessageDeliveryStatus> statuses);
+    /** One page of a user's backlog after delivery id {@code afterId}, oldest first. */
+    @Query("""
+     select d from MessageDelivery d
+      where d.userId = :userId
+        and d.status in :statuses
+        and d.id > :afterId
+        and d.roomId is not null
+      order by d.id asc
+  """)
+    List<MessageDelivery> findBacklogPage(@Param("userId") Long userId,
+                                          @Param("statuses") Collection<MessageDeliveryStatus> statuses,
+                                          @Param("afterId") Long afterId,
+                                          Pageable pageable);
 
-    List<MessageDelivery> findByUserIdAndStatusInAndCreatedAtAfterOrderByCreatedAtAsc(Long userId, Collection<MessageDeliveryStatus> statuses, Instant after);
-}
\ No newline at end of file
+    @Query("""
+     select d from MessageDelivery d
+      where d.userId = :userId
+        and d.status in :statuses
+        and d.id > :afterId
+        and d.createdAt > :since
+        and d.roomId is not null
+      order by d.id asc
+  """)
+    List<MessageDelivery> findBacklogPageSince(@Param("userId") Long userId,
+                                               @Param("statuses") Collection<MessageDeliveryStatus> statuses,
+                                               @Param("afterId") Long afterId,
+                                               @Param("since") Instant since,
+                                               Pageable pageable);
+
+    /** Moves many users' rows for one message from {@code from} to {@code to} in one statement. */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("""
+     update MessageDelivery d
+        set d.status = :to,
+            d.updatedAt = :now
+      where d.msgId = :msgId
+        and d.userId in :userIds
+        and d.status = :from
+  """)
+    int updateStatusForUsers(@Param("msgId") String msgId,
+                             @Param("userIds") Collection<Long> userIds,
+                             @Param("from") MessageDeliveryStatus from,
+                             @Param("to") MessageDeliveryStatus to,
+                             @Param("now") Instant now);
+
+    /** Moves the given rows from {@code from} to {@code to} in one statement. */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("""
+     update MessageDelivery d
+        set d.status = :to,
+            d.updatedAt = :now
+      where d.id in :ids
+        and d.status = :from
+  """)
+    int updateStatusForIds(@Param("ids") Collection<Long> ids,
+                           @Param("from") MessageDeliveryStatus from,
+                           @Param("to") MessageDeliveryStatus to,
+                           @Param("now") Instant now);
+
+    /** A user's rows for the listed messages that are still in one of {@code statuses}. */
+    List<MessageDelivery> findByUserIdAndMsgIdInAndStatusIn(Long userId,
+                                                            Collection<String> msgIds,
+                                                            Collection<MessageDeliveryStatus> statuses);
+
+    /**
+     * A user's rows in one room from {@code fromMsgId} (or the start of the room when null) up to and
+     * including {@code toMsgId}, in delivery order; both ends are resolved from the user's own rows.
+     */
+    @Query("""
+     select d from MessageDelivery d
+      where d.userId = :userId
+        and d.status in :statuses
+        and d.roomId = (select t.roomId from MessageDelivery t where t.userId = :userId and t.msgId = :toMsgId)
+        and d.id <= (select t.id from MessageDelivery t where t.userId = :userId and t.msgId = :toMsgId)
+        and d.id >= coalesce((select f.id from MessageDelivery f where f.userId = :userId and f.msgId = :fromMsgId), 0)
+      order by d.id asc
+  """)
+    List<MessageDelivery> findAckRange(@Param("userId") Long userId,
+                                       @Param("fromMsgId") String fromMsgId,
+                                       @Param("toMsgId") String toMsgId,
+                                       @Param("statuses") Collection<MessageDeliveryStatus> statuses);
+
+    /** Marks the given rows delivered to {@code deviceId}, skipping rows already past {@code from}. */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("""
+     update MessageDelivery d
+        set d.status = :to,
+            d.deviceId = :deviceId,
+            d.deliveredAt = :now,
+            d.updatedAt = :now
+      where d.id in :ids
+        and d.status in :from
+  """)
+    int markDeliveredForIds(@Param("ids") Collection<Long> ids,
+                            @Param("from") Collection<MessageDeliveryStatus> from,
+                            @Param("to") MessageDeliveryStatus to,
+                            @Param("deviceId") String deviceId,
+                            @Param("now") Instant now);
+
+    /** Marks the given rows read; a row read without a delivery ack is delivered at the same time. */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("""
+     update MessageDelivery d
+        set d.status = :to,
+            d.deviceId = :deviceId,
+            d.deliveredAt = coalesce(d.deliveredAt, :now),
+            d.readAt = :now,
+            d.updatedAt = :now
+      where d.id in :ids
+        and d.status in :from
+  """)
+    int markReadForIds(@Param("ids") Collection<Long> ids,
+                       @Param("from") Collection<MessageDeliveryStatus> from,
+                       @Param("to") MessageDeliveryStatus to,
+                       @Param("deviceId") String deviceId,
+                       @Param("now") Instant now);
+
+    /** One page of a user's offline private-message queue (rows without a room) after {@code afterId}. */
+    @Query("""
+     select d from MessageDelivery d
+      where d.userId = :userId
+        and d.status in :statuses
+        and d.id > :afterId
+        and d.roomId is null
+      order by d.id asc
+  """)
+    List<MessageDelivery> findOfflinePage(@Param("userId") Long userId,
+                                          @Param("statuses") Collection<MessageDeliveryStatus> statuses,
+                                          @Param("afterId") Long afterId,
+                                          Pageable pageable);
+
+    @Query("""
+     select count(d) from MessageDelivery d
+      where d.userId = :userId
+        and d.status in :statuses
+        and d.roomId is null
+  """)
+    long countOffline(@Param("userId") Long userId,
+                      @Param("statuses") Collection<MessageDeliveryStatus> statuses);
+
+    /** Removes a user's queued private message once the client acked it; returns rows deleted. */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Transactional
+    @Query("""
+     delete from MessageDelivery d
+      where d.userId = :userId
+        and d.msgId = :msgId
+        and d.roomId is null
+  """)
+    int deleteOffline(@Param("userId") Long userId, @Param("msgId") String msgId);
+}
@@ -0,0 +1,22 @@
+package com.om.Real_Time_Communication.Repository;
+
+import com.om.Real_Time_Communication.models.MessageEnvelope;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+public interface MessageEnvelopeRepository extends JpaRepository<MessageEnvelope, String> {
+
+    /** Content-addressed: an existing row already holds these bytes, so a repeat is a no-op. */
+    @Modifying
+    @Query(value = """
+        INSERT INTO chat_message_envelope (ref, aad, iv, ciphertext)
+        VALUES (:ref, :aad, :iv, :ciphertext)
+        ON DUPLICATE KEY UPDATE ref = ref
+        """, nativeQuery = true)
+    int insertIgnoringExisting(@Param("ref") String ref,
+                               @Param("aad") byte[] aad,
+                               @Param("iv") byte[] iv,
+                               @Param("ciphertext") byte[] ciphertext);
+}
@@ -3,6 +3,7 @@ package com.om.Real_Time_Communication.Repository;
 import com.om.Real_Time_Communication.models.Message;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -17,5 +18,16 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
 
     List<Message> findByReceiverIdAndIsGroupMessageTrue(String receiverId);
 
+    /** Conversation as seen by {@code viewerId}: messages they or everyone deleted are left in the table. */
+    @Query("SELECT m FROM Message m WHERE m.deletedForEveryone = false AND (" +
+            "(m.senderId = :viewerId AND m.receiverId = :peerId AND m.deletedBySender = false) " +
+            "OR (m.senderId = :peerId AND m.receiverId = :viewerId AND m.deletedByReceiver = false)) " +
+            "ORDER BY m.timestamp ASC")
+    List<Message> findVisibleConversation(@Param("viewerId") String viewerId, @Param("peerId") String peerId);
+
+    @Query("SELECT m FROM Message m WHERE m.receiverId = :roomId AND m.isGroupMessage = true " +
+            "AND m.deletedForEveryone = false AND :viewerId NOT MEMBER OF m.deletedByUserIds")
+    List<Message> findVisibleGroupHistory(@Param("roomId") String roomId, @Param("viewerId") String viewerId);
+
     java.util.Optional<Message> findByMessageId(String messageId);
 }
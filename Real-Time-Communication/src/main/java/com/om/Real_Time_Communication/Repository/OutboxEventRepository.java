@@ -2,20 +2,60 @@ package com.om.Real_Time_Communication.Repository;
 
 
 import com.om.Real_Time_Communication.models.OutboxEvent;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.*;
 import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
 
+    /**
+     * Claims up to {@code limit} pending rows for the current transaction. Rows another relay has
+     * already locked are skipped rather than waited on, so several nodes can drain in parallel.
+     */
     @Query(value = """
         SELECT * FROM outbox_event
          WHERE status = 'PENDING'
            AND occurred_at <= :cutoff
          ORDER BY id
          LIMIT :limit
+         FOR UPDATE SKIP LOCKED
         """, nativeQuery = true)
-    List<OutboxEvent> fetchBatch(@Param("cutoff") Instant cutoff, @Param("limit") int limit);
-}
\ No newline at end of file
+    List<OutboxEvent> claimBatch(@Param("cutoff") Instant cutoff, @Param("limit") int limit);
+
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("""
+     update OutboxEvent e
+        set e.status = 'SENT',
+            e.publishedAt = :now,
+            e.attempts = e.attempts + 1
+      where e.id in :ids
+  """)
+    int markSent(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
+    /** Unconfirmed rows go back to PENDING, or to FAILED once {@code maxAttempts} is reached. */
+    @Modifying(clearAutomatically = true, flushAutomatically = true)
+    @Query("""
+     update OutboxEvent e
+        set e.attempts = e.attempts + 1,
+            e.status = case when e.attempts + 1 >= :maxAttempts then 'FAILED' else 'PENDING' end
+      where e.id in :ids
+  """)
+    int markUnconfirmed(@Param("ids") Collection<Long> ids, @Param("maxAttempts") int maxAttempts);
+
+    /** Oldest published rows, walked on the (status, occurred_at) index. */
+    @Query("""
+     select e.id from OutboxEvent e
+      where e.status = 'SENT'
+        and e.occurredAt < :cutoff
+      order by e.occurredAt
+  """)
+    List<Long> findPurgeable(@Param("cutoff") Instant cutoff, Pageable pageable);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from OutboxEvent e where e.id in :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,120 @@
+package com.om.Real_Time_Communication.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Turns the per-node simple broker into a cluster. Installed on the broker channel, it copies every
+ * {@code /topic/**} message to all other nodes and every {@code /user/{id}/**} message to the nodes the
+ * {@link ClusterUserDirectory} lists for that user; receivers replay the message into their own broker
+ * channel, where the local simple broker and user-destination resolver deliver it as usual.
+ * Replayed messages carry {@link #ORIGIN_HEADER} and are never forwarded again.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.broker.mode", havingValue = "cluster")
+public class ClusterBrokerBridge implements ChannelInterceptor {
+
+    public static final String ORIGIN_HEADER = "rtcClusterOrigin";
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterBrokerBridge.class);
+    private static final String TOPIC_PREFIX = "/topic/";
+    private static final String USER_PREFIX = "/user/";
+
+    private final ClusterBus bus;
+    private final ClusterUserDirectory directory;
+    // The broker channel is built after its interceptors, so look it up on first use
+    private final ObjectProvider<MessageChannel> brokerChannel;
+
+    public ClusterBrokerBridge(ClusterBus bus,
+                               ClusterUserDirectory directory,
+                               @Qualifier("brokerChannel") ObjectProvider<MessageChannel> brokerChannel) {
+        this.bus = bus;
+        this.directory = directory;
+        this.brokerChannel = brokerChannel;
+        bus.subscribe(this::onFrame);
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (message.getHeaders().containsKey(ORIGIN_HEADER)) {
+            return message;
+        }
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            return message;
+        }
+        if (destination.startsWith(TOPIC_PREFIX)) {
+            byte[] payload = payloadBytes(message);
+            if (payload != null) {
+                bus.publish(ClusterFrame.topic(bus.nodeId(), destination, contentType(message), payload));
+            }
+        } else if (destination.startsWith(USER_PREFIX)) {
+            List<String> nodes = userNodes(destination);
+            if (!nodes.isEmpty()) {
+                byte[] payload = payloadBytes(message);
+                if (payload != null) {
+                    bus.publish(ClusterFrame.user(bus.nodeId(), nodes, destination, contentType(message), payload));
+                }
+            }
+        }
+        return message;
+    }
+
+    private List<String> userNodes(String destination) {
+        int end = destination.indexOf('/', USER_PREFIX.length());
+        if (end < 0) return List.of();
+        try {
+            return directory.nodesFor(Long.valueOf(destination.substring(USER_PREFIX.length(), end)));
+        } catch (NumberFormatException ex) {
+            return List.of(); // /user/queue/... subscriptions and non-numeric names stay local
+        }
+    }
+
+    private void onFrame(ClusterFrame frame) {
+        if (frame.kind() != ClusterFrame.Kind.TOPIC && frame.kind() != ClusterFrame.Kind.USER) {
+            return;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(frame.destination());
+        if (frame.contentType() != null) {
+            accessor.setContentType(MimeType.valueOf(frame.contentType()));
+        }
+        accessor.setHeader(ORIGIN_HEADER, frame.origin());
+        Message<byte[]> replay = MessageBuilder.createMessage(frame.payload(), accessor.getMessageHeaders());
+        if (!brokerChannel.getObject().send(replay)) {
+            log.warn("[CLUSTER] broker channel refused {} from node={}", frame.destination(), frame.origin());
+        }
+    }
+
+    private static String contentType(Message<?> message) {
+        Object ct = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        return ct == null ? null : ct.toString();
+    }
+
+    private static byte[] payloadBytes(Message<?> message) {
+        Object payload = message.getPayload();
+        if (payload instanceof byte[] bytes) return bytes;
+        if (payload instanceof String text) return text.getBytes(StandardCharsets.UTF_8);
+        log.warn("[CLUSTER] not forwarding unconverted {} payload to {}",
+                payload.getClass().getSimpleName(), SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.om.Real_Time_Communication.broker;
+
+import java.util.function.Consumer;
+
+/**
+ * Node-to-node transport of the cluster broker. Delivery is at-most-once and best effort, like the
+ * simple broker it extends; frames a node published itself are not handed back to it.
+ */
+public interface ClusterBus {
+
+    /** Identity of this node on the bus. */
+    String nodeId();
+
+    void publish(ClusterFrame frame);
+
+    void subscribe(Consumer<ClusterFrame> listener);
+}
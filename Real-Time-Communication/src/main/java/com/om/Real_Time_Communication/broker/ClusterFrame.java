@@ -0,0 +1,104 @@
+package com.om.Real_Time_Communication.broker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One message between nodes of the cluster broker, with a compact binary encoding so any byte
+ * transport (Redis pub/sub, the in-JVM stand-in) can carry it.
+ *
+ * <ul>
+ *   <li>{@code TOPIC}: a broker message for {@code destination}, delivered to every node.</li>
+ *   <li>{@code USER}: a {@code /user/{id}/...} message for the nodes in {@code targets}.</li>
+ *   <li>{@code PRESENCE}: {@code userIds} came online ({@code online}) or went offline on {@code origin};
+ *       a periodic snapshot is a PRESENCE frame with {@code snapshot} set.</li>
+ *   <li>{@code HELLO}: a node joined and asks the others for a presence snapshot.</li>
+ * </ul>
+ */
+public record ClusterFrame(Kind kind,
+                           String origin,
+                           List<String> targets,
+                           String destination,
+                           String contentType,
+                           byte[] payload,
+                           List<Long> userIds,
+                           boolean online,
+                           boolean snapshot) {
+
+    public enum Kind { TOPIC, USER, PRESENCE, HELLO }
+
+    public static ClusterFrame topic(String origin, String destination, String contentType, byte[] payload) {
+        return new ClusterFrame(Kind.TOPIC, origin, List.of(), destination, contentType, payload, List.of(), false, false);
+    }
+
+    public static ClusterFrame user(String origin, List<String> targets, String destination, String contentType, byte[] payload) {
+        return new ClusterFrame(Kind.USER, origin, targets, destination, contentType, payload, List.of(), false, false);
+    }
+
+    public static ClusterFrame presence(String origin, List<Long> userIds, boolean online, boolean snapshot) {
+        return new ClusterFrame(Kind.PRESENCE, origin, List.of(), null, null, new byte[0], userIds, online, snapshot);
+    }
+
+    public static ClusterFrame hello(String origin) {
+        return new ClusterFrame(Kind.HELLO, origin, List.of(), null, null, new byte[0], List.of(), false, false);
+    }
+
+    /** True if {@code nodeId} should act on this frame. */
+    public boolean isFor(String nodeId) {
+        return !nodeId.equals(origin) && (targets.isEmpty() || targets.contains(nodeId));
+    }
+
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + payload.length);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(kind.ordinal());
+            out.writeUTF(origin);
+            out.writeShort(targets.size());
+            for (String t : targets) out.writeUTF(t);
+            out.writeUTF(destination == null ? "" : destination);
+            out.writeUTF(contentType == null ? "" : contentType);
+            out.writeInt(payload.length);
+            out.write(payload);
+            out.writeInt(userIds.size());
+            for (Long id : userIds) out.writeLong(id);
+            out.writeBoolean(online);
+            out.writeBoolean(snapshot);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static ClusterFrame decode(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            Kind kind = Kind.values()[in.readByte()];
+            String origin = in.readUTF();
+            int nTargets = in.readShort();
+            List<String> targets = new ArrayList<>(nTargets);
+            for (int i = 0; i < nTargets; i++) targets.add(in.readUTF());
+            String destination = in.readUTF();
+            String contentType = in.readUTF();
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            int nUsers = in.readInt();
+            List<Long> userIds = new ArrayList<>(nUsers);
+            for (int i = 0; i < nUsers; i++) userIds.add(in.readLong());
+            boolean online = in.readBoolean();
+            boolean snapshot = in.readBoolean();
+            return new ClusterFrame(kind, origin, targets,
+                    destination.isEmpty() ? null : destination,
+                    contentType.isEmpty() ? null : contentType,
+                    payload, userIds, online, snapshot);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Malformed cluster frame", e);
+        }
+    }
+}
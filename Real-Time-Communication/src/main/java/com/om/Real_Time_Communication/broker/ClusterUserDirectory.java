@@ -0,0 +1,99 @@
+package com.om.Real_Time_Communication.broker;
+
+import com.om.Real_Time_Communication.security.SessionRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which other nodes hold sessions of a user, learned from the {@link SessionRegistry} of every node.
+ * Nodes announce first-session/last-session changes as they happen and re-announce their full set
+ * every {@code rtc.broker.cluster.announce-ms}; entries not refreshed for three periods are dropped,
+ * so a crashed node stops receiving user messages after at most that long.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.broker.mode", havingValue = "cluster")
+public class ClusterUserDirectory implements SessionRegistry.Listener {
+
+    private final ClusterBus bus;
+    private final SessionRegistry sessionRegistry;
+    private final long ttlMs;
+    // userId -> nodeId -> last time the node vouched for the user
+    private final Map<Long, Map<String, Long>> remote = new ConcurrentHashMap<>();
+
+    public ClusterUserDirectory(ClusterBus bus,
+                                SessionRegistry sessionRegistry,
+                                @Value("${rtc.broker.cluster.announce-ms:10000}") long announceMs) {
+        this.bus = bus;
+        this.sessionRegistry = sessionRegistry;
+        this.ttlMs = announceMs * 3;
+        sessionRegistry.addListener(this);
+        bus.subscribe(this::onFrame);
+        bus.publish(ClusterFrame.hello(bus.nodeId()));
+    }
+
+    /** Nodes other than this one that have a session of {@code userId}. */
+    public List<String> nodesFor(Long userId) {
+        Map<String, Long> nodes = remote.get(userId);
+        if (nodes == null || nodes.isEmpty()) return List.of();
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        List<String> out = new ArrayList<>(nodes.size());
+        nodes.forEach((node, seen) -> {
+            if (seen >= cutoff) out.add(node);
+        });
+        return out;
+    }
+
+    @Override
+    public void onUserOnline(Long userId) {
+        bus.publish(ClusterFrame.presence(bus.nodeId(), List.of(userId), true, false));
+    }
+
+    @Override
+    public void onUserOffline(Long userId) {
+        bus.publish(ClusterFrame.presence(bus.nodeId(), List.of(userId), false, false));
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.broker.cluster.announce-ms:10000}")
+    public void announce() {
+        bus.publish(ClusterFrame.presence(bus.nodeId(), new ArrayList<>(sessionRegistry.localUserIds()), true, true));
+        long cutoff = System.currentTimeMillis() - ttlMs;
+        remote.values().forEach(nodes -> nodes.values().removeIf(seen -> seen < cutoff));
+        remote.values().removeIf(Map::isEmpty);
+    }
+
+    private void onFrame(ClusterFrame frame) {
+        switch (frame.kind()) {
+            case HELLO -> announce();
+            case PRESENCE -> apply(frame);
+            default -> { }
+        }
+    }
+
+    private void apply(ClusterFrame frame) {
+        long now = System.currentTimeMillis();
+        String node = frame.origin();
+        if (frame.snapshot()) {
+            // Users the node no longer lists have left it
+            remote.forEach((user, nodes) -> {
+                if (!frame.userIds().contains(user)) nodes.remove(node);
+            });
+        }
+        for (Long userId : frame.userIds()) {
+            if (frame.online()) {
+                remote.computeIfAbsent(userId, k -> new ConcurrentHashMap<>()).put(node, now);
+            } else {
+                remote.computeIfPresent(userId, (k, nodes) -> {
+                    nodes.remove(node);
+                    return nodes.isEmpty() ? null : nodes;
+                });
+            }
+        }
+    }
+}
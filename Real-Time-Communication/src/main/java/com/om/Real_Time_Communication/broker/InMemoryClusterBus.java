@@ -0,0 +1,88 @@
+package com.om.Real_Time_Communication.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Local stand-in for the cluster transport: every application context in this JVM that names the
+ * same {@code rtc.broker.cluster.name} joins one hub. Frames are encoded and decoded on the way, and
+ * each node receives on its own thread, so ordering and copy semantics match a real network bus.
+ */
+@Component
+@ConditionalOnExpression("'${rtc.broker.mode:simple}' == 'cluster' && '${rtc.broker.cluster.transport:local}' == 'local'")
+public class InMemoryClusterBus implements ClusterBus, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(InMemoryClusterBus.class);
+    private static final Map<String, List<InMemoryClusterBus>> HUBS = new ConcurrentHashMap<>();
+
+    private final String hub;
+    private final String nodeId;
+    private final List<Consumer<ClusterFrame>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService inbox;
+
+    public InMemoryClusterBus(@Value("${rtc.broker.cluster.name:rtc}") String hub,
+                              @Value("${rtc.broker.cluster.node-id:}") String nodeId) {
+        this.hub = hub;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        this.inbox = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "cluster-bus-" + this.nodeId);
+            t.setDaemon(true);
+            return t;
+        });
+        HUBS.computeIfAbsent(hub, k -> new CopyOnWriteArrayList<>()).add(this);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ClusterFrame frame) {
+        byte[] wire = frame.encode();
+        for (InMemoryClusterBus peer : HUBS.getOrDefault(hub, List.of())) {
+            if (peer != this) {
+                peer.receive(wire);
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterFrame> listener) {
+        listeners.add(listener);
+    }
+
+    private void receive(byte[] wire) {
+        inbox.execute(() -> {
+            ClusterFrame frame = ClusterFrame.decode(wire);
+            if (!frame.isFor(nodeId)) return;
+            for (Consumer<ClusterFrame> l : listeners) {
+                try {
+                    l.accept(frame);
+                } catch (Exception ex) {
+                    log.warn("[CLUSTER] listener failed on node={} kind={}: {}", nodeId, frame.kind(), ex.toString());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        List<InMemoryClusterBus> peers = HUBS.get(hub);
+        if (peers != null) peers.remove(this);
+        inbox.shutdownNow();
+    }
+}
@@ -0,0 +1,53 @@
+package com.om.Real_Time_Communication.broker;
+
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/** Cluster transport over one Redis pub/sub channel (requires a {@link RedissonClient} bean). */
+@Component
+@ConditionalOnExpression("'${rtc.broker.mode:simple}' == 'cluster' && '${rtc.broker.cluster.transport:local}' == 'redis'")
+public class RedisClusterBus implements ClusterBus {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisClusterBus.class);
+
+    private final RTopic topic;
+    private final String nodeId;
+
+    public RedisClusterBus(RedissonClient redisson,
+                           @Value("${rtc.broker.cluster.name:rtc}") String name,
+                           @Value("${rtc.broker.cluster.node-id:}") String nodeId) {
+        this.topic = redisson.getTopic("rtc:broker:" + name, ByteArrayCodec.INSTANCE);
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public void publish(ClusterFrame frame) {
+        topic.publishAsync(frame.encode());
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterFrame> listener) {
+        topic.addListener(byte[].class, (channel, wire) -> {
+            try {
+                ClusterFrame frame = ClusterFrame.decode(wire);
+                if (frame.isFor(nodeId)) listener.accept(frame);
+            } catch (Exception ex) {
+                log.warn("[CLUSTER] dropped frame on node={}: {}", nodeId, ex.toString());
+            }
+        });
+    }
+}
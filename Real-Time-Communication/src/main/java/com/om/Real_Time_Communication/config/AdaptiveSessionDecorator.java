@@ -0,0 +1,266 @@
+package com.om.Real_Time_Communication.config;
+
+import com.om.Real_Time_Communication.config.SessionOutboundMonitor.Limits;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffers and serializes outbound frames for one session, like Spring's
+ * {@code ConcurrentWebSocketSessionDecorator}, but with limits that follow how the client keeps up.
+ * Every write is timed; a session whose writes average over {@code rtc.ws.send.slow-write-ms}, or
+ * whose buffer passes the fast class's drop threshold, becomes {@link ConsumerClass#SLOW}: it gets
+ * the smaller slow-class buffer and is written by the monitor's slow-writer threads instead of
+ * whichever broker thread happens to send to it. Under pressure a session first refuses droppable
+ * frames (typing, presence), then sheds those already queued, and only then is closed with
+ * {@link CloseStatus#SESSION_NOT_RELIABLE}. It turns fast again once writes are quick and the
+ * buffer has drained. Whether a frame is droppable is decided once, from its destination header,
+ * when it is queued.
+ */
+public final class AdaptiveSessionDecorator extends WebSocketSessionDecorator {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveSessionDecorator.class);
+
+    public enum ConsumerClass { FAST, SLOW }
+
+    private record Outbound(WebSocketMessage<?> message, boolean droppable) {}
+
+    private final SessionOutboundMonitor monitor;
+    private final Queue<Outbound> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger bufferedBytes = new AtomicInteger();
+    private final AtomicInteger bufferedFrames;
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final ReentrantLock limitLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    private volatile long sendStartNanos; // 0 while no write is in progress
+    private volatile long writeNanosEwma;
+    private volatile ConsumerClass consumerClass = ConsumerClass.FAST;
+    private volatile boolean limitExceeded;
+    private volatile boolean closeInProgress;
+
+    AdaptiveSessionDecorator(WebSocketSession delegate, SessionOutboundMonitor monitor, AtomicInteger bufferedFrames) {
+        super(delegate);
+        this.monitor = monitor;
+        this.bufferedFrames = bufferedFrames;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (shouldNotSend()) return;
+        int len = message.getPayloadLength();
+        boolean droppable = monitor.isDroppable();
+        if (droppable && bufferedBytes.get() + len > monitor.limits(consumerClass).droppableAboveBytes()) {
+            drop(1);
+            return;
+        }
+        buffer.add(new Outbound(message, droppable));
+        bufferedBytes.addAndGet(len);
+        bufferedFrames.incrementAndGet();
+
+        if (consumerClass == ConsumerClass.SLOW) {
+            scheduleFlush();
+            checkLimits();
+            return;
+        }
+        do {
+            if (!tryFlush()) {
+                checkLimits();
+                break;
+            }
+        } while (!buffer.isEmpty() && !shouldNotSend() && consumerClass == ConsumerClass.FAST);
+        if (consumerClass == ConsumerClass.SLOW && !buffer.isEmpty()) scheduleFlush();
+    }
+
+    private boolean tryFlush() throws IOException {
+        if (!flushLock.tryLock()) return false;
+        try {
+            flush(true);
+        } finally {
+            flushLock.unlock();
+        }
+        return true;
+    }
+
+    /** Writes buffered frames in order; a flush on the sender's thread stops once the session turns slow. */
+    private void flush(boolean onSenderThread) throws IOException {
+        while (!shouldNotSend() && !(onSenderThread && consumerClass == ConsumerClass.SLOW)) {
+            Outbound next = buffer.poll();
+            if (next == null) break;
+            WebSocketMessage<?> m = next.message();
+            long start = System.nanoTime();
+            sendStartNanos = start;
+            try {
+                getDelegate().sendMessage(m);
+            } finally {
+                sendStartNanos = 0;
+                bufferedBytes.addAndGet(-m.getPayloadLength());
+                bufferedFrames.decrementAndGet();
+            }
+            observe(System.nanoTime() - start);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled.compareAndSet(false, true)) return;
+        try {
+            monitor.slowWriter().execute(this::flushOnSlowWriter);
+        } catch (RejectedExecutionException ex) {
+            flushScheduled.set(false);
+        }
+    }
+
+    private void flushOnSlowWriter() {
+        flushLock.lock();
+        try {
+            flushScheduled.set(false); // frames queued from here on schedule another pass
+            flush(false);
+        } catch (IOException ex) {
+            log.debug("write to slow session {} failed: {}", getId(), ex.toString());
+            closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+        } finally {
+            flushLock.unlock();
+        }
+        if (!buffer.isEmpty() && !shouldNotSend()) scheduleFlush();
+    }
+
+    private void observe(long writeNanos) {
+        long ewma = writeNanosEwma;
+        ewma += (writeNanos - ewma) / 8;
+        writeNanosEwma = ewma;
+        long slowWrite = monitor.slowWriteNanos();
+        if (consumerClass == ConsumerClass.FAST) {
+            if (ewma > slowWrite || bufferedBytes.get() > monitor.limits(ConsumerClass.FAST).droppableAboveBytes()) {
+                setConsumerClass(ConsumerClass.SLOW);
+            }
+        } else if (ewma < slowWrite / 2 && bufferedBytes.get() < monitor.limits(ConsumerClass.SLOW).droppableAboveBytes() / 2) {
+            setConsumerClass(ConsumerClass.FAST);
+        }
+    }
+
+    /** Called by a sender that found a write in progress, or after queueing for a slow session. */
+    private void checkLimits() {
+        if (shouldNotSend() || !limitLock.tryLock()) return;
+        try {
+            long start = sendStartNanos;
+            long blockedNanos = start != 0 ? System.nanoTime() - start : 0;
+            if (blockedNanos > monitor.slowWriteNanos()) setConsumerClass(ConsumerClass.SLOW);
+            Limits limits = monitor.limits(consumerClass);
+            if (blockedNanos > limits.sendTimeLimitMs() * 1_000_000L) {
+                exceed("Send time " + blockedNanos / 1_000_000 + " ms exceeded the " + consumerClass + " limit");
+            }
+            if (bufferedBytes.get() > limits.bufferBytes()) {
+                shedDroppable();
+                if (bufferedBytes.get() > limits.bufferBytes()) {
+                    exceed("Buffer size " + bufferedBytes.get() + " bytes exceeded the " + consumerClass + " limit");
+                }
+            }
+        } finally {
+            limitLock.unlock();
+        }
+    }
+
+    /** Removes queued droppable frames; the ones already being written are past saving. */
+    private void shedDroppable() {
+        int frames = 0;
+        for (Outbound o : buffer) {
+            if (o.droppable() && buffer.remove(o)) {
+                bufferedBytes.addAndGet(-o.message().getPayloadLength());
+                bufferedFrames.decrementAndGet();
+                frames++;
+            }
+        }
+        if (frames > 0) drop(frames);
+    }
+
+    /** Whether the write in progress has been blocked past this class's time limit. */
+    boolean writeStuck(long nowNanos) {
+        long start = sendStartNanos;
+        return start != 0 && !shouldNotSend()
+                && nowNanos - start > monitor.limits(consumerClass).sendTimeLimitMs() * 1_000_000L;
+    }
+
+    /** Closes a session found {@link #writeStuck}; closing the transport is what frees the blocked writer. */
+    void closeStuck() {
+        if (!writeStuck(System.nanoTime())) return; // finished meanwhile
+        log.debug("session {} closed: a write has been blocked past the {} limit", getId(), consumerClass);
+        limitExceeded = true;
+        monitor.onSlowConsumerClosed();
+        closeQuietly(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private void exceed(String reason) {
+        limitExceeded = true;
+        monitor.onSlowConsumerClosed();
+        throw new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private void drop(int frames) {
+        droppedFrames.addAndGet(frames);
+        monitor.onDropped(frames);
+    }
+
+    private void setConsumerClass(ConsumerClass c) {
+        if (consumerClass != c) {
+            consumerClass = c;
+            log.debug("session {} is now a {} consumer (write ewma {} us, buffered {} B)",
+                    getId(), c, writeNanosEwma / 1000, bufferedBytes.get());
+        }
+    }
+
+    private boolean shouldNotSend() {
+        return limitExceeded || closeInProgress;
+    }
+
+    private void closeQuietly(CloseStatus status) {
+        try {
+            close(status);
+        } catch (IOException ignore) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) throws IOException {
+        closeInProgress = true;
+        super.close(status);
+    }
+
+    public ConsumerClass consumerClass() {
+        return consumerClass;
+    }
+
+    public int bufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    public int bufferedFrames() {
+        return bufferedFrames.get();
+    }
+
+    public long droppedFrames() {
+        return droppedFrames.get();
+    }
+
+    public long writeNanosEwma() {
+        return writeNanosEwma;
+    }
+}
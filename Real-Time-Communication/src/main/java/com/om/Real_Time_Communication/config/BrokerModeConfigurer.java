@@ -0,0 +1,85 @@
+package com.om.Real_Time_Communication.config;
+
+import com.om.Real_Time_Communication.broker.ClusterBrokerBridge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Chooses the STOMP broker behind {@code /topic} and {@code /queue} from {@code rtc.broker.mode}:
+ * <ul>
+ *   <li>{@code simple}: the in-memory broker, one node only.</li>
+ *   <li>{@code relay}: an external STOMP broker (RabbitMQ, ActiveMQ); user destinations and the user
+ *       registry are shared through broadcast topics so any node can reach any user.</li>
+ *   <li>{@code cluster}: the in-memory broker on every node, stitched together by the
+ *       {@link ClusterBrokerBridge} over Redis pub/sub, or over the in-JVM bus in tests.</li>
+ * </ul>
+ */
+@Component
+public class BrokerModeConfigurer {
+
+    public enum Mode { SIMPLE, RELAY, CLUSTER }
+
+    private static final Logger log = LoggerFactory.getLogger(BrokerModeConfigurer.class);
+
+    static final String USER_DESTINATION_BROADCAST = "/topic/unresolved-user-destination";
+    static final String USER_REGISTRY_BROADCAST = "/topic/simp-user-registry";
+
+    private final Mode mode;
+    private final String relayHost;
+    private final int relayPort;
+    private final String relayLogin;
+    private final String relayPasscode;
+    private final String relayVirtualHost;
+    private final ObjectProvider<ClusterBrokerBridge> clusterBridge;
+
+    public BrokerModeConfigurer(@Value("${rtc.broker.mode:simple}") String mode,
+                                @Value("${rtc.broker.relay.host:localhost}") String relayHost,
+                                @Value("${rtc.broker.relay.port:61613}") int relayPort,
+                                @Value("${rtc.broker.relay.login:guest}") String relayLogin,
+                                @Value("${rtc.broker.relay.passcode:guest}") String relayPasscode,
+                                @Value("${rtc.broker.relay.virtual-host:}") String relayVirtualHost,
+                                ObjectProvider<ClusterBrokerBridge> clusterBridge) {
+        this.mode = Mode.valueOf(mode.trim().toUpperCase());
+        this.relayHost = relayHost;
+        this.relayPort = relayPort;
+        this.relayLogin = relayLogin;
+        this.relayPasscode = relayPasscode;
+        this.relayVirtualHost = relayVirtualHost;
+        this.clusterBridge = clusterBridge;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public void configure(MessageBrokerRegistry config) {
+        switch (mode) {
+            case RELAY -> {
+                var relay = config.enableStompBrokerRelay("/topic", "/queue")
+                        .setRelayHost(relayHost)
+                        .setRelayPort(relayPort)
+                        .setClientLogin(relayLogin)
+                        .setClientPasscode(relayPasscode)
+                        .setSystemLogin(relayLogin)
+                        .setSystemPasscode(relayPasscode)
+                        .setUserDestinationBroadcast(USER_DESTINATION_BROADCAST)
+                        .setUserRegistryBroadcast(USER_REGISTRY_BROADCAST);
+                if (!relayVirtualHost.isBlank()) {
+                    relay.setVirtualHost(relayVirtualHost);
+                }
+            }
+            case CLUSTER -> {
+                config.enableSimpleBroker("/topic", "/queue");
+                config.configureBrokerChannel().interceptors(clusterBridge.getObject());
+            }
+            default -> config.enableSimpleBroker("/topic", "/queue", "/user");
+        }
+        log.info("[BROKER] mode={}", mode);
+        config.setApplicationDestinationPrefixes("/app");
+        config.setUserDestinationPrefix("/user");
+    }
+}
@@ -0,0 +1,45 @@
+package com.om.Real_Time_Communication.config;
+
+import com.om.Real_Time_Communication.models.SnowflakeIdentifierGenerator;
+import com.om.Real_Time_Communication.utility.SnowflakeIdGenerator;
+import com.om.Real_Time_Communication.utility.SnowflakeIds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Builds this node's {@link SnowflakeIds} from {@code rtc.id.node} and hands the same instance to
+ * Hibernate, for {@link SnowflakeIdentifierGenerator}. Every node writing to the same database
+ * needs its own number (0..31). Without one the number comes from the host name, which only a
+ * single node may rely on: startup fails unless {@code rtc.id.nodes} is 1.
+ */
+@Configuration
+public class IdGeneratorConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(IdGeneratorConfig.class);
+
+    @Bean
+    public SnowflakeIds snowflakeIds(@Value("${rtc.id.node:-1}") int node,
+                                     @Value("${rtc.id.nodes:1}") int nodes) {
+        if (nodes < 1 || nodes > SnowflakeIdGenerator.MAX_NODE + 1) {
+            throw new IllegalStateException("rtc.id.nodes is " + nodes + "; ids have room for 1.."
+                    + (SnowflakeIdGenerator.MAX_NODE + 1) + " nodes");
+        }
+        if (node >= 0) return new SnowflakeIds(node);
+        if (nodes != 1) {
+            throw new IllegalStateException("rtc.id.node must be set, unique per node, when rtc.id.nodes is "
+                    + nodes + ": numbers from host names collide");
+        }
+        SnowflakeIds ids = new SnowflakeIds(SnowflakeIds.nodeFromHost());
+        log.warn("rtc.id.node not set; using {} from the host name, which is only safe with a single node", ids.node());
+        return ids;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer snowflakeIdsForHibernate(SnowflakeIds ids) {
+        return props -> props.put(SnowflakeIdentifierGenerator.IDS_SETTING, ids);
+    }
+}
@@ -1,116 +1,88 @@
 package com.om.Real_Time_Communication.config;
 
-import lombok.RequiredArgsConstructor;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import com.om.Real_Time_Communication.utility.Utf8;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
+import java.security.Principal;
 import java.util.List;
+import java.util.Map;
 
-/** Caps inbound payload size and applies simple sliding-window rate limits. */
+/**
+ * Caps inbound payload size and applies the {@link StompRateLimiter} limits. Reads the message
+ * headers directly and keys the limits by primitive ids, so an allowed frame costs no allocation.
+ */
 @Component
-@RequiredArgsConstructor
 public class InboundSizeAndRateInterceptor implements ChannelInterceptor {
     private static final int CONNECT_MAX_BYTES = 256 * 1024; // allow fatter CONNECT headers (Authorization + E2EE)
     private static final int DEFAULT_MAX_PAYLOAD_BYTES = 64 * 1024; // 64KB cap for regular traffic
 
-    @Value("${rtc.rate-limit.connect.limit:30}")
-    private int connectLimit;
-    @Value("${rtc.rate-limit.connect.window-ms:10000}")
-    private long connectWindowMs;
+    private final StompRateLimiter limiter;
 
-    @Value("${rtc.rate-limit.subscribe.limit:50}")
-    private int subscribeLimit;
-    @Value("${rtc.rate-limit.subscribe.window-ms:10000}")
-    private long subscribeWindowMs;
-
-    @Value("${rtc.rate-limit.send.room-limit:50}")
-    private int sendRoomLimit;
-    @Value("${rtc.rate-limit.send.room-window-ms:5000}")
-    private long sendRoomWindowMs;
-    @Value("${rtc.rate-limit.send.user-limit:200}")
-    private int sendUserLimit;
-    @Value("${rtc.rate-limit.send.user-window-ms:5000}")
-    private long sendUserWindowMs;
-
-
-
-    @Autowired
-    private SlidingWindowRateLimiter limiter;
+    public InboundSizeAndRateInterceptor(StompRateLimiter limiter) {
+        this.limiter = limiter;
+    }
 
     @Override
     public Message<?> preSend(Message<?> msg, MessageChannel ch) {
-        StompHeaderAccessor acc = StompHeaderAccessor.wrap(msg);
-        if (acc == null || acc.getCommand() == null) return msg;
+        MessageHeaders headers = msg.getHeaders();
+        if (!(headers.get(StompHeaderAccessor.COMMAND_HEADER) instanceof StompCommand cmd)) return msg;
 
         // 1) Size cap
-        Object payload = msg.getPayload();
-        int size = 0;
-        if (payload instanceof byte[]) size = ((byte[]) payload).length;
-        else if (payload instanceof String) size = ((String) payload).getBytes(StandardCharsets.UTF_8).length;
-        int maxBytes = StompCommand.CONNECT.equals(acc.getCommand()) ? CONNECT_MAX_BYTES : DEFAULT_MAX_PAYLOAD_BYTES;
+        int maxBytes = cmd == StompCommand.CONNECT ? CONNECT_MAX_BYTES : DEFAULT_MAX_PAYLOAD_BYTES;
+        int size = payloadBytes(msg.getPayload(), maxBytes);
         if (size > maxBytes) {
             throw new IllegalArgumentException("Payload too large: " + size + " bytes");
         }
 
-
         // 2) Rate limits
-        String user = acc.getUser() != null ? acc.getUser().getName() : "anon";
-        StompCommand cmd = acc.getCommand();
-
-        if (StompCommand.CONNECT.equals(cmd)) {
+        if (cmd == StompCommand.CONNECT) {
             // Allow more generous burst during reconnect storms; key on IP when available, session otherwise.
-            String connectKey = headerFirst(acc, "X-Forwarded-For");
+            String connectKey = firstNativeHeader(headers, "X-Forwarded-For");
             if (connectKey == null || connectKey.isBlank()) {
-                connectKey = acc.getSessionId() != null ? acc.getSessionId() : "unknown";
+                connectKey = SimpMessageHeaderAccessor.getSessionId(headers);
+                if (connectKey == null) connectKey = "unknown";
             }
-            limiter.checkOrThrow("conn:" + connectKey + ":connect", connectLimit, connectWindowMs);
-        } else if (StompCommand.SUBSCRIBE.equals(cmd)) {
-            // 10 joins / 10s per user
-            limiter.checkOrThrow("u:" + user + ":joins", subscribeLimit, subscribeWindowMs);
-        } else if (StompCommand.SEND.equals(cmd)) {
-            // 50 msgs / 5s per (user, room) + 200 msgs / 5s global per user
-            String dest = acc.getDestination();        // e.g., /app/room/123/send
-            String roomId = parseRoomId(dest);
-            limiter.checkOrThrow("u:" + user + ":r:" + roomId + ":send", sendRoomLimit, sendRoomWindowMs);
-            limiter.checkOrThrow("u:" + user + ":send", sendUserLimit, sendUserWindowMs);
+            limiter.checkConnect(connectKey);
+        } else if (cmd == StompCommand.SUBSCRIBE) {
+            limiter.checkSubscribe(user(headers));
+        } else if (cmd == StompCommand.SEND) {
+            // Per (user, room) for the configured destinations, plus a global budget per user
+            limiter.checkSend(user(headers), SimpMessageHeaderAccessor.getDestination(headers));
         }
         return msg;
     }
 
-    private static String headerFirst(StompHeaderAccessor acc, String name) {
-        List<String> v = acc.getNativeHeader(name);
+    private static long user(MessageHeaders headers) {
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        return StompRateLimiter.userKey(user != null ? user.getName() : null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String firstNativeHeader(MessageHeaders headers, String name) {
+        Object nativeHeaders = headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        if (!(nativeHeaders instanceof Map<?, ?> map)) return null;
+        List<String> v = ((Map<String, List<String>>) map).get(name);
         return (v == null || v.isEmpty()) ? null : v.get(0);
     }
-    private static String parseRoomId(String dest) {
-        if (dest == null) return "-1";
-        String slashPrefix = "/app/rooms/";
-        if (dest.startsWith(slashPrefix)) {
-            int end = dest.indexOf('/', slashPrefix.length());
-            if (end > 0) {
-                return dest.substring(slashPrefix.length(), end);
-            }
-            return dest.substring(slashPrefix.length());
-        }
-        String dottedPrefix = "/app/rooms."; // legacy Expo client path
-        if (dest.startsWith(dottedPrefix)) {
-            String remainder = dest.substring(dottedPrefix.length());
-            int dot = remainder.indexOf('.');
-            if (dot > 0) {
-                return remainder.substring(0, dot);
-            }
-            int slash = remainder.indexOf('/');
-            if (slash > 0) {
-                return remainder.substring(0, slash);
-            }
-            return remainder;
-        }
-        return "-1";
+
+    /**
+     * Encoded size of the payload: the array length for the byte[] frames the STOMP decoder
+     * produces; for a String the UTF-8 length counted in place, stopping once past {@code max}.
+     */
+    static int payloadBytes(Object payload, int max) {
+        if (payload instanceof byte[] bytes) return bytes.length;
+        if (!(payload instanceof String str)) return 0;
+        int n = str.length();
+        if (n > max) return n; // at least one byte per char
+        if ((long) n * 3 <= max) return n; // a char never takes more than 3 bytes; under the cap either way
+        return Utf8.length(str, max);
     }
 }
@@ -1,73 +1,200 @@
 package com.om.Real_Time_Communication.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
 
 import java.security.interfaces.RSAPublicKey;
 import java.time.Duration;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
+/**
+ * Signing keys of the auth service by {@code kid}. Refreshes are asynchronous and single-flight:
+ * however many callers need new keys, one JWKS request is in flight and they all wait on it.
+ * Keys are refreshed in the background {@code refresh-ahead-ms} before the Cache-Control max-age
+ * runs out, and kept if a refresh fails. An unknown kid triggers a refresh at most once per
+ * {@code min-refresh-interval-ms}; a kid still missing afterwards is remembered as unknown for
+ * {@code unknown-kid-ttl-ms}, so a reconnect storm with a rotated or forged kid costs one request.
+ * {@link #generation} moves whenever a refresh withdraws or replaces a key, so anything verified
+ * against the previous keys can tell it needs checking again.
+ */
 @Component
 public class JwksCache {
-    private final RtcJwtConfig cfg;
-    private final RsaKeyUtil rsaUtil;
-    private final WebClient web;
-    private final ConcurrentHashMap<String, RSAPublicKey> byKid = new ConcurrentHashMap<>();
-    private volatile long expiresAtMs = 0;
-
-    public JwksCache(RtcJwtConfig cfg, RsaKeyUtil rsaUtil) {
-        this.cfg = cfg; this.rsaUtil = rsaUtil;
-        this.web = WebClient.builder().build();
+
+    private static final Logger log = LoggerFactory.getLogger(JwksCache.class);
+
+    private static final long DEFAULT_TTL_MS = 10 * 60 * 1000L;
+
+    /** Keys from one JWKS response and how long the response may be cached. */
+    public record JwkSet(Map<String, RSAPublicKey> keys, long ttlMs) {}
+
+    private final Supplier<CompletableFuture<JwkSet>> fetcher;
+    private final long refreshAheadMs;
+    private final long minRefreshIntervalMs;
+    private final long fetchTimeoutMs;
+    private final Cache<String, Boolean> unknownKids;
+    private final AtomicReference<CompletableFuture<Map<String, RSAPublicKey>>> inflight = new AtomicReference<>();
+
+    private volatile Map<String, RSAPublicKey> byKid = Map.of();
+    private volatile long refreshAtMs = 0;
+    private volatile long lastRefreshMs = Long.MIN_VALUE / 2;
+    private volatile long generation = 0;
+
+    @Autowired
+    public JwksCache(RtcJwtConfig cfg, RsaKeyUtil rsaUtil,
+                     @Value("${rtc.jwt.jwks.refresh-ahead-ms:60000}") long refreshAheadMs,
+                     @Value("${rtc.jwt.jwks.min-refresh-interval-ms:30000}") long minRefreshIntervalMs,
+                     @Value("${rtc.jwt.jwks.unknown-kid-ttl-ms:60000}") long unknownKidTtlMs,
+                     @Value("${rtc.jwt.jwks.fetch-timeout-ms:3000}") long fetchTimeoutMs) {
+        this(webFetcher(cfg, rsaUtil, WebClient.builder().build(), fetchTimeoutMs),
+                refreshAheadMs, minRefreshIntervalMs, unknownKidTtlMs, fetchTimeoutMs);
+    }
+
+    public JwksCache(Supplier<CompletableFuture<JwkSet>> fetcher, long refreshAheadMs, long minRefreshIntervalMs,
+                     long unknownKidTtlMs, long fetchTimeoutMs) {
+        this.fetcher = fetcher;
+        this.refreshAheadMs = refreshAheadMs;
+        this.minRefreshIntervalMs = minRefreshIntervalMs;
+        this.fetchTimeoutMs = fetchTimeoutMs;
+        this.unknownKids = Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofMillis(unknownKidTtlMs))
+                .build();
     }
 
+    /** The key for {@code kid}, or {@code null} if the auth service does not publish it. */
     public RSAPublicKey getKey(String kid) {
-        if (System.currentTimeMillis() > expiresAtMs) {
-            refresh(); // best-effort sync refresh
-        }
+        long now = System.currentTimeMillis();
+        if (now >= refreshAtMs) refresh(); // in the background; current keys serve until replaced
         RSAPublicKey k = byKid.get(kid);
-        if (k == null) { refresh(); k = byKid.get(kid); }
+        if (k != null || unknownKids.getIfPresent(kid) != null) return k;
+        CompletableFuture<Map<String, RSAPublicKey>> pending = inflight.get();
+        if (pending == null) {
+            if (now - lastRefreshMs < minRefreshIntervalMs) return null; // not remembered: a later refresh may still find it
+            pending = refresh();
+        }
+        Map<String, RSAPublicKey> fresh = await(pending);
+        if (fresh == null) return byKid.get(kid);
+        k = fresh.get(kid);
+        if (k == null) unknownKids.put(kid, Boolean.TRUE);
         return k;
     }
 
-    @SuppressWarnings("unchecked")
-    private void refresh() {
+    @Scheduled(fixedDelayString = "${rtc.jwt.jwks.check-ms:10000}")
+    public void refreshIfDue() {
+        if (System.currentTimeMillis() >= refreshAtMs) refresh();
+    }
+
+    /** Starts a refresh unless one is in flight; completes with the new keys, or exceptionally if it failed. */
+    CompletableFuture<Map<String, RSAPublicKey>> refresh() {
+        for (;;) {
+            CompletableFuture<Map<String, RSAPublicKey>> current = inflight.get();
+            if (current != null) return current;
+            CompletableFuture<Map<String, RSAPublicKey>> mine = new CompletableFuture<>();
+            if (inflight.compareAndSet(null, mine)) {
+                start(mine);
+                return mine;
+            }
+        }
+    }
+
+    private void start(CompletableFuture<Map<String, RSAPublicKey>> result) {
+        long startedAt = System.currentTimeMillis();
+        lastRefreshMs = startedAt;
+        CompletableFuture<JwkSet> fetch;
         try {
-            ResponseEntity<Map> resp = web.get().uri(cfg.getJwksUri())
-                    .retrieve().toEntity(Map.class)
-                    .timeout(Duration.ofSeconds(3))
-                    .block();
-
-            Object keysObj = resp != null && resp.getBody()!=null ? resp.getBody().get("keys") : null;
-            if (!(keysObj instanceof List<?> keys)) return;
-
-            Map<String, RSAPublicKey> tmp = new HashMap<>();
-            for (Object o : keys) {
-                if (!(o instanceof Map<?,?> jwk)) continue;
-                String kty = String.valueOf(jwk.get("kty"));
-                String use = String.valueOf(jwk.get("use"));
-                String alg = String.valueOf(jwk.get("alg"));
-                String kid = String.valueOf(jwk.get("kid"));
-                if (!"RSA".equals(kty) || !"sig".equals(use) || !"RS256".equals(alg)) continue;
-                String n = String.valueOf(jwk.get("n"));
-                String e = String.valueOf(jwk.get("e"));
-                tmp.put(kid, rsaUtil.fromJwk(n, e));
+            fetch = fetcher.get();
+        } catch (RuntimeException ex) {
+            fetch = CompletableFuture.failedFuture(ex);
+        }
+        fetch.whenComplete((set, ex) -> {
+            if (ex == null && set != null) {
+                Map<String, RSAPublicKey> keys = Map.copyOf(set.keys());
+                boolean withdrawn = byKid.entrySet().stream().anyMatch(e -> !e.getValue().equals(keys.get(e.getKey())));
+                byKid = keys;
+                if (withdrawn) generation++; // only this thread writes it: refreshes are single-flight
+                unknownKids.invalidateAll(keys.keySet());
+                long ttlMs = set.ttlMs() > 0 ? set.ttlMs() : DEFAULT_TTL_MS;
+                refreshAtMs = startedAt + ttlMs - Math.min(refreshAheadMs, ttlMs / 2);
+                inflight.set(null);
+                result.complete(keys);
+            } else {
+                log.warn("JWKS refresh failed, keeping {} cached keys: {}", byKid.size(), ex != null ? ex.toString() : "empty response");
+                refreshAtMs = startedAt + minRefreshIntervalMs;
+                inflight.set(null);
+                result.completeExceptionally(ex != null ? ex : new IllegalStateException("Empty JWKS response"));
             }
-            byKid.clear(); byKid.putAll(tmp);
-
-            long ttlMs = 10 * 60 * 1000L;
-            for (String h : resp.getHeaders().getOrEmpty("Cache-Control")) {
-                for (String part : h.split(",")) {
-                    part = part.trim();
-                    if (part.startsWith("max-age=")) {
-                        try { ttlMs = Long.parseLong(part.substring(8)) * 1000L; } catch (Exception ignore) {}
-                    }
+        });
+    }
+
+    private Map<String, RSAPublicKey> await(CompletableFuture<Map<String, RSAPublicKey>> refresh) {
+        try {
+            return refresh.get(fetchTimeoutMs + 500, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    /** Bumped when a refresh drops or replaces a key; read it before {@link #getKey} to pin what was verified against. */
+    public long generation() {
+        return generation;
+    }
+
+    public int size() {
+        return byKid.size();
+    }
+
+    private static Supplier<CompletableFuture<JwkSet>> webFetcher(RtcJwtConfig cfg, RsaKeyUtil rsaUtil,
+                                                                  WebClient web, long timeoutMs) {
+        return () -> web.get().uri(cfg.getJwksUri())
+                .retrieve().toEntity(Map.class)
+                .timeout(Duration.ofMillis(timeoutMs))
+                .map(resp -> parse(resp, rsaUtil))
+                .toFuture();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static JwkSet parse(ResponseEntity<Map> resp, RsaKeyUtil rsaUtil) {
+        Object keysObj = resp.getBody() != null ? resp.getBody().get("keys") : null;
+        if (!(keysObj instanceof List<?> keys)) throw new IllegalStateException("JWKS response without keys");
+
+        Map<String, RSAPublicKey> tmp = new HashMap<>();
+        for (Object o : keys) {
+            if (!(o instanceof Map<?,?> jwk)) continue;
+            String kty = String.valueOf(jwk.get("kty"));
+            String use = String.valueOf(jwk.get("use"));
+            String alg = String.valueOf(jwk.get("alg"));
+            String kid = String.valueOf(jwk.get("kid"));
+            if (!"RSA".equals(kty) || !"sig".equals(use) || !"RS256".equals(alg)) continue;
+            String n = String.valueOf(jwk.get("n"));
+            String e = String.valueOf(jwk.get("e"));
+            tmp.put(kid, rsaUtil.fromJwk(n, e));
+        }
+
+        long ttlMs = DEFAULT_TTL_MS;
+        for (String h : resp.getHeaders().getOrEmpty("Cache-Control")) {
+            for (String part : h.split(",")) {
+                part = part.trim();
+                if (part.startsWith("max-age=")) {
+                    try { ttlMs = Long.parseLong(part.substring(8)) * 1000L; } catch (Exception ignore) {}
                 }
             }
-            expiresAtMs = System.currentTimeMillis() + ttlMs;
-        } catch (Exception ignore) { /* keep previous keys */ }
+        }
+        return new JwkSet(tmp, ttlMs);
     }
 }
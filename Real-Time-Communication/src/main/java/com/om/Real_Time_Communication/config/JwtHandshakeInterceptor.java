@@ -87,6 +87,7 @@ public class JwtHandshakeInterceptor implements HandshakeInterceptor {
             // 3) Diagnostics/context (keep if you use them)
             attrs.put("clientIp", clientIp(req));
             attrs.put("userAgent", req.getHeaders().getFirst(HttpHeaders.USER_AGENT));
+            attrs.put("deviceId", deviceId(req));
 
 
 
@@ -155,6 +156,15 @@ public class JwtHandshakeInterceptor implements HandshakeInterceptor {
         return null;
     }
 
+    /** Device id from X-Device-Id or ?deviceId=..., "default" when the client sends none. */
+    private static String deviceId(ServerHttpRequest req) {
+        String d = req.getHeaders().getFirst("X-Device-Id");
+        if ((d == null || d.isBlank()) && req instanceof ServletServerHttpRequest sreq) {
+            d = sreq.getServletRequest().getParameter("deviceId");
+        }
+        return d != null && !d.isBlank() ? d.trim() : "default";
+    }
+
     private static String clientIp(ServerHttpRequest req) {
         String xff = req.getHeaders().getFirst("X-Forwarded-For");
         if (xff != null && !xff.isBlank()) {
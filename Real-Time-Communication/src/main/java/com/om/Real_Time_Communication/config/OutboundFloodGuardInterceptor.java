@@ -1,61 +1,208 @@
 package com.om.Real_Time_Communication.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.om.Real_Time_Communication.utility.RtcMetrics;
+import io.micrometer.common.lang.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
 import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Semaphore;
-import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicInteger;
 
-/** Per-session outbound backpressure guard with low-priority drop. */
+/**
+ * Per-session outbound credit on the client outbound channel. A frame takes a credit in
+ * {@link #preSend} and returns it once the channel's executor has handed it to the session
+ * ({@link #afterMessageHandled}), so a session's credits in use are its frames still queued.
+ * Destinations fall into two classes, resolved once and cached:
+ * <ul>
+ *   <li>{@link Priority#LOW} (typing, presence): past {@code rtc.outbound.low-priority.max-inflight}
+ *       only the newest frame per destination is kept, and sent once the session has drained;</li>
+ *   <li>{@link Priority#CRITICAL} (room messages and receipts, call signalling, user queues, acks,
+ *       errors): always sent. A session too slow for them is closed by its
+ *       {@link AdaptiveSessionDecorator} once its buffer overflows, and the client resyncs from its
+ *       pending messages on reconnect, rather than silently missing a message.</li>
+ * </ul>
+ * Credit state exists from {@link SessionConnectEvent} to {@link SessionDisconnectEvent}. The
+ * marker header goes onto the broker's still-mutable headers where it can, instead of a copy.
+ * While the executor hands a frame to its session, {@link #handlingPriority} tells the session
+ * decorator the frame's class without it having to read the encoded frame.
+ */
 @Component
-public class OutboundFloodGuardInterceptor implements ChannelInterceptor {
-    private static final int MAX_INFLIGHT = 1000; // permits per session (tune 200–2000)
-    private static final Pattern LOW_PRIORITY =
-            Pattern.compile("^/topic/(typing|presence|heartbeat)(\\.|/).*");
+public class OutboundFloodGuardInterceptor implements ExecutorChannelInterceptor {
 
-    private final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+    public enum Priority { CRITICAL, LOW }
+
+    static final String CREDIT_HEADER = "x-release-permit";
+
+    private static final class SessionCredit {
+        final AtomicInteger inflight = new AtomicInteger();
+        final ConcurrentMap<String, Message<?>> deferred = new ConcurrentHashMap<>(4);
+    }
+
+    private final int lowMaxInflight;
+    private final int maxDeferred;
+    private final String[] lowPrefixes;
+    private final String[] lowSuffixes;
+    private final Cache<String, Priority> priorities;
+    private final ConcurrentMap<String, SessionCredit> sessions = new ConcurrentHashMap<>();
+    private final ThreadLocal<Priority> handling = new ThreadLocal<>();
+    @Nullable
+    private final RtcMetrics metrics;
+
+    public OutboundFloodGuardInterceptor(@Value("${rtc.outbound.low-priority.max-inflight:200}") int lowMaxInflight,
+                                         @Value("${rtc.outbound.low-priority.destinations:/topic/typing,/topic/presence,/topic/heartbeat,*/typing,*/presence}") String lowDestinations,
+                                         @Value("${rtc.outbound.low-priority.max-deferred:32}") int maxDeferred,
+                                         @Value("${rtc.outbound.priority-cache-size:10000}") int priorityCacheSize,
+                                         @Nullable RtcMetrics metrics) {
+        this.lowMaxInflight = lowMaxInflight;
+        this.maxDeferred = maxDeferred;
+        List<String> prefixes = new ArrayList<>();
+        List<String> suffixes = new ArrayList<>();
+        for (String part : lowDestinations.split(",")) {
+            String p = part.trim();
+            if (p.isEmpty()) continue;
+            if (p.startsWith("*")) suffixes.add(p.substring(1));
+            else prefixes.add(p);
+        }
+        this.lowPrefixes = prefixes.toArray(new String[0]);
+        this.lowSuffixes = suffixes.toArray(new String[0]);
+        this.priorities = Caffeine.newBuilder().maximumSize(priorityCacheSize).build();
+        this.metrics = metrics;
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null) sessions.putIfAbsent(sessionId, new SessionCredit());
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
 
     @Override
     public Message<?> preSend(Message<?> msg, MessageChannel ch) {
-        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.wrap(msg);
-        if (acc == null) return msg;
-        String sessionId = acc.getSessionId();
+        MessageHeaders headers = msg.getHeaders();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
         if (sessionId == null) return msg;
+        SessionCredit credit = sessions.get(sessionId);
+        if (credit == null) return msg; // not connected (yet), or already gone
 
-        String dest = acc.getDestination();
-        Semaphore sem = permits.computeIfAbsent(sessionId, k -> new Semaphore(MAX_INFLIGHT));
-
-        boolean acquired = sem.tryAcquire();
-        if (!acquired) {
-            // Session congested
-            if (dest != null && LOW_PRIORITY.matcher(dest).matches()) {
-                return null; // drop low-priority frames
-            } else {
-                try { acquired = sem.tryAcquire(25, TimeUnit.MILLISECONDS); } catch (InterruptedException ignored) {}
-                if (!acquired) return null; // still congested → drop to protect server
-            }
+        String dest = SimpMessageHeaderAccessor.getDestination(headers);
+        Priority priority = priorityOf(dest);
+        if (priority == Priority.LOW && credit.inflight.get() >= lowMaxInflight) {
+            return defer(credit, dest, msg);
+        }
+        if (priority == Priority.LOW && !credit.deferred.isEmpty() && credit.deferred.remove(dest) != null) {
+            if (metrics != null) metrics.outboundCoalesced(); // superseded by this frame; must not follow it
         }
-        // Mark so we can release after broker send completes
-        return MessageBuilder.fromMessage(msg).setHeader("x-release-permit", Boolean.TRUE).build();
+        credit.inflight.incrementAndGet();
+        return markCredit(msg);
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, @Nullable Exception ex) {
+        // Not handed to the executor, so afterMessageHandled will not come
+        if (!sent || ex != null) release(message, channel);
     }
 
     @Override
-    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
-        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.wrap(message);
-        if (acc == null) return;
-        String sessionId = acc.getSessionId();
-        if (sessionId == null) return;
-        Object marker = acc.getHeader("x-release-permit");
-        if (Boolean.TRUE.equals(marker)) {
-            Semaphore sem = permits.get(sessionId);
-            if (sem != null) sem.release();
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        handling.set(priorityOf(SimpMessageHeaderAccessor.getDestination(message.getHeaders())));
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, @Nullable Exception ex) {
+        handling.remove();
+        release(message, channel);
+    }
+
+    /** Priority of the frame being handed to a session on this thread; null outside the outbound executor. */
+    public @Nullable Priority handlingPriority() {
+        return handling.get();
+    }
+
+    public Priority priorityOf(@Nullable String dest) {
+        if (dest == null || dest.startsWith("/queue/") || dest.startsWith("/user/")) {
+            return Priority.CRITICAL; // per-session destinations; not worth a cache entry each
+        }
+        Priority p = priorities.getIfPresent(dest);
+        if (p == null) {
+            p = classify(dest);
+            priorities.put(dest, p);
+        }
+        return p;
+    }
+
+    /** Sessions with credit state; for tests and diagnostics. */
+    public int trackedSessions() {
+        return sessions.size();
+    }
+
+    private Priority classify(String dest) {
+        for (String prefix : lowPrefixes) {
+            if (dest.startsWith(prefix)) return Priority.LOW;
+        }
+        for (String suffix : lowSuffixes) {
+            if (dest.endsWith(suffix)) return Priority.LOW;
+        }
+        return Priority.CRITICAL;
+    }
+
+    /** Keeps only the newest frame per low-priority destination until the session drains. */
+    private Message<?> defer(SessionCredit credit, String dest, Message<?> msg) {
+        if (credit.deferred.size() >= maxDeferred && !credit.deferred.containsKey(dest)) {
+            if (metrics != null) metrics.dropped();
+            return null;
+        }
+        if (credit.deferred.put(dest, msg) != null && metrics != null) metrics.outboundCoalesced();
+        // A release that drained the session before our put would have missed it; take it back and send now
+        if (credit.inflight.get() < lowMaxInflight && credit.deferred.remove(dest, msg)) {
+            credit.inflight.incrementAndGet();
+            return markCredit(msg);
+        }
+        return null;
+    }
+
+    private void release(Message<?> message, MessageChannel channel) {
+        if (!Boolean.TRUE.equals(message.getHeaders().get(CREDIT_HEADER))) return;
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        SessionCredit credit = sessionId != null ? sessions.get(sessionId) : null;
+        if (credit == null) return;
+        int inflight = credit.inflight.decrementAndGet();
+        if (inflight <= lowMaxInflight / 2 && !credit.deferred.isEmpty()) {
+            for (Map.Entry<String, Message<?>> e : credit.deferred.entrySet()) {
+                if (credit.deferred.remove(e.getKey(), e.getValue())) {
+                    channel.send(e.getValue());
+                }
+            }
+        }
+    }
+
+    private static Message<?> markCredit(Message<?> msg) {
+        MessageHeaderAccessor acc = MessageHeaderAccessor.getAccessor(msg, MessageHeaderAccessor.class);
+        if (acc != null && acc.isMutable()) {
+            acc.setHeader(CREDIT_HEADER, Boolean.TRUE);
+            return msg;
         }
+        return MessageBuilder.fromMessage(msg).setHeader(CREDIT_HEADER, Boolean.TRUE).build();
     }
 }
@@ -0,0 +1,42 @@
+package com.om.Real_Time_Communication.config;
+
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Connection and template used only by the outbox relay. Rabbit auto-configuration is excluded
+ * from this application, so the {@code spring.rabbitmq} settings are read here; the connection
+ * factory always has correlated publisher confirms and returns, which the relay waits on before
+ * marking events SENT. The template is mandatory (unroutable events come back) and is not shared.
+ */
+@Configuration
+@ConditionalOnExpression("${outbox.enabled:false} && '${outbox.sink:rabbit}' == 'rabbit'")
+public class OutboxRabbitConfig {
+
+    @Bean(destroyMethod = "destroy")
+    public CachingConnectionFactory outboxConnectionFactory(@Value("${spring.rabbitmq.host:localhost}") String host,
+                                                            @Value("${spring.rabbitmq.port:5672}") int port,
+                                                            @Value("${spring.rabbitmq.username:guest}") String username,
+                                                            @Value("${spring.rabbitmq.password:guest}") String password,
+                                                            @Value("${spring.rabbitmq.virtual-host:/}") String virtualHost) {
+        CachingConnectionFactory cf = new CachingConnectionFactory(host, port);
+        cf.setUsername(username);
+        cf.setPassword(password);
+        cf.setVirtualHost(virtualHost);
+        cf.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.CORRELATED);
+        cf.setPublisherReturns(true);
+        return cf;
+    }
+
+    @Bean
+    public RabbitTemplate outboxRabbitTemplate(@Qualifier("outboxConnectionFactory") CachingConnectionFactory cf) {
+        RabbitTemplate tpl = new RabbitTemplate(cf);
+        tpl.setMandatory(true);
+        return tpl;
+    }
+}
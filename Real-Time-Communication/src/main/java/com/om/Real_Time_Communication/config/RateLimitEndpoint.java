@@ -0,0 +1,65 @@
+package com.om.Real_Time_Communication.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/ratelimits}: reads and changes the STOMP rate limits at runtime, e.g.
+ * {@code POST {"send":"300/5000","destinations":"/app/rooms/=20/5000"}}, and
+ * {@code POST /actuator/ratelimits/{userId} {"factor":10}} to scale one user's limits (no factor
+ * restores the defaults). Only reachable when listed in {@code management.endpoints.web.exposure.include}.
+ */
+@Component
+@Endpoint(id = "ratelimits")
+public class RateLimitEndpoint {
+
+    private final StompRateLimiter limiter;
+
+    public RateLimitEndpoint(StompRateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @ReadOperation
+    public Map<String, Object> settings() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("connect", limiter.getConnect().toString());
+        out.put("subscribe", limiter.getSubscribe().toString());
+        out.put("send", limiter.getSend().toString());
+        out.put("destinations", limiter.getDestinationRules());
+        out.put("trackedKeys", limiter.trackedKeys());
+        return out;
+    }
+
+    @WriteOperation
+    public Map<String, Object> update(@Nullable String connect,
+                                      @Nullable String subscribe,
+                                      @Nullable String send,
+                                      @Nullable String destinations) {
+        if (connect != null) limiter.setConnect(StompRateLimiter.Rate.parse(connect));
+        if (subscribe != null) limiter.setSubscribe(StompRateLimiter.Rate.parse(subscribe));
+        if (send != null) limiter.setSend(StompRateLimiter.Rate.parse(send));
+        if (destinations != null) limiter.setDestinationRules(destinations);
+        return settings();
+    }
+
+    @ReadOperation
+    public Map<String, Object> user(@Selector String userId) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("userId", userId);
+        out.put("factor", limiter.getUserFactor(StompRateLimiter.userKey(userId)));
+        return out;
+    }
+
+    @WriteOperation
+    public Map<String, Object> updateUser(@Selector String userId, @Nullable Double factor) {
+        limiter.setUserFactor(StompRateLimiter.userKey(userId), factor);
+        return user(userId);
+    }
+}
@@ -8,17 +8,21 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-//@Configuration
-//@ConditionalOnProperty(name = "rtc.redis.enabled", havingValue = "true")
+/**
+ * The Redis client behind the shared backends: the cluster bus, room cache invalidation, presence
+ * and the read model, each when its {@code store}/{@code transport} is {@code redis}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "rtc.redis.enabled", havingValue = "true")
 public class RedissonConfig {
 
-//    @Value("${rtc.redis.url:redis://localhost:6379}")
-//    private String redisUrl;
-//
-//    @Bean(destroyMethod = "shutdown")
-//    public RedissonClient redissonClient() {
-//        Config config = new Config();
-//        config.useSingleServer().setAddress(redisUrl);
-//        return Redisson.create(config);
-//    }
-}
\ No newline at end of file
+    @Value("${rtc.redis.url:redis://localhost:6379}")
+    private String redisUrl;
+
+    @Bean(destroyMethod = "shutdown")
+    public RedissonClient redissonClient() {
+        Config config = new Config();
+        config.useSingleServer().setAddress(redisUrl);
+        return Redisson.create(config);
+    }
+}
@@ -1,30 +1,87 @@
 package com.om.Real_Time_Communication.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.JwtException;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.interfaces.RSAPublicKey;
 import java.util.Base64;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Verifies RS256 tokens against {@link JwksCache}. Verified claims are cached by the token's
+ * SHA-256 until its {@code exp}, so the handshake and the STOMP CONNECT that follows (and every
+ * reconnect with the same token) check the signature once. Rejected tokens are never cached.
+ * Each entry remembers the {@link JwksCache#generation} it was verified under; once a refresh has
+ * withdrawn or replaced a key, older entries are verified again, so a token whose key was rotated out
+ * stops authenticating at the next refresh instead of at its {@code exp}.
+ */
 @Component
 public class RsJwtVerifier {
 
+    /** SHA-256 of a token; the token itself is not kept. */
+    record TokenHash(long h0, long h1, long h2, long h3) {
+        static TokenHash of(String token) {
+            try {
+                ByteBuffer d = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+                return new TokenHash(d.getLong(), d.getLong(), d.getLong(), d.getLong());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
     private final RtcJwtConfig cfg;
     private final JwksCache jwks;
+    /** Claims and the key generation they were verified under. */
+    record Verified(Claims claims, long keys) {}
 
-    public RsJwtVerifier(RtcJwtConfig cfg, JwksCache jwks) {
+    private final Cache<TokenHash, Verified> verified;
+
+    public RsJwtVerifier(RtcJwtConfig cfg, JwksCache jwks,
+                         @Value("${rtc.jwt.verified-cache-size:100000}") long verifiedCacheSize) {
         this.cfg = cfg;
         this.jwks = jwks;
+        this.verified = verifiedCacheSize > 0
+                ? Caffeine.newBuilder().maximumSize(verifiedCacheSize).expireAfter(new UntilExp()).build()
+                : null;
     }
 
     /** Public entrypoint used by JwtService (and indirectly by JwtHandshakeInterceptor). */
     public Claims validate(String token) {
-        return extractAllClaims(token);
+        if (verified == null) return extractAllClaims(token);
+        TokenHash hash = TokenHash.of(token);
+        Verified v = verified.get(hash, k -> verify(token));
+        if (v.keys() != jwks.generation()) {
+            verified.invalidate(hash); // its key may be gone; a failure below must leave nothing cached
+            v = verify(token);
+            verified.put(hash, v);
+        }
+        Claims c = v.claims();
+        if (!c.getExpiration().after(new Date())) {
+            throw new JwtException("Expired"); // Caffeine drops it at exp; this covers the last tick
+        }
+        return c;
+    }
+
+    public long verifiedTokens() {
+        return verified != null ? verified.estimatedSize() : 0;
+    }
+
+    private Verified verify(String token) {
+        long keys = jwks.generation(); // before the key lookup: a rotation racing it re-verifies next time
+        return new Verified(extractAllClaims(token), keys);
     }
 
     private RSAPublicKey keyForToken(String token) {
@@ -69,4 +126,23 @@ public class RsJwtVerifier {
         int q2 = json.indexOf('"', q1 + 1);
         return (q1 > 0 && q2 > q1) ? json.substring(q1 + 1, q2) : null;
     }
-}
\ No newline at end of file
+
+    /** Cached claims live until the token's {@code exp}. */
+    private static final class UntilExp implements Expiry<TokenHash, Verified> {
+        @Override
+        public long expireAfterCreate(TokenHash key, Verified v, long currentTime) {
+            long ms = v.claims().getExpiration().getTime() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, ms));
+        }
+
+        @Override
+        public long expireAfterUpdate(TokenHash key, Verified v, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, v, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(TokenHash key, Verified v, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
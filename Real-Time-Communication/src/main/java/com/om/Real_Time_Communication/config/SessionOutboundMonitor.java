@@ -0,0 +1,148 @@
+package com.om.Real_Time_Communication.config;
+
+import com.om.Real_Time_Communication.config.AdaptiveSessionDecorator.ConsumerClass;
+import com.om.Real_Time_Communication.security.SessionRegistry;
+import com.om.Real_Time_Communication.utility.RtcMetrics;
+import io.micrometer.common.lang.Nullable;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the {@link AdaptiveSessionDecorator} for each STOMP session (see
+ * {@link WebSocketBrokerConfiguration}) and holds what they share: the per-class limits, the
+ * slow-writer threads and the droppable-frame test. Samples every session's queue into the
+ * {@code ws.session.queue.*} histograms and the {@code ws.send.queue.size} and {@code ws.sessions.slow}
+ * gauges, and closes sessions whose current write has been blocked past their class's time limit:
+ * senders check that too, but a slow session that gets no further sends would otherwise hold one of
+ * the shared slow-writer threads until the transport gives up.
+ */
+@Component
+public class SessionOutboundMonitor implements DisposableBean {
+
+    /**
+     * Limits of one consumer class: the buffer beyond which the session is closed, the buffer beyond
+     * which droppable frames are refused, and how long a single write may block.
+     */
+    public record Limits(int bufferBytes, int droppableAboveBytes, long sendTimeLimitMs) {}
+
+    private final Limits fast;
+    private final Limits slow;
+    private final long slowWriteNanos;
+    private final ExecutorService slowWriter;
+    private final ExecutorService watchdog;
+    private final ConcurrentMap<String, AdaptiveSessionDecorator> sessions = new ConcurrentHashMap<>();
+    @Nullable
+    private final OutboundFloodGuardInterceptor priorities;
+    @Nullable
+    private final SessionRegistry registry;
+    @Nullable
+    private final RtcMetrics metrics;
+
+    public SessionOutboundMonitor(@Value("${rtc.ws.send.fast.buffer-bytes:1048576}") int fastBufferBytes,
+                                  @Value("${rtc.ws.send.fast.time-limit-ms:10000}") long fastTimeLimitMs,
+                                  @Value("${rtc.ws.send.slow.buffer-bytes:262144}") int slowBufferBytes,
+                                  @Value("${rtc.ws.send.slow.time-limit-ms:5000}") long slowTimeLimitMs,
+                                  @Value("${rtc.ws.send.droppable-above:0.25}") double droppableAbove,
+                                  @Value("${rtc.ws.send.slow-write-ms:50}") long slowWriteMs,
+                                  @Value("${rtc.ws.send.slow-writer-threads:4}") int slowWriterThreads,
+                                  @Nullable OutboundFloodGuardInterceptor priorities,
+                                  @Nullable SessionRegistry registry,
+                                  @Nullable RtcMetrics metrics) {
+        this.fast = new Limits(fastBufferBytes, (int) (fastBufferBytes * droppableAbove), fastTimeLimitMs);
+        this.slow = new Limits(slowBufferBytes, (int) (slowBufferBytes * droppableAbove), slowTimeLimitMs);
+        this.slowWriteNanos = slowWriteMs * 1_000_000L;
+        CustomizableThreadFactory threads = new CustomizableThreadFactory("ws-slow-writer-");
+        threads.setDaemon(true);
+        this.slowWriter = Executors.newFixedThreadPool(slowWriterThreads, threads);
+        CustomizableThreadFactory watchdogThread = new CustomizableThreadFactory("ws-send-watchdog-");
+        watchdogThread.setDaemon(true);
+        this.watchdog = Executors.newSingleThreadExecutor(watchdogThread); // a close may itself block on the transport
+        this.priorities = priorities;
+        this.registry = registry;
+        this.metrics = metrics;
+    }
+
+    public AdaptiveSessionDecorator decorate(WebSocketSession session) {
+        SessionRegistry.SessionInfo info = registry != null ? registry.session(session.getId()) : null;
+        AtomicInteger depth = info != null ? info.queueDepth() : new AtomicInteger();
+        AdaptiveSessionDecorator decorated = new AdaptiveSessionDecorator(session, this, depth);
+        sessions.put(session.getId(), decorated);
+        return decorated;
+    }
+
+    public void remove(String sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    public @Nullable AdaptiveSessionDecorator session(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.ws.send.sample-ms:5000}")
+    public void sample() {
+        int queued = 0;
+        int slowSessions = 0;
+        long now = System.nanoTime();
+        for (Iterator<AdaptiveSessionDecorator> it = sessions.values().iterator(); it.hasNext(); ) {
+            AdaptiveSessionDecorator s = it.next();
+            if (!s.isOpen()) {
+                it.remove();
+                continue;
+            }
+            if (s.writeStuck(now)) watchdog.execute(s::closeStuck);
+            int frames = s.bufferedFrames();
+            queued += frames;
+            if (s.consumerClass() == ConsumerClass.SLOW) slowSessions++;
+            if (metrics != null) metrics.sessionQueue(s.bufferedBytes(), frames);
+        }
+        if (metrics != null) {
+            metrics.setSendQueueSize(queued);
+            metrics.setSlowSessions(slowSessions);
+        }
+    }
+
+    Limits limits(ConsumerClass c) {
+        return c == ConsumerClass.SLOW ? slow : fast;
+    }
+
+    long slowWriteNanos() {
+        return slowWriteNanos;
+    }
+
+    ExecutorService slowWriter() {
+        return slowWriter;
+    }
+
+    /**
+     * Whether the frame the outbound channel is handing to a session on this thread goes to a
+     * low-priority destination, from its destination header (see {@link OutboundFloodGuardInterceptor}).
+     */
+    boolean isDroppable() {
+        return priorities != null && priorities.handlingPriority() == OutboundFloodGuardInterceptor.Priority.LOW;
+    }
+
+    void onDropped(int frames) {
+        if (metrics != null) metrics.dropped(frames);
+    }
+
+    void onSlowConsumerClosed() {
+        if (metrics != null) metrics.slowConsumerClosed();
+    }
+
+    @Override
+    public void destroy() {
+        slowWriter.shutdownNow();
+        watchdog.shutdownNow();
+    }
+}
@@ -1,93 +1,177 @@
 package com.om.Real_Time_Communication.config;
 
+import com.om.Real_Time_Communication.utility.Utf8;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
-import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.AbstractMessageChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static net.logstash.logback.argument.StructuredArguments.kv;
 
 /**
- * Lightweight debug logger for inbound STOMP frames so we can see whether
- * messages reach the broker pipeline (CONNECT, SUBSCRIBE, SEND).
+ * Sampled STOMP frame tracing on the inbound and outbound channels. Off by default; when off a
+ * frame costs one volatile read. When on, a frame is traced with the rate of the longest
+ * destination prefix in {@code rtc.trace.rates} (else {@code rtc.trace.default-rate}), and only a
+ * traced frame is looked at further. Events go to the {@code rtc.stomp.trace} logger as structured
+ * fields; logback-spring.xml routes it through a bounded async appender that drops rather than
+ * blocks. Native headers are never logged (CONNECT carries the bearer token), and the payload
+ * preview is off unless {@code rtc.trace.preview-bytes} is set. Everything can be changed at runtime
+ * through the {@code stomptrace} actuator endpoint.
  */
 @Component
 public class StompLoggingInterceptor implements ChannelInterceptor {
 
-    private static final Logger log = LoggerFactory.getLogger(StompLoggingInterceptor.class);
+    private static final Logger trace = LoggerFactory.getLogger("rtc.stomp.trace");
+
+    /** Frames whose destination starts with {@code prefix} are traced with probability {@code rate}. */
+    public record Rule(String prefix, double rate) {}
+
+    private volatile boolean enabled;
+    private volatile double defaultRate;
+    private volatile Rule[] rules; // longest prefix first
+    private volatile int previewBytes;
+
+    public StompLoggingInterceptor(@Value("${rtc.trace.enabled:false}") boolean enabled,
+                                   @Value("${rtc.trace.default-rate:1.0}") double defaultRate,
+                                   @Value("${rtc.trace.rates:}") String rates,
+                                   @Value("${rtc.trace.preview-bytes:0}") int previewBytes) {
+        this.enabled = enabled;
+        this.defaultRate = defaultRate;
+        this.rules = parseRules(rates);
+        this.previewBytes = previewBytes;
+    }
 
     @Override
     public Message<?> preSend(Message<?> message, MessageChannel channel) {
-        StompHeaderAccessor acc = StompHeaderAccessor.wrap(message);
-        if (acc == null || acc.getCommand() == null) {
+        if (!enabled) {
             return message;
         }
-
-        String sessionId = acc.getSessionId();
-        String user = acc.getUser() != null ? acc.getUser().getName() : "anon";
-        StompCommand cmd = acc.getCommand();
-        String dest = acc.getDestination();
-        String preview = extractPreview(message.getPayload());
-        int size = payloadSize(message.getPayload());
-        String direction = resolveDirection(channel);
-
-        log.info("[STOMP][{}] sid={} user={} cmd={} dest={} size={}B preview={} headers={}",
-                direction,
-                sessionId,
-                user,
-                cmd,
-                dest,
-                size,
-                preview,
-                acc.toNativeHeaderMap());
+        MessageHeaders headers = message.getHeaders();
+        double rate = rateFor(headers.get(SimpMessageHeaderAccessor.DESTINATION_HEADER));
+        if (rate <= 0 || (rate < 1 && ThreadLocalRandom.current().nextDouble() >= rate)) {
+            return message;
+        }
+        Object command = headers.get(StompHeaderAccessor.COMMAND_HEADER);
+        if (command == null) {
+            command = headers.get(SimpMessageHeaderAccessor.MESSAGE_TYPE_HEADER);
+        }
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        Object payload = message.getPayload();
+        trace.info("stomp frame",
+                kv("dir", direction(channel)),
+                kv("sid", headers.get(SimpMessageHeaderAccessor.SESSION_ID_HEADER)),
+                kv("user", user != null ? user.getName() : null),
+                kv("cmd", command),
+                kv("dest", headers.get(SimpMessageHeaderAccessor.DESTINATION_HEADER)),
+                kv("bytes", payloadSize(payload)),
+                kv("preview", preview(payload)));
         return message;
     }
 
-    private String resolveDirection(MessageChannel channel) {
+    private double rateFor(Object destination) {
+        if (destination instanceof String dest) {
+            for (Rule r : rules) {
+                if (dest.startsWith(r.prefix())) return r.rate();
+            }
+        }
+        return defaultRate;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getDefaultRate() {
+        return defaultRate;
+    }
+
+    public void setDefaultRate(double defaultRate) {
+        this.defaultRate = defaultRate;
+    }
+
+    public List<Rule> getRules() {
+        return List.of(rules);
+    }
+
+    /** Replaces the per-destination rates, given as {@code /prefix=rate,...}. */
+    public void setRates(String rates) {
+        this.rules = parseRules(rates);
+    }
+
+    public int getPreviewBytes() {
+        return previewBytes;
+    }
+
+    public void setPreviewBytes(int previewBytes) {
+        this.previewBytes = previewBytes;
+    }
+
+    static Rule[] parseRules(String rates) {
+        List<Rule> out = new ArrayList<>();
+        if (rates != null) {
+            for (String part : rates.split(",")) {
+                String p = part.trim();
+                if (p.isEmpty()) continue;
+                int eq = p.lastIndexOf('=');
+                if (eq <= 0) throw new IllegalArgumentException("Expected /prefix=rate: " + p);
+                double rate = Double.parseDouble(p.substring(eq + 1).trim());
+                if (rate < 0 || rate > 1) throw new IllegalArgumentException("Rate must be within [0, 1]: " + p);
+                out.add(new Rule(p.substring(0, eq).trim(), rate));
+            }
+        }
+        out.sort(Comparator.comparingInt((Rule r) -> r.prefix().length()).reversed());
+        return out.toArray(new Rule[0]);
+    }
+
+    private static String direction(MessageChannel channel) {
         if (channel instanceof AbstractMessageChannel amc) {
             String name = amc.getBeanName();
             if (name != null) {
-                if (name.toLowerCase().contains("outbound")) {
-                    return "OUTBOUND";
-                }
-                if (name.toLowerCase().contains("inbound")) {
-                    return "INBOUND";
-                }
+                if (name.contains("Outbound")) return "OUTBOUND";
+                if (name.contains("Inbound")) return "INBOUND";
                 return name;
             }
         }
         return "UNKNOWN";
     }
 
-
-    private int payloadSize(Object payload) {
+    private static int payloadSize(Object payload) {
         if (payload instanceof byte[] bytes) {
             return bytes.length;
         }
         if (payload instanceof String str) {
-            return str.getBytes(StandardCharsets.UTF_8).length;
+            return Utf8.length(str);
         }
         return 0;
     }
 
-    private String extractPreview(Object payload) {
-        String raw;
+    private String preview(Object payload) {
+        int max = previewBytes;
+        if (max <= 0) return null;
         if (payload instanceof byte[] bytes) {
-            raw = new String(bytes, StandardCharsets.UTF_8);
-        } else if (payload instanceof String str) {
-            raw = str;
-        } else {
-            return null;
+            return new String(bytes, 0, Math.min(max, bytes.length), StandardCharsets.UTF_8);
         }
-        String cleaned = raw.replaceAll("\\s+", " ").trim();
-        if (cleaned.length() > 200) {
-            return cleaned.substring(0, 200) + "…";
+        if (payload instanceof String str) {
+            return str.length() > max ? str.substring(0, max) : str;
         }
-        return cleaned;
+        return null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+package com.om.Real_Time_Communication.config;
+
+import com.om.Real_Time_Communication.utility.GcraLimiter;
+import com.om.Real_Time_Communication.utility.StripedLongMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rate limits for the STOMP inbound channel: CONNECTs per client address, SUBSCRIBEs and SENDs per
+ * user, and SENDs per (user, destination) for the destinations in {@code rtc.rate-limit.send.destinations}.
+ * Each is a {@link GcraLimiter} keyed by a primitive key, so a frame is checked without building a
+ * key string. A rate of {@code limit/windowMs} allows bursts of {@code limit} and a sustained
+ * {@code limit} per window. Rates, destination rules and per-user factors can be changed at runtime
+ * through the {@code ratelimits} actuator endpoint; keys whose budget is full again are swept.
+ */
+@Component
+public class StompRateLimiter {
+
+    /** Bursts of up to {@code limit} events, refilled at {@code limit} per {@code windowMs}. */
+    public record Rate(int limit, long windowMs) {
+        public Rate {
+            if (limit <= 0 || windowMs <= 0) throw new IllegalArgumentException("Rate must be positive: " + limit + "/" + windowMs);
+        }
+
+        /** Parses {@code limit/windowMs}. */
+        public static Rate parse(String s) {
+            int slash = s.indexOf('/');
+            if (slash <= 0) throw new IllegalArgumentException("Expected limit/windowMs: " + s);
+            return new Rate(Integer.parseInt(s.substring(0, slash).trim()), Long.parseLong(s.substring(slash + 1).trim()));
+        }
+
+        @Override
+        public String toString() {
+            return limit + "/" + windowMs;
+        }
+    }
+
+    /** SENDs to destinations starting with {@code prefix} are limited per user and per next path segment. */
+    public record DestinationRule(String prefix, Rate rate) {}
+
+    /** User key of frames without a principal; they share one budget. */
+    static final long ANONYMOUS = Long.MIN_VALUE;
+
+    private final GcraLimiter connects;
+    private final GcraLimiter subscribes;
+    private final GcraLimiter sends;
+    private final GcraLimiter destinationSends;
+    private final StripedLongMap<Double> userFactors = new StripedLongMap<>();
+
+    private volatile Rate connect;
+    private volatile Rate subscribe;
+    private volatile Rate send;
+    private volatile DestinationRule[] destinationRules; // longest prefix first
+
+    public StompRateLimiter(@Value("${rtc.rate-limit.connect.limit:30}") int connectLimit,
+                            @Value("${rtc.rate-limit.connect.window-ms:10000}") long connectWindowMs,
+                            @Value("${rtc.rate-limit.subscribe.limit:50}") int subscribeLimit,
+                            @Value("${rtc.rate-limit.subscribe.window-ms:10000}") long subscribeWindowMs,
+                            @Value("${rtc.rate-limit.send.user-limit:200}") int sendUserLimit,
+                            @Value("${rtc.rate-limit.send.user-window-ms:5000}") long sendUserWindowMs,
+                            @Value("${rtc.rate-limit.send.destinations:/app/rooms/=50/5000,/app/rooms.=50/5000}") String destinations,
+                            @Value("${rtc.rate-limit.max-keys:1000000}") int maxKeys) {
+        this.connect = new Rate(connectLimit, connectWindowMs);
+        this.subscribe = new Rate(subscribeLimit, subscribeWindowMs);
+        this.send = new Rate(sendUserLimit, sendUserWindowMs);
+        this.destinationRules = parseRules(destinations);
+        this.connects = new GcraLimiter(maxKeys);
+        this.subscribes = new GcraLimiter(maxKeys);
+        this.sends = new GcraLimiter(maxKeys);
+        this.destinationSends = new GcraLimiter(maxKeys);
+    }
+
+    /** {@code client} is the forwarded address or, failing that, the session id. */
+    public void checkConnect(CharSequence client) {
+        if (!acquire(connects, hash(client, 0, client.length()), connect, 1.0)) {
+            throw new IllegalArgumentException("Rate limit exceeded: connect");
+        }
+    }
+
+    public void checkSubscribe(long user) {
+        if (!acquire(subscribes, user, subscribe, factor(user))) {
+            throw new IllegalArgumentException("Rate limit exceeded: subscribe");
+        }
+    }
+
+    public void checkSend(long user, String destination) {
+        double factor = factor(user);
+        if (destination != null) {
+            for (DestinationRule r : destinationRules) {
+                if (!destination.startsWith(r.prefix())) continue;
+                // One budget per user and destination up to the end of the segment after the prefix (the room id)
+                int end = r.prefix().length();
+                while (end < destination.length() && destination.charAt(end) != '/' && destination.charAt(end) != '.') end++;
+                long key = user * 0x9E3779B97F4A7C15L + hash(destination, 0, end);
+                if (!acquire(destinationSends, key, r.rate(), factor)) {
+                    throw new IllegalArgumentException("Rate limit exceeded: send " + destination.substring(0, end));
+                }
+                break;
+            }
+        }
+        if (!acquire(sends, user, send, factor)) {
+            throw new IllegalArgumentException("Rate limit exceeded: send");
+        }
+    }
+
+    private static boolean acquire(GcraLimiter limiter, long key, Rate rate, double factor) {
+        long windowNanos = rate.windowMs() * 1_000_000L;
+        long emission = factor == 1.0 ? windowNanos / rate.limit() : (long) (windowNanos / (rate.limit() * factor));
+        emission = Math.max(1, emission);
+        return limiter.tryAcquire(key, emission, Math.max(0, windowNanos - emission));
+    }
+
+    private double factor(long user) {
+        Double f = userFactors.get(user);
+        return f != null ? f : 1.0;
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.rate-limit.sweep-ms:30000}")
+    public int sweep() {
+        return connects.evictExpired() + subscribes.evictExpired() + sends.evictExpired() + destinationSends.evictExpired();
+    }
+
+    /**
+     * Key of a user name: the numeric user id itself, else a hash of the name with the sign bit set,
+     * so the two never collide.
+     */
+    public static long userKey(String name) {
+        if (name == null) return ANONYMOUS;
+        int n = name.length();
+        if (n == 0 || n > 18) return hash(name, 0, n) | Long.MIN_VALUE;
+        long id = 0;
+        for (int i = 0; i < n; i++) {
+            char c = name.charAt(i);
+            if (c < '0' || c > '9') return hash(name, 0, n) | Long.MIN_VALUE;
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /** 64-bit FNV-1a over the chars in {@code [from, to)}; wide enough that collisions can be ignored. */
+    static long hash(CharSequence s, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    public Rate getConnect() {
+        return connect;
+    }
+
+    public void setConnect(Rate connect) {
+        this.connect = connect;
+    }
+
+    public Rate getSubscribe() {
+        return subscribe;
+    }
+
+    public void setSubscribe(Rate subscribe) {
+        this.subscribe = subscribe;
+    }
+
+    public Rate getSend() {
+        return send;
+    }
+
+    public void setSend(Rate send) {
+        this.send = send;
+    }
+
+    public List<DestinationRule> getDestinationRules() {
+        return List.of(destinationRules);
+    }
+
+    /** Replaces the per-destination rates, given as {@code /prefix=limit/windowMs,...}. */
+    public void setDestinationRules(String rules) {
+        this.destinationRules = parseRules(rules);
+    }
+
+    public Double getUserFactor(long user) {
+        return userFactors.get(user);
+    }
+
+    /** Scales every rate for {@code user} (e.g. 10 for a bot account); null restores the defaults. */
+    public void setUserFactor(long user, Double factor) {
+        if (factor == null) {
+            userFactors.remove(user);
+            return;
+        }
+        if (!(factor > 0)) throw new IllegalArgumentException("factor must be positive");
+        userFactors.put(user, factor);
+    }
+
+    public Map<String, Integer> trackedKeys() {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        out.put("connect", connects.size());
+        out.put("subscribe", subscribes.size());
+        out.put("send", sends.size());
+        out.put("sendDestination", destinationSends.size());
+        return out;
+    }
+
+    static DestinationRule[] parseRules(String rules) {
+        List<DestinationRule> out = new ArrayList<>();
+        if (rules != null) {
+            for (String part : rules.split(",")) {
+                String p = part.trim();
+                if (p.isEmpty()) continue;
+                int eq = p.lastIndexOf('=');
+                if (eq <= 0) throw new IllegalArgumentException("Expected /prefix=limit/windowMs: " + p);
+                out.add(new DestinationRule(p.substring(0, eq).trim(), Rate.parse(p.substring(eq + 1))));
+            }
+        }
+        out.sort(Comparator.comparingInt((DestinationRule r) -> r.prefix().length()).reversed());
+        return out.toArray(new DestinationRule[0]);
+    }
+}
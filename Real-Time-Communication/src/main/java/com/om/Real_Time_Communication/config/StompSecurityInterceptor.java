@@ -1,9 +1,8 @@
 package com.om.Real_Time_Communication.config;
 
-import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
-import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
-import com.om.Real_Time_Communication.models.ChatRoom;
 import com.om.Real_Time_Communication.service.BlockService;
+import com.om.Real_Time_Communication.service.RoomAccessCache;
+import com.om.Real_Time_Communication.service.RoomAccessCache.RoomAccess;
 import com.om.Real_Time_Communication.utility.AclService;
 import com.om.Real_Time_Communication.security.JwtService;
 import lombok.RequiredArgsConstructor;
@@ -20,7 +19,6 @@ import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.stereotype.Component;
 
 
-import java.util.Optional;
 import java.security.Principal;
 import java.util.List;
 
@@ -44,11 +42,9 @@ public class StompSecurityInterceptor implements ChannelInterceptor {
     @Autowired
     private   AclService acl;
 
+    // Room key, members and direct peer come from here: no queries per frame once warm
     @Autowired
-    private  ChatRoomParticipantRepository participantRepo;
-
-    @Autowired
-    private ChatRoomRepository chatRoomRepository;
+    private RoomAccessCache roomAccessCache;
 
 
     @Override
@@ -118,15 +114,16 @@ public class StompSecurityInterceptor implements ChannelInterceptor {
                         String roomKey = dest.substring("/topic/room/".length()).split("/")[0];
                         Long roomId = resolveRoomId(roomKey);
 
-                        // 1) Room ACL (Redis-backed)
+                        // 1) Room ACL (cached membership)
                         if (!acl.canSubscribe(userId, roomId)) {
                             throw new IllegalArgumentException("Forbidden: not a member of room " + roomId);
                         }
 
                         // 2) Block check (receiver-side): if any member blocks this user, deny subscribe for DM/1:1
                         // For group rooms, you might only enforce peer block on direct @mentions or DMs; adjust policy.
-                        if (isDirectRoom(roomId)) {
-                            Long other = directPeer(roomId, userId);
+                        RoomAccess room = roomAccessCache.room(roomId);
+                        if (room != null && room.isDirect()) {
+                            Long other = room.directPeer(userId);
                             if (blockService.isBlocked(String.valueOf(userId), String.valueOf(other))) {
                                 throw new IllegalArgumentException("Forbidden: you are blocked");
                             }
@@ -154,8 +151,9 @@ public class StompSecurityInterceptor implements ChannelInterceptor {
                         }
 
                         // 2) Block check (sender-side): for DMs, or for group if you enforce peer blocks globally
-                        if (isDirectRoom(roomId)) {
-                            Long other = directPeer(roomId, userId);
+                        RoomAccess room = roomAccessCache.room(roomId);
+                        if (room != null && room.isDirect()) {
+                            Long other = room.directPeer(userId);
                             if (blockService.isBlocked(String.valueOf(userId), String.valueOf(other))) {
                                 throw new IllegalArgumentException("Forbidden: user has blocked you");
                             }
@@ -171,35 +169,15 @@ public class StompSecurityInterceptor implements ChannelInterceptor {
         }
     }
 
-    private boolean isDirectRoom(Long roomId) {
-        return participantRepo.countByRoomId(roomId) == 2L;
-    }
-
     /** Resolve a room key to the numeric primary key used internally. */
     private Long resolveRoomId(String roomKey) {
-        // Prefer the public "roomId" stable identifier
-        Optional<Long> byExternalId = chatRoomRepository.findByRoomId(roomKey).map(ChatRoom::getId);
-        if (byExternalId.isPresent()) {
-            return byExternalId.get();
-        }
-
-        // Fallback: allow clients that still reference the numeric id directly
-        try {
-            Long numericId = Long.valueOf(roomKey);
-            return chatRoomRepository.findById(numericId)
-                    .map(ChatRoom::getId)
-                    .orElseThrow(() -> new IllegalArgumentException("Unknown room " + roomKey));
-        } catch (NumberFormatException ignore) {
+        Long roomId = roomAccessCache.resolveRoomId(roomKey);
+        if (roomId == null) {
             throw new IllegalArgumentException("Unknown room " + roomKey);
         }
+        return roomId;
     }
 
-    /** Return the other user in a 1:1 room (throws if not exactly two). */
-    private Long directPeer(Long roomId, Long userId) {
-        java.util.List<Long> users = participantRepo.findUserIdsByRoomId(roomId);
-        if (users.size() != 2) throw new IllegalArgumentException("Not a direct room: " + roomId);
-        return users.get(0).equals(userId) ? users.get(1) : users.get(0);
-    }
     private static String headerFirst(StompHeaderAccessor acc, String name) {
         List<String> v = acc.getNativeHeader(name);
         return (v == null || v.isEmpty()) ? null : v.get(0);
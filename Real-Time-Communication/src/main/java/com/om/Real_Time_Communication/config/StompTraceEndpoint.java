@@ -0,0 +1,51 @@
+package com.om.Real_Time_Communication.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code /actuator/stomptrace}: reads and changes STOMP frame tracing at runtime, e.g.
+ * {@code POST {"enabled":true,"rates":"/app/room=0.01,/user/queue=0"}}. Only reachable when
+ * listed in {@code management.endpoints.web.exposure.include}.
+ */
+@Component
+@Endpoint(id = "stomptrace")
+public class StompTraceEndpoint {
+
+    private final StompLoggingInterceptor tracer;
+
+    public StompTraceEndpoint(StompLoggingInterceptor tracer) {
+        this.tracer = tracer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> settings() {
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", tracer.isEnabled());
+        out.put("defaultRate", tracer.getDefaultRate());
+        out.put("rules", tracer.getRules());
+        out.put("previewBytes", tracer.getPreviewBytes());
+        return out;
+    }
+
+    @WriteOperation
+    public Map<String, Object> update(@Nullable Boolean enabled,
+                                      @Nullable Double defaultRate,
+                                      @Nullable String rates,
+                                      @Nullable Integer previewBytes) {
+        if (defaultRate != null) {
+            if (defaultRate < 0 || defaultRate > 1) throw new IllegalArgumentException("defaultRate must be within [0, 1]");
+            tracer.setDefaultRate(defaultRate);
+        }
+        if (rates != null) tracer.setRates(rates);
+        if (previewBytes != null) tracer.setPreviewBytes(Math.max(0, previewBytes));
+        if (enabled != null) tracer.setEnabled(enabled);
+        return settings();
+    }
+}
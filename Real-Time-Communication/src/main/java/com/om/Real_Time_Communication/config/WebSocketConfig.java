@@ -1,7 +1,6 @@
 package com.om.Real_Time_Communication.config;
 
 import com.om.Real_Time_Communication.security.SessionRegistry;
-import com.om.Real_Time_Communication.service.PendingMessageService;
 import org.springframework.http.server.ServerHttpRequest;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
@@ -14,12 +13,10 @@ import org.springframework.web.socket.config.annotation.*;
 import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
 import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
-import org.springframework.context.annotation.Lazy;
 
 import java.util.Map;
 
-@Configuration
-@EnableWebSocketMessageBroker
+@Configuration // broker infrastructure: WebSocketBrokerConfiguration
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final StompLoggingInterceptor stompLoggingInterceptor;
@@ -28,7 +25,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     private final InboundSizeAndRateInterceptor inboundSizeAndRateInterceptor;
     private final OutboundFloodGuardInterceptor outboundFloodGuardInterceptor;
     private final SessionRegistry sessionRegistry;
-    private final PendingMessageService pendingMessages;
+    private final BrokerModeConfigurer brokerModeConfigurer;
 
     public WebSocketConfig(JwtHandshakeInterceptor jwtHandshakeInterceptor,
                            StompSecurityInterceptor stompSecurityInterceptor,
@@ -36,14 +33,14 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                            InboundSizeAndRateInterceptor inboundSizeAndRateInterceptor,
                            OutboundFloodGuardInterceptor outboundFloodGuardInterceptor,
                            SessionRegistry sessionRegistry,
-                           @Lazy PendingMessageService pendingMessages) {
+                           BrokerModeConfigurer brokerModeConfigurer) {
         this.jwtHandshakeInterceptor = jwtHandshakeInterceptor;
         this.stompSecurityInterceptor = stompSecurityInterceptor;
         this.stompLoggingInterceptor = stompLoggingInterceptor;
         this.inboundSizeAndRateInterceptor = inboundSizeAndRateInterceptor;
         this.outboundFloodGuardInterceptor = outboundFloodGuardInterceptor;
         this.sessionRegistry = sessionRegistry;
-        this.pendingMessages = pendingMessages;
+        this.brokerModeConfigurer = brokerModeConfigurer;
     }
 
     @Value("${cors.allowed-origins:*}")
@@ -88,8 +85,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void configureWebSocketTransport(WebSocketTransportRegistration reg) {
         // Transport-level caps
         reg.setMessageSizeLimit(256 * 1024);      // 256KB per inbound STOMP frame
-        reg.setSendBufferSizeLimit(512 * 1024);   // 512KB per-session send buffer
-        reg.setSendTimeLimit(10_000);           // 10s per send
+        // Send buffer and send-time limits are per consumer class (rtc.ws.send.*, AdaptiveSessionDecorator)
 
         // Track opens/closes for duplicate-login policy & server-side kick
         reg.addDecoratorFactory(new WebSocketHandlerDecoratorFactory() {
@@ -100,8 +96,8 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
                         Long uid = (Long) session.getAttributes().get("userId");
                         if (uid != null) {
+                            // queued private messages drain once the client subscribes (OfflineMessageQueue)
                             sessionRegistry.onOpen(uid, session);
-                            pendingMessages.flush(uid);
                         }
                         super.afterConnectionEstablished(session);
                     }
@@ -118,13 +114,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-//        config.enableStompBrokerRelay("/topic", "/queue", "/user") // RabbitMQ STOMP relay
-//                .setRelayHost("localhost")
-//                .setRelayPort(61613)
-//                .setClientLogin("guest")
-//                .setClientPasscode("guest");
-        config.enableSimpleBroker("/topic", "/queue", "/user"); // in-memory broker for local testing
-        config.setApplicationDestinationPrefixes("/app");
-        config.setUserDestinationPrefix("/user");
+        // simple (in-memory) | relay (external STOMP broker) | cluster (simple broker per node + pub/sub)
+        brokerModeConfigurer.configure(config);
     }
 }
@@ -1,6 +1,6 @@
 package com.om.Real_Time_Communication.controller;
 
-import com.om.Real_Time_Communication.service.PendingMessageService;
+import com.om.Real_Time_Communication.service.OfflineMessageQueue;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
@@ -13,24 +13,31 @@ import java.security.Principal;
 /**
  * Controller for handling client ACKs of delivered messages. Clients should
  * send a message to /app/ack with the ID of the message they received. Once
- * acknowledged, the pending copy is removed from the queue.
+ * acknowledged, the queued copy is removed from the offline queue and the
+ * next page of the drain may go out.
  */
 @Controller
 public class AckController {
 
-    private final PendingMessageService pendingMessages;
+    private final OfflineMessageQueue offlineQueue;
 
-    public AckController(PendingMessageService pendingMessages) {
-        this.pendingMessages = pendingMessages;
+    public AckController(OfflineMessageQueue offlineQueue) {
+        this.offlineQueue = offlineQueue;
     }
     private static final Logger log = LoggerFactory.getLogger(AckController.class);
 
     @MessageMapping("/ack")
     public void ack(MessageAck ack, Principal principal) {
         if (principal != null && ack != null && ack.getMessageId() != null) {
-            log.info("[RTC][ACK] /ack user={} messageId={}", principal.getName(), ack.getMessageId());
-            pendingMessages.ack(principal.getName(), ack.getMessageId());
-            log.info("[RTC][ACK][OK] cleared pending messageId={} for user={}", ack.getMessageId(), principal.getName());
+            log.debug("[RTC][ACK] /ack user={} messageId={}", principal.getName(), ack.getMessageId());
+            Long userId;
+            try {
+                userId = Long.valueOf(principal.getName());
+            } catch (NumberFormatException ignore) {
+                log.debug("[RTC][ACK] ignoring ack from non-numeric principal {}", principal.getName());
+                return;
+            }
+            offlineQueue.ack(userId, ack.getMessageId());
         }
     }
 
@@ -4,19 +4,63 @@ import com.om.Real_Time_Communication.service.InboxDeliveryService;
 import lombok.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
 
 @Controller
 public class InboxController {
 
     private static final Logger log = LoggerFactory.getLogger(InboxController.class);
     private final InboxDeliveryService inboxDeliveryService;
+    private final TaskExecutor messageTaskExecutor;
 
-    public InboxController(InboxDeliveryService inboxDeliveryService) {
+    public InboxController(InboxDeliveryService inboxDeliveryService,
+                           @Qualifier("messageTaskExecutor") TaskExecutor messageTaskExecutor) {
         this.inboxDeliveryService = inboxDeliveryService;
+        this.messageTaskExecutor = messageTaskExecutor;
+    }
+
+    /**
+     * Client SEND to /app/inbox/sync after reconnecting; the backlog is streamed to
+     * /user/queue/inbox page by page, ending with a {@code sync-complete} frame.
+     */
+    @MessageMapping("/inbox/sync")
+    public void sync(InboxSync request, Principal principal) {
+        if (principal == null) {
+            return;
+        }
+        Long userId = Long.valueOf(principal.getName());
+        Instant since = null;
+        int pageSize = 100;
+        if (request != null) {
+            if (request.getSince() != null && !request.getSince().isBlank()) {
+                try {
+                    since = Instant.parse(request.getSince());
+                } catch (DateTimeParseException ex) {
+                    log.warn("[INBOX][SYNC] invalid since {} from user={}; ignoring", request.getSince(), userId);
+                }
+            }
+            if (request.getPageSize() != null) {
+                pageSize = request.getPageSize();
+            }
+        }
+        Instant cutoff = since;
+        int size = pageSize;
+        messageTaskExecutor.execute(() -> {
+            try {
+                inboxDeliveryService.streamPending(userId, cutoff, size);
+            } catch (Exception ex) {
+                log.error("[INBOX][SYNC] failed for user={}: {}", userId, ex.toString());
+            }
+        });
     }
 
     @MessageMapping("/inbox/ack")
@@ -30,6 +74,51 @@ public class InboxController {
         inboxDeliveryService.markDelivered(ack.getMsgId(), userId, ack.getDeviceId(), read);
     }
 
+    /**
+     * Catch-up acks in one frame: explicit message ids and/or per-room ranges, all with one status.
+     * Client SEND to /app/inbox/ack.batch.
+     */
+    @MessageMapping("/inbox/ack.batch")
+    public void ackBatch(InboxAckBatch batch, Principal principal) {
+        if (principal == null || batch == null) {
+            return;
+        }
+        Long userId = Long.valueOf(principal.getName());
+        boolean read = "READ".equalsIgnoreCase(batch.getStatus());
+        List<InboxDeliveryService.AckRange> ranges = new ArrayList<>();
+        if (batch.getRanges() != null) {
+            for (InboxAckRange r : batch.getRanges()) {
+                if (r != null && r.getToMsgId() != null) {
+                    ranges.add(new InboxDeliveryService.AckRange(r.getFromMsgId(), r.getToMsgId()));
+                }
+            }
+        }
+        int updated = inboxDeliveryService.acknowledge(userId, batch.getDeviceId(), read,
+                batch.getMsgIds() == null ? List.of() : batch.getMsgIds(), ranges);
+        log.debug("[INBOX][ACK] user={} status={} ids={} ranges={} updated={}", userId, batch.getStatus(),
+                batch.getMsgIds() == null ? 0 : batch.getMsgIds().size(), ranges.size(), updated);
+    }
+
+    @Data
+    public static class InboxAckBatch {
+        private String status;
+        private String deviceId;
+        private List<String> msgIds;
+        private List<InboxAckRange> ranges;
+    }
+
+    @Data
+    public static class InboxAckRange {
+        private String fromMsgId; // optional, inclusive
+        private String toMsgId;   // inclusive
+    }
+
+    @Data
+    public static class InboxSync {
+        private String since;
+        private Integer pageSize;
+    }
+
     @Data
     public static class InboxAck {
         private String msgId;
@@ -24,6 +24,8 @@ import java.security.Principal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 
 @Controller
@@ -54,20 +56,27 @@ public class MessageController {
 
         Long senderId = Long.valueOf(principal.getName());
 
-        try {
-            log.info("[RTC][SEND] /rooms/{}/send by user={} corrId={} type={} metadata={}",
-                    roomId,
-                    senderId,
-                    corrId,
-                    dto.getType(),
-                    dto.getBody());
-            // Persist, ACK to sender and broadcast to room in FIFO order
-            orderedMessageService.saveAndBroadcastOrdered(roomId, senderId, dto);
-            log.info("[RTC][SEND][OK] roomId={} sender={} messageId={}", roomId, senderId, dto.getMessageId());
-        } catch (Exception e) {
-            log.error("[RTC][SEND][FAIL] roomId={} sender={} messageId={} err={}", roomId, senderId, dto.getMessageId(), e.getMessage(), e);
-            throw new RuntimeException(e);
-        }
+        log.debug("[RTC][SEND] /rooms/{}/send by user={} corrId={} type={}",
+                roomId,
+                senderId,
+                corrId,
+                dto.getType());
+        // Persist, ACK to sender and broadcast to room in FIFO order; the inbound thread is released
+        // immediately and the outcome is reported to the sender on /queue/ack.
+        orderedMessageService.saveAndBroadcastAsync(roomId, senderId, dto).whenComplete((saved, err) -> {
+            if (err == null) {
+                log.debug("[RTC][SEND][OK] roomId={} sender={} messageId={}", roomId, senderId, dto.getMessageId());
+            } else {
+                Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+                if (cause instanceof RejectedExecutionException) {
+                    // Backpressure: the sender already got a RETRY ack
+                    log.debug("[RTC][SEND][BUSY] roomId={} sender={} messageId={}", roomId, senderId, dto.getMessageId());
+                    return;
+                }
+                log.warn("[RTC][SEND][FAIL] roomId={} sender={} messageId={} err={}",
+                        roomId, senderId, dto.getMessageId(), cause.toString());
+            }
+        });
     }
 
     /**
@@ -18,10 +18,16 @@ import java.util.Map;
 
 @RestController
 @RequestMapping("/api/messages")
-@CrossOrigin(origins = "${cors.allowed-origins}")
+@CrossOrigin(origins = "${cors.allowed-origins}",
+        exposedHeaders = {PendingMessagesController.NEXT_CURSOR, PendingMessagesController.HAS_MORE})
 public class PendingMessagesController {
 
     private static final Logger log = LoggerFactory.getLogger(PendingMessagesController.class);
+
+    /** Paging rides in headers, so the body stays the array existing clients read. */
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+    static final String HAS_MORE = "X-Has-More";
+
     private final InboxDeliveryService inboxDeliveryService;
 
     public PendingMessagesController(InboxDeliveryService inboxDeliveryService) {
@@ -31,7 +37,9 @@ public class PendingMessagesController {
     @GetMapping("/pending")
     public ResponseEntity<List<Map<String, Object>>> pending(
             Principal principal,
-            @RequestParam(value = "since", required = false) String since
+            @RequestParam(value = "since", required = false) String since,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "100") int limit
     ) {
         if (principal == null) {
             return ResponseEntity.status(401).build();
@@ -46,7 +54,13 @@ public class PendingMessagesController {
         }
 
         Long userId = Long.valueOf(principal.getName());
-        List<Map<String, Object>> payloads = inboxDeliveryService.pendingMessages(userId, cutoff);
-        return ResponseEntity.ok(payloads);
+        try {
+            InboxDeliveryService.PendingPage page = inboxDeliveryService.pendingPage(userId, cutoff, cursor, limit);
+            ResponseEntity.BodyBuilder ok = ResponseEntity.ok().header(HAS_MORE, String.valueOf(page.hasMore()));
+            if (page.next() != null) ok.header(NEXT_CURSOR, page.next());
+            return ok.body(page.items());
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 }
\ No newline at end of file
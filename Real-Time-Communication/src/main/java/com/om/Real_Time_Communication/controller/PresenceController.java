@@ -7,13 +7,10 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,12 +19,10 @@ import org.slf4j.LoggerFactory;
 public class PresenceController {
 
     private final PresenceRegistry registry;
-    private final SimpMessagingTemplate messaging;
     private static final Logger log = LoggerFactory.getLogger(PresenceController.class);
 
-    public PresenceController(PresenceRegistry registry, SimpMessagingTemplate messaging) {
+    public PresenceController(PresenceRegistry registry) {
         this.registry = registry;
-        this.messaging = messaging;
     }
 
     private static final long TTL_MS = 5_000L;
@@ -70,60 +65,37 @@ public class PresenceController {
         }
     }
 
-    /** Client SENDs to /app/room.{roomId}.ping every ~15s with {deviceId} */
+    /**
+     * Client SENDs to /app/room.{roomId}.ping every ~15s with {deviceId}. Heartbeats only refresh the
+     * registry; online/offline transitions reach the user's rooms through {@code PresenceBroadcaster}.
+     */
     @MessageMapping("/room/{roomId}/ping")
     public void ping(@DestinationVariable Long roomId, PingDto dto, Principal principal) {
         Long userId = Long.valueOf(principal.getName());
         String deviceId = dto.getDeviceId() != null ? dto.getDeviceId() : "default";
-        PresenceRegistry.Presence p = registry.touch(userId, deviceId);
-
-        log.info("[RTC][PRESENCE] /room/{}/ping user={} deviceId={} online={} lastSeen={} ",
-                roomId,
-                userId,
-                deviceId,
-                true,
-                p.getLastSeen());
-        // Broadcast presence (room-scoped)
-        Map<String,Object> ev = new HashMap<String,Object>();
-        ev.put("type", "presence");
-        ev.put("userId", userId);
-        ev.put("deviceId", deviceId);
-        ev.put("online", true);
-        ev.put("lastSeen", Instant.now());
-        messaging.convertAndSend("/topic/room/"+roomId+"/presence", ev);
-        log.info("[RTC][PRESENCE][OK] broadcast presence for user={} room={} deviceId={}", userId, roomId, deviceId);
+        registry.touch(userId, deviceId);
+        log.debug("[RTC][PRESENCE] /room/{}/ping user={} deviceId={}", roomId, userId, deviceId);
     }
 
 
 
-    /** Client SENDs to /app/room.{roomId}.typing with {deviceId, typing:true/false} */
+    /**
+     * Client SENDs to /app/room.{roomId}.typing with {deviceId, typing:true/false}. The registry
+     * coalesces these into one {type, roomId, userIds} frame per room and flush interval on
+     * /topic/room/{roomId}/v2/typing, and keeps /topic/room/{roomId}/typing in its original
+     * per-user shape (see {@link TypingRegistry}).
+     */
     @MessageMapping("/room/{roomId}/typing")
     public void typing(@DestinationVariable Long roomId, TypingDto dto, Principal principal) {
         Long userId = Long.valueOf(principal.getName());
         String deviceId = dto.getDeviceId() != null ? dto.getDeviceId() : "default";
 
-        Map<String,Object> ev = new HashMap<String,Object>();
-        ev.put("type", "typing");
-        ev.put("userId", userId);
-        ev.put("deviceId", deviceId);
-
         if (dto.isTyping()) {
             Instant expiresAt = typing.start(roomId, userId, deviceId, TTL_MS);
-            ev.put("typing", true);
-            ev.put("expiresAt", expiresAt);
-            log.info("[RTC][TYPING] /room/{}/typing user={} deviceId={} typing=true expiresAt={}", roomId, userId, deviceId, expiresAt);
+            log.debug("[RTC][TYPING] /room/{}/typing user={} deviceId={} typing=true expiresAt={}", roomId, userId, deviceId, expiresAt);
         } else {
             typing.stop(roomId, userId, deviceId);
-            ev.put("typing", false);
-            log.info("[RTC][TYPING] /room/{}/typing user={} deviceId={} typing=false", roomId, userId, deviceId);
+            log.debug("[RTC][TYPING] /room/{}/typing user={} deviceId={} typing=false", roomId, userId, deviceId);
         }
-
-        // Broadcast to room subscribers only
-        messaging.convertAndSend("/topic/room/"+roomId+"/typing", ev);
-        log.info("[RTC][TYPING][OK] broadcast typing for user={} room={} deviceId={} typing={} ",
-                userId,
-                roomId,
-                deviceId,
-                dto.isTyping());
     }
 }
\ No newline at end of file
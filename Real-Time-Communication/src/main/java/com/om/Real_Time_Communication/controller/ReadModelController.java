@@ -1,34 +1,61 @@
 package com.om.Real_Time_Communication.controller;
 
 
+import com.om.Real_Time_Communication.service.ReadModelService;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import com.om.Real_Time_Communication.service.ReadModelService.LastMessage;
+import com.om.Real_Time_Communication.service.ReadModelService.RoomBadge;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
-//import org.springframework.data.redis.core.StringRedisTemplate;
-//import io.micrometer.common.lang.Nullable;
-//
-//import java.util.Map;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.security.Principal;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/readmodel")
 @CrossOrigin(origins = "${cors.allowed-origins}")
 public class ReadModelController {
-//    private final StringRedisTemplate redis;
-//    public ReadModelController(StringRedisTemplate redis) { this.redis = redis; }
-//private final @Nullable StringRedisTemplate redis;
-//    public ReadModelController(@Nullable StringRedisTemplate redis) { this.redis = redis; }
+
+    private final ReadModelService readModel;
+    private final RoomMembershipService membership;
+
+    public ReadModelController(ReadModelService readModel, RoomMembershipService membership) {
+        this.readModel = readModel;
+        this.membership = membership;
+    }
+
+    /** The caller's chat list with last message and unread badge per room, in one call. */
+    @GetMapping("/rooms")
+    public List<RoomBadge> rooms(Principal principal) {
+        return readModel.roomList(resolveUserId(principal));
+    }
 
     @GetMapping("/rooms/{roomId}/last")
-    public String last(@PathVariable Long roomId) {
+    public LastMessage last(Principal principal, @PathVariable Long roomId) {
+        requireMember(resolveUserId(principal), roomId);
+        return readModel.last(roomId);
+    }
+
+    /** The caller's own unread count in the room. */
+    @GetMapping("/rooms/{roomId}/unread")
+    public long unread(Principal principal, @PathVariable Long roomId) {
+        Long userId = resolveUserId(principal);
+        requireMember(userId, roomId);
+        return readModel.unread(userId, roomId);
+    }
 
-//        return redis.opsForValue().get("room:last:" + roomId);
-//        return redis == null ? null : redis.opsForValue().get("room:last:" + roomId);
-        return null;
+    private void requireMember(Long userId, Long roomId) {
+        if (!membership.isMember(userId, roomId)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not a member of this room");
+        }
     }
 
-    @GetMapping("/rooms/{roomId}/unread/{userId}")
-    public long unread(@PathVariable Long roomId, @PathVariable Long userId) {
-//        if (redis == null) return 0;
-//        Object v = redis.opsForHash().get("room:unread:" + roomId, String.valueOf(userId));
-//        return v == null ? 0 : Long.parseLong(v.toString());
-        return 0;
+    private static Long resolveUserId(Principal principal) {
+        try {
+            return Long.valueOf(principal.getName());
+        } catch (Exception ex) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Authenticated user id is missing or invalid", ex);
+        }
     }
-}
\ No newline at end of file
+}
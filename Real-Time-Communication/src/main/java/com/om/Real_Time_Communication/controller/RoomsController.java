@@ -15,6 +15,7 @@ import org.springframework.web.server.ResponseStatusException;
 import java.nio.file.AccessDeniedException;
 import java.security.Principal;
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -166,19 +167,40 @@ public class RoomsController {
         if (!acl.canPublish(userId,roomId)) // or a dedicated canRead(...)
             throw new IllegalArgumentException("Forbidden");
 
-        return paging.list(roomId, beforeTs, beforeId, limit)
+        // Deleted-for-me and deleted-for-everyone rows are already excluded by the query
+        return paging.list(roomId, userId, beforeTs, beforeId, limit)
                 .stream()
-                .filter(message -> !message.isDeletedForEveryone())
-                .filter(message -> {
-                    if (userId.equals(message.getSenderId())) {
-                        return !message.isDeletedBySender();
-                    }
-                    return !message.isDeletedByReceiver();
-                })
                 .map(mapper::toDto)
                 .toList();
     }
 
+    /** Cursor paging: {@code dir=older} (default, newest page first) or {@code dir=newer}. */
+    @GetMapping("/{roomId}/messages/page")
+    public Map<String, Object> page(Principal principal,
+                                    @PathVariable Long roomId,
+                                    @RequestParam(required = false) String cursor,
+                                    @RequestParam(defaultValue = "older") String dir,
+                                    @RequestParam(defaultValue = "50") int limit) {
+        Long userId = resolveUserId(principal);
+        if (!acl.canPublish(userId, roomId))
+            throw new IllegalArgumentException("Forbidden");
+
+        MessagePagingService.PageDto page;
+        try {
+            page = "newer".equalsIgnoreCase(dir)
+                    ? paging.pageForward(roomId, userId, cursor, limit)
+                    : paging.pageBackward(roomId, userId, cursor, limit);
+        } catch (IllegalArgumentException badCursor) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", badCursor);
+        }
+        Map<String, Object> body = new HashMap<>();
+        body.put("data", page.data.stream().map(mapper::toDto).toList());
+        body.put("next", page.next);
+        body.put("prev", page.prev);
+        body.put("hasMore", page.hasMore);
+        return body;
+    }
+
 
     @PutMapping("/{roomId}/read")
     public Map<String, Object> markRead(Principal principal,
@@ -1,18 +1,24 @@
 package com.om.Real_Time_Communication.controller;
 
 // imports:
+import com.om.Real_Time_Communication.dto.BlindSearchRequest;
 import com.om.Real_Time_Communication.dto.SearchMessageDoc;
 import com.om.Real_Time_Communication.service.RoomMembershipService;
 import com.om.Real_Time_Communication.service.SearchService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.security.Principal;
+import java.util.List;
 
 @RestController
 @RequestMapping("/api/search")
 
-@CrossOrigin(origins = "${cors.allowed-origins}")
+@CrossOrigin(origins = "${cors.allowed-origins}", exposedHeaders = SearchController.NEXT_CURSOR)
 public class SearchController {
+    /** The cursor of the next page, absent on the last one; the body stays the list existing clients read. */
+    static final String NEXT_CURSOR = "X-Next-Cursor";
+
     private final SearchService searchService;
     private final RoomMembershipService membership;
 
@@ -22,21 +28,39 @@ public class SearchController {
     }
 
     @GetMapping
-    public java.util.List<SearchMessageDoc> searchAll(Principal principal,
-                                                      @RequestParam String q,
-                                                      @RequestParam(defaultValue = "50") int limit) {
+    public ResponseEntity<List<SearchMessageDoc>> searchAll(Principal principal,
+                                                            @RequestParam String q,
+                                                            @RequestParam(defaultValue = "50") int limit,
+                                                            @RequestParam(required = false) String cursor) {
         Long userId = Long.valueOf(principal.getName());
         var roomIds = membership.roomsForUser(userId);
-        return searchService.searchAll(userId, roomIds, q, limit);
+        return hits(searchService.searchAll(userId, roomIds, q, limit, cursor));
     }
 
     @GetMapping("/rooms/{roomId}")
-    public Object searchInRoom(Principal principal,
-                               @PathVariable Long roomId,
-                               @RequestParam String q,
-                               @RequestParam(defaultValue = "50") int limit) {
+    public ResponseEntity<List<SearchMessageDoc>> searchInRoom(Principal principal,
+                                                               @PathVariable Long roomId,
+                                                               @RequestParam String q,
+                                                               @RequestParam(defaultValue = "50") int limit,
+                                                               @RequestParam(required = false) String cursor) {
         Long userId = Long.valueOf(principal.getName());
         if (!membership.isMember(userId, roomId)) throw new IllegalArgumentException("Forbidden");
-        return searchService.searchInRoomMvp(roomId, q, limit);
+        return hits(searchService.searchInRoom(userId, roomId, q, limit, cursor));
+    }
+
+    /** E2EE rooms: the query arrives as blind tokens, in the body so they stay out of access logs. */
+    @PostMapping("/rooms/{roomId}/blind")
+    public SearchService.BlindPage searchInRoomBlind(Principal principal,
+                                                     @PathVariable Long roomId,
+                                                     @RequestBody BlindSearchRequest req) {
+        Long userId = Long.valueOf(principal.getName());
+        if (!membership.isMember(userId, roomId)) throw new IllegalArgumentException("Forbidden");
+        return searchService.searchBlind(userId, roomId, req.getTokens(), req.getLimit(), req.getCursor());
+    }
+
+    private static ResponseEntity<List<SearchMessageDoc>> hits(SearchService.SearchPage page) {
+        ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+        if (page.next() != null) ok.header(NEXT_CURSOR, page.next());
+        return ok.body(page.hits());
     }
 }
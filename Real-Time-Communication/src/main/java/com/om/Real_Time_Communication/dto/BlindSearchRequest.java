@@ -0,0 +1,18 @@
+package com.om.Real_Time_Communication.dto;
+
+/** Blind search in an E2EE room: the query terms as 8-byte tokens, made the way messages' are. */
+public class BlindSearchRequest {
+
+    private byte[] tokens;              // concatenated; a message must carry all of them
+    private int limit = 50;
+    private String cursor;              // "next" of the previous page
+
+    public byte[] getTokens() { return tokens; }
+    public void setTokens(byte[] tokens) { this.tokens = tokens; }
+
+    public int getLimit() { return limit; }
+    public void setLimit(int limit) { this.limit = limit; }
+
+    public String getCursor() { return cursor; }
+    public void setCursor(String cursor) { this.cursor = cursor; }
+}
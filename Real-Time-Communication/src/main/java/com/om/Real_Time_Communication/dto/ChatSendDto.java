@@ -20,6 +20,10 @@ public class ChatSendDto {
     private byte[] ciphertext;          // opaque bytes
     private String keyRef;              // "senderKey:v3" or per-recipient reference
 
+    // Optional blind index: per distinct normalized term, the first 8 bytes of
+    // HMAC-SHA256(room search key, term), concatenated; the server only stores and matches them
+    private byte[] searchTokens;
+
     // getters/setters
 
     public String getMessageId() { return messageId; }
@@ -51,5 +55,8 @@ public class ChatSendDto {
 
     public String getKeyRef() { return keyRef; }
     public void setKeyRef(String keyRef) { this.keyRef = keyRef; }
+
+    public byte[] getSearchTokens() { return searchTokens; }
+    public void setSearchTokens(byte[] searchTokens) { this.searchTokens = searchTokens; }
 }
 
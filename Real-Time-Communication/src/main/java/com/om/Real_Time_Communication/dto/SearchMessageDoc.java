@@ -1,6 +1,7 @@
 package com.om.Real_Time_Communication.dto;
 
 // imports:
+import com.om.Real_Time_Communication.models.ChatMessage;
 import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
@@ -20,6 +21,7 @@ public class SearchMessageDoc {
     public static final String INDEX = "rtc_messages";
 
     @Id
+    @Field(type = FieldType.Keyword) // sort tie-breaker for search_after
     private String messageId;
 
     @Field(type = FieldType.Keyword) private String tenant;
@@ -109,6 +111,11 @@ public class SearchMessageDoc {
         this.visibility = visibility;
     }
 
+    /** Whether a message belongs in the search index: plaintext with a body; E2EE messages never do. */
+    public static boolean indexable(boolean e2ee, String body) {
+        return !e2ee && body != null && !body.isBlank();
+    }
+
     public static SearchMessageDoc from(MessageCreated ev) {
         SearchMessageDoc d = new SearchMessageDoc();
         d.setMessageId(ev.messageId);
@@ -120,4 +127,16 @@ public class SearchMessageDoc {
         if (!ev.e2ee) d.setText(ev.body);
         return d;
     }
+
+    public static SearchMessageDoc from(ChatMessage m) {
+        SearchMessageDoc d = new SearchMessageDoc();
+        d.setMessageId(m.getMessageId());
+        d.setRoomId(m.getRoomId());
+        d.setSenderId(m.getSenderId());
+        d.setType(m.getType() != null ? m.getType().name() : null);
+        d.setCreatedAt(m.getServerTs());
+        d.setVisibility("private");
+        if (!m.isE2ee()) d.setText(m.getBody());
+        return d;
+    }
 }
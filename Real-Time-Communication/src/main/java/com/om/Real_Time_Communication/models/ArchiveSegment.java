@@ -0,0 +1,72 @@
+package com.om.Real_Time_Communication.models;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * One compressed, immutable file of archived history: messages of one room within one month, in
+ * (server_ts, id) order. Segments of a room never overlap in time, so paging walks them by
+ * {@code max_ts}; compaction replaces the segments of a month with a single one.
+ */
+@Entity
+@Table(name = "history_archive_segment",
+        indexes = {
+                @Index(name = "idx_archive_room_max_ts", columnList = "room_id, max_ts"),
+                @Index(name = "idx_archive_room_month", columnList = "room_id, month")
+        })
+public class ArchiveSegment {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "room_id", nullable = false)
+    private Long roomId;
+
+    @Column(name = "month", nullable = false)
+    private int month;                     // yyyyMM, UTC
+
+    @Column(name = "min_ts", nullable = false)
+    private Instant minTs;
+
+    @Column(name = "max_ts", nullable = false)
+    private Instant maxTs;
+
+    @Column(name = "messages", nullable = false)
+    private int messages;
+
+    @Column(name = "bytes", nullable = false)
+    private int bytes;
+
+    @Column(name = "file", nullable = false, length = 128)
+    private String file;                   // relative to rtc.history.archive.dir
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+
+    public Long getId() { return id; }
+
+    public Long getRoomId() { return roomId; }
+    public void setRoomId(Long roomId) { this.roomId = roomId; }
+
+    public int getMonth() { return month; }
+    public void setMonth(int month) { this.month = month; }
+
+    public Instant getMinTs() { return minTs; }
+    public void setMinTs(Instant minTs) { this.minTs = minTs; }
+
+    public Instant getMaxTs() { return maxTs; }
+    public void setMaxTs(Instant maxTs) { this.maxTs = maxTs; }
+
+    public int getMessages() { return messages; }
+    public void setMessages(int messages) { this.messages = messages; }
+
+    public int getBytes() { return bytes; }
+    public void setBytes(int bytes) { this.bytes = bytes; }
+
+    public String getFile() { return file; }
+    public void setFile(String file) { this.file = file; }
+
+    public Instant getCreatedAt() { return createdAt; }
+}
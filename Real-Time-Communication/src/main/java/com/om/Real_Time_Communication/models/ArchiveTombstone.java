@@ -0,0 +1,52 @@
+package com.om.Real_Time_Communication.models;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A delete of an archived message, which can no longer be flagged in place since segments are
+ * immutable: for the requesting user only, or for everyone. The request is recorded as made and
+ * judged when reading, against the archived row: a delete for everyone only counts when
+ * {@code user_id} is the message's sender.
+ */
+@Entity
+@Table(name = "history_archive_tombstone",
+        uniqueConstraints = @UniqueConstraint(name = "uq_archive_tombstone",
+                columnNames = {"message_id", "user_id", "for_everyone"}))
+public class ArchiveTombstone {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "message_id", nullable = false, length = 36)
+    private String messageId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "for_everyone", nullable = false)
+    private boolean forEveryone;
+
+    @Column(name = "created_at", nullable = false)
+    private Instant createdAt = Instant.now();
+
+    protected ArchiveTombstone() {}
+
+    public ArchiveTombstone(String messageId, Long userId, boolean forEveryone) {
+        this.messageId = messageId;
+        this.userId = userId;
+        this.forEveryone = forEveryone;
+    }
+
+    public Long getId() { return id; }
+
+    public String getMessageId() { return messageId; }
+
+    public Long getUserId() { return userId; }
+
+    public boolean isForEveryone() { return forEveryone; }
+
+    public Instant getCreatedAt() { return createdAt; }
+}
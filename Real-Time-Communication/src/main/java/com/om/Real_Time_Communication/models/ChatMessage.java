@@ -4,16 +4,23 @@ import jakarta.persistence.*;
 
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 /** Message row with optional E2EE envelope; plaintext body only for non-E2EE rooms. */
 @Entity
 @Table(name = "chat_message",
         uniqueConstraints = @UniqueConstraint(name = "uq_room_message",
-                columnNames = {"room_id","message_id"}))
-public class ChatMessage {
+                columnNames = {"room_id","message_id"}),
+        // keyset paging order: history pages are a range scan on this index at any depth
+        indexes = {
+                @Index(name = "idx_chat_message_room_ts_id", columnList = "room_id, server_ts, id"),
+                // search catch-up walks all rooms by time
+                @Index(name = "idx_chat_message_ts_id", columnList = "server_ts, id")
+        })
+public class ChatMessage implements TimeOrdered {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId                           // server_ts is the time in the id; see TimeOrdered
     private Long id;
 
     // Routing / identity
@@ -28,8 +35,9 @@ public class ChatMessage {
     private String messageId;
 
     // Authoritative server timestamp
+    // Microsecond precision, as stored, so the entity and its paging cursor agree with the row
     @Column(name = "server_ts", nullable = false)
-    private Instant serverTs = Instant.now();
+    private Instant serverTs = Instant.now().truncatedTo(ChronoUnit.MICROS);
 
     // ----- Non-E2EE (plaintext) -----
     @Enumerated(EnumType.STRING)
@@ -49,21 +57,26 @@ public class ChatMessage {
     @Column(name = "algo", length = 16)
     private String algo;                   // "AES-GCM", etc.
 
-    @Lob
-    @Column(name = "aad")
+    // The payload lives in an EnvelopeStore under envelope_ref; the row stays narrow.
+    // aad/iv/ciphertext are filled by EnvelopeService.load, one batch per page.
+    @Column(name = "envelope_ref", length = 64)
+    private String envelopeRef;            // MessageEnvelope.refOf(aad, iv, ciphertext)
+
+    @Transient
     private byte[] aad;                    // associated data (optional)
 
-    @Lob
-    @Column(name = "iv")
+    @Transient
     private byte[] iv;                     // nonce/iv
 
-    @Lob
-    @Column(name = "ciphertext", columnDefinition = "LONGBLOB")
+    @Transient
     private byte[] ciphertext;             // encrypted payload (opaque to server)
 
     @Column(name = "key_ref", length = 64)
     private String keyRef;                 // "senderKey:v3" or per-recipient ref
 
+    @Column(name = "search_tokens", length = 2048)
+    private byte[] searchTokens;           // blind index tokens, 8 bytes each (see BlindSearchIndex)
+
     @Column(name = "deleted_by_sender", nullable = false)
     private boolean deletedBySender = false;
 
@@ -76,8 +89,18 @@ public class ChatMessage {
     @Column(name = "system_message", nullable = false)
     private boolean systemMessage = false;
 
+    @Transient
+    private boolean serverTsSet;           // a time given by the caller is kept; otherwise the id's
+
+    @Override
+    public void alignTo(Instant idTime) {
+        if (!serverTsSet) this.serverTs = idTime;
+    }
+
     // ----- getters/setters -----
     public Long getId() { return id; }
+    /** Only for rows read back from the history archive, which are never saved again. */
+    public void setId(Long id) { this.id = id; }
 
     public Long getRoomId() { return roomId; }
     public void setRoomId(Long roomId) { this.roomId = roomId; }
@@ -89,7 +112,7 @@ public class ChatMessage {
     public void setMessageId(String messageId) { this.messageId = messageId; }
 
     public Instant getServerTs() { return serverTs; }
-    public void setServerTs(Instant serverTs) { this.serverTs = serverTs; }
+    public void setServerTs(Instant serverTs) { this.serverTs = serverTs; this.serverTsSet = true; }
 
     public MessageType getType() { return type; }
     public void setType(MessageType type) { this.type = type; }
@@ -106,6 +129,9 @@ public class ChatMessage {
     public String getAlgo() { return algo; }
     public void setAlgo(String algo) { this.algo = algo; }
 
+    public String getEnvelopeRef() { return envelopeRef; }
+    public void setEnvelopeRef(String envelopeRef) { this.envelopeRef = envelopeRef; }
+
     public byte[] getAad() { return aad; }
     public void setAad(byte[] aad) { this.aad = aad; }
 
@@ -118,6 +144,9 @@ public class ChatMessage {
     public String getKeyRef() { return keyRef; }
     public void setKeyRef(String keyRef) { this.keyRef = keyRef; }
 
+    public byte[] getSearchTokens() { return searchTokens; }
+    public void setSearchTokens(byte[] searchTokens) { this.searchTokens = searchTokens; }
+
     public boolean isDeletedBySender() { return deletedBySender; }
     public void setDeletedBySender(boolean deletedBySender) { this.deletedBySender = deletedBySender; }
 
@@ -0,0 +1,47 @@
+package com.om.Real_Time_Communication.models;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * Shared state of a background job, one row per job name: when a one-off job finished, and which
+ * node holds the lease of a job that must run on one node at a time.
+ */
+@Entity
+@Table(name = "rtc_job_state")
+public class JobState {
+
+    @Id
+    @Column(name = "name", length = 64)
+    private String name;
+
+    @Column(name = "completed_at")
+    private Instant completedAt;
+
+    @Column(name = "lease_owner", length = 128)
+    private String leaseOwner;
+
+    @Column(name = "lease_until")
+    private Instant leaseUntil;
+
+    protected JobState() {}
+
+    public JobState(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    public Instant getCompletedAt() { return completedAt; }
+
+    public void setCompletedAt(Instant completedAt) { this.completedAt = completedAt; }
+
+    public String getLeaseOwner() { return leaseOwner; }
+
+    public void setLeaseOwner(String leaseOwner) { this.leaseOwner = leaseOwner; }
+
+    public Instant getLeaseUntil() { return leaseUntil; }
+
+    public void setLeaseUntil(Instant leaseUntil) { this.leaseUntil = leaseUntil; }
+}
@@ -7,11 +7,14 @@ import java.time.Instant;
 @Entity
 @Table(name = "message_delivery", uniqueConstraints = {
         @UniqueConstraint(name = "uq_message_delivery_msg_user", columnNames = {"msg_id", "user_id"})
+}, indexes = {
+        // reconnect backlog: a user's undelivered rows in id order
+        @Index(name = "idx_message_delivery_user_status_id", columnList = "user_id, status, id")
 })
 public class MessageDelivery {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     @Column(name = "msg_id", nullable = false, length = 64)
@@ -0,0 +1,64 @@
+package com.om.Real_Time_Communication.models;
+
+import jakarta.persistence.*;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * E2EE payload of a chat message, kept apart from the {@code chat_message} row so history pages
+ * and idempotency checks only read narrow metadata rows. Addressed by content: {@code ref} is the
+ * hex SHA-256 of the length-prefixed aad, iv and ciphertext, so a retried send writes nothing new.
+ */
+@Entity
+@Table(name = "chat_message_envelope")
+public class MessageEnvelope {
+
+    @Id
+    @Column(name = "ref", length = 64)
+    private String ref;
+
+    @Column(name = "aad", length = 1024)
+    private byte[] aad;
+
+    @Column(name = "iv", length = 64)
+    private byte[] iv;
+
+    @Lob
+    @Column(name = "ciphertext", nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] ciphertext;
+
+    protected MessageEnvelope() {}
+
+    public MessageEnvelope(String ref, byte[] aad, byte[] iv, byte[] ciphertext) {
+        this.ref = ref;
+        this.aad = aad;
+        this.iv = iv;
+        this.ciphertext = ciphertext;
+    }
+
+    public static MessageEnvelope of(byte[] aad, byte[] iv, byte[] ciphertext) {
+        return new MessageEnvelope(refOf(aad, iv, ciphertext), aad, iv, ciphertext);
+    }
+
+    public static String refOf(byte[] aad, byte[] iv, byte[] ciphertext) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (byte[] part : new byte[][]{aad, iv, ciphertext}) {
+                // null and empty differ, and no part can run into the next
+                sha.update(ByteBuffer.allocate(4).putInt(part == null ? -1 : part.length).array());
+                if (part != null) sha.update(part);
+            }
+            return HexFormat.of().formatHex(sha.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getRef() { return ref; }
+    public byte[] getAad() { return aad; }
+    public byte[] getIv() { return iv; }
+    public byte[] getCiphertext() { return ciphertext; }
+}
@@ -8,7 +8,7 @@ import java.time.Instant;
         @Index(name="ix_outbox_status_time", columnList = "status,occurred_at")
 })
 public class OutboxEvent {
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Id @SnowflakeId
     private Long id;
 
     @Column(name="aggregate_type", nullable=false, length=50)
@@ -0,0 +1,20 @@
+package com.om.Real_Time_Communication.models;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * Id assigned on this node before the insert ({@link com.om.Real_Time_Communication.utility.SnowflakeIdGenerator}),
+ * so Hibernate can batch inserts, which it cannot do for IDENTITY columns.
+ */
+@IdGeneratorType(SnowflakeIdentifierGenerator.class)
+@Retention(RUNTIME)
+@Target({FIELD, METHOD})
+public @interface SnowflakeId {
+}
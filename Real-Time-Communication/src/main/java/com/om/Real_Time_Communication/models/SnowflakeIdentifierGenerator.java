@@ -0,0 +1,37 @@
+package com.om.Real_Time_Communication.models;
+
+import com.om.Real_Time_Communication.utility.SnowflakeIdGenerator;
+import com.om.Real_Time_Communication.utility.SnowflakeIds;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+
+/**
+ * Hibernate side of {@link SnowflakeId}: ids from the context's {@link SnowflakeIds}, which
+ * {@code IdGeneratorConfig} passes in the Hibernate settings, one generator per entity class.
+ */
+public class SnowflakeIdentifierGenerator implements IdentifierGenerator {
+
+    /** Hibernate setting holding the {@link SnowflakeIds} instance. */
+    public static final String IDS_SETTING = "rtc.id.generators";
+
+    private final SnowflakeIds ids;
+
+    public SnowflakeIdentifierGenerator(SnowflakeId config, Member member, CustomIdGeneratorCreationContext context) {
+        Object ids = context.getServiceRegistry().requireService(ConfigurationService.class).getSettings().get(IDS_SETTING);
+        if (!(ids instanceof SnowflakeIds s)) {
+            throw new IllegalStateException(IDS_SETTING + " is not set; IdGeneratorConfig must be part of the context");
+        }
+        this.ids = s;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner) {
+        long id = ids.forTable(owner.getClass()).nextId();
+        if (owner instanceof TimeOrdered t) t.alignTo(SnowflakeIdGenerator.timeOf(id));
+        return id;
+    }
+}
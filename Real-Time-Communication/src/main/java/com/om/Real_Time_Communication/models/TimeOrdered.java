@@ -0,0 +1,13 @@
+package com.om.Real_Time_Communication.models;
+
+import java.time.Instant;
+
+/**
+ * An entity whose timestamp is the time in its {@link SnowflakeId}, so ordering by (timestamp, id)
+ * is ordering by id and a cursor needs only the id.
+ */
+public interface TimeOrdered {
+
+    /** Called with the time of the id just assigned, before the row is inserted; an explicitly set time may be kept. */
+    void alignTo(Instant idTime);
+}
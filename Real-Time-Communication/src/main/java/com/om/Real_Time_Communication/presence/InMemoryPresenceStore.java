@@ -0,0 +1,66 @@
+package com.om.Real_Time_Communication.presence;
+
+import com.om.Real_Time_Communication.utility.StripedLongMap;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single-node default: the directory lives in this bean, so it is private to its application
+ * context. Several registries handed the same instance behave like nodes sharing a Redis.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.presence.store", havingValue = "local", matchIfMissing = true)
+public class InMemoryPresenceStore implements PresenceStore {
+
+    // userId -> devices; each list is guarded by its own monitor and dropped once empty
+    private final StripedLongMap<List<DevicePresence>> users = new StripedLongMap<>();
+
+    @Override
+    public boolean deviceOnline(long userId, String deviceId, String nodeId, long nowMs) {
+        while (true) {
+            List<DevicePresence> devices = users.computeIfAbsent(userId, k -> new ArrayList<>(2));
+            synchronized (devices) {
+                if (users.get(userId) != devices) continue; // emptied and dropped meanwhile
+                boolean first = devices.isEmpty();
+                devices.removeIf(d -> d.deviceId().equals(deviceId));
+                devices.add(new DevicePresence(deviceId, nodeId, nowMs));
+                return first;
+            }
+        }
+    }
+
+    @Override
+    public void heartbeat(long userId, String deviceId, String nodeId, long nowMs) {
+        List<DevicePresence> devices = users.get(userId);
+        if (devices == null) return;
+        synchronized (devices) {
+            devices.replaceAll(d -> d.deviceId().equals(deviceId) ? new DevicePresence(deviceId, nodeId, nowMs) : d);
+        }
+    }
+
+    @Override
+    public boolean deviceOffline(long userId, String deviceId, String nodeId) {
+        List<DevicePresence> devices = users.get(userId);
+        if (devices == null) return false;
+        synchronized (devices) {
+            boolean removed = devices.removeIf(d -> d.deviceId().equals(deviceId) && d.nodeId().equals(nodeId));
+            if (removed && devices.isEmpty()) {
+                users.remove(userId, devices);
+                return true;
+            }
+            return false;
+        }
+    }
+
+    @Override
+    public List<DevicePresence> devices(long userId) {
+        List<DevicePresence> devices = users.get(userId);
+        if (devices == null) return List.of();
+        synchronized (devices) {
+            return List.copyOf(devices);
+        }
+    }
+}
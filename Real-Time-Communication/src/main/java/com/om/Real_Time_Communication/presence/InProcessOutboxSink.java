@@ -0,0 +1,48 @@
+package com.om.Real_Time_Communication.presence;
+
+import com.om.Real_Time_Communication.models.OutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Broker stand-in for single-node runs and tests: events go straight to in-process subscribers and
+ * count as confirmed once every subscriber has accepted them.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.sink", havingValue = "local", matchIfMissing = true)
+public class InProcessOutboxSink implements OutboxSink {
+
+    private static final Logger log = LoggerFactory.getLogger(InProcessOutboxSink.class);
+
+    /** What a consumer sees: the same message id, routing key and body the broker would carry. */
+    public record Delivery(String messageId, String routingKey, String payload) {}
+
+    private final List<Consumer<Delivery>> subscribers = new CopyOnWriteArrayList<>();
+
+    public void subscribe(Consumer<Delivery> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    @Override
+    public Set<Long> publish(List<OutboxEvent> batch, long confirmTimeoutMs) {
+        Set<Long> confirmed = new HashSet<>();
+        for (OutboxEvent ev : batch) {
+            Delivery d = new Delivery("obx-" + ev.getId(), OutboxSink.routingKey(ev), ev.getPayload());
+            try {
+                for (Consumer<Delivery> s : subscribers) s.accept(d);
+                confirmed.add(ev.getId());
+            } catch (Exception ex) {
+                log.warn("Outbox subscriber rejected id={} err={}", ev.getId(), ex.toString());
+            }
+        }
+        return confirmed;
+    }
+}
@@ -2,70 +2,184 @@ package com.om.Real_Time_Communication.presence;
 
 
 import com.om.Real_Time_Communication.Repository.OutboxEventRepository;
-import com.om.Real_Time_Communication.config.RabbitConfig;
 import com.om.Real_Time_Communication.models.OutboxEvent;
 import org.slf4j.Logger; import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
-//@Component
-public class OutboxPublisher {
+/**
+ * Relays {@code outbox_event} rows to the {@link OutboxSink}.
+ *
+ * <p>Each pass runs in one transaction: claim up to {@code outbox.batch-size} rows with
+ * {@code FOR UPDATE SKIP LOCKED}, publish them all, collect the broker confirms, then settle the
+ * batch with one bulk SENT update and one bulk retry update. Row locks are held until the batch
+ * settles (bounded by {@code outbox.confirm-timeout-ms}), so a relay that dies mid-batch simply
+ * leaves its rows PENDING for the next one, and concurrent relays on other nodes never see them.
+ *
+ * <p>Polling adapts to load: a full batch is followed immediately by the next one, an empty poll
+ * doubles the wait up to {@code outbox.poll.max-ms}, and {@link #wake()} (called after an outbox
+ * insert commits) cuts the wait short.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class OutboxPublisher implements SmartLifecycle {
     private static final Logger log = LoggerFactory.getLogger(OutboxPublisher.class);
 
     private final OutboxEventRepository repo;
-    private final RabbitTemplate rabbit;
+    private final OutboxSink sink;
+    private final TransactionTemplate tx;
+    private final int batchSize;
+    private final long minDelayMs;
+    private final long maxDelayMs;
+    private final long confirmTimeoutMs;
+    private final int maxAttempts;
+    private final long retentionMs;
 
-    public OutboxPublisher(OutboxEventRepository repo, RabbitTemplate rabbit) {
-        this.repo = repo; this.rabbit = rabbit;
+    private final Semaphore wakeups = new Semaphore(0);
+    private volatile boolean running;
+    private Thread worker;
+
+    public OutboxPublisher(OutboxEventRepository repo,
+                           OutboxSink sink,
+                           PlatformTransactionManager txManager,
+                           @Value("${outbox.batch-size:500}") int batchSize,
+                           @Value("${outbox.poll.min-ms:5}") long minDelayMs,
+                           @Value("${outbox.poll.max-ms:1000}") long maxDelayMs,
+                           @Value("${outbox.confirm-timeout-ms:5000}") long confirmTimeoutMs,
+                           @Value("${outbox.max-attempts:10}") int maxAttempts,
+                           @Value("${outbox.purge.retention-ms:3600000}") long retentionMs) {
+        this.repo = repo;
+        this.sink = sink;
+        this.tx = new TransactionTemplate(txManager);
+        this.batchSize = batchSize;
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.confirmTimeoutMs = confirmTimeoutMs;
+        this.maxAttempts = maxAttempts;
+        this.retentionMs = retentionMs;
+    }
+
+    /** Result of one relay pass. */
+    public record Pass(int claimed, int confirmed) {}
+
+    /** Claims, publishes and settles one batch. */
+    public Pass pumpOnce() {
+        Pass pass = tx.execute(status -> {
+            List<OutboxEvent> batch = repo.claimBatch(Instant.now(), batchSize);
+            if (batch.isEmpty()) {
+                return new Pass(0, 0);
+            }
+            Set<Long> confirmed = sink.publish(batch, confirmTimeoutMs);
+            List<Long> unconfirmed = new ArrayList<>(batch.size() - confirmed.size());
+            for (OutboxEvent ev : batch) {
+                if (!confirmed.contains(ev.getId())) unconfirmed.add(ev.getId());
+            }
+            if (!confirmed.isEmpty()) {
+                repo.markSent(confirmed, Instant.now());
+            }
+            if (!unconfirmed.isEmpty()) {
+                repo.markUnconfirmed(unconfirmed, maxAttempts);
+                log.warn("Outbox batch: {} of {} events unconfirmed, will retry", unconfirmed.size(), batch.size());
+            }
+            return new Pass(batch.size(), confirmed.size());
+        });
+        return pass == null ? new Pass(0, 0) : pass;
+    }
+
+    /** Ends the current wait early; cheap enough to call on every outbox insert. */
+    public void wake() {
+        if (wakeups.availablePermits() == 0) {
+            wakeups.release();
+        }
     }
 
-    @Scheduled(fixedDelayString = "${outbox.publish.delay:4000}")
-    public void pump() {
-        List<OutboxEvent> batch = repo.fetchBatch(Instant.now(), 200);
-        for (OutboxEvent ev : batch) {
+    private void loop() {
+        long delay = minDelayMs;
+        while (running) {
             try {
-                publish(ev);
-                markSent(ev.getId());
+                Pass pass = pumpOnce();
+                if (pass.claimed() > pass.confirmed()) {
+                    delay = Math.min(maxDelayMs, Math.max(minDelayMs, delay * 2)); // broker trouble: back off
+                } else if (pass.claimed() == batchSize) {
+                    continue; // backlog: drain without waiting
+                } else if (pass.claimed() > 0) {
+                    delay = minDelayMs;
+                } else {
+                    delay = Math.min(maxDelayMs, Math.max(minDelayMs, delay * 2));
+                }
             } catch (Exception ex) {
-                log.warn("Outbox publish failed id={}, attempt={}, err={}", ev.getId(), ev.getAttempts(), ex.toString());
-                markFailed(ev.getId());
+                log.warn("Outbox relay pass failed: {}", ex.toString());
+                delay = maxDelayMs;
+            }
+            try {
+                if (wakeups.tryAcquire(delay, TimeUnit.MILLISECONDS)) {
+                    wakeups.drainPermits();
+                    delay = minDelayMs;
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
     }
 
-    private void publish(OutboxEvent ev) {
-        String rk = routingKey(ev); // room.<roomId>.message.created
-        rabbit.convertAndSend(RabbitConfig.EXCHANGE_EVENTS, rk, ev.getPayload(), msg -> {
-            msg.getMessageProperties().setMessageId("obx-" + ev.getId());
-            msg.getMessageProperties().setContentType("application/json");
-            return msg;
-        });
+    @Scheduled(fixedDelayString = "${outbox.purge.delay-ms:60000}")
+    public void purge() {
+        purgeExpired();
     }
 
-    private String routingKey(OutboxEvent ev) {
-        if ("MessageCreated".equals(ev.getEventType())) {
-            return "room." + ev.getAggregateId() + ".message.created";
+    /** Deletes published rows older than the retention in chunks, keeping the status index small. */
+    public int purgeExpired() {
+        Instant cutoff = Instant.now().minusMillis(retentionMs);
+        int total = 0;
+        while (true) {
+            Integer n = tx.execute(status -> {
+                List<Long> ids = repo.findPurgeable(cutoff, PageRequest.of(0, 1_000));
+                return ids.isEmpty() ? 0 : repo.deleteByIds(ids);
+            });
+            if (n == null || n == 0) break;
+            total += n;
         }
-        return "unknown";
+        if (total > 0) log.info("Outbox purge removed {} published events", total);
+        return total;
     }
 
-    @Transactional
-    protected void markSent(Long id) {
-        repo.findById(id).ifPresent(e -> {
-            e.setStatus("SENT"); e.setPublishedAt(Instant.now()); e.setAttempts(e.getAttempts()+1);
-        });
+    @Override
+    public void start() {
+        running = true;
+        worker = new Thread(this::loop, "outbox-relay");
+        worker.setDaemon(true);
+        worker.start();
     }
 
-    @Transactional
-    protected void markFailed(Long id) {
-        repo.findById(id).ifPresent(e -> {
-            e.setStatus("PENDING"); // keep pending; backoff is simple here
-            e.setAttempts(e.getAttempts()+1);
-        });
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(confirmTimeoutMs + 1_000);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
     }
 }
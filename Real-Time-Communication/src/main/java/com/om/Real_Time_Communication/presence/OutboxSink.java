@@ -0,0 +1,23 @@
+package com.om.Real_Time_Communication.presence;
+
+import com.om.Real_Time_Communication.models.OutboxEvent;
+
+import java.util.List;
+import java.util.Set;
+
+/** Where the outbox relay publishes to. */
+public interface OutboxSink {
+
+    /**
+     * Publishes the whole batch, then waits up to {@code confirmTimeoutMs} for the broker to confirm it.
+     * Returns the ids of the events the broker confirmed; the rest are retried.
+     */
+    Set<Long> publish(List<OutboxEvent> batch, long confirmTimeoutMs);
+
+    static String routingKey(OutboxEvent ev) {
+        if ("MessageCreated".equals(ev.getEventType())) {
+            return "room." + ev.getAggregateId() + ".message.created";
+        }
+        return "unknown";
+    }
+}
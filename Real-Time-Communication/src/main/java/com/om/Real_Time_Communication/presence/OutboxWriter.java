@@ -0,0 +1,54 @@
+package com.om.Real_Time_Communication.presence;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.Repository.OutboxEventRepository;
+import com.om.Real_Time_Communication.models.OutboxEvent;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Appends events to the outbox inside the caller's transaction and nudges the relay once that
+ * transaction commits, so an event is on the broker milliseconds after the business write.
+ */
+@Component
+@ConditionalOnProperty(name = "outbox.enabled", havingValue = "true")
+public class OutboxWriter {
+
+    private final OutboxEventRepository repo;
+    private final OutboxPublisher publisher;
+    private final ObjectMapper objectMapper;
+
+    public OutboxWriter(OutboxEventRepository repo, OutboxPublisher publisher, ObjectMapper objectMapper) {
+        this.repo = repo;
+        this.publisher = publisher;
+        this.objectMapper = objectMapper;
+    }
+
+    public OutboxEvent append(String aggregateType, Long aggregateId, String eventType, Object payload) {
+        OutboxEvent ev = new OutboxEvent();
+        ev.setAggregateType(aggregateType);
+        ev.setAggregateId(aggregateId);
+        ev.setEventType(eventType);
+        try {
+            ev.setPayload(payload instanceof String s ? s : objectMapper.writeValueAsString(payload));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Outbox payload is not serializable", e);
+        }
+        OutboxEvent saved = repo.save(ev);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publisher.wake();
+                }
+            });
+        } else {
+            publisher.wake();
+        }
+        return saved;
+    }
+}
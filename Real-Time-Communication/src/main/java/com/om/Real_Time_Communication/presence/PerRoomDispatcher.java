@@ -1,108 +1,248 @@
 package com.om.Real_Time_Communication.presence;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.Instant;
-import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Per-room FIFO executor built on mailboxes.
+ *
+ * Every room owns a bounded mailbox; a mailbox is scheduled onto the shared worker pool only while
+ * it has work, so a worker is released as soon as the room's queue is empty. The number of active
+ * rooms is therefore bounded by memory, not by the number of pool threads. Idle mailboxes are
+ * reclaimed by a periodic sweep.
+ */
 @Component
 public class PerRoomDispatcher implements AutoCloseable {
 
-    // Shared worker pool; tasks are serialized per room via single-thread executors
-    private final ThreadPoolExecutor backingPool = new ThreadPoolExecutor(
-            8, 64, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(10_000),
-            r -> { Thread t = new Thread(r, "room-worker"); t.setDaemon(true); return t; }
-    );
+    private static final Logger log = LoggerFactory.getLogger(PerRoomDispatcher.class);
 
-    private final ConcurrentMap<Long, RoomExecutor> executors = new ConcurrentHashMap<>();
+    /** What to do when a room's mailbox is full. */
+    public enum OverflowPolicy {
+        /** Throw {@link RejectedExecutionException} to the caller (default). */
+        REJECT,
+        /** Cancel the oldest queued task and accept the new one. */
+        DROP_OLDEST,
+        /** Cancel the new task and keep the queue as is. */
+        DROP_NEWEST
+    }
 
-    public <T> T executeAndWait(Long roomId, Callable<T> work) throws Exception {
-        RoomExecutor rx = executors.computeIfAbsent(roomId, id -> new RoomExecutor(backingPool));
-        // Enqueue and block the caller until the work is done (keeps strict FIFO)
-        return rx.submit(work).get();
+    private final ThreadPoolExecutor workers;
+    private final int mailboxCapacity;
+    private final int drainBatch;
+    private final OverflowPolicy overflowPolicy;
+    private final long idleMs;
+
+    private final ConcurrentMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    @Autowired
+    public PerRoomDispatcher(@Value("${rtc.dispatcher.workers:0}") int workers,
+                             @Value("${rtc.dispatcher.mailbox-capacity:2000}") int mailboxCapacity,
+                             @Value("${rtc.dispatcher.drain-batch:64}") int drainBatch,
+                             @Value("${rtc.dispatcher.overflow-policy:REJECT}") OverflowPolicy overflowPolicy,
+                             @Value("${rtc.dispatcher.idle-ms:60000}") long idleMs) {
+        int threads = workers > 0 ? workers : Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+        // The work queue only ever holds scheduled mailboxes (at most one entry per room with pending work)
+        this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> { Thread t = new Thread(r, "room-worker"); t.setDaemon(true); return t; });
+        this.workers.allowCoreThreadTimeOut(true);
+        this.mailboxCapacity = mailboxCapacity;
+        this.drainBatch = Math.max(1, drainBatch);
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.REJECT : overflowPolicy;
+        this.idleMs = idleMs;
     }
 
-    public void execute(Long roomId, Runnable work) {
-        RoomExecutor rx = executors.computeIfAbsent(roomId, id -> new RoomExecutor(backingPool));
-        rx.execute(work);
+    public PerRoomDispatcher() {
+        this(0, 2_000, 64, OverflowPolicy.REJECT, 60_000L);
     }
 
-    /** Periodic cleanup is optional; can be called from a @Scheduled sweeper */
-    public void cleanupIdle(long idleMs) {
-        long now = System.currentTimeMillis();
-        for (Map.Entry<Long, RoomExecutor> e : executors.entrySet()) {
-            if (now - e.getValue().lastTouch.get() > idleMs && e.getValue().queueSize() == 0) {
-                executors.remove(e.getKey());
+    public <T> T executeAndWait(Long roomId, Callable<T> work) throws Exception {
+        FutureTask<T> ft = new FutureTask<>(work);
+        enqueue(roomId, ft);
+        // Block the caller until the work is done (keeps strict FIFO)
+        try {
+            return ft.get();
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof Exception e) throw e;
+            throw ee;
+        }
+    }
+
+    /**
+     * Enqueues {@code work} behind the room's earlier tasks without blocking the caller.
+     * The future fails with {@link RejectedExecutionException} when the mailbox is full.
+     */
+    public <T> CompletableFuture<T> submit(Long roomId, Callable<T> work) {
+        CompletableFuture<T> cf = new CompletableFuture<>();
+        Runnable task = new FutureTask<>(() -> {
+            try {
+                cf.complete(work.call());
+            } catch (Throwable t) {
+                cf.completeExceptionally(t);
             }
+            return null;
+        }) {
+            @Override
+            public boolean cancel(boolean mayInterrupt) {
+                cf.cancel(false);
+                return super.cancel(mayInterrupt);
+            }
+        };
+        try {
+            enqueue(roomId, task);
+        } catch (RejectedExecutionException ex) {
+            cf.completeExceptionally(ex);
         }
+        return cf;
     }
 
-    @Override public void close() {
-        backingPool.shutdown();
+    public void execute(Long roomId, Runnable work) {
+        enqueue(roomId, work);
     }
 
-    /** Serializes tasks for one room using a single-thread executor bound to the shared pool */
-    private static final class RoomExecutor {
-        private final ExecutorService single;
-        private final AtomicLong lastTouch = new AtomicLong(System.currentTimeMillis());
-        private final BlockingQueue<Runnable> q;
+    private void enqueue(Long roomId, Runnable task) {
+        // compute() keeps the enqueue atomic with respect to idle reclamation of the same room
+        Mailbox mb = mailboxes.compute(roomId, (id, existing) -> {
+            Mailbox m = existing != null ? existing : new Mailbox(id);
+            m.offer(task);
+            return m;
+        });
+        mb.schedule();
+    }
 
-        RoomExecutor(ThreadPoolExecutor backingPool) {
-            // single-thread executor that runs tasks on the shared pool
-            this.q = new LinkedBlockingQueue<Runnable>(2_000); // backpressure per room
-            this.single = new ThreadPerTaskExecutor(backingPool, q, lastTouch);
+    /** Removes mailboxes that are empty, not scheduled and untouched for {@code idleMs}. */
+    public int cleanupIdle(long idleMs) {
+        long now = System.currentTimeMillis();
+        int removed = 0;
+        for (Long roomId : mailboxes.keySet()) {
+            boolean[] gone = new boolean[1];
+            mailboxes.computeIfPresent(roomId, (id, mb) -> {
+                if (mb.isIdle(now, idleMs)) {
+                    gone[0] = true;
+                    return null;
+                }
+                return mb;
+            });
+            if (gone[0]) removed++;
         }
+        return removed;
+    }
 
-        <T> Future<T> submit(Callable<T> work) {
-            lastTouch.set(System.currentTimeMillis());
-            FutureTask<T> ft = new FutureTask<>(work);
-            if (!q.offer(ft)) throw new RejectedExecutionException("Room queue full");
-            return ft;
+    @Scheduled(fixedDelayString = "${rtc.dispatcher.sweep-ms:30000}")
+    public void reclaimIdle() {
+        int removed = cleanupIdle(idleMs);
+        if (removed > 0) {
+            log.debug("Reclaimed {} idle room mailboxes ({} active)", removed, mailboxes.size());
         }
+    }
 
-        void execute(Runnable work) {
-            lastTouch.set(System.currentTimeMillis());
-            if (!q.offer(work)) throw new RejectedExecutionException("Room queue full");
-        }
+    public int activeRooms() { return mailboxes.size(); }
+
+    public int queuedTasks(Long roomId) {
+        Mailbox mb = mailboxes.get(roomId);
+        return mb == null ? 0 : mb.size.get();
+    }
+
+    public long rejectedCount() { return rejected.get(); }
 
-        int queueSize() { return q.size(); }
+    public long droppedCount() { return dropped.get(); }
+
+    @Override public void close() {
+        workers.shutdown();
     }
 
-    /** Pipes queued tasks onto the shared pool, preserving order */
-    private static final class ThreadPerTaskExecutor extends AbstractExecutorService {
-        private final ThreadPoolExecutor pool;
-        private final BlockingQueue<Runnable> queue;
-        private final AtomicLong lastTouch;
-        private volatile boolean shutdown = false;
-
-        ThreadPerTaskExecutor(ThreadPoolExecutor pool, BlockingQueue<Runnable> queue, AtomicLong lastTouch) {
-            this.pool = pool; this.queue = queue; this.lastTouch = lastTouch;
-            // start a single consumer
-            pool.execute(this::drain);
+    /** One room's queue; runs on a pool worker only while it has tasks. */
+    private final class Mailbox implements Runnable {
+        private final Long roomId;
+        private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile long lastTouch = System.currentTimeMillis();
+
+        Mailbox(Long roomId) { this.roomId = roomId; }
+
+        /** Called under the map's per-key lock, so producers of one room never race each other here. */
+        void offer(Runnable task) {
+            lastTouch = System.currentTimeMillis();
+            if (size.get() >= mailboxCapacity) {
+                switch (overflowPolicy) {
+                    case DROP_NEWEST -> {
+                        dropped.incrementAndGet();
+                        cancel(task);
+                        return;
+                    }
+                    case DROP_OLDEST -> {
+                        Runnable oldest = queue.poll();
+                        if (oldest != null) {
+                            size.decrementAndGet();
+                            dropped.incrementAndGet();
+                            cancel(oldest);
+                        }
+                    }
+                    default -> {
+                        rejected.incrementAndGet();
+                        throw new RejectedExecutionException("Room queue full: " + roomId);
+                    }
+                }
+            }
+            queue.offer(task);
+            size.incrementAndGet();
+        }
+
+        void schedule() {
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                try {
+                    workers.execute(this);
+                } catch (RejectedExecutionException ex) {
+                    scheduled.set(false);
+                    throw ex;
+                }
+            }
         }
 
-        private void drain() {
-            try {
-                while (!shutdown) {
-                    Runnable task = queue.take();
-                    lastTouch.set(System.currentTimeMillis());
-                    // run inline to preserve strict FIFO
-                    try { task.run(); } catch (Throwable ignore) {}
+        @Override
+        public void run() {
+            int n = 0;
+            Runnable task;
+            while (n < drainBatch && (task = queue.poll()) != null) {
+                size.decrementAndGet();
+                // run inline to preserve strict FIFO
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    log.warn("Room task failed room={} err={}", roomId, t.toString());
                 }
-            } catch (InterruptedException ie) {
-                Thread.currentThread().interrupt();
+                n++;
+            }
+            lastTouch = System.currentTimeMillis();
+            if (!queue.isEmpty()) {
+                // Batch exhausted: go to the back of the pool queue so other rooms get a turn
+                workers.execute(this);
+                return;
             }
+            scheduled.set(false);
+            // A producer may have enqueued between the last poll and the flag reset
+            schedule();
+        }
+
+        boolean isIdle(long now, long idleMs) {
+            return !scheduled.get() && queue.isEmpty() && now - lastTouch > idleMs;
         }
 
-        @Override public void shutdown() { shutdown = true; }
-        @Override public java.util.List<Runnable> shutdownNow() { shutdown = true; return java.util.Collections.emptyList(); }
-        @Override public boolean isShutdown() { return shutdown; }
-        @Override public boolean isTerminated() { return shutdown && queue.isEmpty(); }
-        @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
-        @Override public void execute(Runnable command) {
-            if (!queue.offer(command)) throw new RejectedExecutionException("Room queue full");
+        private void cancel(Runnable task) {
+            if (task instanceof Future<?> f) f.cancel(false);
         }
     }
 }
@@ -0,0 +1,48 @@
+package com.om.Real_Time_Communication.presence;
+
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends a user's online/offline transitions to {@code /topic/room/{roomId}/presence} of each of
+ * their rooms. Only the node that saw the transition sends it; the broker carries it to the others.
+ * The rooms come from the membership cache, so heartbeats and disconnects do not query the database.
+ */
+@Component
+public class PresenceBroadcaster implements PresenceRegistry.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceBroadcaster.class);
+
+    private final RoomMembershipService membership;
+    private final SimpMessagingTemplate messaging;
+
+    public PresenceBroadcaster(PresenceRegistry registry,
+                               RoomMembershipService membership,
+                               SimpMessagingTemplate messaging) {
+        this.membership = membership;
+        this.messaging = messaging;
+        registry.addListener(this);
+    }
+
+    @Override
+    public void onPresenceChange(long userId, boolean online, long atMs) {
+        List<Long> roomIds = membership.roomsForUser(userId);
+        Map<String, Object> ev = new HashMap<>();
+        ev.put("type", "presence");
+        ev.put("userId", userId);
+        ev.put("online", online);
+        ev.put("lastSeen", Instant.ofEpochMilli(atMs));
+        for (Long roomId : roomIds) {
+            messaging.convertAndSend("/topic/room/" + roomId + "/presence", ev);
+        }
+        log.debug("[RTC][PRESENCE] user={} online={} announced to {} rooms", userId, online, roomIds.size());
+    }
+}
@@ -1,14 +1,29 @@
 package com.om.Real_Time_Communication.presence;
 
+import com.om.Real_Time_Communication.security.SessionRegistry;
+import com.om.Real_Time_Communication.utility.StripedLongMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Device presence. Locally, users are indexed by primitive id to their devices, and heartbeats
+ * only move a device's last-seen time. Expiry runs on a hashed timing wheel: each device sits in
+ * the slot of its deadline and is looked at once per expiry window, when that slot comes round,
+ * instead of on every sweep of the whole map. Cluster-wide state lives in the {@link PresenceStore},
+ * which is only told about device-level changes; {@link Listener}s hear user-level online/offline
+ * transitions, never the heartbeats in between.
+ */
 @Component
-public class PresenceRegistry {
+public class PresenceRegistry implements SessionRegistry.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceRegistry.class);
 
     public static class Presence {
         private Long userId;
@@ -56,44 +71,245 @@ public class PresenceRegistry {
         }
     }
 
-    // key: userId:deviceId
-    private final Map<String, Presence> map = new ConcurrentHashMap<>();
-    // heartbeat window (client sends every 15s, expire at 30s)
-    private static final long EXPIRE_MS = 30_000L;
+    /** Told when a user's first device comes online anywhere in the cluster and when the last one goes. */
+    public interface Listener {
+        void onPresenceChange(long userId, boolean online, long atMs);
+    }
+
+    private static final class Device {
+        final long userId;
+        final String deviceId;
+        volatile long lastSeenMs;
+        volatile long reportedMs;   // last time the store heard about this device
+        volatile boolean detached;  // expired or went offline; the wheel drops it lazily
+
+        Device(long userId, String deviceId, long nowMs) {
+            this.userId = userId;
+            this.deviceId = deviceId;
+            this.lastSeenMs = nowMs;
+            this.reportedMs = nowMs;
+        }
+    }
+
+    private static final class UserDevices {
+        final List<Device> devices = new ArrayList<>(2); // guarded by this
+        boolean dropped;                                  // removed from the index; retry with a fresh entry
+
+        Device find(String deviceId) {
+            for (Device d : devices) if (d.deviceId.equals(deviceId)) return d;
+            return null;
+        }
+    }
+
+    private final PresenceStore store;
+    private final String nodeId;
+    private final long expireMs;
+    private final long tickMs;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final StripedLongMap<UserDevices> users = new StripedLongMap<>();
+
+    // Timing wheel: slot (deadline / tickMs) & mask, each slot behind its own lock
+    private final ArrayDeque<Device>[] slots;
+    private final int mask;
+    private final Object sweepLock = new Object();
+    private volatile long processedTick;
+
+    @SuppressWarnings("unchecked")
+    public PresenceRegistry(PresenceStore store,
+                            SessionRegistry sessionRegistry,
+                            @Value("${rtc.presence.expire-ms:30000}") long expireMs,
+                            @Value("${rtc.presence.tick-ms:1000}") long tickMs,
+                            @Value("${rtc.broker.cluster.node-id:}") String nodeId) {
+        this.store = store;
+        this.expireMs = expireMs;
+        this.tickMs = tickMs;
+        this.nodeId = nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId;
+        // One round of the wheel covers the expiry window, so a device is visited once per window
+        int size = Integer.highestOneBit((int) Math.max(16, 2 * (expireMs / tickMs + 1)) - 1) << 1;
+        this.slots = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) slots[i] = new ArrayDeque<>();
+        this.mask = size - 1;
+        this.processedTick = System.currentTimeMillis() / tickMs - 1;
+        if (sessionRegistry != null) sessionRegistry.addListener(this);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
 
     public Presence touch(Long userId, String deviceId) {
-        String key = userId + ":" + deviceId;
-        Presence p = map.get(key);
-        if (p == null) {
-            p = new Presence(userId, deviceId, Instant.now(), true);
-            map.put(key, p);
-        } else {
-            p.setLastSeen(Instant.now());
-            p.setOnline(true);
+        return touch(userId, deviceId, System.currentTimeMillis());
+    }
+
+    /** Heartbeat from a device; only the first one of a device reaches the store and the wheel. */
+    public Presence touch(long userId, String deviceId, long nowMs) {
+        boolean[] added = new boolean[1];
+        Device d = attach(userId, deviceId, nowMs, added);
+        if (added[0]) {
+            schedule(d, nowMs + expireMs);
+            boolean first = false;
+            try {
+                first = store.deviceOnline(userId, deviceId, nodeId, nowMs);
+            } catch (Exception ex) {
+                log.warn("Presence store unavailable, online user={} device={} err={}", userId, deviceId, ex.toString());
+            }
+            if (first) fire(userId, true, nowMs);
+        } else if (nowMs - d.reportedMs >= expireMs / 2) {
+            d.reportedMs = nowMs;
+            try {
+                store.heartbeat(userId, deviceId, nodeId, nowMs);
+            } catch (Exception ex) {
+                log.debug("Presence store heartbeat failed user={} err={}", userId, ex.toString());
+            }
         }
-        return p;
+        return new Presence(userId, deviceId, Instant.ofEpochMilli(nowMs), true);
     }
 
     public Presence markOffline(Long userId, String deviceId) {
-        String key = userId + ":" + deviceId;
-        Presence p = map.get(key);
-        if (p != null) p.setOnline(false);
-        return p;
+        Device d = detach(userId, deviceId, null);
+        if (d == null) return null;
+        long now = System.currentTimeMillis();
+        reportOffline(d, now);
+        return new Presence(userId, deviceId, Instant.ofEpochMilli(d.lastSeenMs), false);
     }
 
+    /** Online devices of the user on every node: one store lookup, no scan. */
     public List<Presence> snapshotForUser(Long userId) {
-        List<Presence> out = new ArrayList<Presence>();
-        for (Presence p : map.values()) if (p.getUserId().equals(userId)) out.add(p);
+        List<PresenceStore.DevicePresence> devices = store.devices(userId);
+        List<Presence> out = new ArrayList<>(devices.size());
+        for (PresenceStore.DevicePresence d : devices) {
+            out.add(new Presence(userId, d.deviceId(), Instant.ofEpochMilli(d.lastSeenMs()), true));
+        }
         return out;
     }
 
-    /** Sweep every 10s; mark offline if lastSeen is stale (> 2 * heartbeat). */
-    @Scheduled(fixedDelay = 10_000L)
+    public boolean isOnline(long userId) {
+        return !store.devices(userId).isEmpty();
+    }
+
+    /** Users with at least one device connected to this node. */
+    public int localUserCount() {
+        return users.size();
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.presence.tick-ms:1000}")
     public void sweep() {
-        Instant now = Instant.now();
-        for (Presence p : map.values()) {
-            if (p.isOnline() && now.toEpochMilli() - p.getLastSeen().toEpochMilli() > EXPIRE_MS) {
-                p.setOnline(false);
+        advance(System.currentTimeMillis());
+    }
+
+    /**
+     * Processes every wheel slot up to {@code nowMs}: devices past their deadline expire, the rest
+     * move to the slot of their new deadline. Returns how many devices were looked at.
+     */
+    public int advance(long nowMs) {
+        synchronized (sweepLock) {
+            long target = nowMs / tickMs;
+            long from = Math.max(processedTick + 1, target - mask); // a long pause still visits every slot once
+            int visited = 0;
+            List<Device> due = new ArrayList<>();
+            for (long t = from; t <= target; t++) {
+                processedTick = t;
+                ArrayDeque<Device> slot = slots[(int) (t & mask)];
+                synchronized (slot) {
+                    due.addAll(slot);
+                    slot.clear();
+                }
+                for (Device d : due) {
+                    if (d.detached) continue;
+                    visited++;
+                    long deadline = d.lastSeenMs + expireMs;
+                    if (deadline <= nowMs) {
+                        if (detach(d.userId, d.deviceId, d) != null) reportOffline(d, nowMs);
+                    } else {
+                        schedule(d, deadline);
+                    }
+                }
+                due.clear();
+            }
+            return visited;
+        }
+    }
+
+    @Override
+    public void onUserOnline(Long userId) {
+        // devices announce themselves with their first heartbeat
+    }
+
+    /** The user's last session on this node closed: its devices here are gone without waiting for expiry. */
+    @Override
+    public void onUserOffline(Long userId) {
+        UserDevices u = users.get(userId);
+        if (u == null) return;
+        List<Device> gone;
+        synchronized (u) {
+            gone = new ArrayList<>(u.devices);
+        }
+        long now = System.currentTimeMillis();
+        for (Device d : gone) {
+            if (detach(userId, d.deviceId, d) != null) reportOffline(d, now);
+        }
+    }
+
+    private Device attach(long userId, String deviceId, long nowMs, boolean[] added) {
+        while (true) {
+            UserDevices u = users.computeIfAbsent(userId, k -> new UserDevices());
+            synchronized (u) {
+                if (u.dropped) continue;
+                Device d = u.find(deviceId);
+                if (d == null) {
+                    d = new Device(userId, deviceId, nowMs);
+                    u.devices.add(d);
+                    added[0] = true;
+                } else {
+                    d.lastSeenMs = nowMs;
+                }
+                return d;
+            }
+        }
+    }
+
+    /** Removes the device (only if it is still {@code expected}, when given); null if it was not there. */
+    private Device detach(long userId, String deviceId, Device expected) {
+        UserDevices u = users.get(userId);
+        if (u == null) return null;
+        synchronized (u) {
+            Device d = u.find(deviceId);
+            if (d == null || (expected != null && d != expected)) return null;
+            u.devices.remove(d);
+            d.detached = true;
+            if (u.devices.isEmpty()) {
+                u.dropped = true;
+                users.remove(userId, u);
+            }
+            return d;
+        }
+    }
+
+    private void reportOffline(Device d, long nowMs) {
+        boolean last = false;
+        try {
+            last = store.deviceOffline(d.userId, d.deviceId, nodeId);
+        } catch (Exception ex) {
+            log.warn("Presence store unavailable, offline user={} device={} err={}", d.userId, d.deviceId, ex.toString());
+        }
+        if (last) fire(d.userId, false, nowMs);
+    }
+
+    private void schedule(Device d, long deadlineMs) {
+        long tick = Math.max((deadlineMs + tickMs - 1) / tickMs, processedTick + 1);
+        ArrayDeque<Device> slot = slots[(int) (tick & mask)];
+        synchronized (slot) {
+            slot.add(d);
+        }
+    }
+
+    private void fire(long userId, boolean online, long atMs) {
+        for (Listener l : listeners) {
+            try {
+                l.onPresenceChange(userId, online, atMs);
+            } catch (Exception ex) {
+                log.warn("Presence listener failed user={} online={} err={}", userId, online, ex.toString());
             }
         }
     }
@@ -0,0 +1,27 @@
+package com.om.Real_Time_Communication.presence;
+
+import java.util.List;
+
+/**
+ * Cluster-wide directory of online devices behind {@link PresenceRegistry}. Each node only reports
+ * device-level changes (first heartbeat, expiry, explicit offline) plus an occasional refresh, and
+ * the store tells it whether the change flipped the user as a whole, so exactly one node announces
+ * each online/offline transition.
+ */
+public interface PresenceStore {
+
+    /** A device of the user, as last reported by the node holding its connection. */
+    record DevicePresence(String deviceId, String nodeId, long lastSeenMs) {}
+
+    /** Records the device as online; true when it is the user's first online device anywhere. */
+    boolean deviceOnline(long userId, String deviceId, String nodeId, long nowMs);
+
+    /** Refreshes the last-seen time of a device already online. */
+    void heartbeat(long userId, String deviceId, String nodeId, long nowMs);
+
+    /** Removes the device; true when it was the user's last online device anywhere. */
+    boolean deviceOffline(long userId, String deviceId, String nodeId);
+
+    /** Online devices of the user on every node. */
+    List<DevicePresence> devices(long userId);
+}
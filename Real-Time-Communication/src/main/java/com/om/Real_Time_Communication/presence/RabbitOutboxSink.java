@@ -0,0 +1,68 @@
+package com.om.Real_Time_Communication.presence;
+
+import com.om.Real_Time_Communication.config.OutboxRabbitConfig;
+import com.om.Real_Time_Communication.config.RabbitConfig;
+import com.om.Real_Time_Communication.models.OutboxEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes to {@link RabbitConfig#EXCHANGE_EVENTS} with publisher confirms: the whole batch is
+ * sent first, then the confirms are collected, so a batch costs one round trip rather than one per
+ * event. Uses the dedicated template from {@link OutboxRabbitConfig}, whose connection has
+ * correlated confirms and returns enabled.
+ */
+@Component
+@ConditionalOnExpression("${outbox.enabled:false} && '${outbox.sink:rabbit}' == 'rabbit'")
+public class RabbitOutboxSink implements OutboxSink {
+
+    private static final Logger log = LoggerFactory.getLogger(RabbitOutboxSink.class);
+
+    private final RabbitTemplate rabbit;
+
+    public RabbitOutboxSink(@Qualifier("outboxRabbitTemplate") RabbitTemplate rabbit) {
+        this.rabbit = rabbit;
+    }
+
+    @Override
+    public Set<Long> publish(List<OutboxEvent> batch, long confirmTimeoutMs) {
+        List<CorrelationData> pending = new ArrayList<>(batch.size());
+        for (OutboxEvent ev : batch) {
+            CorrelationData cd = new CorrelationData(String.valueOf(ev.getId()));
+            rabbit.convertAndSend(RabbitConfig.EXCHANGE_EVENTS, OutboxSink.routingKey(ev), ev.getPayload(), msg -> {
+                msg.getMessageProperties().setMessageId("obx-" + ev.getId());
+                msg.getMessageProperties().setContentType("application/json");
+                return msg;
+            }, cd);
+            pending.add(cd);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        Set<Long> confirmed = new HashSet<>();
+        for (CorrelationData cd : pending) {
+            try {
+                long left = Math.max(0, deadline - System.nanoTime());
+                CorrelationData.Confirm confirm = cd.getFuture().get(left, TimeUnit.NANOSECONDS);
+                if (confirm.isAck() && cd.getReturned() == null) {
+                    confirmed.add(Long.valueOf(cd.getId()));
+                } else {
+                    log.warn("Outbox publish not confirmed id={} reason={}", cd.getId(), confirm.getReason());
+                }
+            } catch (Exception ex) {
+                log.warn("Outbox confirm timed out id={} err={}", cd.getId(), ex.toString());
+            }
+        }
+        return confirmed;
+    }
+}
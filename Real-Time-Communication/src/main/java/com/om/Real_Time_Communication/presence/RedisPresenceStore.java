@@ -0,0 +1,87 @@
+package com.om.Real_Time_Communication.presence;
+
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared directory in Redis (requires a {@link RedissonClient} bean): one hash per user,
+ * {@code rtc:presence:<userId>}, field deviceId, value {@code <nodeId>|<lastSeenMs>}. Online and
+ * offline are single Lua calls, so the first/last device check is atomic across nodes. The key
+ * expires two heartbeat windows after its last refresh, and devices not refreshed for that long are
+ * left out of snapshots, so a crashed node's devices disappear on their own.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.presence.store", havingValue = "redis")
+public class RedisPresenceStore implements PresenceStore {
+
+    private static final String ONLINE = """
+            local added = redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('pexpire', KEYS[1], ARGV[3])
+            if added == 1 and redis.call('hlen', KEYS[1]) == 1 then return 1 end
+            return 0
+            """;
+    private static final String OFFLINE = """
+            local v = redis.call('hget', KEYS[1], ARGV[1])
+            if not v or string.sub(v, 1, string.len(ARGV[2]) + 1) ~= ARGV[2] .. '|' then return 0 end
+            redis.call('hdel', KEYS[1], ARGV[1])
+            if redis.call('hlen', KEYS[1]) == 0 then return 1 end
+            return 0
+            """;
+
+    private final RedissonClient redisson;
+    private final long staleMs;
+
+    public RedisPresenceStore(RedissonClient redisson,
+                              @Value("${rtc.presence.expire-ms:30000}") long expireMs) {
+        this.redisson = redisson;
+        this.staleMs = expireMs * 2;
+    }
+
+    @Override
+    public boolean deviceOnline(long userId, String deviceId, String nodeId, long nowMs) {
+        Long first = redisson.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, ONLINE,
+                RScript.ReturnType.INTEGER, List.<Object>of(key(userId)),
+                deviceId, nodeId + "|" + nowMs, String.valueOf(staleMs));
+        return first != null && first == 1L;
+    }
+
+    @Override
+    public void heartbeat(long userId, String deviceId, String nodeId, long nowMs) {
+        redisson.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE, ONLINE,
+                RScript.ReturnType.INTEGER, List.<Object>of(key(userId)),
+                deviceId, nodeId + "|" + nowMs, String.valueOf(staleMs));
+    }
+
+    @Override
+    public boolean deviceOffline(long userId, String deviceId, String nodeId) {
+        Long last = redisson.getScript(StringCodec.INSTANCE).eval(RScript.Mode.READ_WRITE, OFFLINE,
+                RScript.ReturnType.INTEGER, List.<Object>of(key(userId)), deviceId, nodeId);
+        return last != null && last == 1L;
+    }
+
+    @Override
+    public List<DevicePresence> devices(long userId) {
+        Map<String, String> all = redisson.<String, String>getMap(key(userId), StringCodec.INSTANCE).readAllMap();
+        long cutoff = System.currentTimeMillis() - staleMs;
+        List<DevicePresence> out = new ArrayList<>(all.size());
+        all.forEach((deviceId, value) -> {
+            int sep = value.lastIndexOf('|');
+            if (sep < 0) return;
+            long lastSeen = Long.parseLong(value.substring(sep + 1));
+            if (lastSeen >= cutoff) out.add(new DevicePresence(deviceId, value.substring(0, sep), lastSeen));
+        });
+        return out;
+    }
+
+    private static String key(long userId) {
+        return "rtc:presence:" + userId;
+    }
+}
@@ -1,59 +1,168 @@
 package com.om.Real_Time_Communication.presence;
 
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import com.om.Real_Time_Communication.utility.StripedLongMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Who is typing, per room. Start/stop events only update state; every {@code rtc.typing.flush-ms}
+ * the rooms touched since the last flush are compared with what was last sent. Idle rooms are never
+ * visited. Two destinations are fed from the same state:
+ * <ul>
+ *   <li>{@code /topic/room/{roomId}/v2/typing}: one aggregate {@code {type, roomId, userIds}} frame
+ *       when the set of typing users changed, at most one per {@code rtc.typing.room-min-gap-ms}.</li>
+ *   <li>{@code /topic/room/{roomId}/typing}: the original per-user
+ *       {@code {type, userId, deviceId, typing, expiresAt}} frames, for clients that have not moved
+ *       to v2. A user's start and stop are sent once each instead of on every keystroke, and a
+ *       continuing typist is re-sent shortly before the announced {@code expiresAt} runs out.</li>
+ * </ul>
+ */
 @Component
 public class TypingRegistry {
 
-    @Data
-    public static class TypingKey { private Long roomId; private Long userId; private String deviceId;
+    public static final String LEGACY_SUFFIX = "/typing";
+    public static final String AGGREGATE_SUFFIX = "/v2/typing";
 
-        public TypingKey(Long roomId, Long userId, String deviceId) {
-            this.roomId = roomId;
-            this.userId = userId;
-            this.deviceId = deviceId;
-        }
-    }
-    @Data
-    public static class Entry { private Instant expiresAt;
+    /** What a legacy subscriber was last told about a typing user. */
+    private record Announced(String deviceId, long expiresAt) {}
 
-        public Entry(Instant expiresAt) {
-            this.expiresAt = expiresAt;
-        }
+    private static final class RoomTyping {
+        final long roomId;
+        final Map<Long, Map<String, Long>> expiresAt = new HashMap<>(); // userId -> deviceId -> ms; guarded by this
+        final Map<Long, Announced> announced = new HashMap<>(); // legacy destination; guarded by this
+        List<Long> lastSent = List.of();
+        long lastSentMs = Long.MIN_VALUE / 2;
+        boolean dropped;
 
-        public Instant getExpiresAt() {
-            return expiresAt;
+        RoomTyping(long roomId) {
+            this.roomId = roomId;
         }
 
-        public void setExpiresAt(Instant expiresAt) {
-            this.expiresAt = expiresAt;
+        List<Long> typingUsers() {
+            List<Long> ids = new ArrayList<>(expiresAt.keySet());
+            Collections.sort(ids);
+            return ids;
         }
     }
+    private final SimpMessagingTemplate messaging;
+    private final long minGapMs;
+    private final StripedLongMap<RoomTyping> rooms = new StripedLongMap<>();
+    // rooms with typists or an unsent change; the flush only walks these
+    private final Set<RoomTyping> active = ConcurrentHashMap.newKeySet();
 
-    private final Map<TypingKey, Entry> map = new ConcurrentHashMap<TypingKey, Entry>();
+    public TypingRegistry(SimpMessagingTemplate messaging,
+                          @Value("${rtc.typing.room-min-gap-ms:1000}") long minGapMs) {
+        this.messaging = messaging;
+        this.minGapMs = minGapMs;
+    }
 
     public Instant start(Long roomId, Long userId, String deviceId, long ttlMs) {
-        Instant exp = Instant.now().plusMillis(ttlMs);
-        map.put(new TypingKey(roomId, userId, deviceId), new Entry(exp));
-        return exp;
+        return start(roomId, userId, deviceId, ttlMs, System.currentTimeMillis());
+    }
+
+    public Instant start(long roomId, long userId, String deviceId, long ttlMs, long nowMs) {
+        long exp = nowMs + ttlMs;
+        while (true) {
+            RoomTyping room = rooms.computeIfAbsent(roomId, RoomTyping::new);
+            synchronized (room) {
+                if (room.dropped) continue;
+                room.expiresAt.computeIfAbsent(userId, k -> new HashMap<>(2)).put(deviceId, exp);
+            }
+            active.add(room);
+            return Instant.ofEpochMilli(exp);
+        }
     }
 
     public void stop(Long roomId, Long userId, String deviceId) {
-        map.remove(new TypingKey(roomId, userId, deviceId));
+        RoomTyping room = rooms.get(roomId);
+        if (room == null) return;
+        synchronized (room) {
+            Map<String, Long> devices = room.expiresAt.get(userId);
+            if (devices == null) return;
+            devices.remove(deviceId);
+            if (devices.isEmpty()) room.expiresAt.remove(userId);
+        }
+        active.add(room);
     }
 
-    @Scheduled(fixedDelay = 2000L)
+    @Scheduled(fixedDelayString = "${rtc.typing.flush-ms:500}")
     public void sweep() {
-        Instant now = Instant.now();
-        for (Map.Entry<TypingKey, Entry> e : map.entrySet()) {
-            if (now.isAfter(e.getValue().getExpiresAt())) map.remove(e.getKey());
+        flush(System.currentTimeMillis());
+    }
+
+    /** Expires stale typists and sends the rooms whose typing set changed. Returns aggregate frames sent. */
+    public int flush(long nowMs) {
+        int frames = 0;
+        for (RoomTyping room : active) {
+            List<Long> send = null;
+            List<Map<String, Object>> legacy;
+            synchronized (room) {
+                room.expiresAt.values().forEach(devices -> devices.values().removeIf(exp -> exp <= nowMs));
+                room.expiresAt.values().removeIf(Map::isEmpty);
+                List<Long> current = room.typingUsers();
+                boolean changed = !current.equals(room.lastSent);
+                if (changed && nowMs - room.lastSentMs >= minGapMs) {
+                    send = current;
+                    room.lastSent = current;
+                    room.lastSentMs = nowMs;
+                    changed = false;
+                }
+                legacy = legacyFrames(room, nowMs);
+                if (!changed && current.isEmpty()) {
+                    room.dropped = true;
+                    rooms.remove(room.roomId, room);
+                    active.remove(room);
+                }
+            }
+            String topic = "/topic/room/" + room.roomId;
+            for (Map<String, Object> ev : legacy) messaging.convertAndSend(topic + LEGACY_SUFFIX, ev);
+            if (send != null) {
+                Map<String, Object> ev = new HashMap<>();
+                ev.put("type", "typing");
+                ev.put("roomId", room.roomId);
+                ev.put("userIds", send);
+                messaging.convertAndSend(topic + AGGREGATE_SUFFIX, ev);
+                frames++;
+            }
+        }
+        return frames;
+    }
+
+    /** Starts, stops and refreshes owed to legacy subscribers; caller holds the room's monitor. */
+    private List<Map<String, Object>> legacyFrames(RoomTyping room, long nowMs) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        Iterator<Map.Entry<Long, Announced>> it = room.announced.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Long, Announced> e = it.next();
+            if (!room.expiresAt.containsKey(e.getKey())) {
+                out.add(legacyFrame(e.getKey(), e.getValue().deviceId(), false, 0));
+                it.remove();
+            }
         }
+        room.expiresAt.forEach((userId, devices) -> {
+            Map.Entry<String, Long> latest = Collections.max(devices.entrySet(), Map.Entry.comparingByValue());
+            Announced prev = room.announced.get(userId);
+            if (prev == null || (latest.getValue() > prev.expiresAt() && prev.expiresAt() - nowMs <= minGapMs)) {
+                room.announced.put(userId, new Announced(latest.getKey(), latest.getValue()));
+                out.add(legacyFrame(userId, latest.getKey(), true, latest.getValue()));
+            }
+        });
+        return out;
+    }
+
+    private static Map<String, Object> legacyFrame(long userId, String deviceId, boolean typing, long expiresAt) {
+        Map<String, Object> ev = new HashMap<>();
+        ev.put("type", "typing");
+        ev.put("userId", userId);
+        ev.put("deviceId", deviceId);
+        ev.put("typing", typing);
+        if (typing) ev.put("expiresAt", Instant.ofEpochMilli(expiresAt));
+        return ev;
     }
 }
@@ -1,76 +1,227 @@
 package com.om.Real_Time_Communication.security;
 
+import com.om.Real_Time_Communication.utility.RtcMetrics;
+import com.om.Real_Time_Communication.utility.StripedLongMap;
 import io.micrometer.common.lang.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketSession;
 
-import java.util.Collections;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
-// SessionRegistry.java
+/**
+ * WebSocket sessions on this node, indexed by primitive user id. Each user maps to an immutable
+ * snapshot of their sessions that is replaced on connect/disconnect, so the delivery-path lookups
+ * ({@link #getSessions}, {@link #sessions}, {@link #hasActive}) read one array and allocate nothing.
+ */
 @Component
 public class SessionRegistry {
 
-    private final ConcurrentMap<String, WebSocketSession> bySession = new ConcurrentHashMap<>();
-    private final ConcurrentMap<Long, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+    /** Told when a user gets a first session on this node and when the last one closes. */
+    public interface Listener {
+        void onUserOnline(Long userId);
+        void onUserOffline(Long userId);
+    }
+
+    /** A connected session and what we know about it. */
+    public static final class SessionInfo {
+        private final WebSocketSession session;
+        private final long userId;
+        private final String deviceId;
+        private final long connectedAtMs;
+        private final AtomicInteger queueDepth = new AtomicInteger();
+
+        SessionInfo(WebSocketSession session, long userId, String deviceId, long connectedAtMs) {
+            this.session = session;
+            this.userId = userId;
+            this.deviceId = deviceId;
+            this.connectedAtMs = connectedAtMs;
+        }
+
+        public WebSocketSession session() {
+            return session;
+        }
+
+        public String sessionId() {
+            return session.getId();
+        }
+
+        public long userId() {
+            return userId;
+        }
+
+        public String deviceId() {
+            return deviceId;
+        }
+
+        public long connectedAtMs() {
+            return connectedAtMs;
+        }
+
+        /** Frames handed to this session's outbound path and not yet written. */
+        public AtomicInteger queueDepth() {
+            return queueDepth;
+        }
+    }
+
+    private static final SessionInfo[] NONE = new SessionInfo[0];
+
+    /** Copy-on-write snapshot of one user's sessions; never mutated once published. */
+    private static final class UserSessions {
+        final long userId;
+        final SessionInfo[] infos;
+        final List<WebSocketSession> sessions;
+
+        UserSessions(long userId, SessionInfo[] infos) {
+            this.userId = userId;
+            this.infos = infos;
+            WebSocketSession[] ws = new WebSocketSession[infos.length];
+            for (int i = 0; i < infos.length; i++) ws[i] = infos[i].session;
+            this.sessions = List.of(ws);
+        }
+    }
+
+    private final ConcurrentMap<String, SessionInfo> bySession = new ConcurrentHashMap<>();
+    private final StripedLongMap<UserSessions> byUser = new StripedLongMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger userCount = new AtomicInteger();
+    private final AtomicInteger sessionCount = new AtomicInteger();
+    private final RtcMetrics metrics;
+
+    public SessionRegistry() {
+        this(null);
+    }
+
+    @Autowired
+    public SessionRegistry(@Nullable RtcMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
 
     public void onOpen(Long userId, WebSocketSession s) {
-        bySession.put(s.getId(), s);
-        sessionsByUser.computeIfAbsent(userId, k -> Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()))
-                .add(s.getId());
+        Object device = s.getAttributes().get("deviceId");
+        SessionInfo info = new SessionInfo(s, userId, device != null ? device.toString() : "default",
+                System.currentTimeMillis());
+        if (bySession.putIfAbsent(s.getId(), info) != null) return;
+        sessionCount.incrementAndGet();
+        if (metrics != null) metrics.onWsOpen();
+        boolean[] first = new boolean[1];
+        byUser.compute(userId, (k, cur) -> {
+            if (cur == null) {
+                first[0] = true;
+                return new UserSessions(k, new SessionInfo[]{info});
+            }
+            SessionInfo[] next = Arrays.copyOf(cur.infos, cur.infos.length + 1);
+            next[cur.infos.length] = info;
+            return new UserSessions(k, next);
+        });
+        if (first[0]) {
+            userCount.incrementAndGet();
+            if (metrics != null) metrics.onUserOnline();
+            for (Listener l : listeners) l.onUserOnline(userId);
+        }
     }
 
     public void onClose(WebSocketSession s, @Nullable Long userId) {
-        bySession.remove(s.getId());
-        if (userId != null) {
-            Set<String> set = sessionsByUser.get(userId);
-            if (set != null) {
-                set.remove(s.getId());
-                if (set.isEmpty()) sessionsByUser.remove(userId);
+        SessionInfo info = bySession.remove(s.getId());
+        if (info == null) return;
+        sessionCount.decrementAndGet();
+        if (metrics != null) metrics.onWsClose();
+        boolean[] last = new boolean[1];
+        byUser.compute(info.userId, (k, cur) -> {
+            if (cur == null) return null;
+            int i = 0;
+            while (i < cur.infos.length && cur.infos[i] != info) i++;
+            if (i == cur.infos.length) return cur;
+            if (cur.infos.length == 1) {
+                last[0] = true;
+                return null;
             }
+            SessionInfo[] next = new SessionInfo[cur.infos.length - 1];
+            System.arraycopy(cur.infos, 0, next, 0, i);
+            System.arraycopy(cur.infos, i + 1, next, i, next.length - i);
+            return new UserSessions(k, next);
+        });
+        if (last[0]) {
+            userCount.decrementAndGet();
+            if (metrics != null) metrics.onUserOffline();
+            for (Listener l : listeners) l.onUserOffline(info.userId);
         }
     }
 
+    /** Users with at least one session registered on this node. */
+    public Set<Long> localUserIds() {
+        Set<Long> ids = new HashSet<>(userCount.get() * 2);
+        byUser.forEachValue(u -> ids.add(u.userId));
+        return ids;
+    }
+
     /** Return true if the user has at least one open session. */
     public boolean hasActive(Long userId) {
-        Set<String> ids = sessionsByUser.get(userId);
-        if (ids == null || ids.isEmpty()) return false;
-        for (String sid : ids) {
-            WebSocketSession s = bySession.get(sid);
-            if (s != null && s.isOpen()) return true;
+        for (SessionInfo info : sessions(userId)) {
+            if (info.session.isOpen()) return true;
         }
         return false;
     }
 
     /**
-     * Return all currently known sessions for the given user. The returned set only
-     * contains sessions that are still open at the time of the call.
+     * The user's sessions with their metadata. The array is a shared snapshot: callers must not
+     * modify it, and a session may have closed since it was taken.
+     */
+    public SessionInfo[] sessions(long userId) {
+        UserSessions u = byUser.get(userId);
+        return u != null ? u.infos : NONE;
+    }
+
+    /**
+     * Return all currently known sessions for the given user that are still open. While every
+     * session is open (the normal case; closed ones are removed on close) this is the shared
+     * immutable snapshot and nothing is allocated.
      */
-    public Set<WebSocketSession> getSessions(Long userId) {
-        Set<String> ids = sessionsByUser.get(userId);
-        if (ids == null || ids.isEmpty()) return Collections.emptySet();
-        Set<WebSocketSession> sessions = new HashSet<>();
-        for (String sid : ids) {
-            WebSocketSession s = bySession.get(sid);
-            if (s != null && s.isOpen()) {
-                sessions.add(s);
+    public Collection<WebSocketSession> getSessions(Long userId) {
+        UserSessions u = byUser.get(userId);
+        if (u == null) return List.of();
+        for (SessionInfo info : u.infos) {
+            if (!info.session.isOpen()) {
+                List<WebSocketSession> open = new ArrayList<>(u.infos.length);
+                for (SessionInfo i : u.infos) if (i.session.isOpen()) open.add(i.session);
+                return open;
             }
         }
-        return sessions;
+        return u.sessions;
+    }
+
+    public @Nullable SessionInfo session(String sessionId) {
+        return bySession.get(sessionId);
+    }
+
+    public int connectedUsers() {
+        return userCount.get();
+    }
+
+    public int connectedSessions() {
+        return sessionCount.get();
     }
 
     /** Close all open sessions for userId, return how many were closed. */
     public int kickUser(Long userId, String reason) {
-        Set<String> ids = sessionsByUser.get(userId);
-        if (ids == null) return 0;
         int n = 0;
-        for (String sid : ids) {
-            WebSocketSession s = bySession.get(sid);
-            if (s != null && s.isOpen()) {
+        for (SessionInfo info : sessions(userId)) {
+            WebSocketSession s = info.session;
+            if (s.isOpen()) {
                 try {
                     s.close(CloseStatus.NORMAL.withReason(reason));
                     n++;
@@ -0,0 +1,192 @@
+package com.om.Real_Time_Communication.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.utility.BlindRoomIndex;
+import io.micrometer.common.lang.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Search for end-to-end encrypted rooms. Clients attach blind tokens to a message: for every
+ * normalized term, the first 8 bytes of HMAC-SHA256 under a search key derived from the room key,
+ * which the server never has; a query is the same tokens for the search terms. Tokens are kept
+ * with the message ({@code chat_message.search_tokens}, and in its archive segment once
+ * {@link HistoryArchiveService} has moved it out of the table); a room's {@link BlindRoomIndex} is
+ * built from both tiers, archive first, the first time it is searched and kept while it fits in
+ * {@code rtc.search.blind.max-bytes}, taking new messages as they commit.
+ *
+ * A room is loaded into a fresh index that nobody else can see, so messages committing meanwhile
+ * are parked with the load instead of waiting for it, and replayed once the index is published.
+ * Caffeine weighs an index when it is stored, so one that keeps taking messages is stored again
+ * each time it has grown by an eighth.
+ */
+@Component
+public class BlindSearchIndex {
+
+    /** What {@code chat_message.search_tokens} holds. */
+    static final int MAX_TOKENS = 256;
+
+    private static final int REWEIGH_MIN_ADDS = 64;
+
+    /** A loaded room and its message count when it was last weighed. */
+    private static final class Held {
+        final BlindRoomIndex index;
+        final AtomicInteger weighedAt;
+
+        Held(BlindRoomIndex index) {
+            this.index = index;
+            this.weighedAt = new AtomicInteger(index.messages());
+        }
+    }
+
+    /** A room being loaded: the callers waiting for it and the messages that committed meanwhile. */
+    private static final class Loading {
+        final CompletableFuture<Held> done = new CompletableFuture<>();
+        private List<Object[]> parked = new ArrayList<>(); // {id, tokens}; null once published
+
+        synchronized boolean park(long id, byte[] tokens) {
+            if (parked == null) return false;
+            parked.add(new Object[]{id, tokens});
+            return true;
+        }
+
+        synchronized void replayInto(BlindRoomIndex idx) {
+            for (Object[] m : parked) idx.add((Long) m[0], (byte[]) m[1]);
+            parked = null;
+        }
+    }
+
+    private final ChatMessageRepository chatMessageRepository;
+    @Nullable
+    private final HistoryArchiveService archive;
+    private final int maxTokens;
+    private final int loadPageSize;
+    private final Cache<Long, Held> rooms;
+    private final ConcurrentMap<Long, Loading> loading = new ConcurrentHashMap<>();
+
+    public BlindSearchIndex(ChatMessageRepository chatMessageRepository,
+                            @Nullable HistoryArchiveService archive,
+                            @Value("${rtc.search.blind.max-tokens:256}") int maxTokens,
+                            @Value("${rtc.search.blind.max-bytes:268435456}") long maxBytes,
+                            @Value("${rtc.search.blind.load-page-size:5000}") int loadPageSize) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.archive = archive;
+        this.maxTokens = Math.min(maxTokens, MAX_TOKENS);
+        this.loadPageSize = loadPageSize;
+        this.rooms = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Long roomId, Held held) -> (int) Math.min(Integer.MAX_VALUE, held.index.sizeInBytes()))
+                .build();
+    }
+
+    /** Ids of up to {@code limit} messages of the room carrying every token, newest first. */
+    public BlindRoomIndex.Page search(Long roomId, long[] tokens, int limit, String cursor) {
+        Held held = rooms.getIfPresent(roomId);
+        if (held == null) held = loaded(roomId);
+        return held.index.search(tokens, limit, cursor);
+    }
+
+    /** The tokens a client sent with a message, or null for none; rejects anything malformed. */
+    public byte[] checkTokens(byte[] tokens) {
+        if (tokens == null || tokens.length == 0) return null;
+        if (tokens.length % 8 != 0) throw new IllegalArgumentException("searchTokens must be 8-byte tokens");
+        if (tokens.length / 8 > maxTokens) throw new IllegalArgumentException("too many searchTokens");
+        return tokens;
+    }
+
+    /**
+     * Adds a stored message to its room's index, after commit when called inside a transaction;
+     * rooms not held in memory, or not loaded yet, read it from the table.
+     */
+    public void messageAdded(Long roomId, Long id, byte[] tokens) {
+        if (tokens == null || tokens.length == 0) return;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    addLoaded(roomId, id, tokens);
+                }
+            });
+        } else {
+            addLoaded(roomId, id, tokens);
+        }
+    }
+
+    private void addLoaded(Long roomId, Long id, byte[] tokens) {
+        Held held = rooms.getIfPresent(roomId);
+        if (held == null) {
+            Loading l = loading.get(roomId);
+            if (l != null && l.park(id, tokens)) return;
+            held = rooms.getIfPresent(roomId); // published in between
+            if (held == null) return;
+        }
+        held.index.add(id, tokens);
+        int n = held.index.messages();
+        int weighed = held.weighedAt.get();
+        if (n - weighed >= Math.max(REWEIGH_MIN_ADDS, weighed / 8) && held.weighedAt.compareAndSet(weighed, n)) {
+            rooms.asMap().replace(roomId, held, held); // weighed again on the write
+        }
+    }
+
+    /** Rooms held in memory. */
+    public long loadedRooms() {
+        return rooms.estimatedSize();
+    }
+
+    /** Loads the room, or waits for the caller already loading it. */
+    private Held loaded(Long roomId) {
+        Loading mine = new Loading();
+        Loading l = loading.putIfAbsent(roomId, mine);
+        if (l != null) return l.done.join();
+        try {
+            Held held = rooms.getIfPresent(roomId); // published by a load that finished before ours began
+            if (held == null) {
+                BlindRoomIndex idx = new BlindRoomIndex();
+                load(roomId, idx);
+                held = new Held(idx);
+                rooms.put(roomId, held);
+            }
+            // Published first: a message committing from here on goes straight to the index
+            mine.replayInto(held.index);
+            mine.done.complete(held);
+            return held;
+        } catch (RuntimeException ex) {
+            mine.done.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            loading.remove(roomId, mine);
+        }
+    }
+
+    private void load(Long roomId, BlindRoomIndex idx) {
+        if (archive != null) {
+            // Archived messages all precede the hot ones, so ordinals stay in time order
+            for (Object[] row : archive.blindTokens(roomId)) idx.add((Long) row[0], (byte[]) row[1]);
+        }
+        Instant ts = Instant.EPOCH;
+        long afterId = 0L;
+        List<Object[]> page;
+        do {
+            page = chatMessageRepository.blindTokensPage(roomId, ts, afterId, PageRequest.of(0, loadPageSize));
+            for (Object[] row : page) {
+                afterId = (Long) row[0];
+                ts = (Instant) row[1];
+                idx.add(afterId, (byte[]) row[2]);
+            }
+        } while (page.size() == loadPageSize);
+        idx.sealBulk();
+    }
+}
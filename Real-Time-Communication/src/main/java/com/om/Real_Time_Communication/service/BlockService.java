@@ -6,7 +6,6 @@ import com.om.Real_Time_Communication.models.UserBlock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -15,9 +14,12 @@ public class BlockService {
     @Autowired
     private UserBlockRepository blockRepo;
 
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
     public boolean isBlocked(String senderId, String receiverId) {
-        List<UserBlock> block = blockRepo.findActiveBlockBetween(senderId, receiverId);
-        return !block.isEmpty(); // If any active block exists → blocked
+        // Cached per unordered pair: any active block in either direction → blocked
+        return roomAccessCache.isBlocked(senderId, receiverId);
     }
 
     public void blockUser(String blockerId, String blockedId) {
@@ -26,6 +28,7 @@ public class BlockService {
         if (existing.isPresent()) {
             UserBlock userBlock = existing.get();
             userBlock.setStatus(BlockStatus.BLOCKED);
+            blockRepo.save(userBlock);
         } else {
             UserBlock userBlock = new UserBlock();
             userBlock.setBlockerId(blockerId);
@@ -33,6 +36,7 @@ public class BlockService {
             userBlock.setStatus(BlockStatus.BLOCKED);
             blockRepo.save(userBlock);
         }
+        roomAccessCache.invalidateBlock(blockerId, blockedId);
     }
 
     public void unblockUser(String blockerId, String blockedId) {
@@ -40,6 +44,7 @@ public class BlockService {
             block.setStatus(BlockStatus.UNBLOCKED);
             blockRepo.save(block);
         });
+        roomAccessCache.invalidateBlock(blockerId, blockedId);
     }
 
 }
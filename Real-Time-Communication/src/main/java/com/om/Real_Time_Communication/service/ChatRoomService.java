@@ -30,6 +30,9 @@ public class ChatRoomService {
     @Autowired
     private UserServiceClient userServiceClient;
 
+    @Autowired
+    private RoomAccessCache roomAccessCache;
+
     @PersistenceContext
     private EntityManager entityManager;
 
@@ -86,6 +89,8 @@ public class ChatRoomService {
             }
 
         }
+        roomAccessCache.invalidateRoom(savedRoom.getId());
+        userIds.forEach(roomAccessCache::invalidateUserRooms);
 
         return savedRoom;
     }
@@ -136,6 +141,9 @@ public class ChatRoomService {
         p2.setRole(Role.MEMBER);
 
         participantRepository.saveAll(List.of(p1, p2));
+        roomAccessCache.invalidateRoom(saved.getId());
+        roomAccessCache.invalidateUserRooms(userId);
+        roomAccessCache.invalidateUserRooms(otherUserId);
         return saved;
     }
 
@@ -157,7 +165,9 @@ public class ChatRoomService {
         if (request.getImageUrl() != null) room.setImageUrl(request.getImageUrl());
         room.setUpdatedAt(LocalDateTime.now());
 
-        return chatRoomRepository.save(room);
+        ChatRoom saved = chatRoomRepository.save(room);
+        roomAccessCache.invalidateRoom(saved.getId());
+        return saved;
     }
 
 
@@ -191,10 +201,13 @@ public class ChatRoomService {
 
         room.setAllowMembersToEditMetadata(allow);
         chatRoomRepository.save(room);
+        roomAccessCache.invalidateRoom(room.getId());
     }
 
     public void leaveGroup(Long userId, Long roomId) {
         participantRepository.deleteByUserIdAndChatRoom(userId, roomId);
+        roomAccessCache.invalidateRoom(roomId);
+        roomAccessCache.invalidateUserRooms(userId);
     }
 
     public void removeMember(String userId, Long userIdToRemove, Long roomId) throws AccessDeniedException {
@@ -213,6 +226,8 @@ public class ChatRoomService {
 
         // Same admin check logic
         participantRepository.deleteByUserIdAndChatRoom(userIdToRemove, roomId);
+        roomAccessCache.invalidateRoom(roomId);
+        roomAccessCache.invalidateUserRooms(userIdToRemove);
     }
 
     public void addParticipantToGroup(String userId, Long userToAdd, Long chatRoomId) throws AccessDeniedException {
@@ -238,6 +253,8 @@ public class ChatRoomService {
         participant.setJoinedAt(LocalDateTime.now());
         participant.setRole(Role.MEMBER);
         participantRepository.save(participant);
+        roomAccessCache.invalidateRoom(chatRoomId);
+        roomAccessCache.invalidateUserRooms(userToAdd);
     }
 
     public void toggleAllowMemberstoAdd(String adminId, Long roomId, boolean allow) throws AccessDeniedException {
@@ -253,6 +270,7 @@ public class ChatRoomService {
 
         room.setAllowMembersToAddMembers(allow);
         chatRoomRepository.save(room);
+        roomAccessCache.invalidateRoom(roomId);
     }
 
 
@@ -260,6 +278,6 @@ public class ChatRoomService {
 
     public boolean canPublish(Long userId, Long roomId) {
         // basic membership check; extend with roles/mute/ban as needed
-        return participantRepository.existsByRoomIdAndUserId(roomId, userId);
+        return roomAccessCache.isMember(userId, roomId);
     }
 }
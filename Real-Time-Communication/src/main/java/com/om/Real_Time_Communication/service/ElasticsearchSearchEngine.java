@@ -0,0 +1,136 @@
+package com.om.Real_Time_Communication.service;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.Operator;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import io.micrometer.common.lang.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Message search on the cluster. Documents are indexed with the room id as routing key (see
+ * {@code BulkIndexer}), so a room lives on one shard:
+ * <ul>
+ *   <li>in-room search goes to that shard only;</li>
+ *   <li>up to {@code rtc.search.routed-rooms} rooms, the query is routed to their shards and
+ *       filtered by a terms list of that size;</li>
+ *   <li>beyond that, instead of sending thousands of room ids with every query, the filter is a
+ *       terms lookup on the user's membership document in {@value #MEMBERSHIP_INDEX}, which the
+ *       cluster fetches once and caches as a bitset. Each node remembers the exact room set it
+ *       last wrote per user and rewrites the document when the set differs, or when
+ *       {@link RoomAccessCache} reports the user's rooms changed on any node.</li>
+ * </ul>
+ * The room filter is part of the query either way, so the cluster pages over the user's rooms only.
+ * Another node may still have written a different set in between, so hits are also checked against
+ * {@code roomIds}: the document only narrows the query, it never grants access. A hit dropped by
+ * that check does not shorten the page; the search continues after the last hit the cluster
+ * returned until the page is full or the cluster runs out. Text matches need every term; hits are
+ * sorted by (createdAt, messageId) for search_after.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.search.engine", havingValue = "elasticsearch", matchIfMissing = true)
+public class ElasticsearchSearchEngine implements MessageSearchEngine {
+
+    public static final String MEMBERSHIP_INDEX = "rtc_user_rooms";
+
+    private static final Sort ORDER = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("messageId"));
+
+    private final ElasticsearchOperations es;
+    private final int routedRooms;
+    private final Cache<Long, long[]> syncedMembership; // user id -> sorted room ids last written
+
+    public ElasticsearchSearchEngine(ElasticsearchOperations es,
+                                     RoomAccessCache roomAccessCache,
+                                     @Value("${rtc.search.routed-rooms:64}") int routedRooms,
+                                     @Value("${rtc.search.membership.max-room-ids:2000000}") long maxSyncedRoomIds) {
+        this.es = es;
+        this.routedRooms = routedRooms;
+        this.syncedMembership = Caffeine.newBuilder()
+                .maximumWeight(maxSyncedRoomIds)
+                .weigher((Long userId, long[] rooms) -> rooms.length)
+                .expireAfterWrite(Duration.ofMinutes(10)) // rewritten now and then, in case another node lagged
+                .build();
+        roomAccessCache.onUserRoomsChanged(syncedMembership::invalidate);
+    }
+
+    @Override
+    public List<SearchMessageDoc> search(Long userId, List<Long> roomIds, String query, int limit,
+                                         @Nullable Instant beforeTs, @Nullable String beforeId) {
+        if (roomIds.isEmpty()) return List.of();
+        NativeQueryBuilder nq = NativeQuery.builder();
+        Query rooms;
+        if (roomIds.size() <= routedRooms) {
+            nq.withRoute(roomIds.stream().map(String::valueOf).distinct().collect(Collectors.joining(",")));
+            rooms = roomIds.size() == 1
+                    ? Query.of(f -> f.term(t -> t.field("roomId").value(roomIds.get(0).longValue())))
+                    : Query.of(f -> f.terms(t -> t.field("roomId")
+                            .terms(v -> v.value(roomIds.stream().map(id -> FieldValue.of(id.longValue())).toList()))));
+        } else {
+            syncMembership(userId, roomIds);
+            rooms = Query.of(f -> f.terms(t -> t.field("roomId")
+                    .terms(v -> v.lookup(l -> l.index(MEMBERSHIP_INDEX).id(String.valueOf(userId)).path("rooms")))));
+        }
+        nq.withQuery(q -> q.bool(b -> {
+                    b.filter(rooms);
+                    if (query != null && !query.isBlank()) {
+                        b.must(m -> m.match(mm -> mm.field("text").query(query).operator(Operator.And)));
+                    }
+                    return b;
+                }))
+                .withSort(ORDER)
+                .withTrackTotalHits(false)
+                .withPageable(PageRequest.of(0, limit));
+        List<Object> after = beforeTs != null && beforeId != null ? List.of(beforeTs.toEpochMilli(), beforeId) : null;
+
+        Set<Long> allowed = new HashSet<>(roomIds);
+        List<SearchMessageDoc> out = new ArrayList<>(limit);
+        for (;;) {
+            if (after != null) nq.withSearchAfter(after);
+            List<SearchHit<SearchMessageDoc>> hits = es.search(nq.build(), SearchMessageDoc.class,
+                    IndexCoordinates.of(SearchMessageDoc.INDEX)).getSearchHits();
+            for (SearchHit<SearchMessageDoc> hit : hits) {
+                if (out.size() == limit) break;
+                if (allowed.contains(hit.getContent().getRoomId())) out.add(hit.getContent());
+            }
+            if (out.size() == limit || hits.size() < limit) return out;
+            after = hits.get(hits.size() - 1).getSortValues(); // past what was dropped, not just what was kept
+        }
+    }
+
+    private void syncMembership(Long userId, List<Long> roomIds) {
+        long[] rooms = roomIds.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        long[] synced = syncedMembership.getIfPresent(userId);
+        if (synced != null && Arrays.equals(synced, rooms)) return;
+        StringBuilder json = new StringBuilder(rooms.length * 8 + 16).append("{\"rooms\":[");
+        for (int i = 0; i < rooms.length; i++) {
+            if (i > 0) json.append(',');
+            json.append(rooms[i]);
+        }
+        json.append("]}");
+        // the lookup reads the document in real time, so no refresh is needed before querying
+        es.index(new IndexQueryBuilder().withId(String.valueOf(userId)).withSource(json.toString()).build(),
+                IndexCoordinates.of(MEMBERSHIP_INDEX));
+        syncedMembership.put(userId, rooms);
+    }
+}
@@ -0,0 +1,115 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.Repository.JobStateRepository;
+import com.om.Real_Time_Communication.models.JobState;
+import com.om.Real_Time_Communication.models.MessageEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves payloads still inline in {@code chat_message} (rows written before envelopes moved out)
+ * into the {@link EnvelopeStore}, walking by id in pages of {@code rtc.envelope.backfill.page-size}.
+ * Each envelope is stored before its row is pointed at it and the inline columns are cleared, so
+ * an interrupted run just resumes. The space comes back after {@code OPTIMIZE TABLE chat_message};
+ * the emptied columns can then be dropped. Runs at startup and on {@code rtc.envelope.backfill.cron}
+ * until a run gets through the whole table; that is recorded in {@code rtc_job_state} and later
+ * runs return at once (delete the {@value #JOB} row to walk the table again).
+ */
+@Component
+public class EnvelopeBackfillJob {
+
+    private static final Logger log = LoggerFactory.getLogger(EnvelopeBackfillJob.class);
+
+    static final String JOB = "envelope-backfill";
+
+    private final EnvelopeStore store;
+    private final JdbcTemplate jdbc;
+    private final JobStateRepository jobStates;
+    private final int pageSize;
+    private final boolean onStart;
+
+    public EnvelopeBackfillJob(EnvelopeStore store,
+                               JdbcTemplate jdbc,
+                               JobStateRepository jobStates,
+                               @Value("${rtc.envelope.backfill.page-size:500}") int pageSize,
+                               @Value("${rtc.envelope.backfill.on-start:true}") boolean onStart) {
+        this.store = store;
+        this.jdbc = jdbc;
+        this.jobStates = jobStates;
+        this.pageSize = pageSize;
+        this.onStart = onStart;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStart() {
+        if (onStart) backfill();
+    }
+
+    @Scheduled(cron = "${rtc.envelope.backfill.cron:-}")
+    public void scheduledBackfill() {
+        backfill();
+    }
+
+    /** Returns the number of rows moved; 0 once a previous run has finished. */
+    public long backfill() {
+        if (jobStates.findById(JOB).map(JobState::getCompletedAt).isPresent()) {
+            log.debug("Envelope backfill already finished; skipping");
+            return 0;
+        }
+        long start = System.nanoTime();
+        long moved = 0;
+        long afterId = 0L;
+        while (true) {
+            List<Object[]> page = new ArrayList<>(pageSize);
+            try {
+                jdbc.query("""
+                        SELECT id, aad, iv, ciphertext FROM chat_message
+                         WHERE id > ? AND envelope_ref IS NULL AND ciphertext IS NOT NULL
+                         ORDER BY id LIMIT ?
+                        """,
+                        rs -> {
+                            page.add(new Object[]{rs.getLong(1), rs.getBytes(2), rs.getBytes(3), rs.getBytes(4)});
+                        },
+                        afterId, pageSize);
+            } catch (BadSqlGrammarException noColumns) {
+                log.debug("No inline envelope columns on chat_message; nothing to backfill");
+                markCompleted();
+                return moved;
+            }
+            if (page.isEmpty()) break;
+            List<Object[]> updates = new ArrayList<>(page.size());
+            for (Object[] row : page) {
+                MessageEnvelope e = MessageEnvelope.of((byte[]) row[1], (byte[]) row[2], (byte[]) row[3]);
+                store.put(e);
+                updates.add(new Object[]{e.getRef(), row[0]});
+            }
+            jdbc.batchUpdate("UPDATE chat_message SET envelope_ref = ?, aad = NULL, iv = NULL, ciphertext = NULL WHERE id = ?", updates);
+            moved += page.size();
+            afterId = (Long) page.get(page.size() - 1)[0];
+            if (page.size() < pageSize) break;
+        }
+        if (moved > 0) {
+            log.info("Moved {} inline envelopes out of chat_message in {} ms", moved, (System.nanoTime() - start) / 1_000_000);
+        }
+        markCompleted();
+        return moved;
+    }
+
+    /** New rows never carry the payload inline, so one complete walk is enough. */
+    private void markCompleted() {
+        JobState state = jobStates.findById(JOB).orElseGet(() -> new JobState(JOB));
+        state.setCompletedAt(Instant.now());
+        jobStates.save(state);
+    }
+}
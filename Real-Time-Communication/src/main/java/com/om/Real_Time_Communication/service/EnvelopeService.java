@@ -0,0 +1,99 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.MessageEnvelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps E2EE payloads out of {@code chat_message}: a new message's aad, iv and ciphertext go to the
+ * {@link EnvelopeStore} and the row keeps their content address, and rows read back get them again
+ * with one store read per page. Only what is sent to clients needs {@link #load}; receipts,
+ * idempotency checks and indexing read the narrow row alone.
+ */
+@Service
+public class EnvelopeService {
+
+    private static final Logger log = LoggerFactory.getLogger(EnvelopeService.class);
+
+    private final EnvelopeStore store;
+    private final JdbcTemplate jdbc;
+    private volatile boolean legacyColumns = true; // until a read shows they are gone
+
+    public EnvelopeService(EnvelopeStore store, JdbcTemplate jdbc) {
+        this.store = store;
+        this.jdbc = jdbc;
+    }
+
+    /** Stores the payload set on a new message and names it on the row; call before saving the row. */
+    public void attach(ChatMessage m) {
+        if (m.getCiphertext() == null) return;
+        MessageEnvelope e = MessageEnvelope.of(m.getAad(), m.getIv(), m.getCiphertext());
+        store.put(e);
+        m.setEnvelopeRef(e.getRef());
+    }
+
+    /** Fills the payload of every E2EE row that has none loaded yet; returns {@code rows}. */
+    public <C extends Collection<ChatMessage>> C load(C rows) {
+        Set<String> refs = new HashSet<>();
+        List<Long> legacy = new ArrayList<>();
+        for (ChatMessage m : rows) {
+            if (!m.isE2ee() || m.getCiphertext() != null) continue;
+            if (m.getEnvelopeRef() != null) refs.add(m.getEnvelopeRef());
+            else if (m.getId() != null) legacy.add(m.getId());
+        }
+        if (!refs.isEmpty()) {
+            Map<String, MessageEnvelope> found = store.get(refs);
+            for (ChatMessage m : rows) {
+                MessageEnvelope e = m.getEnvelopeRef() == null ? null : found.get(m.getEnvelopeRef());
+                if (e != null && m.getCiphertext() == null) fill(m, e);
+            }
+            if (found.size() < refs.size()) log.warn("{} of {} envelopes missing from the store", refs.size() - found.size(), refs.size());
+        }
+        if (!legacy.isEmpty() && legacyColumns) {
+            Map<Long, MessageEnvelope> inline = legacyInline(legacy);
+            for (ChatMessage m : rows) {
+                MessageEnvelope e = m.getId() == null ? null : inline.get(m.getId());
+                if (e != null && m.getCiphertext() == null) fill(m, e);
+            }
+        }
+        return rows;
+    }
+
+    /** Rows written before the payload moved out still have it inline until the backfill gets to them. */
+    private Map<Long, MessageEnvelope> legacyInline(List<Long> ids) {
+        Map<Long, MessageEnvelope> out = new HashMap<>();
+        String in = String.join(",", Collections.nCopies(ids.size(), "?"));
+        try {
+            jdbc.query("SELECT id, aad, iv, ciphertext FROM chat_message WHERE id IN (" + in + ")",
+                    rs -> {
+                        byte[] ct = rs.getBytes(4);
+                        if (ct != null) out.put(rs.getLong(1), new MessageEnvelope(null, rs.getBytes(2), rs.getBytes(3), ct));
+                    },
+                    ids.toArray());
+        } catch (BadSqlGrammarException noColumns) {
+            // a schema created after the move never had them
+            log.info("No inline envelope columns on chat_message; legacy reads disabled");
+            legacyColumns = false;
+        }
+        return out;
+    }
+
+    private static void fill(ChatMessage m, MessageEnvelope e) {
+        m.setAad(e.getAad());
+        m.setIv(e.getIv());
+        m.setCiphertext(e.getCiphertext());
+    }
+}
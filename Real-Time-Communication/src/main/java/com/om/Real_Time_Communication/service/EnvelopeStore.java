@@ -0,0 +1,19 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.models.MessageEnvelope;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Where E2EE payloads live, apart from the {@code chat_message} rows that name them by content
+ * address. {@link EnvelopeService} writes one per new message and reads them a page at a time.
+ */
+public interface EnvelopeStore {
+
+    /** Stores the envelope; the same content stored again is a no-op. */
+    void put(MessageEnvelope envelope);
+
+    /** Envelopes by ref, fetched together; refs the store does not know are simply absent. */
+    Map<String, MessageEnvelope> get(Collection<String> refs);
+}
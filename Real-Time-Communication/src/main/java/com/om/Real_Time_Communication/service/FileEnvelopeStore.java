@@ -0,0 +1,92 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.models.MessageEnvelope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Content-addressed blobs on the local filesystem under {@code rtc.envelope.file.dir}, fanned out
+ * as {@code ab/cd/abcd...}, so payloads leave the database entirely. A file is written once,
+ * through a temporary file and an atomic rename, and never changed. A send that rolls back leaves
+ * its file behind; that costs disk only, as nothing names it.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.envelope.store", havingValue = "file")
+public class FileEnvelopeStore implements EnvelopeStore {
+
+    private final Path root;
+
+    public FileEnvelopeStore(@Value("${rtc.envelope.file.dir:./data/envelopes}") String dir) {
+        this.root = Path.of(dir);
+    }
+
+    @Override
+    public void put(MessageEnvelope envelope) {
+        Path file = pathOf(envelope.getRef());
+        if (Files.exists(file)) return;
+        byte[] aad = envelope.getAad(), iv = envelope.getIv(), ct = envelope.getCiphertext();
+        ByteBuffer buf = ByteBuffer.allocate(8 + len(aad) + len(iv) + ct.length);
+        buf.putInt(aad == null ? -1 : aad.length);
+        if (aad != null) buf.put(aad);
+        buf.putInt(iv == null ? -1 : iv.length);
+        if (iv != null) buf.put(iv);
+        buf.put(ct);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            Files.write(tmp, buf.array());
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot store envelope " + envelope.getRef(), e);
+        }
+    }
+
+    @Override
+    public Map<String, MessageEnvelope> get(Collection<String> refs) {
+        Map<String, MessageEnvelope> out = new HashMap<>();
+        for (String ref : refs) {
+            byte[] bytes;
+            try {
+                bytes = Files.readAllBytes(pathOf(ref));
+            } catch (NoSuchFileException missing) {
+                continue;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read envelope " + ref, e);
+            }
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            byte[] aad = part(buf, buf.getInt());
+            byte[] iv = part(buf, buf.getInt());
+            out.put(ref, new MessageEnvelope(ref, aad, iv, Arrays.copyOfRange(bytes, buf.position(), bytes.length)));
+        }
+        return out;
+    }
+
+    private Path pathOf(String ref) {
+        if (ref == null || !ref.matches("[0-9a-f]{64}")) throw new IllegalArgumentException("Bad envelope ref " + ref);
+        return root.resolve(ref.substring(0, 2)).resolve(ref.substring(2, 4)).resolve(ref);
+    }
+
+    private static byte[] part(ByteBuffer buf, int len) {
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        buf.get(b);
+        return b;
+    }
+
+    private static int len(byte[] b) {
+        return b == null ? 0 : b.length;
+    }
+}
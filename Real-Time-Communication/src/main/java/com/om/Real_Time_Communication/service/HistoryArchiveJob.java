@@ -0,0 +1,103 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.Repository.JobStateRepository;
+import com.om.Real_Time_Communication.models.JobState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Keeps {@code chat_message} to the last {@code rtc.history.archive.hot-days} of history: every
+ * {@code check-ms} archives what fell out of that window, for at most {@code max-run-ms} per run,
+ * then compacts closed months. Only a bean when {@code rtc.history.archive.enabled}.
+ *
+ * Every node schedules the job, but a run first takes the {@value #JOB} lease in
+ * {@code rtc_job_state} (the row locked FOR UPDATE while it is read and written), so one node
+ * archives at a time. The lease covers {@code max-run-ms} and is renewed before compacting; one
+ * left behind by a node that died expires on its own.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.history.archive.enabled", havingValue = "true")
+public class HistoryArchiveJob {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryArchiveJob.class);
+
+    static final String JOB = "history-archive";
+
+    private final HistoryArchiveService archive;
+    private final JobStateRepository jobStates;
+    private final TransactionTemplate tx;
+    private final String owner = UUID.randomUUID().toString();
+    private final Duration hot;
+    private final long maxRunMs;
+    private final int compactMaxBuckets;
+
+    public HistoryArchiveJob(HistoryArchiveService archive,
+                             JobStateRepository jobStates,
+                             PlatformTransactionManager txManager,
+                             @Value("${rtc.history.archive.hot-days:180}") int hotDays,
+                             @Value("${rtc.history.archive.max-run-ms:600000}") long maxRunMs,
+                             @Value("${rtc.history.archive.compact-max-buckets:500}") int compactMaxBuckets) {
+        this.archive = archive;
+        this.jobStates = jobStates;
+        this.tx = new TransactionTemplate(txManager);
+        this.hot = Duration.ofDays(hotDays);
+        this.maxRunMs = maxRunMs;
+        this.compactMaxBuckets = compactMaxBuckets;
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.history.archive.check-ms:3600000}",
+               initialDelayString = "${rtc.history.archive.check-ms:3600000}")
+    public void run() {
+        if (!lease()) {
+            log.debug("History archive lease held by another node; skipping this run");
+            return;
+        }
+        try {
+            HistoryArchiveService.ArchiveRun run =
+                    archive.archiveBefore(Instant.now().minus(hot), System.nanoTime() + maxRunMs * 1_000_000);
+            if (run.complete() && lease()) archive.compact(compactMaxBuckets);
+        } finally {
+            release();
+        }
+    }
+
+    /** Takes or renews the lease for another {@code max-run-ms}; false while another node holds it. */
+    private boolean lease() {
+        try {
+            return Boolean.TRUE.equals(tx.execute(s -> {
+                Instant now = Instant.now();
+                JobState state = jobStates.lockByName(JOB).orElseGet(() -> new JobState(JOB));
+                if (state.getLeaseUntil() != null && state.getLeaseUntil().isAfter(now)
+                        && !owner.equals(state.getLeaseOwner())) {
+                    return false;
+                }
+                state.setLeaseOwner(owner);
+                state.setLeaseUntil(now.plusMillis(maxRunMs));
+                jobStates.save(state);
+                return true;
+            }));
+        } catch (DataIntegrityViolationException raced) {
+            return false; // another node created the row first
+        }
+    }
+
+    private void release() {
+        tx.executeWithoutResult(s -> jobStates.lockByName(JOB)
+                .filter(state -> owner.equals(state.getLeaseOwner()))
+                .ifPresent(state -> {
+                    state.setLeaseUntil(Instant.now());
+                    jobStates.save(state);
+                }));
+    }
+}
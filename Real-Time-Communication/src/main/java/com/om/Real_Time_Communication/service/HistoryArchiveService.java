@@ -0,0 +1,500 @@
+package com.om.Real_Time_Communication.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.om.Real_Time_Communication.Repository.ArchiveSegmentRepository;
+import com.om.Real_Time_Communication.Repository.ArchiveTombstoneRepository;
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.models.ArchiveSegment;
+import com.om.Real_Time_Communication.models.ArchiveTombstone;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.utility.ArchiveSegmentCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Cold tier of chat history. {@link #archiveBefore} moves messages older than a cutoff out of
+ * {@code chat_message} into immutable, compressed segment files, one per room and month
+ * ({@link ArchiveSegmentCodec}), indexed by {@code history_archive_segment}; {@link #compact}
+ * later folds the segments of a closed month into one. The hot table then only holds recent
+ * history, so its indexes, inserts and newest-page reads no longer grow with total volume.
+ *
+ * Per room, archived messages always precede hot ones in (server_ts, id) order: the walk is
+ * ascending and each room's latest message stays hot, with everything after it. Readers can
+ * therefore page the hot table first and continue into the archive (or the other way round)
+ * without merging. Messages deleted for everyone are dropped rather than archived; the per-viewer
+ * delete flags are kept and applied when reading, as the history queries do. Deletes of messages
+ * already archived are kept as {@link ArchiveTombstone}s and applied on top. Blind search tokens
+ * are archived with their messages, so {@link BlindSearchIndex} covers both tiers.
+ *
+ * Segment files are written by one node and read by all, so {@code rtc.history.archive.dir} must
+ * be storage every node mounts; startup fails unless {@code rtc.history.archive.shared} says so,
+ * the directory exists and it holds the newest segment the database knows of. Only a bean when
+ * {@code rtc.history.archive.enabled}.
+ */
+@Service
+@ConditionalOnProperty(name = "rtc.history.archive.enabled", havingValue = "true")
+public class HistoryArchiveService {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryArchiveService.class);
+
+    /** Segment index rows read per step while paging through the archive. */
+    private static final int SEGMENT_BATCH = 8;
+    private static final Instant END = Instant.parse("9999-12-31T23:59:59Z");
+    private static final Comparator<ChatMessage> ORDER =
+            Comparator.comparing(ChatMessage::getServerTs).thenComparing(ChatMessage::getId);
+
+    public record ArchiveRun(int archived, int dropped, int segments, boolean complete) {}
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ArchiveSegmentRepository segmentRepository;
+    private final ArchiveTombstoneRepository tombstoneRepository;
+    private final TransactionTemplate tx;
+    private final Path dir;
+    private final int pageSize;
+    private final Cache<Long, List<ChatMessage>> segments;
+
+    public HistoryArchiveService(ChatMessageRepository chatMessageRepository,
+                                 ArchiveSegmentRepository segmentRepository,
+                                 ArchiveTombstoneRepository tombstoneRepository,
+                                 PlatformTransactionManager txManager,
+                                 @Value("${rtc.history.archive.dir:./data/archive}") String dir,
+                                 @Value("${rtc.history.archive.shared:false}") boolean shared,
+                                 @Value("${rtc.history.archive.page-size:2000}") int pageSize,
+                                 @Value("${rtc.history.archive.cache-messages:1000000}") long cacheMessages) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.segmentRepository = segmentRepository;
+        this.tombstoneRepository = tombstoneRepository;
+        this.tx = new TransactionTemplate(txManager);
+        this.dir = Paths.get(dir);
+        this.pageSize = pageSize;
+        this.segments = Caffeine.newBuilder()
+                .maximumWeight(cacheMessages)
+                .weigher((Long id, List<ChatMessage> rows) -> rows.size())
+                .build();
+        checkStorage(shared);
+    }
+
+    /** Refuses node-local storage: other nodes would page into segment files they do not have. */
+    private void checkStorage(boolean shared) {
+        if (!shared) {
+            throw new IllegalStateException("rtc.history.archive.dir (" + dir + ") must be storage shared by every "
+                    + "node, e.g. an NFS or EFS mount; set rtc.history.archive.shared=true once it is");
+        }
+        if (!Files.isDirectory(dir) || !Files.isWritable(dir)) {
+            // not created here, so an unmounted share fails now instead of filling the local disk
+            throw new IllegalStateException("rtc.history.archive.dir " + dir + " is not a writable directory");
+        }
+        for (int attempt = 0; attempt < 2; attempt++) { // the newest segment may be compacted away meanwhile
+            Optional<ArchiveSegment> newest = segmentRepository.findTopByOrderByIdDesc();
+            if (newest.isEmpty() || Files.exists(dir.resolve(newest.get().getFile()))) return;
+        }
+        throw new IllegalStateException("rtc.history.archive.dir " + dir + " does not hold the segments indexed in "
+                + "history_archive_segment; it must be the archive share the other nodes write to");
+    }
+
+    // ----- reads -----
+
+    /**
+     * Up to {@code limit} archived messages of the room the viewer may see, older than
+     * (beforeTs, beforeId), or the newest ones when no cursor is given; newest first.
+     */
+    public List<ChatMessage> olderThan(Long roomId, Long viewerId, Instant beforeTs, Long beforeId, int limit) {
+        List<ChatMessage> out = new ArrayList<>();
+        while (out.size() < limit) {
+            int want = limit - out.size();
+            Instant ts = beforeTs;
+            Long id = beforeId;
+            List<ChatMessage> rows = withRetry(() -> scanOlder(roomId, viewerId, ts, id, want));
+            out.addAll(notTombstoned(rows, viewerId));
+            if (rows.size() < want) break;
+            ChatMessage last = rows.get(rows.size() - 1);
+            beforeTs = last.getServerTs();
+            beforeId = last.getId();
+        }
+        return out;
+    }
+
+    /** Up to {@code limit} archived messages of the room the viewer may see after (afterTs, afterId); oldest first. */
+    public List<ChatMessage> newerThan(Long roomId, Long viewerId, Instant afterTs, Long afterId, int limit) {
+        List<ChatMessage> out = new ArrayList<>();
+        while (out.size() < limit) {
+            int want = limit - out.size();
+            Instant ts = afterTs;
+            Long id = afterId;
+            List<ChatMessage> rows = withRetry(() -> scanNewer(roomId, viewerId, ts, id, want));
+            out.addAll(notTombstoned(rows, viewerId));
+            if (rows.size() < want) break;
+            ChatMessage last = rows.get(rows.size() - 1);
+            afterTs = last.getServerTs();
+            afterId = last.getId();
+        }
+        return out;
+    }
+
+    /**
+     * (id, searchTokens) of the room's archived messages that carry blind tokens, oldest first, for
+     * {@link BlindSearchIndex} to load ahead of the hot table.
+     */
+    public List<Object[]> blindTokens(Long roomId) {
+        return withRetry(() -> {
+            List<Object[]> out = new ArrayList<>();
+            int offset = 0;
+            while (true) {
+                List<ArchiveSegment> batch = segmentRepository.newerSegments(roomId, Instant.EPOCH,
+                        PageRequest.of(offset / SEGMENT_BATCH, SEGMENT_BATCH));
+                for (ArchiveSegment s : batch) {
+                    for (ChatMessage m : read(s)) {
+                        if (m.getSearchTokens() != null) out.add(new Object[]{m.getId(), m.getSearchTokens()});
+                    }
+                }
+                if (batch.size() < SEGMENT_BATCH) return out;
+                offset += SEGMENT_BATCH;
+            }
+        });
+    }
+
+    /**
+     * The archived messages of the room among {@code ids} that the viewer may see, for blind search
+     * hits no longer in {@code chat_message}. Walks the room's segments newest first until every id
+     * is found, since blind hits are the newest archived messages first.
+     */
+    public List<ChatMessage> findInRoom(Long roomId, Long viewerId, Collection<Long> ids) {
+        if (ids.isEmpty()) return List.of();
+        List<ChatMessage> rows = withRetry(() -> {
+            Set<Long> wanted = new HashSet<>(ids);
+            List<ChatMessage> out = new ArrayList<>(wanted.size());
+            int offset = 0;
+            while (!wanted.isEmpty()) {
+                List<ArchiveSegment> batch = segmentRepository.olderSegments(roomId, END,
+                        PageRequest.of(offset / SEGMENT_BATCH, SEGMENT_BATCH));
+                for (ArchiveSegment s : batch) {
+                    for (ChatMessage m : read(s)) {
+                        if (wanted.remove(m.getId()) && visible(m, viewerId)) out.add(copy(m));
+                    }
+                }
+                if (batch.size() < SEGMENT_BATCH) break;
+                offset += SEGMENT_BATCH;
+            }
+            return out;
+        });
+        return notTombstoned(rows, viewerId);
+    }
+
+    /** Runs a scan again when it raced a compaction; a segment file still missing then is an outage. */
+    private <T> T withRetry(Supplier<T> scan) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return scan.get();
+            } catch (UncheckedIOException e) {
+                if (!(e.getCause() instanceof NoSuchFileException)) throw e;
+                if (attempt == 1) {
+                    log.error("Archive segment missing under {}: {}", dir, e.getMessage());
+                    throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Archived history unavailable");
+                }
+            }
+        }
+    }
+
+    // ----- deletes -----
+
+    /**
+     * Records a delete of an archived message by {@code userId}; a delete for everyone takes effect
+     * if they sent it. Returns false when the same delete was already recorded.
+     */
+    public boolean tombstone(String messageId, Long userId, boolean forEveryone) {
+        if (tombstoneRepository.existsByMessageIdAndUserIdAndForEveryone(messageId, userId, forEveryone)) return false;
+        try {
+            tombstoneRepository.save(new ArchiveTombstone(messageId, userId, forEveryone));
+            return true;
+        } catch (DataIntegrityViolationException raced) {
+            return false;
+        }
+    }
+
+    /** {@code rows} without those deleted for the viewer or, by their sender, for everyone since archiving. */
+    private List<ChatMessage> notTombstoned(List<ChatMessage> rows, Long viewerId) {
+        if (rows.isEmpty()) return rows;
+        Set<String> ids = new HashSet<>();
+        for (ChatMessage m : rows) ids.add(m.getMessageId());
+        List<ArchiveTombstone> tombstones = tombstoneRepository.findByMessageIdIn(ids);
+        if (tombstones.isEmpty()) return rows;
+        Map<String, List<ArchiveTombstone>> byMessage = new HashMap<>();
+        for (ArchiveTombstone t : tombstones) byMessage.computeIfAbsent(t.getMessageId(), k -> new ArrayList<>()).add(t);
+        List<ChatMessage> out = new ArrayList<>(rows.size());
+        for (ChatMessage m : rows) {
+            boolean hidden = false;
+            for (ArchiveTombstone t : byMessage.getOrDefault(m.getMessageId(), List.of())) {
+                hidden |= t.isForEveryone() ? t.getUserId().equals(m.getSenderId()) : t.getUserId().equals(viewerId);
+            }
+            if (!hidden) out.add(m);
+        }
+        return out;
+    }
+
+    private List<ChatMessage> scanOlder(Long roomId, Long viewerId, Instant beforeTs, Long beforeId, int limit) {
+        List<ChatMessage> out = new ArrayList<>(Math.min(limit, 256));
+        boolean bounded = beforeTs != null && beforeId != null;
+        Instant seekTs = bounded ? beforeTs : END;
+        int offset = 0;
+        while (out.size() < limit) {
+            List<ArchiveSegment> batch = segmentRepository.olderSegments(roomId, seekTs,
+                    PageRequest.of(offset / SEGMENT_BATCH, SEGMENT_BATCH));
+            for (ArchiveSegment s : batch) {
+                List<ChatMessage> rows = read(s);
+                for (int i = rows.size() - 1; i >= 0 && out.size() < limit; i--) {
+                    ChatMessage m = rows.get(i);
+                    if (bounded && !before(m, beforeTs, beforeId)) continue;
+                    if (visible(m, viewerId)) out.add(copy(m));
+                }
+                if (out.size() == limit) break;
+            }
+            if (batch.size() < SEGMENT_BATCH) break;
+            offset += SEGMENT_BATCH;
+        }
+        return out;
+    }
+
+    private List<ChatMessage> scanNewer(Long roomId, Long viewerId, Instant afterTs, Long afterId, int limit) {
+        List<ChatMessage> out = new ArrayList<>(Math.min(limit, 256));
+        int offset = 0;
+        while (out.size() < limit) {
+            List<ArchiveSegment> batch = segmentRepository.newerSegments(roomId, afterTs,
+                    PageRequest.of(offset / SEGMENT_BATCH, SEGMENT_BATCH));
+            for (ArchiveSegment s : batch) {
+                for (ChatMessage m : read(s)) {
+                    if (out.size() == limit) break;
+                    if (!after(m, afterTs, afterId)) continue;
+                    if (visible(m, viewerId)) out.add(copy(m));
+                }
+                if (out.size() == limit) break;
+            }
+            if (batch.size() < SEGMENT_BATCH) break;
+            offset += SEGMENT_BATCH;
+        }
+        return out;
+    }
+
+    // ----- archiving -----
+
+    /**
+     * Archives messages with {@code server_ts < cutoff}, a page of {@code rtc.history.archive.page-size}
+     * rows per transaction, until there are none left or {@code deadlineNanos} (a
+     * {@link System#nanoTime()} value) passes.
+     */
+    public ArchiveRun archiveBefore(Instant cutoff, long deadlineNanos) {
+        long start = System.nanoTime();
+        Map<Long, ChatMessage> keepFrom = new HashMap<>(); // per room: its latest message, which stays hot
+        Instant ts = Instant.EPOCH;
+        long afterId = 0L;
+        int archived = 0, dropped = 0, written = 0;
+        boolean complete = false;
+        while (true) {
+            if (System.nanoTime() - deadlineNanos > 0) break;
+            List<ChatMessage> page = chatMessageRepository.pageByServerTs(ts, afterId, PageRequest.of(0, pageSize));
+            List<ChatMessage> old = new ArrayList<>(page.size());
+            for (ChatMessage m : page) {
+                if (!m.getServerTs().isBefore(cutoff)) break;
+                old.add(m);
+            }
+            if (old.isEmpty()) {
+                complete = true;
+                break;
+            }
+            ChatMessage last = old.get(old.size() - 1);
+            ts = last.getServerTs();
+            afterId = last.getId();
+
+            List<Long> unseen = old.stream().map(ChatMessage::getRoomId).distinct()
+                    .filter(r -> !keepFrom.containsKey(r)).toList();
+            if (!unseen.isEmpty()) {
+                for (Long r : unseen) keepFrom.put(r, null);
+                for (ChatMessage latest : chatMessageRepository.findLatestInRooms(unseen)) {
+                    keepFrom.put(latest.getRoomId(), latest);
+                }
+            }
+
+            Map<Long, List<ChatMessage>> byRoom = new LinkedHashMap<>();
+            List<Long> delete = new ArrayList<>(old.size());
+            for (ChatMessage m : old) {
+                ChatMessage keep = keepFrom.get(m.getRoomId());
+                if (keep != null && ORDER.compare(m, keep) >= 0) continue;
+                delete.add(m.getId());
+                if (m.isDeletedForEveryone()) {
+                    dropped++;
+                } else {
+                    byRoom.computeIfAbsent(m.getRoomId(), k -> new ArrayList<>()).add(m);
+                    archived++;
+                }
+            }
+            if (delete.isEmpty()) continue;
+
+            List<ArchiveSegment> made = new ArrayList<>();
+            for (List<ChatMessage> rows : byRoom.values()) {
+                int from = 0;
+                for (int i = 1; i <= rows.size(); i++) {
+                    if (i == rows.size() || month(rows.get(i).getServerTs()) != month(rows.get(from).getServerTs())) {
+                        made.add(write(rows.subList(from, i)));
+                        from = i;
+                    }
+                }
+            }
+            tx.executeWithoutResult(s -> {
+                segmentRepository.saveAll(made);
+                chatMessageRepository.deleteAllByIdInBatch(delete);
+            });
+            written += made.size();
+        }
+        log.info("History archive: {} messages archived, {} deleted for everyone dropped, {} segments written in {} ms{}",
+                archived, dropped, written, (System.nanoTime() - start) / 1_000_000, complete ? "" : " (stopped early)");
+        return new ArchiveRun(archived, dropped, written, complete);
+    }
+
+    /**
+     * Merges the segments of months before the current one that are split over several files;
+     * at most {@code maxBuckets} (room, month) pairs per call. Returns the number of segments removed.
+     */
+    public int compact(int maxBuckets) {
+        int currentMonth = month(Instant.now());
+        int removed = 0;
+        for (Object[] bucket : segmentRepository.fragmentedMonths(currentMonth, PageRequest.of(0, maxBuckets))) {
+            Long roomId = (Long) bucket[0];
+            int month = ((Number) bucket[1]).intValue();
+            List<ArchiveSegment> parts = segmentRepository.findByRoomIdAndMonthOrderByMinTsAsc(roomId, month);
+            if (parts.size() < 2) continue;
+            List<ChatMessage> rows = new ArrayList<>();
+            for (ArchiveSegment s : parts) rows.addAll(read(s));
+            rows.sort(ORDER);
+            ArchiveSegment merged = write(rows);
+            tx.executeWithoutResult(s -> {
+                segmentRepository.deleteAllInBatch(parts);
+                segmentRepository.save(merged);
+            });
+            for (ArchiveSegment s : parts) {
+                segments.invalidate(s.getId());
+                if (!s.getFile().equals(merged.getFile())) deleteQuietly(s.getFile());
+            }
+            removed += parts.size() - 1;
+        }
+        return removed;
+    }
+
+    // ----- segment files -----
+
+    private ArchiveSegment write(List<ChatMessage> rows) {
+        ChatMessage first = rows.get(0);
+        ArchiveSegment s = new ArchiveSegment();
+        s.setRoomId(first.getRoomId());
+        s.setMonth(month(first.getServerTs()));
+        s.setMinTs(first.getServerTs());
+        s.setMaxTs(rows.get(rows.size() - 1).getServerTs());
+        s.setMessages(rows.size());
+        // named by content range, so a retried page rewrites the same file instead of leaving another
+        s.setFile(first.getRoomId() + "/" + s.getMonth() + "-" + first.getId() + "-" + rows.size() + ".seg");
+        byte[] bytes = ArchiveSegmentCodec.encode(rows);
+        s.setBytes(bytes.length);
+        try {
+            Path target = dir.resolve(s.getFile());
+            Files.createDirectories(target.getParent());
+            Path tmp = Files.createTempFile(target.getParent(), "seg", ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write archive segment " + s.getFile(), e);
+        }
+        return s;
+    }
+
+    private List<ChatMessage> read(ArchiveSegment s) {
+        return segments.get(s.getId(), id -> {
+            try {
+                return ArchiveSegmentCodec.decode(Files.readAllBytes(dir.resolve(s.getFile())), s.getRoomId());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read archive segment " + s.getFile(), e);
+            }
+        });
+    }
+
+    private void deleteQuietly(String file) {
+        try {
+            Files.deleteIfExists(dir.resolve(file));
+        } catch (IOException e) {
+            log.warn("Could not delete compacted archive segment {}: {}", file, e.getMessage());
+        }
+    }
+
+    // ----- helpers -----
+
+    private static boolean before(ChatMessage m, Instant ts, Long id) {
+        int c = m.getServerTs().compareTo(ts);
+        return c < 0 || (c == 0 && m.getId() < id);
+    }
+
+    private static boolean after(ChatMessage m, Instant ts, Long id) {
+        int c = m.getServerTs().compareTo(ts);
+        return c > 0 || (c == 0 && m.getId() > id);
+    }
+
+    /** The visibility rule of the history queries in {@link ChatMessageRepository}. */
+    private static boolean visible(ChatMessage m, Long viewerId) {
+        if (m.isDeletedForEveryone()) return false;
+        return m.getSenderId().equals(viewerId) ? !m.isDeletedBySender() : !m.isDeletedByReceiver();
+    }
+
+    static int month(Instant ts) {
+        YearMonth ym = YearMonth.from(ts.atZone(ZoneOffset.UTC));
+        return ym.getYear() * 100 + ym.getMonthValue();
+    }
+
+    /** Cached rows are shared; callers get their own, since envelopes are loaded into them. */
+    private static ChatMessage copy(ChatMessage m) {
+        ChatMessage c = new ChatMessage();
+        c.setId(m.getId());
+        c.setRoomId(m.getRoomId());
+        c.setSenderId(m.getSenderId());
+        c.setMessageId(m.getMessageId());
+        c.setServerTs(m.getServerTs());
+        c.setType(m.getType());
+        c.setBody(m.getBody());
+        c.setE2ee(m.isE2ee());
+        c.setE2eeVer(m.getE2eeVer());
+        c.setAlgo(m.getAlgo());
+        c.setKeyRef(m.getKeyRef());
+        c.setEnvelopeRef(m.getEnvelopeRef());
+        c.setDeletedBySender(m.isDeletedBySender());
+        c.setDeletedByReceiver(m.isDeletedByReceiver());
+        c.setSystemMessage(m.isSystemMessage());
+        return c;
+    }
+}
@@ -7,78 +7,135 @@ import com.om.Real_Time_Communication.models.ChatMessage;
 import com.om.Real_Time_Communication.models.ChatRoom;
 import com.om.Real_Time_Communication.models.MessageDelivery;
 import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import com.om.Real_Time_Communication.service.RoomAccessCache.RoomAccess;
+import com.om.Real_Time_Communication.utility.RtcMetrics;
+import io.micrometer.common.lang.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class InboxDeliveryService {
 
     private static final Logger log = LoggerFactory.getLogger(InboxDeliveryService.class);
+    private static final int MAX_PENDING_PAGE = 500;
 
     private final MessageDeliveryRepository deliveryRepository;
     private final ChatRoomRepository chatRoomRepository;
     private final ChatMessageRepository chatMessageRepository;
     private final RoomMembershipService membershipService;
     private final SimpMessagingTemplate messagingTemplate;
-
+    private final RoomAccessCache roomAccessCache;
+    private final ReceiptCoalescer receiptCoalescer;
+    private final ReadModelService readModel;
+    private final RtcMetrics metrics;
+    private final @Nullable EnvelopeService envelopes;
 
     public InboxDeliveryService(
             MessageDeliveryRepository deliveryRepository,
             ChatRoomRepository chatRoomRepository,
             ChatMessageRepository chatMessageRepository,
             RoomMembershipService membershipService,
-            SimpMessagingTemplate messagingTemplate
+            SimpMessagingTemplate messagingTemplate,
+            RoomAccessCache roomAccessCache,
+            ReceiptCoalescer receiptCoalescer,
+            ReadModelService readModel,
+            RtcMetrics metrics,
+            @Nullable EnvelopeService envelopes
     ) {
         this.deliveryRepository = deliveryRepository;
         this.chatRoomRepository = chatRoomRepository;
         this.chatMessageRepository = chatMessageRepository;
         this.membershipService = membershipService;
         this.messagingTemplate = messagingTemplate;
+        this.roomAccessCache = roomAccessCache;
+        this.receiptCoalescer = receiptCoalescer;
+        this.readModel = readModel;
+        this.metrics = metrics;
+        this.envelopes = envelopes;
 
     }
 
+    /**
+     * Writes the PENDING delivery rows of a message for every member but its author with one
+     * multi-row upsert. Runs in the transaction that saves the message, so a committed message
+     * always has its rows and offline members find it in their backlog whatever the live push does.
+     */
+    public void recordPending(ChatMessage saved, List<Long> members) {
+        if (saved == null || members == null) {
+            return;
+        }
+        List<Long> recipients = recipientsOf(saved, members);
+        if (!recipients.isEmpty()) {
+            deliveryRepository.insertPendingIgnoringExisting(saved.getMessageId(), saved.getRoomId(), recipients);
+        }
+    }
+
+    /** {@link #recordPending} and {@link #dispatch} together, for messages saved without their rows. */
     public void recordAndDispatch(ChatRoom room, ChatMessage saved, Map<String, Object> baseEvent, List<Long> members) {
         if (room == null || saved == null || members == null) {
             return;
         }
+        List<Long> recipients = recipientsOf(saved, members);
+        if (recipients.isEmpty()) {
+            return;
+        }
+        deliveryRepository.insertPendingIgnoringExisting(saved.getMessageId(), room.getId(), recipients);
+        dispatch(room, saved, baseEvent, members);
+    }
 
-        for (Long memberId : members) {
-            if (memberId == null || memberId.equals(saved.getSenderId())) {
-                continue; // skip author
-            }
+    /**
+     * Single-pass live fan-out for one persisted message whose delivery rows are written: the inbox
+     * payload is built once and shared by every recipient, and the rows of recipients reached over
+     * the socket are promoted to SENT_TO_WS with one bulk update. The chat-list read model is bumped
+     * in the same pass. Best effort: rows left PENDING are served from the backlog.
+     */
+    public void dispatch(ChatRoom room, ChatMessage saved, Map<String, Object> baseEvent, List<Long> members) {
+        if (room == null || saved == null || members == null) {
+            return;
+        }
+        List<Long> recipients = recipientsOf(saved, members);
+        if (recipients.isEmpty()) {
+            return;
+        }
 
-            Long peerId = resolvePeerId(room, members, memberId);
-            Map<String, Object> inboxPayload = buildInboxPayload(room, saved, baseEvent, peerId);
+        // In a direct room the only recipient's peer is the author, so one payload fits everyone
+        Long peerId = resolvePeerId(room, members, recipients.get(0));
+        Map<String, Object> inboxPayload = Collections.unmodifiableMap(
+                buildInboxPayload(room, saved, baseEvent == null ? toRoomEvent(saved) : baseEvent, peerId));
 
-            MessageDelivery delivery = deliveryRepository.findByMsgIdAndUserId(saved.getMessageId(), memberId)
-                    .orElseGet(() -> createPending(saved, room, memberId));
+        readModel.messageAdded(saved, recipients);
 
-            boolean liveSent = sendIfOnline(memberId, inboxPayload);
-            if (liveSent) {
-                delivery.setStatus(MessageDeliveryStatus.SENT_TO_WS);
-                deliveryRepository.save(delivery);
+        List<Long> liveSent = new ArrayList<>(recipients.size());
+        for (Long memberId : recipients) {
+            if (sendIfOnline(memberId, inboxPayload)) {
+                liveSent.add(memberId);
             }
         }
+        if (!liveSent.isEmpty()) {
+            deliveryRepository.updateStatusForUsers(saved.getMessageId(), liveSent,
+                    MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS, Instant.now());
+        }
     }
 
-    private MessageDelivery createPending(ChatMessage saved, ChatRoom room, Long memberId) {
-        MessageDelivery delivery = new MessageDelivery();
-        delivery.setMsgId(saved.getMessageId());
-        delivery.setUserId(memberId);
-        delivery.setRoomId(room.getId());
-        delivery.setStatus(MessageDeliveryStatus.PENDING);
-        return deliveryRepository.save(delivery);
+    private static List<Long> recipientsOf(ChatMessage saved, List<Long> members) {
+        List<Long> recipients = new ArrayList<>(members.size());
+        for (Long memberId : members) {
+            if (memberId != null && !memberId.equals(saved.getSenderId())) {
+                recipients.add(memberId); // skip author
+            }
+        }
+        return recipients;
     }
 
     private boolean sendIfOnline(Long memberId, Map<String, Object> payload) {
         try {
-            log.info("[INBOX] send to user={} dest=/queue/inbox msgId={} roomKey={}",
+            log.debug("[INBOX] send to user={} dest=/queue/inbox msgId={} roomKey={}",
                     memberId, payload.get("msgId"), payload.get("roomKey"));
             messagingTemplate.convertAndSendToUser(
                     String.valueOf(memberId),
@@ -93,85 +150,161 @@ public class InboxDeliveryService {
         }
     }
 
-    public List<Map<String, Object>> pendingMessages(Long userId, Instant since) {
+    /** One page of a user's undelivered inbox plus the cursor to ask for the next one. */
+    public record PendingPage(List<Map<String, Object>> items, String next, boolean hasMore) {}
+
+    /**
+     * Reconnect backlog, paged by delivery id. A page costs one query for the deliveries, one for
+     * their messages and one bulk status update; rooms and members come from the room cache.
+     * {@code cursor} is the {@code next} of the previous page (null for the first).
+     */
+    public PendingPage pendingPage(Long userId, Instant since, String cursor, int limit) {
+        int lim = Math.min(Math.max(limit, 1), MAX_PENDING_PAGE);
+        long afterId = parseCursor(cursor);
         Collection<MessageDeliveryStatus> statuses = EnumSet.of(
                 MessageDeliveryStatus.PENDING,
                 MessageDeliveryStatus.SENT_TO_WS
         );
 
         List<MessageDelivery> deliveries = since == null
-                ? deliveryRepository.findByUserIdAndStatusInOrderByCreatedAtAsc(userId, statuses)
-                : deliveryRepository.findByUserIdAndStatusInAndCreatedAtAfterOrderByCreatedAtAsc(userId, statuses, since);
+                ? deliveryRepository.findBacklogPage(userId, statuses, afterId, PageRequest.of(0, lim + 1))
+                : deliveryRepository.findBacklogPageSince(userId, statuses, afterId, since, PageRequest.of(0, lim + 1));
+        boolean hasMore = deliveries.size() > lim;
+        if (hasMore) deliveries = deliveries.subList(0, lim);
+        if (deliveries.isEmpty()) {
+            return new PendingPage(List.of(), cursor, false);
+        }
 
-        List<Map<String, Object>> payloads = new ArrayList<>();
+        Set<Long> roomIds = new HashSet<>();
+        Set<String> msgIds = new HashSet<>();
         for (MessageDelivery d : deliveries) {
-            ChatRoom room = d.getRoomId() != null
-                    ? chatRoomRepository.findById(d.getRoomId()).orElse(null)
-                    : null;
-            if (room == null) {
+            if (d.getRoomId() != null) roomIds.add(d.getRoomId());
+            msgIds.add(d.getMsgId());
+        }
+        Map<String, ChatMessage> messages = new HashMap<>();
+        for (ChatMessage m : chatMessageRepository.findByRoomIdInAndMessageIdIn(roomIds, msgIds)) {
+            messages.put(m.getRoomId() + ":" + m.getMessageId(), m);
+        }
+        if (envelopes != null) envelopes.load(messages.values());
+
+        List<Map<String, Object>> payloads = new ArrayList<>(deliveries.size());
+        List<Long> newlySent = new ArrayList<>(deliveries.size());
+        for (MessageDelivery d : deliveries) {
+            RoomAccess room = d.getRoomId() == null ? null : roomAccessCache.room(d.getRoomId());
+            ChatMessage msg = messages.get(d.getRoomId() + ":" + d.getMsgId());
+            if (room == null || msg == null) {
                 continue;
             }
-            ChatMessage msg = chatMessageRepository.findByRoomIdAndMessageId(room.getId(), d.getMsgId())
-                    .orElse(null);
-            if (msg == null) {
-                continue;
+            Long peerId = resolvePeerId(room.room(), room.memberIds(), userId);
+            payloads.add(buildInboxPayload(room.room(), msg, toRoomEvent(msg), peerId));
+            if (d.getStatus() == MessageDeliveryStatus.PENDING) {
+                newlySent.add(d.getId());
             }
-            List<Long> members = membershipService.memberIds(room.getId());
-            Long peerId = resolvePeerId(room, members, userId);
-            Map<String, Object> base = toRoomEvent(msg);
-            Map<String, Object> payload = buildInboxPayload(room, msg, base, peerId);
-            payloads.add(payload);
+        }
+        if (!newlySent.isEmpty()) {
+            deliveryRepository.updateStatusForIds(newlySent,
+                    MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS, Instant.now());
+        }
+        String next = String.valueOf(deliveries.get(deliveries.size() - 1).getId());
+        return new PendingPage(payloads, next, hasMore);
+    }
+
+    /**
+     * Drains the backlog page by page onto the user's {@code /queue/inbox}, so the first messages
+     * arrive before the last page is read, then sends a {@code sync-complete} marker.
+     */
+    public int streamPending(Long userId, Instant since, int pageSize) {
+        String cursor = null;
+        int sent = 0;
+        PendingPage page;
+        do {
+            page = pendingPage(userId, since, cursor, pageSize);
+            for (Map<String, Object> payload : page.items()) {
+                if (sendIfOnline(userId, payload)) sent++;
+            }
+            cursor = page.next();
+        } while (page.hasMore());
+
+        Map<String, Object> done = new HashMap<>();
+        done.put("type", "sync-complete");
+        done.put("count", sent);
+        done.put("cursor", cursor);
+        messagingTemplate.convertAndSendToUser(String.valueOf(userId), "/queue/inbox", done);
+        log.debug("[INBOX] streamed {} pending messages to user={}", sent, userId);
+        return sent;
+    }
 
-            d.setStatus(MessageDeliveryStatus.SENT_TO_WS);
-            deliveryRepository.save(d);
+    private static long parseCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) return 0L;
+        try {
+            return Long.parseLong(cursor);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
         }
-        return payloads.stream()
-                .sorted(Comparator.comparing((Map<String, Object> p) ->
-                        (Instant) p.getOrDefault("createdAt", Instant.EPOCH)))
-                .collect(Collectors.toList());
     }
 
     public void markDelivered(String msgId, Long userId, String deviceId, boolean read) {
-        deliveryRepository.findByMsgIdAndUserId(msgId, userId).ifPresent(delivery -> {
-            delivery.setDeviceId(deviceId);
-            if (read) {
-                delivery.setStatus(MessageDeliveryStatus.READ);
-                delivery.setReadAt(Instant.now());
-            } else {
-                delivery.setStatus(MessageDeliveryStatus.DELIVERED_TO_DEVICE);
-                delivery.setDeliveredAt(Instant.now());
+        if (msgId == null) {
+            return;
+        }
+        acknowledge(userId, deviceId, read, List.of(msgId), List.of());
+    }
+
+    /** {@code toMsgId} and everything before it in the same room, back to {@code fromMsgId} (or the start when null). */
+    public record AckRange(String fromMsgId, String toMsgId) {}
+
+    /**
+     * Applies one ack frame: the listed messages plus every range, moved to DELIVERED_TO_DEVICE or READ
+     * with a single bulk update. Statuses only move forward, so a late delivery ack never undoes a read.
+     * Sender receipts are handed to the {@link ReceiptCoalescer}. Returns the number of rows updated.
+     */
+    public int acknowledge(Long userId, String deviceId, boolean read,
+                           Collection<String> msgIds, Collection<AckRange> ranges) {
+        Collection<MessageDeliveryStatus> from = read
+                ? EnumSet.of(MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS,
+                             MessageDeliveryStatus.DELIVERED_TO_DEVICE)
+                : EnumSet.of(MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS);
+
+        Map<Long, MessageDelivery> rows = new LinkedHashMap<>();
+        int acks = 0;
+        if (msgIds != null && !msgIds.isEmpty()) {
+            acks += msgIds.size();
+            for (MessageDelivery d : deliveryRepository.findByUserIdAndMsgIdInAndStatusIn(userId, msgIds, from)) {
+                rows.put(d.getId(), d);
             }
-            deliveryRepository.save(delivery);
-            notifySender(delivery);
-        });
+        }
+        if (ranges != null) {
+            for (AckRange range : ranges) {
+                if (range == null || range.toMsgId() == null) continue;
+                List<MessageDelivery> inRange =
+                        deliveryRepository.findAckRange(userId, range.fromMsgId(), range.toMsgId(), from);
+                acks += inRange.size();
+                for (MessageDelivery d : inRange) rows.put(d.getId(), d);
+            }
+        }
+        if (rows.isEmpty()) {
+            metrics.ackBatch(acks, 0);
+            return 0;
+        }
+
+        Instant now = Instant.now();
+        MessageDeliveryStatus to = read ? MessageDeliveryStatus.READ : MessageDeliveryStatus.DELIVERED_TO_DEVICE;
+        int updated = read
+                ? deliveryRepository.markReadForIds(rows.keySet(), from, to, deviceId, now)
+                : deliveryRepository.markDeliveredForIds(rows.keySet(), from, to, deviceId, now);
+        metrics.ackBatch(acks, updated);
+        queueReceipts(rows.values(), to);
+        return updated;
     }
 
+    /** Fan-out for callers that only hold the saved message; resolves room and members first. */
     public void sendInboxEvent(ChatMessage saved) {
         if (saved == null || saved.getRoomId() == null) {
             return;
         }
 
-        chatRoomRepository.findById(saved.getRoomId()).ifPresent(room -> {
-            List<Long> members = membershipService.memberIds(room.getId());
-            Map<String, Object> baseEvent = toRoomEvent(saved);
-
-            for (Long memberId : members) {
-                if (memberId == null || memberId.equals(saved.getSenderId())) {
-                    continue;
-                }
-
-                Long peerId = resolvePeerId(room, members, memberId);
-                Map<String, Object> payload = buildInboxPayload(room, saved, baseEvent, peerId);
-                boolean sent = sendIfOnline(memberId, payload);
-                if (sent) {
-                    deliveryRepository.findByMsgIdAndUserId(saved.getMessageId(), memberId)
-                            .ifPresent(delivery -> {
-                                delivery.setStatus(MessageDeliveryStatus.SENT_TO_WS);
-                                deliveryRepository.save(delivery);
-                            });
-                }
-            }
-        });
+        chatRoomRepository.findById(saved.getRoomId()).ifPresent(room ->
+                recordAndDispatch(room, saved, toRoomEvent(saved), membershipService.memberIds(room.getId())));
     }
 
     private Long resolvePeerId(ChatRoom room, List<Long> members, Long recipientId) {
@@ -222,29 +355,29 @@ public class InboxDeliveryService {
         return e;
     }
 
-    private void notifySender(MessageDelivery delivery) {
-        if (delivery == null || delivery.getRoomId() == null || delivery.getMsgId() == null) {
-            return;
+    private void queueReceipts(Collection<MessageDelivery> rows, MessageDeliveryStatus status) {
+        Set<Long> roomIds = new HashSet<>();
+        Set<String> msgIds = new HashSet<>();
+        for (MessageDelivery d : rows) {
+            if (d.getRoomId() == null) continue;
+            roomIds.add(d.getRoomId());
+            msgIds.add(d.getMsgId());
         }
-        ChatRoom room = chatRoomRepository.findById(delivery.getRoomId()).orElse(null);
-        if (room == null) {
+        if (roomIds.isEmpty()) {
             return;
         }
-        ChatMessage msg = chatMessageRepository.findByRoomIdAndMessageId(room.getId(), delivery.getMsgId())
-                .orElse(null);
-        if (msg == null || msg.getSenderId() == null) {
-            return;
+        // Rows are keyed by (room, message); a message id reused in another room must not match
+        Set<String> acked = new HashSet<>();
+        for (MessageDelivery d : rows) acked.add(d.getRoomId() + ":" + d.getMsgId());
+        for (ChatMessage msg : chatMessageRepository.findByRoomIdInAndMessageIdIn(roomIds, msgIds)) {
+            if (msg.getSenderId() == null || !acked.contains(msg.getRoomId() + ":" + msg.getMessageId())) {
+                continue;
+            }
+            RoomAccess room = roomAccessCache.room(msg.getRoomId());
+            if (room == null) {
+                continue;
+            }
+            receiptCoalescer.add(msg.getSenderId(), room.room().getRoomId(), msg.getMessageId(), msg.getServerTs(), status);
         }
-        Map<String, Object> payload = new HashMap<>();
-        payload.put("roomId", room.getRoomId());
-        payload.put("messageId", msg.getMessageId());
-        payload.put("serverTs", msg.getServerTs());
-        payload.put("deliveryStatus", delivery.getStatus().name());
-        payload.put("type", "delivery");
-        messagingTemplate.convertAndSendToUser(
-                String.valueOf(msg.getSenderId()),
-                "/queue/ack",
-                payload
-        );
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.Repository.MessageEnvelopeRepository;
+import com.om.Real_Time_Communication.models.MessageEnvelope;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Default: a {@code chat_message_envelope} side table in the same database, written in the
+ * sender's transaction so a message and its payload commit together. A page reads its envelopes
+ * with one primary-key lookup.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.envelope.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaEnvelopeStore implements EnvelopeStore {
+
+    private final MessageEnvelopeRepository repository;
+
+    public JpaEnvelopeStore(MessageEnvelopeRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    @Transactional
+    public void put(MessageEnvelope envelope) {
+        repository.insertIgnoringExisting(envelope.getRef(), envelope.getAad(), envelope.getIv(), envelope.getCiphertext());
+    }
+
+    @Override
+    public Map<String, MessageEnvelope> get(Collection<String> refs) {
+        Map<String, MessageEnvelope> out = new HashMap<>();
+        if (refs.isEmpty()) return out;
+        for (MessageEnvelope e : repository.findAllById(refs)) out.put(e.getRef(), e);
+        return out;
+    }
+}
@@ -0,0 +1,68 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.service.ReadModelService.LastMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Single-node default: {@code chat_message} and {@code user_room_state} already are the durable
+ * read model, so writes need nothing beyond the in-memory tier and misses are answered with one
+ * aggregate query per batch of rooms.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.read-model.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaReadModelStore implements ReadModelStore {
+
+    private final ChatMessageRepository chatMessageRepository;
+
+    public JpaReadModelStore(ChatMessageRepository chatMessageRepository) {
+        this.chatMessageRepository = chatMessageRepository;
+    }
+
+    @Override
+    public Map<Long, LastMessage> lastMessages(Collection<Long> roomIds) {
+        Map<Long, LastMessage> out = new HashMap<>();
+        if (roomIds.isEmpty()) return out;
+        for (ChatMessage m : chatMessageRepository.findLatestInRooms(roomIds)) {
+            out.put(m.getRoomId(), LastMessage.of(m));
+        }
+        return out;
+    }
+
+    @Override
+    public Map<Long, Long> unreadCounts(Long userId, Collection<Long> roomIds) {
+        Map<Long, Long> out = new HashMap<>();
+        if (roomIds.isEmpty()) return out;
+        for (Object[] row : chatMessageRepository.countUnreadForUser(userId, roomIds, Instant.EPOCH)) {
+            out.put((Long) row[0], (Long) row[1]);
+        }
+        return out;
+    }
+
+    @Override
+    public void messageAdded(LastMessage last, Collection<Long> recipients) {
+        // the message row is the record
+    }
+
+    @Override
+    public void unreadReset(Long userId, Long roomId) {
+        // the user_room_state row is the record
+    }
+
+    @Override
+    public void lastReplaced(Long roomId, LastMessage last) {
+        // the deleted_for_everyone flag is the record
+    }
+
+    @Override
+    public void replace(Map<Long, LastMessage> last, Map<Long, Map<Long, Long>> unread) {
+        // recomputed from the same rows on every miss
+    }
+}
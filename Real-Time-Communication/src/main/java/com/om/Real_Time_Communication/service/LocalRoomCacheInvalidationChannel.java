@@ -0,0 +1,22 @@
+package com.om.Real_Time_Communication.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Consumer;
+
+/** Single-node default: there is nobody else to tell, local eviction is enough. */
+@Component
+@ConditionalOnProperty(name = "rtc.room-cache.invalidation", havingValue = "local", matchIfMissing = true)
+public class LocalRoomCacheInvalidationChannel implements RoomCacheInvalidationChannel {
+
+    @Override
+    public void publish(String key) {
+        // no peers
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        // no peers
+    }
+}
@@ -0,0 +1,242 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import com.om.Real_Time_Communication.utility.SearchWriter;
+import io.micrometer.common.lang.Nullable;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-process message search ({@code rtc.search.engine=local}): lets search run, and be benchmarked,
+ * without a cluster, on a single node. It is also the {@link SearchWriter}, so the indexing
+ * pipeline feeds it directly; nothing is persisted.
+ *
+ * <p>Every term has a posting list per room and one across all rooms, each sorted by
+ * (createdAt, messageId), as is the list of all documents (the empty term). A query walks them
+ * newest first from the cursor and stops after {@code limit} hits:
+ * <ul>
+ *   <li>in one room, its lists are intersected;</li>
+ *   <li>across rooms, either the rarest term's global list is walked and filtered by the caller's
+ *       room set, or each room's match stream is merged, whichever is estimated cheaper. A user in
+ *       10k rooms searching a rare term walks a few postings rather than 10k rooms.</li>
+ * </ul>
+ * Terms are split on anything but letters and digits and lower-cased, close to the cluster's
+ * standard analyzer. Re-indexing a message replaces it; the old entry is skipped, not removed.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.search.engine", havingValue = "local")
+public class LocalSearchIndex implements MessageSearchEngine, SearchWriter {
+
+    private static final String ALL = "";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // documents by sequence number
+    private SearchMessageDoc[] docs = new SearchMessageDoc[1024];
+    private long[] roomOf = new long[1024];
+    private long[] tsOf = new long[1024]; // createdAt in microseconds
+    private int size;
+    private final BitSet replaced = new BitSet();
+    private final Map<String, Integer> seqById = new HashMap<>();
+
+    private final Map<String, Postings> global = new HashMap<>();
+    private final Map<Long, Map<String, Postings>> rooms = new HashMap<>();
+
+    @Override
+    public void enqueue(SearchMessageDoc doc) {
+        if (doc.getMessageId() == null || doc.getRoomId() == null) return;
+        Set<String> terms = terms(doc.getText());
+        terms.add(ALL);
+        lock.writeLock().lock();
+        try {
+            int seq = size;
+            if (seq == docs.length) grow();
+            docs[seq] = doc;
+            roomOf[seq] = doc.getRoomId();
+            tsOf[seq] = micros(doc.getCreatedAt());
+            size++;
+            Integer old = seqById.put(doc.getMessageId(), seq);
+            if (old != null) replaced.set(old);
+            Map<String, Postings> room = rooms.computeIfAbsent(doc.getRoomId(), k -> new HashMap<>());
+            for (String t : terms) {
+                global.computeIfAbsent(t, k -> new Postings()).add(seq);
+                room.computeIfAbsent(t, k -> new Postings()).add(seq);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<SearchMessageDoc> search(Long userId, List<Long> roomIds, String query, int limit,
+                                         @Nullable Instant beforeTs, @Nullable String beforeId) {
+        List<String> terms = (query == null || query.isBlank()) ? List.of(ALL) : new ArrayList<>(terms(query));
+        if (terms.isEmpty() || roomIds.isEmpty()) return List.of();
+        long ts = beforeTs == null ? Long.MAX_VALUE : micros(beforeTs);
+        String id = beforeTs == null ? null : beforeId;
+        List<SearchMessageDoc> out = new ArrayList<>(Math.min(limit, 256));
+        lock.readLock().lock();
+        try {
+            if (roomIds.size() == 1) {
+                Walk w = walk(rooms.get(roomIds.get(0)), terms, ts, id);
+                for (int seq; out.size() < limit && w != null && (seq = w.next(null)) >= 0; ) out.add(docs[seq]);
+                return out;
+            }
+            long rarest = Long.MAX_VALUE;
+            for (String t : terms) {
+                Postings p = global.get(t);
+                rarest = Math.min(rarest, p == null ? 0 : p.n);
+            }
+            if (rarest == 0) return out;
+            // global walk: about limit / (share of rooms that are the caller's) postings, assuming rooms of
+            // similar size, plus the room set; per room: a seek in each, each a few times dearer
+            long globalSteps = Math.min(rarest, (long) limit * Math.max(1, rooms.size()) / roomIds.size());
+            if (globalSteps * terms.size() + roomIds.size() <= 3L * roomIds.size() * terms.size()) {
+                Set<Long> member = new HashSet<>(roomIds);
+                Walk w = walk(global, terms, ts, id);
+                for (int seq; out.size() < limit && w != null && (seq = w.next(member)) >= 0; ) out.add(docs[seq]);
+                return out;
+            }
+            PriorityQueue<Walk> heads = new PriorityQueue<>(Math.max(1, roomIds.size()),
+                    (a, b) -> compare(b.head, a.head));
+            for (Long roomId : new HashSet<>(roomIds)) {
+                Walk w = walk(rooms.get(roomId), terms, ts, id);
+                if (w != null && (w.head = w.next(null)) >= 0) heads.add(w);
+            }
+            while (out.size() < limit && !heads.isEmpty()) {
+                Walk w = heads.poll();
+                out.add(docs[w.head]);
+                if ((w.head = w.next(null)) >= 0) heads.add(w);
+            }
+            return out;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Live documents, replaced ones not counted. */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return seqById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** The distinct, lower-cased words of {@code text}, as documents and queries are split. */
+    public static Set<String> terms(@Nullable String text) {
+        Set<String> out = new LinkedHashSet<>();
+        if (text == null) return out;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    /** Newest-first matches of every term in {@code index} older than (ts, id); null if a term has no postings. */
+    @Nullable
+    private Walk walk(@Nullable Map<String, Postings> index, List<String> terms, long ts, @Nullable String id) {
+        if (index == null) return null;
+        Postings[] lists = new Postings[terms.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = index.get(terms.get(i));
+            if (lists[i] == null) return null;
+        }
+        Arrays.sort(lists, Comparator.comparingInt(p -> p.n)); // lead with the rarest
+        Walk w = new Walk(lists);
+        w.pos = (ts == Long.MAX_VALUE ? lists[0].n : lists[0].firstNotBefore(ts, id)) - 1;
+        return w;
+    }
+
+    private final class Walk {
+        final Postings[] lists;
+        int pos;
+        int head = -1;
+
+        Walk(Postings[] lists) {
+            this.lists = lists;
+        }
+
+        /** The next match, or -1; with {@code member}, only documents of those rooms. */
+        int next(@Nullable Set<Long> member) {
+            next:
+            while (pos >= 0) {
+                int seq = lists[0].seqs[pos--];
+                if (replaced.get(seq) || (member != null && !member.contains(roomOf[seq]))) continue;
+                for (int i = 1; i < lists.length; i++) {
+                    if (!lists[i].contains(seq)) continue next;
+                }
+                return seq;
+            }
+            return -1;
+        }
+    }
+
+    /** Sequence numbers sorted by (createdAt, messageId); arrivals are nearly in order, so inserts append. */
+    private final class Postings {
+        int[] seqs = new int[4];
+        int n;
+
+        void add(int seq) {
+            if (n == seqs.length) seqs = Arrays.copyOf(seqs, n * 2);
+            int at = n;
+            while (at > 0 && compare(seqs[at - 1], seq) > 0) at--;
+            System.arraycopy(seqs, at, seqs, at + 1, n - at);
+            seqs[at] = seq;
+            n++;
+        }
+
+        /** Index of the first entry not older than (ts, id). */
+        int firstNotBefore(long ts, @Nullable String id) {
+            int lo = 0, hi = n;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(seqs[mid], ts, id) < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        boolean contains(int seq) {
+            String id = docs[seq].getMessageId();
+            for (int i = firstNotBefore(tsOf[seq], id); i < n && compare(seqs[i], tsOf[seq], id) == 0; i++) {
+                if (seqs[i] == seq) return true; // a replaced version has the same key
+            }
+            return false;
+        }
+    }
+
+    private int compare(int a, int b) {
+        return compare(a, tsOf[b], docs[b].getMessageId());
+    }
+
+    private int compare(int seq, long ts, @Nullable String id) {
+        int c = Long.compare(tsOf[seq], ts);
+        if (c != 0 || id == null) return c;
+        return docs[seq].getMessageId().compareTo(id);
+    }
+
+    private void grow() {
+        int cap = docs.length * 2;
+        docs = Arrays.copyOf(docs, cap);
+        roomOf = Arrays.copyOf(roomOf, cap);
+        tsOf = Arrays.copyOf(tsOf, cap);
+    }
+
+    private static long micros(@Nullable Instant ts) {
+        return ts == null ? 0 : ChronoUnit.MICROS.between(Instant.EPOCH, ts);
+    }
+}
@@ -4,7 +4,7 @@ import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
 import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
 import com.om.Real_Time_Communication.models.ChatMessage;
 import com.om.Real_Time_Communication.utility.MessageCursor;
-//import io.micrometer.common.lang.Nullable;
+import io.micrometer.common.lang.Nullable;
 import jakarta.transaction.Transactional;
 //import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.PageRequest;
@@ -12,25 +12,46 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 
-import java.sql.Timestamp;
 import java.time.Instant;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Keyset pagination over a room's history, ordered by (server_ts, id).
+ *
+ * Every page is a seek on the (room_id, server_ts, id) index followed by at most {@code limit + 1}
+ * rows, so fetching page 1 and page 10,000 costs the same. Messages the viewer deleted for
+ * themselves, or deleted for everyone, are filtered in SQL so pages are always full. Rows are
+ * narrow; the E2EE payloads of a page are fetched from the envelope store in one batch.
+ *
+ * History older than the hot window lives in the {@link HistoryArchiveService} when it is enabled.
+ * A room's archived messages all precede its hot ones, so a page that runs out of hot rows going
+ * back continues in the archive, and a forward page starts there until it is past it.
+ */
 @Service
 
 public class MessagePagingService {
 
+    static final int MAX_LIMIT = 200;
+
     private final ChatMessageRepository repo;
 
     private final ChatRoomParticipantRepository partrepo;
+    private final @Nullable EnvelopeService envelopes;
+    private final @Nullable HistoryArchiveService archive;
 //    private final StringRedisTemplate redis;
 //private final @Nullable StringRedisTemplate redis;
 //
 ////    public MessagePagingService(ChatMessageRepository repo, ChatRoomParticipantRepository partrepo, StringRedisTemplate redis) {
 //public MessagePagingService(ChatMessageRepository repo, ChatRoomParticipantRepository partrepo, @Nullable StringRedisTemplate redis) {
-public MessagePagingService(ChatMessageRepository repo, ChatRoomParticipantRepository partrepo) {
+public MessagePagingService(ChatMessageRepository repo, ChatRoomParticipantRepository partrepo,
+                            @Nullable EnvelopeService envelopes, @Nullable HistoryArchiveService archive) {
         this.repo = repo;
         this.partrepo = partrepo;
+        this.envelopes = envelopes;
+        this.archive = archive;
 //        this.redis = redis;
     }
 
@@ -44,53 +65,106 @@ public MessagePagingService(ChatMessageRepository repo, ChatRoomParticipantRepos
 //        }
     }
 
-    public List<ChatMessage> list(Long roomId, Instant beforeTs, Long beforeId, int limit) {
-        int lim = Math.min(Math.max(limit, 1), 200);
+    /** Newest first, older than (beforeTs, beforeId) when given; what the viewer may see only. */
+    public List<ChatMessage> list(Long roomId, Long viewerId, Instant beforeTs, Long beforeId, int limit) {
+        int lim = clamp(limit);
+        List<ChatMessage> rows;
         if (beforeTs == null || beforeId == null) {
-            return repo.newest(roomId, PageRequest.of(0, lim));
+            rows = repo.newestVisible(roomId, viewerId, PageRequest.of(0, lim));
+        } else {
+            rows = repo.pageBackward(roomId, viewerId, beforeTs, beforeId, PageRequest.of(0, lim));
         }
-        return repo.pageBackward(roomId, beforeTs, beforeId, PageRequest.of(0, lim));
+        return withEnvelopes(olderFromArchive(roomId, viewerId, beforeTs, beforeId, rows, lim));
         // client uses the last item’s (serverTs,id) as next cursor
     }
 
-    public PageDto pageForward(Long roomId, String cursor, int limit) {
-        java.util.AbstractMap.SimpleEntry<Instant, Long> c =
-                (cursor == null) ? null : MessageCursor.decode(cursor);
-        Timestamp ts = (c == null) ? new Timestamp(0) : Timestamp.from(c.getKey());
+    /** Messages after {@code cursor} in ascending order; a null cursor starts at the oldest message. */
+    public PageDto pageForward(Long roomId, Long viewerId, String cursor, int limit) {
+        int lim = clamp(limit);
+        SimpleEntry<Instant, Long> c = (cursor == null) ? null : MessageCursor.decode(cursor);
+        Instant ts = (c == null) ? Instant.EPOCH : c.getKey();
         Long id = (c == null) ? 0L : c.getValue();
 
-        List<ChatMessage> rows = repo.pageForward(roomId, ts, id, limit + 1);
-        boolean hasMore = rows.size() > limit;
-        if (hasMore) rows = rows.subList(0, limit);
+        List<ChatMessage> rows = new ArrayList<>();
+        if (archive != null) rows.addAll(archive.newerThan(roomId, viewerId, ts, id, lim + 1));
+        if (rows.size() <= lim) {
+            if (!rows.isEmpty()) {
+                ChatMessage last = rows.get(rows.size() - 1);
+                ts = last.getServerTs();
+                id = last.getId();
+            }
+            rows.addAll(repo.pageForward(roomId, viewerId, ts, id, PageRequest.of(0, lim + 1 - rows.size())));
+        }
+        boolean hasMore = rows.size() > lim;
+        if (hasMore) rows = rows.subList(0, lim);
+        withEnvelopes(rows);
 
-        String next = rows.isEmpty() ? null :
-                MessageCursor.encode(rows.get(rows.size()-1).getServerTs(), rows.get(rows.size()-1).getId());
+        // Kept even on the last page so a client can poll for newer messages from here
+        String next = rows.isEmpty() ? cursor : cursorOf(rows.get(rows.size() - 1));
 
-        return new PageDto(rows, next, null);
+        return new PageDto(rows, next, null, hasMore);
     }
 
-    public PageDto pageBackward(Long roomId, String cursor, int limit) {
-        if (cursor == null) throw new IllegalArgumentException("cursor required for backward paging");
-        java.util.AbstractMap.SimpleEntry<Instant, Long> c = MessageCursor.decode(cursor);
-        List<ChatMessage> rows = repo.pageBackward(roomId, Timestamp.from(c.getKey()), c.getValue(), limit + 1);
-        boolean hasMore = rows.size() > limit;
-        if (hasMore) rows = rows.subList(0, limit);
+    /**
+     * Messages before {@code cursor}, returned in ascending order; a null cursor returns the newest page.
+     * {@code prev} points at the oldest message returned and is null once the start of the room is reached.
+     */
+    public PageDto pageBackward(Long roomId, Long viewerId, String cursor, int limit) {
+        int lim = clamp(limit);
+        List<ChatMessage> rows;
+        SimpleEntry<Instant, Long> c = (cursor == null) ? null : MessageCursor.decode(cursor);
+        if (c == null) {
+            rows = repo.newestVisible(roomId, viewerId, PageRequest.of(0, lim + 1));
+        } else {
+            rows = repo.pageBackward(roomId, viewerId, c.getKey(), c.getValue(), PageRequest.of(0, lim + 1));
+        }
+        rows = olderFromArchive(roomId, viewerId, c == null ? null : c.getKey(), c == null ? null : c.getValue(),
+                rows, lim + 1);
+        boolean hasMore = rows.size() > lim;
         // we fetched DESC; return ASC
-        java.util.Collections.reverse(rows);
+        rows = new ArrayList<>(hasMore ? rows.subList(0, lim) : rows);
+        Collections.reverse(rows);
+        withEnvelopes(rows);
 
-        String prev = rows.isEmpty() ? null :
-                MessageCursor.encode(rows.get(0).getServerTs(), rows.get(0).getId());
+        String next = rows.isEmpty() ? null : cursorOf(rows.get(rows.size() - 1));
+        String prev = hasMore ? cursorOf(rows.get(0)) : null;
 
-        return new PageDto(rows, null, prev);
+        return new PageDto(rows, next, prev, hasMore);
+    }
+
+    /** {@code hot} (newest first) topped up to {@code want} rows from the archive, continuing where it ends. */
+    private List<ChatMessage> olderFromArchive(Long roomId, Long viewerId, Instant beforeTs, Long beforeId,
+                                               List<ChatMessage> hot, int want) {
+        if (archive == null || hot.size() >= want) return hot;
+        if (!hot.isEmpty()) {
+            ChatMessage oldest = hot.get(hot.size() - 1);
+            beforeTs = oldest.getServerTs();
+            beforeId = oldest.getId();
+        }
+        List<ChatMessage> rows = new ArrayList<>(hot);
+        rows.addAll(archive.olderThan(roomId, viewerId, beforeTs, beforeId, want - hot.size()));
+        return rows;
+    }
+
+    private List<ChatMessage> withEnvelopes(List<ChatMessage> rows) {
+        return envelopes == null ? rows : envelopes.load(rows);
+    }
+
+    private static String cursorOf(ChatMessage m) {
+        return MessageCursor.encode(m.getServerTs(), m.getId());
+    }
+
+    private static int clamp(int limit) {
+        return Math.min(Math.max(limit, 1), MAX_LIMIT);
     }
 
     public static final class PageDto {
         public final List<ChatMessage> data;
-        public final String next; // for forward
-        public final String prev; // for backward
-        public PageDto(List<ChatMessage> data, String next, String prev) {
-            this.data = data; this.next = next; this.prev = prev;
+        public final String next; // newer than this page
+        public final String prev; // older than this page
+        public final boolean hasMore; // more rows in the requested direction
+        public PageDto(List<ChatMessage> data, String next, String prev, boolean hasMore) {
+            this.data = data; this.next = next; this.prev = prev; this.hasMore = hasMore;
         }
     }
 }
-
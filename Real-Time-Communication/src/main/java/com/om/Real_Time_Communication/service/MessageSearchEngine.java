@@ -0,0 +1,24 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import io.micrometer.common.lang.Nullable;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Backend of {@link SearchService}: the search cluster, or an in-process index
+ * ({@code rtc.search.engine}). Results come newest first by (createdAt, messageId), so a page
+ * continues after the last hit of the previous one (search_after) at any depth.
+ */
+public interface MessageSearchEngine {
+
+    /**
+     * Up to {@code limit} documents of {@code roomIds} containing every term of {@code query}, or
+     * any document when it is blank; older than ({@code beforeTs}, {@code beforeId}) when given.
+     * {@code roomIds} holds only rooms {@code userId} belongs to. Fewer than {@code limit} only when
+     * nothing older matches, so a full page means there may be more.
+     */
+    List<SearchMessageDoc> search(Long userId, List<Long> roomIds, String query, int limit,
+                                  @Nullable Instant beforeTs, @Nullable String beforeId);
+}
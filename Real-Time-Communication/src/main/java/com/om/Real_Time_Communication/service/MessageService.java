@@ -7,6 +7,7 @@ import com.om.Real_Time_Communication.dto.EventMessage;
 import com.om.Real_Time_Communication.dto.MessageCreated;
 import com.om.Real_Time_Communication.dto.MessageDto;
 import com.om.Real_Time_Communication.models.*;
+import com.om.Real_Time_Communication.presence.OutboxWriter;
 import com.om.Real_Time_Communication.utility.IdValidators;
 import com.om.Real_Time_Communication.security.SessionRegistry;
 import jakarta.transaction.Transactional;
@@ -23,7 +24,6 @@ import org.slf4j.LoggerFactory;
 
 import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
-import java.time.Instant;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -33,8 +33,8 @@ public class MessageService {
 
     private static final Logger log = LoggerFactory.getLogger(MessageService.class);
 
-    @Autowired
-    private  OutboxEventRepository outboxRepo;
+    @Autowired(required = false) // present when outbox.enabled=true
+    private OutboxWriter outboxWriter;
     @Autowired
     private  ObjectMapper objectMapper;
 
@@ -76,14 +76,23 @@ public class MessageService {
     private SessionRegistry sessionRegistry;
 
     @Autowired
-    private PendingMessageService pendingMessages;
-
-    @Autowired
-    private UndeliveredMessageStore undeliveredStore;
+    private OfflineMessageQueue offlineQueue;
 
     @Autowired
     private InboxDeliveryService inboxDeliveryService;
 
+    @Autowired(required = false)
+    private BlindSearchIndex blindSearch;
+
+    @Autowired(required = false)
+    private EnvelopeService envelopes;
+
+    @Autowired(required = false)
+    private ReadModelService readModel;
+
+    @Autowired(required = false) // present when rtc.history.archive.enabled=true
+    private HistoryArchiveService archive;
+
 
     @Transactional
     public ChatMessage saveInbound(Long roomId, Long senderId, ChatSendDto dto) {
@@ -111,7 +120,7 @@ public class MessageService {
 
         // 3) Idempotency: if this messageId already exists for the room, return it
         Optional<ChatMessage> existing = chatMessageRepository.findByRoomIdAndMessageId(roomId, dto.getMessageId());
-        if (existing.isPresent()) return existing.get();
+        if (existing.isPresent()) return withEnvelope(existing.get());
 
         // 4) Build entity from DTO (+ E2EE envelope rules)
         ChatMessage msg = new ChatMessage();
@@ -119,7 +128,7 @@ public class MessageService {
         msg.setSenderId(senderId);
         msg.setMessageId(dto.getMessageId());
         msg.setType(dto.getType());
-        msg.setServerTs(Instant.now());
+        // server_ts is the time in the id, assigned on save
 
         boolean e2ee = dto.isE2ee() || (dto.getCiphertext() != null && dto.getCiphertext().length > 0);
         if (!e2ee) {
@@ -151,6 +160,8 @@ public class MessageService {
         msg.setCiphertext(dto.getCiphertext());
         msg.setKeyRef(dto.getKeyRef());
         msg.setBody(null);
+        if (blindSearch != null) msg.setSearchTokens(blindSearch.checkTokens(dto.getSearchTokens()));
+        if (envelopes != null) envelopes.attach(msg);
 
         // 5) Persist (tolerate race duplicates)
         ChatMessage saved;
@@ -159,13 +170,39 @@ public class MessageService {
         } catch (DataIntegrityViolationException dup) {
             // Another node/thread beat us — load and return the existing row
             return chatMessageRepository.findByRoomIdAndMessageId(roomId, dto.getMessageId())
+                    .map(this::withEnvelope)
                     .orElseThrow(() -> new RuntimeException("Duplicate detected but message not found"));
         }
 
-        // 6) Fire notification to other members (don’t fail the write if notify breaks)
+        if (blindSearch != null) blindSearch.messageAdded(roomId, saved.getId(), saved.getSearchTokens());
+
+        // 6) Same transaction: every other member gets a PENDING delivery row with the message
+        List<Long> members = membership.memberIds(roomId);
+        inboxDeliveryService.recordPending(saved, members);
+
+        // 7) Same transaction: the event is published if and only if the message commits
+        if (outboxWriter != null) {
+            MessageCreated event = new MessageCreated();
+            event.roomId = roomId;
+            event.messageId = saved.getMessageId();
+            event.senderId = senderId;
+            event.type = saved.getType().name();
+            event.e2ee = saved.isE2ee();
+            event.serverTs = saved.getServerTs();
+            event.body = saved.isE2ee() ? null : saved.getBody();
+            event.e2eeVer = saved.getE2eeVer();
+            event.algo = saved.getAlgo();
+            event.aad = saved.getAad();
+            event.iv = saved.getIv();
+            event.ciphertext = saved.getCiphertext();
+            event.keyRef = saved.getKeyRef();
+            outboxWriter.append("room", roomId, "MessageCreated", event);
+        }
+
+        // 8) Fire notification to other members (don’t fail the write if notify breaks)
         try {
-            if (eventPublisher != null && membership != null) {
-                java.util.List<Long> recipients = new java.util.ArrayList<>(membership.memberIds(roomId));
+            if (eventPublisher != null) {
+                java.util.List<Long> recipients = new java.util.ArrayList<>(members);
                 recipients.removeIf(id -> id.equals(senderId)); // exclude author
 
                 String preview = null;
@@ -188,10 +225,15 @@ public class MessageService {
             org.slf4j.LoggerFactory.getLogger(getClass())
                     .warn("notify failure room={} msg={} err={}", roomId, dto.getMessageId(), notifyEx.toString());
         }
-        inboxDeliveryService.sendInboxEvent(saved);
+        // The live inbox push runs once, after the ordered broadcast (see OrderedMessageService)
         return saved;
     }
 
+    private ChatMessage withEnvelope(ChatMessage m) {
+        if (envelopes != null) envelopes.load(List.of(m));
+        return m;
+    }
+
     public interface DirectRoomPolicy {
         boolean isDirect(Long roomId);
         Long peer(Long roomId, Long userId);
@@ -248,25 +290,26 @@ public class MessageService {
                 )
         );
 
-        // Deliver to each active session for the receiver; if no session or a send
-        // fails, record the undelivered message for later inspection.
+        // Deliver to each active session for the receiver; if there is none or a send
+        // fails, queue the message for the receiver's next connect.
         Long receiverUserId = Long.valueOf(receiverId);
-        Set<WebSocketSession> sessions = sessionRegistry.getSessions(receiverUserId);
-        if (sessions.isEmpty()) {
-            undeliveredStore.record(receiverUserId, String.valueOf(saved.getId()),
-                    new IllegalStateException("no active session"));
-        } else {
-            for (WebSocketSession s : sessions) {
-                try {
-                    Map<String, Object> headers =
-                            Collections.singletonMap(SimpMessageHeaderAccessor.SESSION_ID_HEADER, s.getId());
-                    messagingTemplate.convertAndSendToUser(String.valueOf(receiverId),
-                            "/queue/private", dto, headers);
-                } catch (Exception ex) {
-                    undeliveredStore.record(receiverUserId, String.valueOf(saved.getId()), ex);
-                }
+        Collection<WebSocketSession> sessions = sessionRegistry.getSessions(receiverUserId);
+        boolean delivered = false;
+        for (WebSocketSession s : sessions) {
+            try {
+                Map<String, Object> headers =
+                        Collections.singletonMap(SimpMessageHeaderAccessor.SESSION_ID_HEADER, s.getId());
+                messagingTemplate.convertAndSendToUser(String.valueOf(receiverId),
+                        "/queue/private", dto, headers);
+                delivered = true;
+            } catch (Exception ex) {
+                org.slf4j.LoggerFactory.getLogger(getClass())
+                        .warn("private send failed user={} session={} err={}", receiverUserId, s.getId(), ex.toString());
             }
         }
+        if (!delivered) {
+            offlineQueue.enqueue(receiverUserId, saved);
+        }
 
 
         // Optionally, send to sender (ack/echo)
@@ -338,30 +381,24 @@ public class MessageService {
 
 
     public List<MessageDto> getConversation(String currentUserId, String otherUserId) {
-        List<Message> messages = messageRepository.findConversationBetween(currentUserId, otherUserId);
+        // Hidden/deleted rows are filtered by the query, not after loading
+        List<Message> messages = messageRepository.findVisibleConversation(currentUserId, otherUserId);
         return messages.stream()
-                .filter(m -> {
-                    if (m.isDeletedForEveryone()) return false; // globally deleted
-
-                    if (currentUserId.equals(m.getSenderId())) {
-                        return !m.isDeletedBySender(); // not hidden by sender
-                    } else if (currentUserId.equals(m.getReceiverId())) {
-                        return !m.isDeletedByReceiver(); // not hidden by receiver
-                    }
-                    return false;
-                })
                 .map(this::toDto)
                 .collect(Collectors.toList());
     }
 
     public void deleteMessageForMe(String messageId, String userId) {
-        ChatMessage message = chatMessageRepository.findByMessageId(messageId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.FORBIDDEN, "Message not found"));
+        ChatMessage message = findForDelete(messageId);
         Optional<Long> maybeUserId = parseUserId(userId);
         if (maybeUserId.isEmpty()) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "User not authorized");
         }
         Long id = maybeUserId.get();
+        if (message == null) {
+            archive.tombstone(messageId, id, false);
+            return;
+        }
         if (id.equals(message.getSenderId())) {
             message.setDeletedBySender(true);
         } else {
@@ -372,10 +409,13 @@ public class MessageService {
     }
 
     public void deleteMessageForEveryone(String messageId, String userId) {
-        ChatMessage message = chatMessageRepository.findByMessageId(messageId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.FORBIDDEN, "Message not found"));
+        ChatMessage message = findForDelete(messageId);
 
         Optional<Long> maybeUserId = parseUserId(userId);
+        if (message == null && maybeUserId.isPresent()) {
+            archive.tombstone(messageId, maybeUserId.get(), true); // counts only if they sent it
+            return;
+        }
         if (maybeUserId.isEmpty() || !maybeUserId.get().equals(message.getSenderId())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only sender can delete for everyone");
         }
@@ -386,9 +426,22 @@ public class MessageService {
             message.setBody("This message was deleted");
         }
         chatMessageRepository.save(message);
+        if (readModel != null) readModel.messageDeleted(message);
         broadcastMessageUpdate(message);
     }
 
+    /**
+     * The hot row of the message; null when it is not there but may be archived, whose segments
+     * cannot be changed, so the caller records the delete with {@link HistoryArchiveService#tombstone}.
+     */
+    private ChatMessage findForDelete(String messageId) {
+        Optional<ChatMessage> message = chatMessageRepository.findByMessageId(messageId);
+        if (message.isEmpty() && archive == null) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Message not found");
+        }
+        return message.orElse(null);
+    }
+
     private Message toEntity(MessageDto messageDto) {
         Message message = new Message();
         message.setGroupMessage(messageDto.getGroupMessage());
@@ -504,13 +557,9 @@ public class MessageService {
 
 
     public List<MessageDto> getGroupMessageHistory(String chatRoomId, String currentUserId) {
-        List<Message> messages = messageRepository.findByReceiverIdAndIsGroupMessageTrue(chatRoomId);
+        List<Message> messages = messageRepository.findVisibleGroupHistory(chatRoomId, currentUserId);
 
         return messages.stream()
-                .filter(m ->
-                        !Boolean.TRUE.equals(m.isDeletedForEveryone()) &&
-                                !m.getDeletedByUserIds().contains(currentUserId)
-                )
                 .map(this::toDto)
                 .collect(Collectors.toList());
     }
@@ -542,6 +591,7 @@ public class MessageService {
     }
 
     private void broadcastMessageUpdate(ChatMessage message) {
+        withEnvelope(message);
         String roomKey = resolveRoomKey(message.getRoomId());
         Map<String, Object> event = toRoomEvent(message);
         messagingTemplate.convertAndSend("/topic/room/" + roomKey, event);
@@ -0,0 +1,238 @@
+package com.om.Real_Time_Communication.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.om.Real_Time_Communication.Repository.MessageDeliveryRepository;
+import com.om.Real_Time_Communication.Repository.MessageRepository;
+import com.om.Real_Time_Communication.dto.MessageDto;
+import com.om.Real_Time_Communication.models.Message;
+import com.om.Real_Time_Communication.models.MessageDelivery;
+import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import com.om.Real_Time_Communication.security.SessionRegistry;
+import com.om.Real_Time_Communication.utility.RtcMetrics;
+import io.micrometer.common.lang.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Private messages that could not be handed to a session of their receiver. Each one is a
+ * {@link MessageDelivery} row without a room (msg id {@code pm:<message id>}), so the queue
+ * survives restarts and costs no heap while the user is away. A user holds at most
+ * {@code rtc.offline.max-per-user} entries; past that the oldest are dropped ({@code drop-oldest})
+ * or the new message is not queued ({@code reject}).
+ * <p>
+ * When the user subscribes to {@code /user/queue/private} the queue is drained in id order, a page
+ * at a time, with at most {@code rtc.offline.drain.window} messages sent and not yet acked; every
+ * ack on {@code /app/ack} removes its row and refills the window. Whatever is still unacked when
+ * the user disconnects is sent again on the next drain.
+ */
+@Service
+public class OfflineMessageQueue implements SessionRegistry.Listener {
+
+    private static final Logger log = LoggerFactory.getLogger(OfflineMessageQueue.class);
+    private static final String PREFIX = "pm:";
+    private static final String QUEUE = "/queue/private";
+    private static final Collection<MessageDeliveryStatus> QUEUED =
+            EnumSet.of(MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS);
+
+    private static final class Drain {
+        long afterId;
+        int inFlight;
+        boolean exhausted;
+    }
+
+    private final MessageDeliveryRepository deliveries;
+    private final MessageRepository messages;
+    private final SimpMessagingTemplate messaging;
+    private final RtcMetrics metrics;
+    private final int maxPerUser;
+    private final boolean dropOldest;
+    private final int pageSize;
+    private final int window;
+
+    // Queue lengths of recently active users, so enqueue only counts rows on a miss
+    private final Cache<Long, AtomicLong> counts;
+    private final Map<Long, Drain> drains = new ConcurrentHashMap<>();
+
+    public OfflineMessageQueue(MessageDeliveryRepository deliveries,
+                               MessageRepository messages,
+                               SimpMessagingTemplate messaging,
+                               @Nullable RtcMetrics metrics,
+                               @Nullable SessionRegistry sessionRegistry,
+                               @Value("${rtc.offline.max-per-user:1000}") int maxPerUser,
+                               @Value("${rtc.offline.overflow:drop-oldest}") String overflow,
+                               @Value("${rtc.offline.drain.page-size:100}") int pageSize,
+                               @Value("${rtc.offline.drain.window:200}") int window,
+                               @Value("${rtc.offline.count-cache-size:100000}") long countCacheSize) {
+        this.deliveries = deliveries;
+        this.messages = messages;
+        this.messaging = messaging;
+        this.metrics = metrics;
+        this.maxPerUser = maxPerUser;
+        this.dropOldest = switch (overflow) {
+            case "drop-oldest" -> true;
+            case "reject" -> false;
+            default -> throw new IllegalArgumentException("rtc.offline.overflow must be drop-oldest or reject: " + overflow);
+        };
+        this.pageSize = Math.max(1, pageSize);
+        this.window = Math.max(this.pageSize, window);
+        this.counts = Caffeine.newBuilder().maximumSize(countCacheSize).build();
+        if (sessionRegistry != null) sessionRegistry.addListener(this);
+    }
+
+    /** Queues {@code message} for {@code userId}; false when the queue is full and overflow is {@code reject}. */
+    public boolean enqueue(Long userId, Message message) {
+        AtomicLong count = counts.get(userId, k -> new AtomicLong(deliveries.countOffline(k, QUEUED)));
+        if (!dropOldest && count.get() >= maxPerUser) {
+            if (metrics != null) metrics.dropped();
+            log.warn("Offline queue full user={} max={}, message {} not queued", userId, maxPerUser, message.getId());
+            return false;
+        }
+        if (!deliveries.insertPendingIfAbsent(PREFIX + message.getId(), null, userId)) {
+            return true; // already queued (a retried enqueue); the count stays as it is
+        }
+        long n = count.incrementAndGet();
+        // Trim with some slack so a user at the cap does not pay for a trim on every message
+        if (dropOldest && n > maxPerUser + Math.max(1, maxPerUser / 8)) {
+            trim(userId, count);
+        }
+        return true;
+    }
+
+    private void trim(Long userId, AtomicLong count) {
+        long queued = deliveries.countOffline(userId, QUEUED);
+        int excess = (int) Math.min(Integer.MAX_VALUE, queued - maxPerUser);
+        if (excess > 0) {
+            List<Long> ids = new ArrayList<>(excess);
+            for (MessageDelivery d : deliveries.findOfflinePage(userId, QUEUED, 0L, PageRequest.of(0, excess))) {
+                ids.add(d.getId());
+            }
+            deliveries.deleteAllByIdInBatch(ids);
+            queued -= ids.size();
+            if (metrics != null) metrics.dropped(ids.size());
+            log.warn("Offline queue over {} for user={}, dropped {} oldest", maxPerUser, userId, ids.size());
+        }
+        count.set(queued);
+    }
+
+    /** The client acked private message {@code messageId}: its row goes and the drain window refills. */
+    public void ack(Long userId, Long messageId) {
+        int removed = deliveries.deleteOffline(userId, PREFIX + messageId);
+        if (removed == 0) return;
+        AtomicLong count = counts.getIfPresent(userId);
+        if (count != null) count.addAndGet(-removed);
+        Drain d = drains.get(userId);
+        if (d == null) return;
+        boolean refill;
+        synchronized (d) {
+            d.inFlight = Math.max(0, d.inFlight - removed);
+            refill = d.inFlight <= window / 2;
+        }
+        if (refill) pump(userId, d);
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Principal user = event.getUser();
+        if (user == null || !("/user" + QUEUE).equals(accessor.getDestination())) return;
+        try {
+            drain(Long.valueOf(user.getName()));
+        } catch (NumberFormatException ignore) {
+            // not one of our users
+        }
+    }
+
+    /** Starts (or restarts from the oldest entry) the drain for {@code userId}; returns messages sent now. */
+    public int drain(Long userId) {
+        Drain d = new Drain();
+        drains.put(userId, d);
+        return pump(userId, d);
+    }
+
+    /** Messages sent to {@code userId} and not acked yet, when a drain is running. */
+    public int inFlight(Long userId) {
+        Drain d = drains.get(userId);
+        if (d == null) return 0;
+        synchronized (d) {
+            return d.inFlight;
+        }
+    }
+
+    @Override
+    public void onUserOnline(Long userId) {
+        // the drain starts with the subscription to the private queue
+    }
+
+    @Override
+    public void onUserOffline(Long userId) {
+        drains.remove(userId);
+    }
+
+    private int pump(Long userId, Drain d) {
+        int sent = 0;
+        synchronized (d) {
+            while (!d.exhausted && d.inFlight < window && drains.get(userId) == d) {
+                int limit = Math.min(pageSize, window - d.inFlight);
+                List<MessageDelivery> page = deliveries.findOfflinePage(userId, QUEUED, d.afterId, PageRequest.of(0, limit));
+                d.exhausted = page.size() < limit;
+                if (page.isEmpty()) break;
+                d.afterId = page.get(page.size() - 1).getId();
+
+                List<Long> messageIds = new ArrayList<>(page.size());
+                for (MessageDelivery row : page) messageIds.add(Long.valueOf(row.getMsgId().substring(PREFIX.length())));
+                Map<Long, Message> byId = new HashMap<>();
+                for (Message m : messages.findAllById(messageIds)) byId.put(m.getId(), m);
+
+                List<Long> newlySent = new ArrayList<>(page.size());
+                List<Long> orphans = new ArrayList<>();
+                String user = String.valueOf(userId);
+                for (int i = 0; i < page.size(); i++) {
+                    Message m = byId.get(messageIds.get(i));
+                    if (m == null) { // hard-deleted since it was queued
+                        orphans.add(page.get(i).getId());
+                        continue;
+                    }
+                    messaging.convertAndSendToUser(user, QUEUE, toDto(m));
+                    d.inFlight++;
+                    sent++;
+                    if (page.get(i).getStatus() == MessageDeliveryStatus.PENDING) newlySent.add(page.get(i).getId());
+                }
+                if (!orphans.isEmpty()) deliveries.deleteAllByIdInBatch(orphans);
+                if (!newlySent.isEmpty()) {
+                    deliveries.updateStatusForIds(newlySent,
+                            MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS, Instant.now());
+                }
+            }
+            if (d.exhausted && d.inFlight == 0) drains.remove(userId, d);
+        }
+        if (sent > 0) log.debug("[OFFLINE] sent {} queued messages to user={}", sent, userId);
+        return sent;
+    }
+
+    private static MessageDto toDto(Message message) {
+        MessageDto dto = new MessageDto();
+        dto.setId(message.getId());
+        dto.setSenderId(message.getSenderId());
+        dto.setReceiverId(message.getReceiverId());
+        dto.setContent(message.getContent());
+        dto.setType(message.getType());
+        dto.setTimestamp(message.getTimestamp());
+        dto.setGroupMessage(message.getGroupMessage());
+        dto.setMessageId(message.getMessageId());
+        return dto;
+    }
+}
@@ -1,18 +1,26 @@
 package com.om.Real_Time_Communication.service;
 
-import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
 import com.om.Real_Time_Communication.dto.AckDto;
 import com.om.Real_Time_Communication.dto.ChatSendDto;
 import com.om.Real_Time_Communication.models.ChatMessage;
 import com.om.Real_Time_Communication.models.ChatRoom;
 import com.om.Real_Time_Communication.presence.PerRoomDispatcher;
+import com.om.Real_Time_Communication.service.RoomAccessCache.RoomAccess;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 
@@ -21,70 +29,130 @@ public class OrderedMessageService {
     private final PerRoomDispatcher dispatcher;
     private final MessageService messageService; // existing service doing DB + fanout
     private final SimpMessagingTemplate messagingTemplate;
-    private final ChatRoomRepository chatRoomRepository;
+    private final RoomAccessCache roomAccessCache;
     private final RoomMembershipService membershipService;
     private final InboxDeliveryService inboxDeliveryService;
 
+    // Node-wide cap on sends accepted but not yet persisted
+    private final Semaphore inFlight;
+    private final long retryAfterMs;
+
     public OrderedMessageService(
             PerRoomDispatcher dispatcher,
             MessageService messageService,
             SimpMessagingTemplate messagingTemplate,
-            ChatRoomRepository chatRoomRepository,
+            RoomAccessCache roomAccessCache,
             RoomMembershipService membershipService,
-            InboxDeliveryService inboxDeliveryService
+            InboxDeliveryService inboxDeliveryService,
+            @Value("${rtc.send.max-in-flight:10000}") int maxInFlight,
+            @Value("${rtc.send.retry-after-ms:500}") long retryAfterMs
     ) {
         this.dispatcher = dispatcher;
         this.messageService = messageService;
         this.messagingTemplate = messagingTemplate;
-        this.chatRoomRepository = chatRoomRepository;
+        this.roomAccessCache = roomAccessCache;
         this.membershipService = membershipService;
         this.inboxDeliveryService = inboxDeliveryService;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.retryAfterMs = retryAfterMs;
     }
 
     /**
      * Strict FIFO: persist then ACK the sender and broadcast to the room in order.
-     * Runs the work on a per-room executor to preserve message ordering.
+     * Blocks the caller until the whole pipeline has run; prefer {@link #saveAndBroadcastAsync}.
      */
     public void saveAndBroadcastOrdered(String roomId, Long senderId, ChatSendDto dto) throws Exception {
-        log.info("Received message {} for room {} from sender {}", dto.getMessageId(), roomId, senderId);
-        ChatRoom room = chatRoomRepository.findByRoomId(roomId)
-                .orElseGet(() -> tryResolveByNumericId(roomId));
+        try {
+            saveAndBroadcastAsync(roomId, senderId, dto).join();
+        } catch (CompletionException ce) {
+            if (ce.getCause() instanceof Exception e) throw e;
+            throw ce;
+        }
+    }
 
-        if (room == null) {
-            throw new IllegalArgumentException("Room not found: " + roomId);
+    /**
+     * Non-blocking variant: hands the frame to the room's ordered mailbox and returns immediately.
+     * The sender gets {@code /queue/ack} SENT_TO_WS once the message is persisted, RETRY when the node
+     * or the room is overloaded, and FAILED when the message is refused.
+     */
+    public CompletableFuture<ChatMessage> saveAndBroadcastAsync(String roomId, Long senderId, ChatSendDto dto) {
+        log.debug("Received message {} for room {} from sender {}", dto.getMessageId(), roomId, senderId);
+        // Room key or numeric id; served from the room cache once warm
+        RoomAccess access = roomAccessCache.room(roomId);
+
+        if (access == null) {
+            IllegalArgumentException notFound = new IllegalArgumentException("Room not found: " + roomId);
+            replyFailure(roomId, senderId, dto, notFound);
+            return CompletableFuture.failedFuture(notFound);
+        }
+        if (!inFlight.tryAcquire()) {
+            replyBackpressure(roomId, senderId, dto, "node_overloaded");
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many in-flight sends"));
         }
+
+        ChatRoom room = access.room();
         Long internalId = room.getId();
-        dispatcher.executeAndWait(internalId, () -> {
+        AtomicBoolean permitHeld = new AtomicBoolean(true);
+        Runnable releasePermit = () -> {
+            if (permitHeld.compareAndSet(true, false)) inFlight.release();
+        };
+        CompletableFuture<ChatMessage> pipeline = dispatcher.submit(internalId, () -> {
             // Keep the real work transactional
-
-            ChatMessage saved = messageService.saveInbound(internalId, senderId, dto);
-            log.info("Persisted message {} for room {}", saved.getMessageId(), roomId);
+            ChatMessage saved;
+            try {
+                saved = messageService.saveInbound(internalId, senderId, dto);
+            } finally {
+                releasePermit.run();
+            }
             messagingTemplate.convertAndSendToUser(
                     String.valueOf(senderId),
                     "/queue/ack",
                     new AckDto(roomId, saved.getMessageId(), saved.getServerTs(), "SENT_TO_WS")
             );
-            log.info("Acknowledged message {} to sender {}", saved.getMessageId(), senderId);
 
-            // Broadcast the message event to the room topic for other subscribers
-            Map<String, Object> event = messageService.toRoomEvent(saved);
-            messagingTemplate.convertAndSend("/topic/room/" + roomId, event);
-            log.info("Broadcasted message {} to room {}", saved.getMessageId(), roomId);
+            try {
+                // Broadcast the message event to the room topic for other subscribers
+                Map<String, Object> event = messageService.toRoomEvent(saved);
+                messagingTemplate.convertAndSend("/topic/room/" + roomId, event);
 
-            List<Long> members = membershipService.memberIds(internalId);
-
-            inboxDeliveryService.recordAndDispatch(room, saved, event, members);
+                List<Long> members = membershipService.memberIds(internalId);
+                inboxDeliveryService.dispatch(room, saved, event, members);
+            } catch (Exception fanoutEx) {
+                // Persisted with its delivery rows and acked; members missed here get it from the inbox backlog
+                log.warn("Fan-out failed room={} msg={} err={}", roomId, saved.getMessageId(), fanoutEx.toString());
+            }
+            return saved;
+        });
 
-            return null; // required by Callable
+        return pipeline.whenComplete((saved, err) -> {
+            releasePermit.run();
+            if (err == null) return;
+            Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+            // Refused by a full mailbox, or dropped from it under DROP_OLDEST: the room was busy, not the message bad
+            if (cause instanceof RejectedExecutionException || cause instanceof CancellationException) {
+                replyBackpressure(roomId, senderId, dto, "room_overloaded");
+            } else {
+                replyFailure(roomId, senderId, dto, cause);
+            }
         });
     }
 
-    private ChatRoom tryResolveByNumericId(String roomId) {
-        try {
-            Long numericId = Long.valueOf(roomId);
-            return chatRoomRepository.findById(numericId).orElse(null);
-        } catch (NumberFormatException ex) {
-            return null;
-        }
+    private void replyBackpressure(String roomId, Long senderId, ChatSendDto dto, String reason) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("roomId", roomId);
+        payload.put("messageId", dto.getMessageId());
+        payload.put("deliveryStatus", "RETRY");
+        payload.put("reason", reason);
+        payload.put("retryAfterMs", retryAfterMs);
+        messagingTemplate.convertAndSendToUser(String.valueOf(senderId), "/queue/ack", payload);
+    }
+
+    private void replyFailure(String roomId, Long senderId, ChatSendDto dto, Throwable cause) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("roomId", roomId);
+        payload.put("messageId", dto.getMessageId());
+        payload.put("deliveryStatus", "FAILED");
+        payload.put("reason", cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName());
+        messagingTemplate.convertAndSendToUser(String.valueOf(senderId), "/queue/ack", payload);
     }
 }
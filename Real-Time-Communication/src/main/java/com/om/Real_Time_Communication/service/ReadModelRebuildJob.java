@@ -0,0 +1,95 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.service.ReadModelService.LastMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Recomputes the read model from {@code chat_message} and {@code user_room_state}, walking the
+ * rooms by id in chunks of {@code rtc.read-model.rebuild.chunk}: three aggregate queries per chunk
+ * (last messages, memberships, unread counts). Repairs a shared store after lost updates or a
+ * Redis flush; runs on {@code rtc.read-model.rebuild.cron} and, if enabled, once at startup.
+ */
+@Component
+public class ReadModelRebuildJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadModelRebuildJob.class);
+
+    private final ChatRoomRepository chatRoomRepository;
+    private final ChatRoomParticipantRepository participantRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final ReadModelService readModel;
+    private final int chunk;
+    private final boolean onStart;
+
+    public ReadModelRebuildJob(ChatRoomRepository chatRoomRepository,
+                               ChatRoomParticipantRepository participantRepository,
+                               ChatMessageRepository chatMessageRepository,
+                               ReadModelService readModel,
+                               @Value("${rtc.read-model.rebuild.chunk:500}") int chunk,
+                               @Value("${rtc.read-model.rebuild.on-start:false}") boolean onStart) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.participantRepository = participantRepository;
+        this.chatMessageRepository = chatMessageRepository;
+        this.readModel = readModel;
+        this.chunk = chunk;
+        this.onStart = onStart;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStart() {
+        if (onStart) rebuildAll();
+    }
+
+    @Scheduled(cron = "${rtc.read-model.rebuild.cron:-}")
+    public void scheduledRebuild() {
+        rebuildAll();
+    }
+
+    /** Returns the number of rooms rebuilt. */
+    public int rebuildAll() {
+        long start = System.nanoTime();
+        int rooms = 0;
+        long afterId = 0L;
+        List<Long> ids;
+        do {
+            ids = chatRoomRepository.findIdsAfter(afterId, PageRequest.of(0, chunk));
+            if (ids.isEmpty()) break;
+            rebuildRooms(ids);
+            rooms += ids.size();
+            afterId = ids.get(ids.size() - 1);
+        } while (ids.size() == chunk);
+        log.info("Read model rebuilt for {} rooms in {} ms", rooms, (System.nanoTime() - start) / 1_000_000);
+        return rooms;
+    }
+
+    public void rebuildRooms(List<Long> roomIds) {
+        Map<Long, LastMessage> last = new HashMap<>();
+        for (ChatMessage m : chatMessageRepository.findLatestInRooms(roomIds)) {
+            last.put(m.getRoomId(), LastMessage.of(m));
+        }
+        Map<Long, Map<Long, Long>> unread = new HashMap<>();
+        for (Object[] row : participantRepository.findMembershipsByRoomIds(roomIds)) {
+            unread.computeIfAbsent((Long) row[0], k -> new HashMap<>()).put((Long) row[1], 0L);
+        }
+        for (Object[] row : chatMessageRepository.countUnreadForRooms(roomIds, Instant.EPOCH)) {
+            unread.computeIfAbsent((Long) row[1], k -> new HashMap<>()).put((Long) row[0], (Long) row[2]);
+        }
+        readModel.replace(last, unread);
+    }
+}
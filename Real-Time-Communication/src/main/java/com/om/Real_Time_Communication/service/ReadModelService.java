@@ -0,0 +1,199 @@
+package com.om.Real_Time_Communication.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chat-list read model: last message per room and unread count per (user, room). Fan-out bumps
+ * the counters of the recipients and {@link ReadReceiptService#updateLastRead} zeroes them, so a
+ * whole room list is served from memory with one bulk store call for whatever is not loaded yet.
+ *
+ * <p>The in-memory tier is bounded and expires after {@code rtc.read-model.ttl-ms}; with several
+ * nodes behind the {@code redis} store that TTL bounds how stale another node's increments can be.
+ * Counters are only bumped for users and rooms already loaded; anything else is read from the
+ * store on first use, which already includes the message.
+ */
+@Service
+public class ReadModelService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadModelService.class);
+    private static final int PREVIEW_CHARS = 120;
+
+    /** What the room list shows for a room's latest message; no preview for E2EE rooms. */
+    public record LastMessage(Long roomId, String messageId, Long senderId, String type,
+                              Instant serverTs, boolean e2ee, String preview) {
+
+        public static LastMessage of(ChatMessage m) {
+            String body = m.isE2ee() || m.getBody() == null ? null : m.getBody();
+            String preview = body == null || body.length() <= PREVIEW_CHARS ? body : body.substring(0, PREVIEW_CHARS);
+            return new LastMessage(m.getRoomId(), m.getMessageId(), m.getSenderId(),
+                    m.getType() == null ? null : m.getType().name(), m.getServerTs(), m.isE2ee(), preview);
+        }
+
+        boolean isNewerThan(LastMessage other) {
+            return other == null || other.serverTs() == null
+                    || (serverTs() != null && !serverTs().isBefore(other.serverTs()));
+        }
+    }
+
+    /** One row of the chat list. {@code last} is null for a room without messages. */
+    public record RoomBadge(Long roomId, long unread, LastMessage last) {}
+
+    private final ReadModelStore store;
+    private final ChatRoomParticipantRepository participantRepository;
+    private final ChatMessageRepository chatMessageRepository;
+    private final Cache<Long, LastMessage> lastByRoom;
+    // user -> (room -> unread); a room is present once its count has been loaded
+    private final Cache<Long, Map<Long, Long>> unreadByUser;
+
+    public ReadModelService(ReadModelStore store,
+                            ChatRoomParticipantRepository participantRepository,
+                            ChatMessageRepository chatMessageRepository,
+                            @Value("${rtc.read-model.max-rooms:100000}") long maxRooms,
+                            @Value("${rtc.read-model.max-users:100000}") long maxUsers,
+                            @Value("${rtc.read-model.ttl-ms:600000}") long ttlMs) {
+        this.store = store;
+        this.participantRepository = participantRepository;
+        this.chatMessageRepository = chatMessageRepository;
+        Duration ttl = Duration.ofMillis(ttlMs);
+        this.lastByRoom = Caffeine.newBuilder().maximumSize(maxRooms).expireAfterWrite(ttl).build();
+        this.unreadByUser = Caffeine.newBuilder().maximumSize(maxUsers).expireAfterWrite(ttl).build();
+    }
+
+    /** Fan-out hook: {@code recipients} excludes the sender. */
+    public void messageAdded(ChatMessage saved, Collection<Long> recipients) {
+        if (saved == null || saved.getRoomId() == null) return;
+        LastMessage last = LastMessage.of(saved);
+        lastByRoom.asMap().merge(last.roomId(), last, (old, neu) -> neu.isNewerThan(old) ? neu : old);
+        for (Long userId : recipients) {
+            Map<Long, Long> rooms = unreadByUser.getIfPresent(userId);
+            if (rooms != null) rooms.computeIfPresent(last.roomId(), (k, n) -> n + 1);
+        }
+        try {
+            store.messageAdded(last, recipients);
+        } catch (Exception ex) {
+            log.warn("Read model store update failed room={} err={}", last.roomId(), ex.toString());
+        }
+    }
+
+    /** Delete-for-everyone hook: if it was the room's last message, the previous visible one replaces it. */
+    public void messageDeleted(ChatMessage deleted) {
+        if (deleted == null || deleted.getRoomId() == null) return;
+        Long roomId = deleted.getRoomId();
+        LastMessage current = last(roomId);
+        if (current == null || !deleted.getMessageId().equals(current.messageId())) return;
+        List<ChatMessage> latest = chatMessageRepository.findLatestInRooms(List.of(roomId));
+        LastMessage replacement = latest.isEmpty() ? null : LastMessage.of(latest.get(0));
+        if (replacement == null) lastByRoom.invalidate(roomId);
+        else lastByRoom.put(roomId, replacement);
+        try {
+            store.lastReplaced(roomId, replacement);
+        } catch (Exception ex) {
+            log.warn("Read model store update failed room={} err={}", roomId, ex.toString());
+        }
+    }
+
+    /** Zeroes the user's counter for the room, again after commit when called inside a transaction. */
+    public void markRead(Long userId, Long roomId) {
+        if (userId == null || roomId == null) return;
+        resetLocal(userId, roomId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    resetLocal(userId, roomId);
+                    resetStore(userId, roomId);
+                }
+            });
+        } else {
+            resetStore(userId, roomId);
+        }
+    }
+
+    /** The user's whole chat list: one membership query, then {@link #badges}. */
+    public List<RoomBadge> roomList(Long userId) {
+        return badges(userId, participantRepository.findChatRoomIdsByUserId(userId));
+    }
+
+    /** Badges for the given rooms, in order: memory first, then one bulk store call per kind. */
+    public List<RoomBadge> badges(Long userId, List<Long> roomIds) {
+        if (roomIds.isEmpty()) return List.of();
+        Map<Long, LastMessage> last = lastByRoom.getAll(roomIds, this::loadLast);
+
+        Map<Long, Long> unread = unreadByUser.get(userId, k -> new ConcurrentHashMap<>());
+        List<Long> missing = new ArrayList<>();
+        for (Long roomId : roomIds) {
+            if (!unread.containsKey(roomId)) missing.add(roomId);
+        }
+        if (!missing.isEmpty()) {
+            Map<Long, Long> loaded = store.unreadCounts(userId, missing);
+            for (Long roomId : missing) {
+                unread.putIfAbsent(roomId, loaded.getOrDefault(roomId, 0L));
+            }
+        }
+
+        List<RoomBadge> out = new ArrayList<>(roomIds.size());
+        for (Long roomId : roomIds) {
+            out.add(new RoomBadge(roomId, unread.getOrDefault(roomId, 0L), last.get(roomId)));
+        }
+        return out;
+    }
+
+    public LastMessage last(Long roomId) {
+        return lastByRoom.getAll(List.of(roomId), this::loadLast).get(roomId);
+    }
+
+    public long unread(Long userId, Long roomId) {
+        return badges(userId, List.of(roomId)).get(0).unread();
+    }
+
+    /** Replaces a chunk of rooms with recomputed state, in the store and in memory. */
+    public void replace(Map<Long, LastMessage> last, Map<Long, Map<Long, Long>> unread) {
+        store.replace(last, unread);
+        lastByRoom.putAll(last);
+        unread.forEach((roomId, byUser) -> byUser.forEach((userId, count) -> {
+            Map<Long, Long> rooms = unreadByUser.getIfPresent(userId);
+            if (rooms != null) rooms.put(roomId, count);
+        }));
+    }
+
+    public void invalidateAll() {
+        lastByRoom.invalidateAll();
+        unreadByUser.invalidateAll();
+    }
+
+    private Map<Long, LastMessage> loadLast(Set<? extends Long> roomIds) {
+        return store.lastMessages(new ArrayList<>(roomIds));
+    }
+
+    private void resetLocal(Long userId, Long roomId) {
+        Map<Long, Long> rooms = unreadByUser.getIfPresent(userId);
+        if (rooms != null) rooms.put(roomId, 0L);
+    }
+
+    private void resetStore(Long userId, Long roomId) {
+        try {
+            store.unreadReset(userId, roomId);
+        } catch (Exception ex) {
+            log.warn("Read model reset failed user={} room={} err={}", userId, roomId, ex.toString());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.service.ReadModelService.LastMessage;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Backing tier of the chat-list read model behind {@link ReadModelService}. The service keeps a
+ * bounded in-memory tier in front of it and only asks the store for rooms and users it has not
+ * seen yet, always in bulk.
+ */
+public interface ReadModelStore {
+
+    /** Latest visible message of each room; rooms without messages are simply absent. */
+    Map<Long, LastMessage> lastMessages(Collection<Long> roomIds);
+
+    /** Unread count per room for one user; rooms with nothing unread may be absent. */
+    Map<Long, Long> unreadCounts(Long userId, Collection<Long> roomIds);
+
+    /** A message was fanned out to {@code recipients} (the sender excluded). */
+    void messageAdded(LastMessage last, Collection<Long> recipients);
+
+    /** The user has read the room up to now. */
+    void unreadReset(Long userId, Long roomId);
+
+    /** The room's last message was deleted; {@code last} is the one now shown, null if none is left. */
+    void lastReplaced(Long roomId, LastMessage last);
+
+    /**
+     * Overwrites the state of a chunk of rooms with values recomputed from the database.
+     * {@code unread} is room to (user to count) and lists every member, with zero where nothing is unread.
+     */
+    void replace(Map<Long, LastMessage> last, Map<Long, Map<Long, Long>> unread);
+}
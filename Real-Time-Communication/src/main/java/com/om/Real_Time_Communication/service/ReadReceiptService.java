@@ -22,7 +22,12 @@ public class ReadReceiptService {
 //        this.repo = repo;
 //        this.redis = redis;
 //    }
-    public ReadReceiptService(UserRoomStateRepository repo) { this.repo = repo; }
+    private final ReadModelService readModel;
+
+    public ReadReceiptService(UserRoomStateRepository repo, ReadModelService readModel) {
+        this.repo = repo;
+        this.readModel = readModel;
+    }
 
     @Transactional
     public UserRoomState updateLastRead(Long userId, Long roomId, String lastReadMessageId) {
@@ -35,11 +40,8 @@ public class ReadReceiptService {
         s.setLastReadMessageId(lastReadMessageId);
         s.setLastReadAt(Instant.now());
         UserRoomState saved = repo.save(s);
-        // clear unread counter in Redis so badge counts stay accurate
-//        redis.opsForHash().put("room:unread:" + roomId, String.valueOf(userId), "0");
-//        if (redis != null) {
-//            redis.opsForHash().put("room:unread:" + roomId, String.valueOf(userId), "0");
-//        }
+        // clear the unread badge so the chat list stays accurate
+        readModel.markRead(userId, roomId);
         return saved;
     }
 }
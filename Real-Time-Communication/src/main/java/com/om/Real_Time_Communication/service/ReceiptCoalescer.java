@@ -0,0 +1,97 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import com.om.Real_Time_Communication.utility.RtcMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects delivery/read receipts for message senders and pushes them to {@code /queue/ack} at most
+ * once per flush interval per (sender, room). A lone receipt keeps the single {@code delivery} frame;
+ * several become one {@code delivery-batch} frame listing the delivered and read message ids.
+ */
+@Service
+public class ReceiptCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(ReceiptCoalescer.class);
+
+    private record Key(Long senderId, String roomKey) {}
+
+    private record Receipt(String messageId, Instant serverTs, MessageDeliveryStatus status) {}
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final RtcMetrics metrics;
+    private final Map<Key, Map<String, Receipt>> pending = new ConcurrentHashMap<>();
+
+    public ReceiptCoalescer(SimpMessagingTemplate messagingTemplate, RtcMetrics metrics) {
+        this.messagingTemplate = messagingTemplate;
+        this.metrics = metrics;
+    }
+
+    /** Queues a receipt; a later status for the same message (READ after DELIVERED) replaces the earlier one. */
+    public void add(Long senderId, String roomKey, String messageId, Instant serverTs, MessageDeliveryStatus status) {
+        if (senderId == null || roomKey == null || messageId == null) {
+            return;
+        }
+        pending.compute(new Key(senderId, roomKey), (k, receipts) -> {
+            Map<String, Receipt> r = receipts == null ? new LinkedHashMap<>() : receipts;
+            r.merge(messageId, new Receipt(messageId, serverTs, status),
+                    (old, neu) -> neu.status().ordinal() >= old.status().ordinal() ? neu : old);
+            return r;
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.receipts.flush-ms:250}")
+    public void flush() {
+        for (Key key : pending.keySet()) {
+            Map<String, Receipt> receipts = pending.remove(key);
+            if (receipts == null || receipts.isEmpty()) {
+                continue;
+            }
+            try {
+                messagingTemplate.convertAndSendToUser(String.valueOf(key.senderId()), "/queue/ack",
+                        receipts.size() == 1 ? single(key, receipts.values().iterator().next()) : batch(key, receipts));
+                metrics.receiptFrame(receipts.size());
+            } catch (Exception ex) {
+                log.warn("[RECEIPT] failed to send {} receipts to user={} room={}: {}",
+                        receipts.size(), key.senderId(), key.roomKey(), ex.toString());
+            }
+        }
+    }
+
+    private static Map<String, Object> single(Key key, Receipt r) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "delivery");
+        payload.put("roomId", key.roomKey());
+        payload.put("messageId", r.messageId());
+        payload.put("serverTs", r.serverTs());
+        payload.put("deliveryStatus", r.status().name());
+        return payload;
+    }
+
+    private static Map<String, Object> batch(Key key, Map<String, Receipt> receipts) {
+        List<String> delivered = new ArrayList<>();
+        List<String> read = new ArrayList<>();
+        for (Receipt r : receipts.values()) {
+            (r.status() == MessageDeliveryStatus.READ ? read : delivered).add(r.messageId());
+        }
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("type", "delivery-batch");
+        payload.put("roomId", key.roomKey());
+        payload.put("delivered", delivered);
+        payload.put("read", read);
+        payload.put("count", receipts.size());
+        return payload;
+    }
+}
@@ -0,0 +1,185 @@
+package com.om.Real_Time_Communication.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.service.ReadModelService.LastMessage;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared read model in Redis (requires a {@link RedissonClient} bean), so every node serves the
+ * same badges: {@code room:last:<roomId>} holds the last message as JSON and
+ * {@code room:unread:<roomId>:<userId>} the counter. Reads and fan-out writes are pipelined, one
+ * round trip per call however many rooms or recipients it touches.
+ *
+ * <p>A key that is missing has never been seeded: it is computed from the database on the read
+ * that finds it missing and written only if still absent. Fan-out increments only existing
+ * counters, so a counter never starts from an increment instead of the real count.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.read-model.store", havingValue = "redis")
+public class RedisReadModelStore implements ReadModelStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisReadModelStore.class);
+
+    private static final String INCR_IF_EXISTS =
+            "if redis.call('exists', KEYS[1]) == 1 then return redis.call('incr', KEYS[1]) end return nil";
+
+    private final RedissonClient redisson;
+    private final ObjectMapper objectMapper;
+    private final JpaReadModelStore database; // seeds keys that are not in Redis yet
+
+    public RedisReadModelStore(RedissonClient redisson, ObjectMapper objectMapper,
+                               ChatMessageRepository chatMessageRepository) {
+        this.redisson = redisson;
+        this.objectMapper = objectMapper;
+        this.database = new JpaReadModelStore(chatMessageRepository);
+    }
+
+    @Override
+    public Map<Long, LastMessage> lastMessages(Collection<Long> roomIds) {
+        Map<Long, LastMessage> out = new HashMap<>();
+        if (roomIds.isEmpty()) return out;
+        RBatch batch = redisson.createBatch(BatchOptions.defaults());
+        Map<Long, RFuture<String>> pending = new HashMap<>();
+        for (Long roomId : roomIds) {
+            pending.put(roomId, batch.<String>getBucket(lastKey(roomId), StringCodec.INSTANCE).getAsync());
+        }
+        batch.execute();
+        List<Long> missing = new ArrayList<>();
+        pending.forEach((roomId, f) -> {
+            String json = f.toCompletableFuture().join();
+            if (json == null) {
+                missing.add(roomId);
+                return;
+            }
+            try {
+                out.put(roomId, objectMapper.readValue(json, LastMessage.class));
+            } catch (Exception ex) {
+                log.warn("Unreadable read model entry room={} err={}", roomId, ex.toString());
+            }
+        });
+        if (!missing.isEmpty()) {
+            Map<Long, LastMessage> seeded = database.lastMessages(missing);
+            RBatch seed = redisson.createBatch(BatchOptions.defaults());
+            seeded.forEach((roomId, last) -> {
+                try {
+                    seed.<String>getBucket(lastKey(roomId), StringCodec.INSTANCE)
+                            .setIfAbsentAsync(objectMapper.writeValueAsString(last));
+                } catch (Exception ex) {
+                    log.warn("Read model last message not serializable room={} err={}", roomId, ex.toString());
+                }
+            });
+            if (!seeded.isEmpty()) seed.execute();
+            out.putAll(seeded);
+        }
+        return out;
+    }
+
+    @Override
+    public Map<Long, Long> unreadCounts(Long userId, Collection<Long> roomIds) {
+        Map<Long, Long> out = new HashMap<>();
+        if (roomIds.isEmpty()) return out;
+        RBatch batch = redisson.createBatch(BatchOptions.defaults());
+        Map<Long, RFuture<String>> pending = new HashMap<>();
+        for (Long roomId : roomIds) {
+            // read as a bucket so an absent counter is told apart from a zero one
+            pending.put(roomId, batch.<String>getBucket(unreadKey(roomId, userId), StringCodec.INSTANCE).getAsync());
+        }
+        batch.execute();
+        List<Long> missing = new ArrayList<>();
+        pending.forEach((roomId, f) -> {
+            String count = f.toCompletableFuture().join();
+            if (count == null) missing.add(roomId);
+            else out.put(roomId, Long.parseLong(count));
+        });
+        if (!missing.isEmpty()) {
+            Map<Long, Long> seeded = database.unreadCounts(userId, missing);
+            RBatch seed = redisson.createBatch(BatchOptions.defaults());
+            for (Long roomId : missing) {
+                long count = seeded.getOrDefault(roomId, 0L);
+                seed.<String>getBucket(unreadKey(roomId, userId), StringCodec.INSTANCE)
+                        .setIfAbsentAsync(Long.toString(count));
+                out.put(roomId, count);
+            }
+            seed.execute();
+        }
+        return out;
+    }
+
+    @Override
+    public void messageAdded(LastMessage last, Collection<Long> recipients) {
+        RBatch batch = redisson.createBatch(BatchOptions.defaults());
+        try {
+            batch.<String>getBucket(lastKey(last.roomId()), StringCodec.INSTANCE)
+                    .setAsync(objectMapper.writeValueAsString(last));
+        } catch (Exception ex) {
+            log.warn("Read model last message not serializable room={} err={}", last.roomId(), ex.toString());
+        }
+        for (Long userId : recipients) {
+            batch.getScript(StringCodec.INSTANCE).evalAsync(RScript.Mode.READ_WRITE, INCR_IF_EXISTS,
+                    RScript.ReturnType.INTEGER, List.<Object>of(unreadKey(last.roomId(), userId)));
+        }
+        // Off the fan-out path; the rebuild job repairs a lost update
+        batch.executeAsync().whenComplete((r, ex) -> {
+            if (ex != null) log.warn("Read model update failed room={} err={}", last.roomId(), ex.toString());
+        });
+    }
+
+    @Override
+    public void unreadReset(Long userId, Long roomId) {
+        redisson.getAtomicLong(unreadKey(roomId, userId)).setAsync(0L);
+    }
+
+    @Override
+    public void lastReplaced(Long roomId, LastMessage last) {
+        if (last == null) {
+            redisson.getBucket(lastKey(roomId), StringCodec.INSTANCE).deleteAsync();
+            return;
+        }
+        try {
+            redisson.<String>getBucket(lastKey(roomId), StringCodec.INSTANCE)
+                    .setAsync(objectMapper.writeValueAsString(last));
+        } catch (Exception ex) {
+            log.warn("Read model last message not serializable room={} err={}", roomId, ex.toString());
+        }
+    }
+
+    @Override
+    public void replace(Map<Long, LastMessage> last, Map<Long, Map<Long, Long>> unread) {
+        RBatch batch = redisson.createBatch(BatchOptions.defaults());
+        for (Map.Entry<Long, LastMessage> e : last.entrySet()) {
+            try {
+                batch.<String>getBucket(lastKey(e.getKey()), StringCodec.INSTANCE)
+                        .setAsync(objectMapper.writeValueAsString(e.getValue()));
+            } catch (Exception ex) {
+                log.warn("Read model last message not serializable room={} err={}", e.getKey(), ex.toString());
+            }
+        }
+        unread.forEach((roomId, byUser) -> byUser.forEach((userId, count) ->
+                batch.getAtomicLong(unreadKey(roomId, userId)).setAsync(count)));
+        batch.execute();
+    }
+
+    private static String lastKey(Long roomId) {
+        return "room:last:" + roomId;
+    }
+
+    private static String unreadKey(Long roomId, Long userId) {
+        return "room:unread:" + roomId + ":" + userId;
+    }
+}
@@ -0,0 +1,42 @@
+package com.om.Real_Time_Communication.service;
+
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Cross-node invalidation over a Redis pub/sub topic (requires a {@link RedissonClient} bean).
+ * Messages are {@code <nodeId> <key>}; a node ignores its own announcements.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.room-cache.invalidation", havingValue = "redis")
+public class RedisRoomCacheInvalidationChannel implements RoomCacheInvalidationChannel {
+
+    private static final String TOPIC = "rtc:room-cache:invalidate";
+
+    private final RTopic topic;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public RedisRoomCacheInvalidationChannel(RedissonClient redisson) {
+        this.topic = redisson.getTopic(TOPIC);
+    }
+
+    @Override
+    public void publish(String key) {
+        topic.publishAsync(nodeId + " " + key);
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        topic.addListener(String.class, (channel, msg) -> {
+            int sep = msg.indexOf(' ');
+            if (sep > 0 && !msg.startsWith(nodeId)) {
+                listener.accept(msg.substring(sep + 1));
+            }
+        });
+    }
+}
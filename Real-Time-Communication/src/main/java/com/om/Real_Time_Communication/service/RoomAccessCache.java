@@ -0,0 +1,217 @@
+package com.om.Real_Time_Communication.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
+import com.om.Real_Time_Communication.Repository.UserBlockRepository;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongConsumer;
+
+/**
+ * Room metadata used by every STOMP SEND/SUBSCRIBE: room key to id, the room itself with its
+ * member set, block pairs, and the rooms of each user (presence fan-out, search). Entries are
+ * evicted precisely by {@link ChatRoomService} and {@link BlockService} when membership or blocks
+ * change (again after commit, and on the other nodes through the {@link RoomCacheInvalidationChannel});
+ * the TTL only bounds how long a missed invalidation can live.
+ */
+@Service
+public class RoomAccessCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomAccessCache.class);
+
+    /**
+     * Read-only snapshot of a room. {@code room} is a detached copy and must not be modified.
+     * A room counts as direct when it has exactly two members, as the interceptor always did.
+     */
+    public record RoomAccess(ChatRoom room, List<Long> memberIds, Set<Long> members) {
+
+        public Long id() { return room.getId(); }
+
+        public boolean isMember(Long userId) { return userId != null && members.contains(userId); }
+
+        public boolean isDirect() { return memberIds.size() == 2; }
+
+        /** The other user of a 1:1 room (throws if not exactly two members). */
+        public Long directPeer(Long userId) {
+            if (!isDirect()) throw new IllegalArgumentException("Not a direct room: " + id());
+            return memberIds.get(0).equals(userId) ? memberIds.get(1) : memberIds.get(0);
+        }
+    }
+
+    private final ChatRoomRepository chatRoomRepository;
+    private final ChatRoomParticipantRepository participantRepository;
+    private final UserBlockRepository blockRepository;
+    private final RoomCacheInvalidationChannel channel;
+
+    private final Cache<String, Long> roomIds;
+    private final Cache<Long, RoomAccess> rooms;
+    private final Cache<String, Boolean> blocks;
+    private final Cache<Long, List<Long>> userRooms;
+    private final List<LongConsumer> userRoomsListeners = new CopyOnWriteArrayList<>();
+
+    public RoomAccessCache(ChatRoomRepository chatRoomRepository,
+                           ChatRoomParticipantRepository participantRepository,
+                           UserBlockRepository blockRepository,
+                           RoomCacheInvalidationChannel channel,
+                           @Value("${rtc.room-cache.max-rooms:100000}") long maxRooms,
+                           @Value("${rtc.room-cache.max-blocks:200000}") long maxBlocks,
+                           @Value("${rtc.room-cache.max-users:100000}") long maxUsers,
+                           @Value("${rtc.room-cache.ttl-ms:600000}") long ttlMs) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.participantRepository = participantRepository;
+        this.blockRepository = blockRepository;
+        this.channel = channel;
+        Duration ttl = Duration.ofMillis(ttlMs);
+        // Room keys never change owner, so this map only needs the size bound
+        this.roomIds = Caffeine.newBuilder().maximumSize(maxRooms).build();
+        this.rooms = Caffeine.newBuilder().maximumSize(maxRooms).expireAfterWrite(ttl).build();
+        this.blocks = Caffeine.newBuilder().maximumSize(maxBlocks).expireAfterWrite(ttl).build();
+        this.userRooms = Caffeine.newBuilder().maximumSize(maxUsers).expireAfterWrite(ttl).build();
+        channel.subscribe(this::evictLocal);
+    }
+
+    /** Internal id for a public room key (or a numeric id), or {@code null} if there is no such room. */
+    public Long resolveRoomId(String roomKey) {
+        if (roomKey == null || roomKey.isBlank()) return null;
+        return roomIds.get(roomKey, this::loadRoomId);
+    }
+
+    /** Snapshot of the room with its members, or {@code null} if there is no such room. */
+    public RoomAccess room(Long roomId) {
+        if (roomId == null) return null;
+        return rooms.get(roomId, this::loadRoom);
+    }
+
+    /** Snapshot for a public room key (or a numeric id), or {@code null} if there is no such room. */
+    public RoomAccess room(String roomKey) {
+        return room(resolveRoomId(roomKey));
+    }
+
+    public boolean isMember(Long userId, Long roomId) {
+        RoomAccess access = room(roomId);
+        return access != null && access.isMember(userId);
+    }
+
+    public List<Long> memberIds(Long roomId) {
+        RoomAccess access = room(roomId);
+        return access == null ? List.of() : access.memberIds();
+    }
+
+    /** Whether either user has an active block on the other. */
+    public boolean isBlocked(String userA, String userB) {
+        return blocks.get(blockKey(userA, userB),
+                k -> !blockRepository.findActiveBlockBetween(userA, userB).isEmpty());
+    }
+
+    /** Ids of the rooms the user belongs to (hidden direct rooms excluded), unmodifiable. */
+    public List<Long> roomsOf(Long userId) {
+        return userRooms.get(userId, k -> List.copyOf(participantRepository.findChatRoomIdsByUserId(k)));
+    }
+
+    /** The user joined, left or hid a room. */
+    public void invalidateUserRooms(Long userId) {
+        if (userId != null) invalidate("user:" + userId);
+    }
+
+    /** Called with the user id whenever that user's room list is evicted here, whichever node changed it. */
+    public void onUserRoomsChanged(LongConsumer listener) {
+        userRoomsListeners.add(listener);
+    }
+
+    public void invalidateRoom(Long roomId) {
+        if (roomId != null) invalidate("room:" + roomId);
+    }
+
+    public void invalidateBlock(String userA, String userB) {
+        invalidate("block:" + blockKey(userA, userB));
+    }
+
+    /**
+     * Evicts now and, inside a transaction, again after commit so a concurrent reader cannot
+     * re-cache pre-commit rows; peers are told once the change is visible to them.
+     */
+    private void invalidate(String key) {
+        evictLocal(key);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictLocal(key);
+                    publish(key);
+                }
+            });
+        } else {
+            publish(key);
+        }
+    }
+
+    private void publish(String key) {
+        try {
+            channel.publish(key);
+        } catch (Exception ex) {
+            // Peers fall back to the TTL
+            log.warn("Room cache invalidation not published key={} err={}", key, ex.toString());
+        }
+    }
+
+    void evictLocal(String key) {
+        if (key.startsWith("room:")) {
+            RoomAccess old = rooms.asMap().remove(Long.valueOf(key.substring("room:".length())));
+            // members that left; joiners are evicted by invalidateUserRooms
+            if (old != null) old.memberIds().forEach(this::evictUserRooms);
+        } else if (key.startsWith("block:")) {
+            blocks.invalidate(key.substring("block:".length()));
+        } else if (key.startsWith("user:")) {
+            evictUserRooms(Long.valueOf(key.substring("user:".length())));
+        }
+    }
+
+    private void evictUserRooms(Long userId) {
+        userRooms.invalidate(userId);
+        for (LongConsumer listener : userRoomsListeners) listener.accept(userId);
+    }
+
+    public void invalidateAll() {
+        roomIds.invalidateAll();
+        rooms.invalidateAll();
+        blocks.invalidateAll();
+        userRooms.invalidateAll();
+    }
+
+    private Long loadRoomId(String roomKey) {
+        // Prefer the public "roomId" stable identifier
+        ChatRoom byKey = chatRoomRepository.findByRoomId(roomKey).orElse(null);
+        if (byKey != null) return byKey.getId();
+
+        // Fallback: allow clients that still reference the numeric id directly
+        try {
+            return chatRoomRepository.findById(Long.valueOf(roomKey)).map(ChatRoom::getId).orElse(null);
+        } catch (NumberFormatException ignore) {
+            return null;
+        }
+    }
+
+    private RoomAccess loadRoom(Long roomId) {
+        ChatRoom room = chatRoomRepository.findById(roomId).orElse(null);
+        if (room == null) return null;
+        List<Long> members = List.copyOf(participantRepository.findUserIdsByRoomId(roomId));
+        return new RoomAccess(room.toBuilder().build(), members, Set.copyOf(members));
+    }
+
+    private static String blockKey(String userA, String userB) {
+        // Blocks are checked in both directions, so one entry serves either order
+        return userA.compareTo(userB) <= 0 ? userA + "|" + userB : userB + "|" + userA;
+    }
+}
@@ -0,0 +1,16 @@
+package com.om.Real_Time_Communication.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link RoomAccessCache} invalidation keys between nodes.
+ * Keys are opaque strings such as {@code room:42} or {@code block:7|9}.
+ */
+public interface RoomCacheInvalidationChannel {
+
+    /** Tells the other nodes to drop {@code key}; the publishing node has already evicted it. */
+    void publish(String key);
+
+    /** Registers the callback that evicts keys announced by other nodes. */
+    void subscribe(Consumer<String> listener);
+}
@@ -19,6 +19,7 @@ public class RoomMembershipService {
 
 
     private final ChatRoomParticipantRepository repo;
+    private final RoomAccessCache roomAccessCache;
 
 //    @Autowired
 //    private  @Nullable StringRedisTemplate redis;
@@ -28,47 +29,26 @@ public class RoomMembershipService {
     private String kRoomMembers(Long roomId) { return "room:members:" + roomId; }
 
 
-    public RoomMembershipService(ChatRoomParticipantRepository repo) {
+    public RoomMembershipService(ChatRoomParticipantRepository repo, RoomAccessCache roomAccessCache) {
         this.repo = repo;
+        this.roomAccessCache = roomAccessCache;
     }
 
+    /** Cached, unmodifiable member list of the room. */
     public List<Long> memberIds(Long roomId) {
-        // Example: query participants table
-        return repo.findUserIdsByRoomId(roomId);
+        return roomAccessCache.memberIds(roomId);
     }
 
     public boolean isMember(Long userId, Long roomId) {
-        return repo.existsByRoomIdAndUserId(roomId, userId);
+        return roomAccessCache.isMember(userId, roomId);
     }
 
+    /** Cached, unmodifiable ids of the user's rooms. */
     public List<Long> roomsForUser(Long userId) {
-        // Try Redis first
-//        if (redis != null) {
-//            Set<String> s = redis.opsForSet().members(kUserRooms(userId));
-//            if (s != null && !s.isEmpty()) {
-//                // touch TTL
-//                redis.expire(kUserRooms(userId), ttl);
-//                List<Long> out = new ArrayList<>(s.size());
-//                for (String v : s) out.add(Long.valueOf(v));
-//                return out;
-//            }
-//        }
-//        // Fallback to DB
-        List<Long> list = repo.findChatRoomIdsByUserId(userId);
-        // Warm cache
-//        if (redis != null && !list.isEmpty()) {
-//            String key = kUserRooms(userId);
-//            String[] vals = list.stream().map(String::valueOf).toArray(String[]::new);
-//            redis.opsForSet().add(key, vals);
-//            redis.expire(key, ttl);
-//        }
-        return list;
+        return roomAccessCache.roomsOf(userId);
     }
 
     public void evictUserRooms(Long userId) {
-//        if (redis != null) {
-//            redis.delete(kUserRooms(userId));
-//        }
+        roomAccessCache.invalidateUserRooms(userId);
     }
 }
-
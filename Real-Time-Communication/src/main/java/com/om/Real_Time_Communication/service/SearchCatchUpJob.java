@@ -0,0 +1,95 @@
+package com.om.Real_Time_Communication.service;
+
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.utility.ElasticsearchSearchWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Re-indexes what the search pipeline could neither queue nor spill: walks {@code chat_message}
+ * by {@code (server_ts, id)} from the writer's catch-up checkpoint in pages of
+ * {@code rtc.search.index.catch-up.page-size}, feeding the writer only while it has capacity and
+ * the cluster is accepting bulks. A run stops at the page where it passes
+ * {@code rtc.search.index.catch-up.max-run-ms}; the next one resumes from there. Re-indexing a
+ * message overwrites it, so overlap is harmless. Only what the live path indexes is re-queued
+ * ({@link SearchMessageDoc#indexable}): never E2EE or empty messages.
+ */
+@Component
+@ConditionalOnProperty(name = "rtc.search.engine", havingValue = "elasticsearch", matchIfMissing = true)
+public class SearchCatchUpJob {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchCatchUpJob.class);
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ElasticsearchSearchWriter writer;
+    private final int pageSize;
+    private final long maxRunMs;
+
+    public SearchCatchUpJob(ChatMessageRepository chatMessageRepository,
+                            ElasticsearchSearchWriter writer,
+                            @Value("${rtc.search.index.catch-up.page-size:500}") int pageSize,
+                            @Value("${rtc.search.index.catch-up.max-run-ms:60000}") long maxRunMs) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.writer = writer;
+        this.pageSize = pageSize;
+        this.maxRunMs = maxRunMs;
+    }
+
+    @Scheduled(fixedDelayString = "${rtc.search.index.catch-up.check-ms:30000}")
+    public void scheduledCatchUp() {
+        Instant from = writer.catchUpFrom();
+        if (from != null && writer.hasCapacity()) catchUp(from);
+    }
+
+    /** Returns the number of messages re-queued; the checkpoint moves to where the run got. */
+    public int catchUp(Instant from) {
+        long lostBefore = writer.lost();
+        long start = System.nanoTime();
+        long deadline = start + maxRunMs * 1_000_000L;
+        Instant ts = from;
+        long afterId = 0L;
+        int queued = 0;
+        List<ChatMessage> page;
+        do {
+            // Checked before every page, so a writer that always has room does not keep the run going
+            while (!writer.hasCapacity() && System.nanoTime() <= deadline) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return queued;
+                }
+            }
+            if (System.nanoTime() > deadline) {
+                log.info("Search catch-up paused at {} after {} messages", ts, queued);
+                writer.catchUpProgress(from, ts, lostBefore);
+                return queued;
+            }
+            page = chatMessageRepository.pageByServerTs(ts, afterId, PageRequest.of(0, pageSize));
+            for (ChatMessage m : page) {
+                if (!m.isDeletedForEveryone() && SearchMessageDoc.indexable(m.isE2ee(), m.getBody())) {
+                    writer.enqueue(SearchMessageDoc.from(m));
+                    queued++;
+                }
+            }
+            if (!page.isEmpty()) {
+                ChatMessage last = page.get(page.size() - 1);
+                ts = last.getServerTs();
+                afterId = last.getId();
+            }
+        } while (page.size() == pageSize);
+        writer.catchUpProgress(from, null, lostBefore);
+        log.info("Search catch-up from {} re-queued {} messages in {} ms", from, queued, (System.nanoTime() - start) / 1_000_000);
+        return queued;
+    }
+}
@@ -1,74 +1,125 @@
 package com.om.Real_Time_Communication.service;
 
-import co.elastic.clients.elasticsearch._types.FieldValue;
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
 import com.om.Real_Time_Communication.dto.SearchMessageDoc;
-//import io.micrometer.common.lang.Nullable;
-import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.elasticsearch.client.elc.NativeQuery;
-import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
-import org.springframework.data.elasticsearch.core.SearchHit;
-import org.springframework.data.elasticsearch.core.SearchHits;
-import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
-//import org.springframework.data.redis.core.StringRedisTemplate;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.utility.BlindRoomIndex;
+import com.om.Real_Time_Communication.utility.SearchCursor;
+import io.micrometer.common.lang.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-@Service
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Message search across a user's rooms or within one, newest first. Each page carries a cursor
+ * (the last hit's createdAt and messageId) that the next request passes back, so deep pages cost
+ * the same as the first. The backend is a {@link MessageSearchEngine}; end-to-end encrypted rooms
+ * are searched by blind tokens instead ({@link BlindSearchIndex}).
+ */
+@Service
 public class SearchService {
-    private final ElasticsearchOperations es;
-//    private final org.springframework.data.redis.core.StringRedisTemplate redis;
-//private final @Nullable StringRedisTemplate redis;
-//
-////    public SearchService(ElasticsearchOperations es, StringRedisTemplate redis) {
-//public SearchService(ElasticsearchOperations es, @Nullable StringRedisTemplate redis) {
-public SearchService(ElasticsearchOperations es) {
-        this.es = es;
-//        this.redis = redis;
+
+    static final int MAX_LIMIT = 200;
+    static final int MAX_QUERY_TOKENS = 32;
+
+    private final MessageSearchEngine engine;
+    @Nullable
+    private final BlindSearchIndex blindIndex;
+    @Nullable
+    private final ChatMessageRepository chatMessageRepository;
+    @Nullable
+    private final EnvelopeService envelopes;
+    @Nullable
+    private final HistoryArchiveService archive;
+
+    @Autowired
+    public SearchService(MessageSearchEngine engine, BlindSearchIndex blindIndex,
+                         ChatMessageRepository chatMessageRepository, EnvelopeService envelopes,
+                         @Nullable HistoryArchiveService archive) {
+        this.engine = engine;
+        this.blindIndex = blindIndex;
+        this.chatMessageRepository = chatMessageRepository;
+        this.envelopes = envelopes;
+        this.archive = archive;
     }
 
-    public java.util.List<SearchMessageDoc> searchAll(Long userId, java.util.List<Long> roomIds, String query, int limit) {
-        if (roomIds == null || roomIds.isEmpty()) return java.util.List.of();
+    public SearchService(MessageSearchEngine engine) {
+        this(engine, null, null, null, null);
+    }
 
-        // build terms values for roomIds
-        java.util.List<FieldValue> roomVals = roomIds.stream()
-                .map(id -> FieldValue.of(id.toString()))
-                .toList();
+    /** Searches every room in {@code roomIds}, which must be the user's own. */
+    public SearchPage searchAll(Long userId, List<Long> roomIds, String query, int limit, String cursor) {
+        if (roomIds == null || roomIds.isEmpty()) return new SearchPage(List.of(), null);
+        return page(userId, roomIds, query, limit, cursor);
+    }
 
-        NativeQuery nq = NativeQuery.builder()
-                .withQuery(q -> q.bool(b -> b
-                        .filter(f -> f.terms(t -> t.field("roomId").terms(v -> v.value(roomVals))))
-                        .must(m -> {
-                            if (query == null || query.isBlank()) return m.matchAll(ma -> ma);
-                            return m.match(mm -> mm.field("text").query(query));
-                        })
-                ))
-                .withPageable(PageRequest.of(0, Math.max(1, Math.min(limit, 200))))
-                .build();
+    /** Searches one room the user is a member of. */
+    public SearchPage searchInRoom(Long userId, Long roomId, String query, int limit, String cursor) {
+        return page(userId, List.of(roomId), query, limit, cursor);
+    }
 
-        SearchHits<SearchMessageDoc> hits = es.search(nq, SearchMessageDoc.class, IndexCoordinates.of(SearchMessageDoc.INDEX));
-        return hits.get().map(SearchHit::getContent).toList();
+    private SearchPage page(Long userId, List<Long> roomIds, String query, int limit, String cursor) {
+        int lim = Math.max(1, Math.min(limit, MAX_LIMIT));
+        Instant beforeTs = null;
+        String beforeId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            SimpleEntry<Instant, String> c = SearchCursor.decode(cursor);
+            beforeTs = c.getKey();
+            beforeId = c.getValue();
+        }
+        List<SearchMessageDoc> hits = engine.search(userId, roomIds, query, lim, beforeTs, beforeId);
+        String next = null;
+        if (hits.size() == lim) {
+            SearchMessageDoc last = hits.get(hits.size() - 1);
+            if (last.getCreatedAt() != null) next = SearchCursor.encode(last.getCreatedAt(), last.getMessageId());
+        }
+        return new SearchPage(hits, next);
     }
 
-    public java.util.List<RecentHit> searchInRoomMvp(Long roomId, String query, int limit) {
-//        if (redis == null) return java.util.List.of();
-//        String zKey = "room:idx:" + roomId;
-//        var ids = redis.opsForZSet().reverseRange(zKey, 0, 2000);
-//        if (ids == null || ids.isEmpty()) return java.util.List.of();
-//
-//        String q = (query == null) ? "" : query.toLowerCase(java.util.Locale.ROOT);
-//        java.util.List<RecentHit> out = new java.util.ArrayList<>();
-//        for (String mid : ids) {
-//            String body = redis.opsForValue().get("msg:body:" + mid);
-//            if (body == null) continue;
-//            if (q.isBlank() || body.toLowerCase(java.util.Locale.ROOT).contains(q)) {
-//                out.add(new RecentHit(roomId, mid, body));
-//                if (out.size() >= limit) break;
-//            }
-//        }
-//        return out;
-        return java.util.List.of();
+    /**
+     * Messages of an E2EE room carrying every blind token, newest first, as stored envelopes for
+     * the client to decrypt; what the viewer deleted is left out. Hits already archived are read
+     * from the archive.
+     */
+    public BlindPage searchBlind(Long viewerId, Long roomId, byte[] tokens, int limit, String cursor) {
+        if (blindIndex == null || chatMessageRepository == null) throw new IllegalStateException("blind search not configured");
+        if (tokens == null || tokens.length == 0 || tokens.length % 8 != 0) {
+            throw new IllegalArgumentException("tokens must be 8-byte tokens");
+        }
+        if (tokens.length / 8 > MAX_QUERY_TOKENS) throw new IllegalArgumentException("too many tokens");
+        long[] query = new long[tokens.length / 8];
+        ByteBuffer buf = ByteBuffer.wrap(tokens);
+        for (int i = 0; i < query.length; i++) query[i] = buf.getLong();
+
+        BlindRoomIndex.Page page = blindIndex.search(roomId, query, Math.max(1, Math.min(limit, MAX_LIMIT)), cursor);
+        Map<Long, ChatMessage> byId = new HashMap<>();
+        for (ChatMessage m : chatMessageRepository.findAllById(page.ids())) byId.put(m.getId(), m);
+        if (archive != null && byId.size() < page.ids().size()) {
+            List<Long> archived = page.ids().stream().filter(id -> !byId.containsKey(id)).toList();
+            for (ChatMessage m : archive.findInRoom(roomId, viewerId, archived)) byId.put(m.getId(), m);
+        }
+        List<ChatMessage> data = new ArrayList<>(page.ids().size());
+        for (Long id : page.ids()) {
+            ChatMessage m = byId.get(id);
+            if (m == null || m.isDeletedForEveryone()) continue;
+            boolean own = m.getSenderId().equals(viewerId);
+            if (own ? m.isDeletedBySender() : m.isDeletedByReceiver()) continue;
+            data.add(m);
+        }
+        if (envelopes != null) envelopes.load(data);
+        return new BlindPage(data, page.next());
     }
 
-    public static record RecentHit(Long roomId, String messageId, String snippet) {}
-}
\ No newline at end of file
+    /** One page of hits; {@code next} is null on the last page. */
+    public record SearchPage(List<SearchMessageDoc> hits, String next) {}
+
+    /** One page of blind search; may hold fewer than the limit where messages were deleted. */
+    public record BlindPage(List<ChatMessage> data, String next) {}
+}
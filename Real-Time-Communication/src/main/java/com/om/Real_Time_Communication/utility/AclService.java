@@ -1,6 +1,6 @@
 package com.om.Real_Time_Communication.utility;
 
-import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.service.RoomAccessCache;
 //import io.micrometer.common.lang.Nullable;
 //import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -9,15 +9,15 @@ import org.springframework.stereotype.Service;
 public class AclService {
 //    private final StringRedisTemplate redis;
 //private final @Nullable StringRedisTemplate redis;
-    private final ChatRoomParticipantRepository participantRepo;
+    private final RoomAccessCache roomAccessCache;
 
 //    public AclService(StringRedisTemplate redis) {
 //        this.redis = redis;
 //    }
 //public AclService(@Nullable StringRedisTemplate redis, ChatRoomParticipantRepository participantRepo) {
 //    this.redis = redis;
-public AclService(ChatRoomParticipantRepository participantRepo) {
-    this.participantRepo = participantRepo;
+public AclService(RoomAccessCache roomAccessCache) {
+    this.roomAccessCache = roomAccessCache;
 }
 
     public boolean canSubscribe(Long userId, Long roomId) {
@@ -29,7 +29,7 @@ public AclService(ChatRoomParticipantRepository participantRepo) {
 //                return true;
 //            }
 //        }
-        return participantRepo.existsByRoomIdAndUserId(roomId, userId);
+        return roomAccessCache.isMember(userId, roomId);
     }
 
     public boolean canPublish(Long userId, Long roomId) {
@@ -38,6 +38,7 @@ public AclService(ChatRoomParticipantRepository participantRepo) {
     }
     // bump version on membership change
     public void onMembershipChanged(Long roomId) {
+        roomAccessCache.invalidateRoom(roomId);
 
 //    redis.opsForValue().increment("room:v:"+roomId);
 //        if (redis != null) {
@@ -0,0 +1,174 @@
+package com.om.Real_Time_Communication.utility;
+
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.MessageType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encoding of a history archive segment: the messages of one room, in (server_ts, id) order, as a
+ * deflated stream. Ids and microsecond timestamps are stored as varint deltas from the previous
+ * message and strings with a length prefix, so a segment costs a fraction of the rows it replaces.
+ * E2EE payloads stay in the envelope store; the segment keeps their refs, and since version 2 the
+ * blind search tokens, so archived messages can still be found by blind search. Version 1
+ * segments still decode, without tokens.
+ */
+public final class ArchiveSegmentCodec {
+
+    private static final int MAGIC = 0x52544341; // "RTCA"
+    private static final int VERSION = 2;
+
+    private static final int E2EE = 1, DELETED_BY_SENDER = 2, DELETED_BY_RECEIVER = 4, SYSTEM = 8;
+
+    private ArchiveSegmentCodec() {}
+
+    /** {@code rows} must belong to one room and be in (server_ts, id) order. */
+    public static byte[] encode(List<ChatMessage> rows) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + rows.size() * 48);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            writeVarLong(out, rows.size());
+            long prevId = 0, prevTs = 0;
+            for (ChatMessage m : rows) {
+                long ts = micros(m.getServerTs());
+                writeVarLong(out, zigZag(m.getId() - prevId));
+                writeVarLong(out, zigZag(ts - prevTs));
+                prevId = m.getId();
+                prevTs = ts;
+                writeVarLong(out, m.getSenderId());
+                writeString(out, m.getMessageId());
+                out.writeByte(m.getType().ordinal());
+                out.writeByte((m.isE2ee() ? E2EE : 0) | (m.isDeletedBySender() ? DELETED_BY_SENDER : 0)
+                        | (m.isDeletedByReceiver() ? DELETED_BY_RECEIVER : 0) | (m.isSystemMessage() ? SYSTEM : 0));
+                if (m.isE2ee()) {
+                    out.writeShort(m.getE2eeVer() == null ? 0 : m.getE2eeVer());
+                    writeString(out, m.getAlgo());
+                    writeString(out, m.getKeyRef());
+                    writeString(out, m.getEnvelopeRef());
+                } else {
+                    writeString(out, m.getBody());
+                }
+                writeBytes(out, m.getSearchTokens());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    public static List<ChatMessage> decode(byte[] segment, Long roomId) {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(segment)))) {
+            if (in.readInt() != MAGIC) throw new IllegalArgumentException("Not an archive segment");
+            int version = in.readUnsignedByte();
+            if (version < 1 || version > VERSION) throw new IllegalArgumentException("Unknown segment version " + version);
+            int n = (int) readVarLong(in);
+            MessageType[] types = MessageType.values();
+            List<ChatMessage> rows = new ArrayList<>(n);
+            long id = 0, ts = 0;
+            for (int i = 0; i < n; i++) {
+                id += unZigZag(readVarLong(in));
+                ts += unZigZag(readVarLong(in));
+                ChatMessage m = new ChatMessage();
+                m.setId(id);
+                m.setRoomId(roomId);
+                m.setServerTs(Instant.EPOCH.plus(ts, ChronoUnit.MICROS));
+                m.setSenderId(readVarLong(in));
+                m.setMessageId(readString(in));
+                m.setType(types[in.readUnsignedByte()]);
+                int flags = in.readUnsignedByte();
+                m.setE2ee((flags & E2EE) != 0);
+                m.setDeletedBySender((flags & DELETED_BY_SENDER) != 0);
+                m.setDeletedByReceiver((flags & DELETED_BY_RECEIVER) != 0);
+                m.setSystemMessage((flags & SYSTEM) != 0);
+                if (m.isE2ee()) {
+                    short ver = in.readShort();
+                    m.setE2eeVer(ver == 0 ? null : ver);
+                    m.setAlgo(readString(in));
+                    m.setKeyRef(readString(in));
+                    m.setEnvelopeRef(readString(in));
+                } else {
+                    m.setBody(readString(in));
+                }
+                if (version >= 2) m.setSearchTokens(readBytes(in));
+                rows.add(m);
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static long micros(Instant ts) {
+        return ChronoUnit.MICROS.between(Instant.EPOCH, ts);
+    }
+
+    private static long zigZag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    private static long unZigZag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        writeBytes(out, s == null ? null : s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] b = readBytes(in);
+        return b == null ? null : new String(b, StandardCharsets.UTF_8);
+    }
+
+    /** Length + 1 first, so null (0) and empty (1) differ. */
+    private static void writeBytes(DataOutputStream out, byte[] b) throws IOException {
+        if (b == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        writeVarLong(out, b.length + 1L);
+        out.write(b);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int len = (int) readVarLong(in) - 1;
+        if (len < 0) return null;
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return b;
+    }
+}
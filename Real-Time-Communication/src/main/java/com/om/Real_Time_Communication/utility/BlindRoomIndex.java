@@ -0,0 +1,120 @@
+package com.om.Real_Time_Communication.utility;
+
+import io.micrometer.common.lang.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blind index of one room: for every 8-byte token clients attached to a message, the set of
+ * messages carrying it, as an {@link IntBitmap} over the room's message ordinals (0, 1, ... in the
+ * order messages were added). The server never learns the terms, only which messages share a
+ * token. Queries need every token and come newest first; the cursor names the last ordinal and its
+ * message id, so it outlives a rebuild that numbered the messages differently.
+ */
+public final class BlindRoomIndex {
+
+    public record Page(List<Long> ids, String next) {}
+
+    private final Map<Long, IntBitmap> postings = new HashMap<>();
+    private long[] idByOrdinal = new long[16];
+    private int size;
+    private long[] bulkIds = new long[0]; // ids added by the initial load, sorted, to skip repeats
+    private boolean sealed;
+
+    /** Adds message {@code id} with its tokens (8 bytes each, big-endian). */
+    public synchronized void add(long id, byte[] tokens) {
+        if (Arrays.binarySearch(bulkIds, id) >= 0) return;
+        if (size == idByOrdinal.length) idByOrdinal = Arrays.copyOf(idByOrdinal, size * 2);
+        int ordinal = size++;
+        idByOrdinal[ordinal] = id;
+        ByteBuffer buf = ByteBuffer.wrap(tokens);
+        while (buf.remaining() >= 8) {
+            postings.computeIfAbsent(buf.getLong(), k -> new IntBitmap()).add(ordinal);
+        }
+    }
+
+    /**
+     * Marks everything added so far as the initial load; later {@link #add}s of the same ids are
+     * skipped (a message committed while the room was being loaded arrives both ways). Also trims
+     * what the load left allocated for growth.
+     */
+    public synchronized void sealBulk() {
+        for (IntBitmap b : postings.values()) b.trim();
+        idByOrdinal = Arrays.copyOf(idByOrdinal, Math.max(16, size));
+        bulkIds = Arrays.copyOf(idByOrdinal, size);
+        Arrays.sort(bulkIds);
+        sealed = true;
+    }
+
+    public synchronized boolean isSealed() {
+        return sealed;
+    }
+
+    /** Ids of up to {@code limit} messages carrying every token, newest first, after {@code cursor}. */
+    public synchronized Page search(long[] tokens, int limit, @Nullable String cursor) {
+        if (tokens.length == 0) return new Page(List.of(), null);
+        IntBitmap[] lists = new IntBitmap[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            lists[i] = postings.get(tokens[i]);
+            if (lists[i] == null) return new Page(List.of(), null);
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.cardinality(), b.cardinality())); // lead with the rarest
+        List<Long> ids = new ArrayList<>(Math.min(limit, 256));
+        int from = cursor == null ? size - 1 : resume(cursor) - 1;
+        int last = -1;
+        next:
+        for (int ord = lists[0].floor(from); ord >= 0 && ids.size() < limit; ord = lists[0].floor(ord - 1)) {
+            for (int i = 1; i < lists.length; i++) {
+                if (!lists[i].contains(ord)) continue next;
+            }
+            ids.add(idByOrdinal[ord]);
+            last = ord;
+        }
+        String next = ids.size() == limit ? encode(last, idByOrdinal[last]) : null;
+        return new Page(ids, next);
+    }
+
+    public synchronized int messages() {
+        return size;
+    }
+
+    public synchronized int tokens() {
+        return postings.size();
+    }
+
+    /**
+     * Approximate heap held: the id column, the bitmaps, and about 64 bytes per distinct token for
+     * the map entry, its boxed key and the bitmap object.
+     */
+    public synchronized long sizeInBytes() {
+        long bytes = 16 + idByOrdinal.length * 8L + 16 + bulkIds.length * 8L;
+        for (IntBitmap b : postings.values()) bytes += 64 + b.sizeInBytes();
+        return bytes;
+    }
+
+    /** The ordinal the cursor points at, looked up by id if the room was renumbered since. */
+    private int resume(String cursor) {
+        String s = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int c = s.indexOf(':');
+        if (c <= 0) throw new IllegalArgumentException("Malformed cursor");
+        int ordinal = Integer.parseInt(s.substring(0, c));
+        long id = Long.parseLong(s.substring(c + 1));
+        if (ordinal < size && idByOrdinal[ordinal] == id) return ordinal;
+        for (int i = size - 1; i >= 0; i--) {
+            if (idByOrdinal[i] == id) return i;
+        }
+        throw new IllegalArgumentException("Stale cursor");
+    }
+
+    private static String encode(int ordinal, long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((ordinal + ":" + id).getBytes(StandardCharsets.UTF_8));
+    }
+}
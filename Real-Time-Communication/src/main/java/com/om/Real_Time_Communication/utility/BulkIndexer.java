@@ -0,0 +1,42 @@
+package com.om.Real_Time_Communication.utility;
+
+import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/** One bulk request to the search cluster. */
+@FunctionalInterface
+public interface BulkIndexer {
+
+    /**
+     * Indexes {@code docs} (by message id) and returns the ids of the items that failed; throws if
+     * the request as a whole failed.
+     */
+    Set<String> bulkIndex(List<SearchMessageDoc> docs);
+
+    static BulkIndexer elasticsearch(ElasticsearchOperations es) {
+        return docs -> {
+            List<IndexQuery> queries = new ArrayList<>(docs.size());
+            for (SearchMessageDoc d : docs) {
+                queries.add(new IndexQueryBuilder()
+                        .withId(d.getMessageId())
+                        .withRouting(d.getRoomId() == null ? null : d.getRoomId().toString()) // a room lives on one shard
+                        .withObject(d)
+                        .build());
+            }
+            try {
+                es.bulkIndex(queries, IndexCoordinates.of(SearchMessageDoc.INDEX));
+                return Set.of();
+            } catch (BulkFailureException e) {
+                return e.getFailedDocuments().keySet();
+            }
+        };
+    }
+}
@@ -1,48 +1,390 @@
 package com.om.Real_Time_Communication.utility;
-// imports:
+
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.om.Real_Time_Communication.dto.SearchMessageDoc;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.common.lang.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
-import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
-import org.springframework.data.elasticsearch.core.query.IndexQuery;
-import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous indexing pipeline for message search. {@link #enqueue} never blocks: documents go
+ * to a lock-free queue bounded by {@code rtc.search.index.queue.max-docs} and {@code max-bytes}
+ * (counting everything queued, in flight or waiting for a retry), and past that to the
+ * {@link SearchSpillJournal} on disk. One dispatcher thread cuts a batch at
+ * {@code batch.max-docs} or {@code batch.max-bytes}, or after {@code batch.linger-ms}, and keeps up
+ * to {@code max-concurrent-bulks} bulk requests in flight, so batches grow with the backlog. Only
+ * the items a bulk reports as failed are retried, with exponential backoff, up to
+ * {@code retry.max-attempts}; when a whole request fails its documents are re-queued and the
+ * dispatcher backs off instead. Spilled documents are read back once the queue is below half. A
+ * document that can be neither queued nor spilled, or that keeps being rejected, moves the
+ * catch-up checkpoint back to its {@code server_ts}, from where {@code SearchCatchUpJob} re-reads
+ * {@code chat_message}.
+ */
 @Component
-public class ElasticsearchSearchWriter implements SearchWriter {
-    private final ElasticsearchOperations es;
-    private final java.util.List<SearchMessageDoc> buffer = new java.util.ArrayList<>();
+@ConditionalOnProperty(name = "rtc.search.engine", havingValue = "elasticsearch", matchIfMissing = true)
+public class ElasticsearchSearchWriter implements SearchWriter, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ElasticsearchSearchWriter.class);
+
+    /** Queue, batch and retry bounds. */
+    public record Settings(int maxQueuedDocs, long maxQueuedBytes, int batchDocs, long batchBytes, long lingerMs,
+                           int concurrentBulks, int maxAttempts, long backoffMs, long maxBackoffMs) {}
+
+    /** A document with its estimated size and the attempts made so far. */
+    private record Pending(SearchMessageDoc doc, int bytes, int attempt) {}
+
+    private final BulkIndexer bulk;
+    @Nullable
+    private final SearchSpillJournal journal;
+    @Nullable
+    private final RtcMetrics metrics;
+    private final Settings s;
+    private final long lingerNanos;
+
+    private final Queue<Pending> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger readyDocs = new AtomicInteger();
+    private final AtomicLong readyBytes = new AtomicLong();
+    private final AtomicInteger reservedDocs = new AtomicInteger(); // queued + in flight + backing off
+    private final AtomicLong reservedBytes = new AtomicLong();
+    private final Set<Pending> backingOff = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final Semaphore bulkPermits;
+    private final ExecutorService bulkPool;
+    private final ScheduledExecutorService retryTimer;
+    private final Thread dispatcher;
+
+    private final LongAdder indexed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder spilled = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+
+    private volatile boolean running = true;
+    private volatile long pausedUntilNanos;
+    private Instant catchUpFrom; // guarded by this
 
-    public ElasticsearchSearchWriter(ElasticsearchOperations es) {
-        this.es = es;
+    @Autowired
+    public ElasticsearchSearchWriter(ElasticsearchOperations es, ObjectMapper om,
+                                     @Value("${rtc.search.index.queue.max-docs:50000}") int maxQueuedDocs,
+                                     @Value("${rtc.search.index.queue.max-bytes:67108864}") long maxQueuedBytes,
+                                     @Value("${rtc.search.index.batch.max-docs:1000}") int batchDocs,
+                                     @Value("${rtc.search.index.batch.max-bytes:5242880}") long batchBytes,
+                                     @Value("${rtc.search.index.batch.linger-ms:200}") long lingerMs,
+                                     @Value("${rtc.search.index.max-concurrent-bulks:4}") int concurrentBulks,
+                                     @Value("${rtc.search.index.retry.max-attempts:8}") int maxAttempts,
+                                     @Value("${rtc.search.index.retry.backoff-ms:200}") long backoffMs,
+                                     @Value("${rtc.search.index.retry.max-backoff-ms:30000}") long maxBackoffMs,
+                                     @Value("${rtc.search.index.spill.dir:${java.io.tmpdir}/rtc-search-spill}") String spillDir,
+                                     @Value("${rtc.search.index.spill.max-bytes:1073741824}") long spillMaxBytes,
+                                     @Nullable RtcMetrics metrics) throws IOException {
+        this(BulkIndexer.elasticsearch(es),
+                spillMaxBytes > 0 ? new SearchSpillJournal(Path.of(spillDir), spillMaxBytes, 16L << 20, om) : null,
+                new Settings(maxQueuedDocs, maxQueuedBytes, batchDocs, batchBytes, lingerMs,
+                        concurrentBulks, maxAttempts, backoffMs, maxBackoffMs),
+                metrics);
+    }
+
+    public ElasticsearchSearchWriter(BulkIndexer bulk, @Nullable SearchSpillJournal journal, Settings settings,
+                                     @Nullable RtcMetrics metrics) {
+        this.bulk = bulk;
+        this.journal = journal;
+        this.s = settings;
+        this.metrics = metrics;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(settings.lingerMs());
+        this.catchUpFrom = journal != null ? journal.catchUpFrom() : null;
+        this.bulkPermits = new Semaphore(settings.concurrentBulks());
+        CustomizableThreadFactory bulkThreads = new CustomizableThreadFactory("search-bulk-");
+        bulkThreads.setDaemon(true);
+        this.bulkPool = Executors.newFixedThreadPool(settings.concurrentBulks(), bulkThreads);
+        CustomizableThreadFactory timerThreads = new CustomizableThreadFactory("search-retry-");
+        timerThreads.setDaemon(true);
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(timerThreads);
+        this.dispatcher = new Thread(this::dispatchLoop, "search-index-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
     }
 
     @Override
-    public synchronized void enqueue(SearchMessageDoc doc) {
-        buffer.add(doc);
-        if (buffer.size() >= 1000) flushUnsafe();
+    public void enqueue(SearchMessageDoc doc) {
+        int bytes = estimateBytes(doc);
+        if (!running || !reserve(bytes)) {
+            spill(doc);
+            return;
+        }
+        offer(new Pending(doc, bytes, 0));
+    }
+
+    private void offer(Pending p) {
+        ready.add(p);
+        int docs = readyDocs.incrementAndGet();
+        long bytes = readyBytes.addAndGet(p.bytes());
+        if (docs == s.batchDocs() || (bytes >= s.batchBytes() && bytes - p.bytes() < s.batchBytes())) {
+            LockSupport.unpark(dispatcher); // a full batch is waiting
+        }
+    }
+
+    private boolean reserve(int bytes) {
+        if (reservedDocs.incrementAndGet() > s.maxQueuedDocs()) {
+            reservedDocs.decrementAndGet();
+            return false;
+        }
+        if (reservedBytes.addAndGet(bytes) > s.maxQueuedBytes()) {
+            reservedBytes.addAndGet(-bytes);
+            reservedDocs.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private void release(Pending p) {
+        reservedDocs.decrementAndGet();
+        reservedBytes.addAndGet(-p.bytes());
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                if (metrics != null) metrics.setSearchQueued(reservedDocs.get());
+                long pause = pausedUntilNanos - System.nanoTime();
+                if (pause > 0) {
+                    LockSupport.parkNanos(this, pause);
+                    continue;
+                }
+                if (readyDocs.get() < s.batchDocs()) replaySpilled();
+                if (readyDocs.get() == 0) {
+                    LockSupport.parkNanos(this, lingerNanos);
+                    continue;
+                }
+                awaitBatch();
+                bulkPermits.acquire();
+                List<Pending> batch = running ? takeBatch() : List.of();
+                if (batch.isEmpty()) {
+                    bulkPermits.release();
+                    continue;
+                }
+                try {
+                    bulkPool.execute(() -> send(batch));
+                } catch (RejectedExecutionException ex) {
+                    bulkPermits.release();
+                    batch.forEach(this::offer); // shutting down: destroy() spills the queue
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                log.warn("Search index dispatcher error: {}", ex.toString());
+            }
+        }
+    }
+
+    /** Waits up to the linger time for a full batch. */
+    private void awaitBatch() {
+        long deadline = System.nanoTime() + lingerNanos;
+        while (running && readyDocs.get() < s.batchDocs() && readyBytes.get() < s.batchBytes()) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) return;
+            LockSupport.parkNanos(this, left);
+        }
     }
 
-    @org.springframework.scheduling.annotation.Scheduled(fixedDelay = 500)
-    public void flush() { synchronized (this) { flushUnsafe(); } }
+    private List<Pending> takeBatch() {
+        List<Pending> batch = new ArrayList<>(Math.min(readyDocs.get(), s.batchDocs()));
+        long bytes = 0;
+        Pending p;
+        while (batch.size() < s.batchDocs() && (p = ready.peek()) != null) {
+            if (!batch.isEmpty() && bytes + p.bytes() > s.batchBytes()) break;
+            ready.poll(); // the dispatcher is the only consumer
+            readyDocs.decrementAndGet();
+            readyBytes.addAndGet(-p.bytes());
+            batch.add(p);
+            bytes += p.bytes();
+        }
+        return batch;
+    }
 
-    private void flushUnsafe() {
-        if (buffer.isEmpty()) return;
-        var batch = new java.util.ArrayList<>(buffer);
-        buffer.clear();
+    private void send(List<Pending> batch) {
+        long start = System.nanoTime();
+        try {
+            List<SearchMessageDoc> docs = new ArrayList<>(batch.size());
+            for (Pending p : batch) docs.add(p.doc());
+            Set<String> failed = bulk.bulkIndex(docs);
+            if (consecutiveFailures.getAndSet(0) > 0) log.info("Search bulk indexing recovered");
+            int ok = 0;
+            for (Pending p : batch) {
+                if (failed.contains(p.doc().getMessageId())) {
+                    retry(p);
+                } else {
+                    release(p);
+                    ok++;
+                }
+            }
+            indexed.add(ok);
+            if (metrics != null) metrics.searchIndexed(ok);
+        } catch (RuntimeException ex) {
+            int failures = consecutiveFailures.incrementAndGet();
+            pausedUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs(failures));
+            if (failures == 1) log.warn("Search bulk request failed, backing off: {}", ex.toString());
+            retried.add(batch.size());
+            if (metrics != null) metrics.searchRetried(batch.size());
+            batch.forEach(this::offer); // nothing reached the cluster: not an attempt, the pause is the backoff
+        } finally {
+            bulkPermits.release();
+            if (metrics != null) metrics.searchBulk(batch.size(), System.nanoTime() - start);
+        }
+    }
 
+    /** An item the cluster rejected comes back after its own backoff. */
+    private void retry(Pending p) {
+        int attempt = p.attempt() + 1;
+        if (attempt >= s.maxAttempts()) {
+            release(p);
+            log.warn("Dropping search document {} after {} rejected attempts", p.doc().getMessageId(), attempt);
+            markLost(p.doc());
+            return;
+        }
+        retried.increment();
+        if (metrics != null) metrics.searchRetried(1);
+        Pending next = new Pending(p.doc(), p.bytes(), attempt);
+        backingOff.add(next);
         try {
-            java.util.List<IndexQuery> queries = new java.util.ArrayList<>(batch.size());
-            for (var d : batch) {
-                queries.add(new IndexQueryBuilder()
-                        .withId(d.getMessageId())
-                        .withObject(d)
-                        .build());
+            retryTimer.schedule(() -> {
+                if (backingOff.remove(next)) offer(next);
+            }, backoffMs(attempt), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            if (backingOff.remove(next)) offer(next); // shutting down: destroy() spills the queue
+        }
+    }
+
+    private long backoffMs(int attempt) {
+        long base = Math.min(s.maxBackoffMs(), s.backoffMs() << Math.min(attempt - 1, 20));
+        return base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1); // jitter keeps retries apart
+    }
+
+    private void replaySpilled() {
+        if (journal == null || journal.isEmpty()) return;
+        int room = s.maxQueuedDocs() / 2 - reservedDocs.get();
+        if (room <= 0) return;
+        for (SearchMessageDoc doc : journal.read(Math.min(room, s.batchDocs()))) {
+            int bytes = estimateBytes(doc);
+            if (reserve(bytes)) offer(new Pending(doc, bytes, 0));
+            else spill(doc);
+        }
+    }
+
+    private void spill(SearchMessageDoc doc) {
+        if (journal != null && journal.append(doc)) {
+            spilled.increment();
+            if (metrics != null) metrics.searchSpilled();
+            return;
+        }
+        markLost(doc);
+    }
+
+    private void markLost(SearchMessageDoc doc) {
+        lost.increment();
+        if (metrics != null) metrics.searchLost();
+        Instant ts = doc.getCreatedAt() != null ? doc.getCreatedAt() : Instant.now();
+        synchronized (this) {
+            if (catchUpFrom != null && !ts.isBefore(catchUpFrom)) return;
+            catchUpFrom = ts;
+            if (journal != null) journal.setCatchUpFrom(ts);
+        }
+    }
+
+    /** Where a catch-up from {@code chat_message} should start, or {@code null} if nothing was lost. */
+    public synchronized Instant catchUpFrom() {
+        return catchUpFrom;
+    }
+
+    /**
+     * Moves the checkpoint once a catch-up that started from {@code from} has re-queued everything
+     * before {@code reached} ({@code null}: everything, clearing it). Left alone if anything was lost
+     * since the run started, when {@link #lost()} was {@code lostBefore}.
+     */
+    public synchronized void catchUpProgress(Instant from, @Nullable Instant reached, long lostBefore) {
+        if (catchUpFrom == null || !catchUpFrom.equals(from) || lost.sum() != lostBefore) return;
+        catchUpFrom = reached;
+        if (journal != null) journal.setCatchUpFrom(reached);
+    }
+
+    /** True while the queue is below half and bulk requests are succeeding; catch-up waits for it. */
+    public boolean hasCapacity() {
+        return reservedDocs.get() < s.maxQueuedDocs() / 2 && System.nanoTime() >= pausedUntilNanos;
+    }
+
+    public int queued() {
+        return reservedDocs.get();
+    }
+
+    public long queuedBytes() {
+        return reservedBytes.get();
+    }
+
+    public long indexed() {
+        return indexed.sum();
+    }
+
+    public long retried() {
+        return retried.sum();
+    }
+
+    public long spilled() {
+        return spilled.sum();
+    }
+
+    public long lost() {
+        return lost.sum();
+    }
+
+    /** Rough JSON size of a document: the text dominates, the rest is field names, ids and numbers. */
+    static int estimateBytes(SearchMessageDoc d) {
+        int n = 192;
+        if (d.getMessageId() != null) n += d.getMessageId().length();
+        if (d.getText() != null) n += d.getText().length();
+        if (d.getParticipants() != null) {
+            for (String p : d.getParticipants()) n += p.length() + 3;
+        }
+        return n;
+    }
+
+    /** Stops dispatching, waits for bulk requests in flight, and spills whatever is still queued. */
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        dispatcher.interrupt();
+        dispatcher.join(1000);
+        bulkPool.shutdown();
+        bulkPool.awaitTermination(10, TimeUnit.SECONDS);
+        retryTimer.shutdownNow();
+        List<Pending> left = new ArrayList<>(backingOff);
+        backingOff.clear();
+        for (Pending p; (p = ready.poll()) != null; ) left.add(p);
+        for (Pending p : left) {
+            release(p);
+            spill(p.doc());
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                log.warn("Closing search spill journal failed: {}", ex.toString());
             }
-            es.bulkIndex(queries, IndexCoordinates.of(SearchMessageDoc.INDEX));
-        } catch (Exception e) {
-            // simple retry
-            buffer.addAll(batch);
         }
     }
 }
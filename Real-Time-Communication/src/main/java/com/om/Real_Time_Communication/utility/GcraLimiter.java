@@ -0,0 +1,180 @@
+package com.om.Real_Time_Communication.utility;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limiter on the generic cell rate algorithm, keyed by primitive {@code long}. The whole state
+ * of a key is its theoretical arrival time (TAT): an event is allowed while the TAT is at most
+ * {@code tolerance} ahead of now, and then pushes it {@code emission} further. That gives a sustained
+ * rate of one event per emission interval with bursts of up to {@code tolerance / emission + 1},
+ * with no window edges to game.
+ *
+ * <p>A key whose TAT has passed is indistinguishable from one never seen, so it is dropped by
+ * {@link #evictExpired()} or whenever its stripe fills up, without losing anything. Keys and TATs
+ * live in two flat arrays per lock stripe (16 bytes a slot), and a stripe never tracks much more than
+ * its share of {@code maxKeys}: once full of live keys, further new keys share one overflow TAT per
+ * stripe until entries expire.
+ */
+public final class GcraLimiter {
+
+    private static final int STRIPES = 64;
+    private static final int MIN_CAPACITY = 16;
+    private static final long PURGE_BACKOFF_NANOS = 50_000_000L;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongSupplier clock;
+    private final long origin;
+
+    public GcraLimiter(int maxKeys) {
+        this(maxKeys, System::nanoTime);
+    }
+
+    /** {@code clock} returns nanoseconds and only needs to be monotonic. */
+    public GcraLimiter(int maxKeys, LongSupplier clock) {
+        int share = (maxKeys + STRIPES - 1) / STRIPES;
+        int perStripe = share + share / 4 + 8; // headroom for uneven hashing across stripes
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe(perStripe);
+        this.clock = clock;
+        this.origin = clock.getAsLong() - 1;
+    }
+
+    /**
+     * Takes one event for {@code key}; false (and no state change) when it would exceed the rate.
+     *
+     * @param emissionNanos  interval between events at the sustained rate, &gt; 0
+     * @param toleranceNanos how far ahead of now the TAT may run, i.e. (burst - 1) * emission
+     */
+    public boolean tryAcquire(long key, long emissionNanos, long toleranceNanos) {
+        long now = now();
+        long h = mix(key);
+        Stripe s = stripes[(int) (h >>> 58)]; // top 6 bits pick the stripe, low bits the slot
+        synchronized (s) {
+            return s.acquire(key, h, now, emissionNanos, toleranceNanos);
+        }
+    }
+
+    /** Drops every key whose TAT has passed; returns how many. */
+    public int evictExpired() {
+        long now = now();
+        int n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.purge(now);
+            }
+        }
+        return n;
+    }
+
+    /** Keys currently tracked, expired or not. */
+    public int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.size;
+            }
+        }
+        return n;
+    }
+
+    /** Times an event was checked against a stripe's shared overflow TAT because the stripe was full. */
+    public long overflowed() {
+        long n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.overflowed;
+            }
+        }
+        return n;
+    }
+
+    private long now() {
+        return clock.getAsLong() - origin; // >= 1, so a stored TAT is never 0
+    }
+
+    private static long mix(long key) {
+        // murmur3 fmix64
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static final class Stripe {
+        final int maxKeys;
+        long[] keys = new long[MIN_CAPACITY];
+        long[] tats = new long[MIN_CAPACITY]; // 0 marks a free slot
+        int size;
+        long overflowTat;
+        long overflowed;
+        long purgedAt = Long.MIN_VALUE / 2;
+
+        Stripe(int maxKeys) {
+            this.maxKeys = maxKeys;
+        }
+
+        boolean acquire(long key, long h, long now, long emission, long tolerance) {
+            int mask = tats.length - 1;
+            int i = (int) h & mask;
+            for (; tats[i] != 0; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    long tat = Math.max(tats[i], now);
+                    if (tat - now > tolerance) return false;
+                    tats[i] = tat + emission;
+                    return true;
+                }
+            }
+            if (size >= maxKeys) {
+                if (now - purgedAt >= PURGE_BACKOFF_NANOS) {
+                    purgedAt = now;
+                    purge(now);
+                }
+                if (size >= maxKeys) {
+                    overflowed++;
+                    long tat = Math.max(overflowTat, now);
+                    if (tat - now > tolerance) return false;
+                    overflowTat = tat + emission;
+                    return true;
+                }
+                return acquire(key, h, now, emission, tolerance);
+            }
+            keys[i] = key;
+            tats[i] = now + emission;
+            if (++size * 4 > tats.length * 3) rehash(tats.length * 2, now);
+            return true;
+        }
+
+        int purge(long now) {
+            int live = 0;
+            for (long tat : tats) {
+                if (tat > now) live++;
+            }
+            int expired = size - live;
+            if (expired == 0) return 0;
+            // Halve while at most a quarter full, so the footprint of a burst of keys is returned
+            int capacity = tats.length;
+            while (capacity > MIN_CAPACITY && live * 4 <= capacity) capacity >>= 1;
+            rehash(capacity, now);
+            return expired;
+        }
+
+        /** Rebuilds the table at {@code capacity}, keeping only keys whose TAT is still ahead of now. */
+        private void rehash(int capacity, long now) {
+            long[] oldKeys = keys;
+            long[] oldTats = tats;
+            keys = new long[capacity];
+            tats = new long[capacity];
+            size = 0;
+            int mask = capacity - 1;
+            for (int k = 0; k < oldTats.length; k++) {
+                if (oldTats[k] <= now) continue;
+                int i = (int) mix(oldKeys[k]) & mask;
+                while (tats[i] != 0) i = (i + 1) & mask;
+                keys[i] = oldKeys[k];
+                tats[i] = oldTats[k];
+                size++;
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.om.Real_Time_Communication.utility;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of non-negative ints in the roaring layout: values are grouped by their high 16
+ * bits, and each group is a sorted {@code char[]} while it holds at most 4096 values (2 bytes
+ * each), or a 65536-bit {@code long[]} (8 KB) beyond that. Sparse posting lists stay small, dense
+ * ones cost one bit per value. Appending in increasing order, the common case, never shifts.
+ * Not thread-safe.
+ */
+public final class IntBitmap {
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int WORDS = 1024;
+
+    private char[] keys = new char[1];
+    private Object[] containers = new Object[1]; // char[] or long[]
+    private int[] cards = new int[1];
+    private int n;
+
+    public void add(int v) {
+        if (v < 0) throw new IllegalArgumentException("negative value " + v);
+        char hi = (char) (v >>> 16);
+        char lo = (char) v;
+        int i = indexOf(hi);
+        if (i < 0) {
+            i = -i - 1;
+            insertContainer(i, hi);
+        }
+        Object c = containers[i];
+        if (c instanceof long[] words) {
+            long bit = 1L << lo;
+            if ((words[lo >>> 6] & bit) == 0) {
+                words[lo >>> 6] |= bit;
+                cards[i]++;
+            }
+            return;
+        }
+        char[] arr = (char[]) c;
+        int card = cards[i];
+        int at = (card > 0 && arr[card - 1] < lo) ? -card - 1 : Arrays.binarySearch(arr, 0, card, lo);
+        if (at >= 0) return;
+        at = -at - 1;
+        if (card == ARRAY_MAX) {
+            long[] words = new long[WORDS];
+            for (int k = 0; k < card; k++) words[arr[k] >>> 6] |= 1L << arr[k];
+            words[lo >>> 6] |= 1L << lo;
+            containers[i] = words;
+            cards[i] = card + 1;
+            return;
+        }
+        if (card == arr.length) {
+            arr = Arrays.copyOf(arr, Math.min(ARRAY_MAX, Math.max(4, card + (card >> 1))));
+            containers[i] = arr;
+        }
+        System.arraycopy(arr, at, arr, at + 1, card - at);
+        arr[at] = lo;
+        cards[i] = card + 1;
+    }
+
+    public boolean contains(int v) {
+        if (v < 0) return false;
+        int i = indexOf((char) (v >>> 16));
+        if (i < 0) return false;
+        char lo = (char) v;
+        if (containers[i] instanceof long[] words) return (words[lo >>> 6] & (1L << lo)) != 0;
+        return Arrays.binarySearch((char[]) containers[i], 0, cards[i], lo) >= 0;
+    }
+
+    /** The largest value not above {@code v}, or -1. */
+    public int floor(int v) {
+        if (v < 0) return -1;
+        int i = indexOf((char) (v >>> 16));
+        if (i >= 0) {
+            int lo = floorIn(i, (char) v);
+            if (lo >= 0) return (keys[i] << 16) | lo;
+            i--;
+        } else {
+            i = -i - 2;
+        }
+        return i >= 0 ? (keys[i] << 16) | floorIn(i, (char) 0xFFFF) : -1;
+    }
+
+    /** Drops the spare room arrays keep for growth; call once a bitmap is mostly built. */
+    public void trim() {
+        keys = Arrays.copyOf(keys, Math.max(1, n));
+        containers = Arrays.copyOf(containers, Math.max(1, n));
+        cards = Arrays.copyOf(cards, Math.max(1, n));
+        for (int i = 0; i < n; i++) {
+            if (containers[i] instanceof char[] arr && arr.length > cards[i]) containers[i] = Arrays.copyOf(arr, cards[i]);
+        }
+    }
+
+    public int cardinality() {
+        int sum = 0;
+        for (int i = 0; i < n; i++) sum += cards[i];
+        return sum;
+    }
+
+    /** Heap held by the arrays, with 16 bytes per array header. */
+    public long sizeInBytes() {
+        long bytes = 16 + keys.length * 2L + 16 + containers.length * 4L + 16 + cards.length * 4L;
+        for (int i = 0; i < n; i++) {
+            bytes += 16 + (containers[i] instanceof long[] w ? w.length * 8L : ((char[]) containers[i]).length * 2L);
+        }
+        return bytes;
+    }
+
+    private int floorIn(int i, char lo) {
+        if (containers[i] instanceof long[] words) {
+            int w = lo >>> 6;
+            long bits = words[w] & (-1L >>> (63 - (lo & 63)));
+            while (bits == 0) {
+                if (--w < 0) return -1;
+                bits = words[w];
+            }
+            return w * 64 + 63 - Long.numberOfLeadingZeros(bits);
+        }
+        char[] arr = (char[]) containers[i];
+        int at = Arrays.binarySearch(arr, 0, cards[i], lo);
+        if (at >= 0) return arr[at];
+        at = -at - 2;
+        return at >= 0 ? arr[at] : -1;
+    }
+
+    private int indexOf(char hi) {
+        if (n > 0 && keys[n - 1] == hi) return n - 1; // appends land in the last container
+        return Arrays.binarySearch(keys, 0, n, hi);
+    }
+
+    private void insertContainer(int i, char hi) {
+        if (n == keys.length) {
+            keys = Arrays.copyOf(keys, n * 2);
+            containers = Arrays.copyOf(containers, n * 2);
+            cards = Arrays.copyOf(cards, n * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, n - i);
+        System.arraycopy(containers, i, containers, i + 1, n - i);
+        System.arraycopy(cards, i, cards, i + 1, n - i);
+        keys[i] = hi;
+        containers[i] = new char[4];
+        cards[i] = 0;
+        n++;
+    }
+}
@@ -1,20 +1,44 @@
 package com.om.Real_Time_Communication.utility;
 
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
+/**
+ * Opaque keyset cursor over (server_ts, id). Timestamps are kept to the microsecond, the precision
+ * of the column, so rows sharing a millisecond are neither skipped nor repeated. Tokens from the
+ * older millisecond format still decode.
+ *
+ * Rows with a {@link SnowflakeIdGenerator} id carry its time as server_ts, so their cursor is just
+ * the id: server_ts follows from it.
+ */
 public final class MessageCursor {
-    public static String encode(Instant createdAt, Long id) {
-        String raw = createdAt.toEpochMilli() + ":" + id;
+    private static final String MICROS_PREFIX = "u";
+    private static final String ID_PREFIX = "s";
+
+    public static String encode(Instant serverTs, Long id) {
+        String raw = id != null && SnowflakeIdGenerator.timeOf(id).equals(serverTs)
+                ? ID_PREFIX + id
+                : MICROS_PREFIX + ChronoUnit.MICROS.between(Instant.EPOCH, serverTs) + ":" + id;
         return java.util.Base64.getUrlEncoder().withoutPadding()
                 .encodeToString(raw.getBytes(java.nio.charset.StandardCharsets.UTF_8));
     }
     public static java.util.AbstractMap.SimpleEntry<Instant, Long> decode(String token) {
         byte[] b = java.util.Base64.getUrlDecoder().decode(token);
         String s = new String(b, java.nio.charset.StandardCharsets.UTF_8);
+        if (s.startsWith(ID_PREFIX)) {
+            long id = Long.parseLong(s.substring(ID_PREFIX.length()));
+            return new java.util.AbstractMap.SimpleEntry<>(SnowflakeIdGenerator.timeOf(id), id);
+        }
         int i = s.indexOf(':');
-        long ms = Long.parseLong(s.substring(0, i));
+        if (i < 0) throw new IllegalArgumentException("Malformed cursor");
+        Instant ts;
+        if (s.startsWith(MICROS_PREFIX)) {
+            ts = Instant.EPOCH.plus(Long.parseLong(s.substring(MICROS_PREFIX.length(), i)), ChronoUnit.MICROS);
+        } else {
+            ts = Instant.ofEpochMilli(Long.parseLong(s.substring(0, i)));
+        }
         long id = Long.parseLong(s.substring(i+1));
-        return new java.util.AbstractMap.SimpleEntry<>(Instant.ofEpochMilli(ms), id);
+        return new java.util.AbstractMap.SimpleEntry<>(ts, id);
     }
     private MessageCursor() {}
 }
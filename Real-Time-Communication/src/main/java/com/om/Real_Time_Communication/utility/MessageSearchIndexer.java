@@ -5,36 +5,67 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.om.Real_Time_Communication.config.RabbitConfig;
 import com.om.Real_Time_Communication.dto.MessageCreated;
 import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import com.om.Real_Time_Communication.presence.InProcessOutboxSink;
+import io.micrometer.common.lang.Nullable;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger; import org.slf4j.LoggerFactory;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.time.Instant;
 
-//@Component
+/**
+ * Feeds MessageCreated events to the search writer, which only queues them, so the outbox relay is
+ * never held up by the search cluster. With the local outbox sink the events arrive in process.
+ */
+@Component
 public class MessageSearchIndexer {
     private static final Logger log = LoggerFactory.getLogger(MessageSearchIndexer.class);
 
     private final ObjectMapper om;
     private final SearchWriter searchWriter;          // OpenSearch/Elasticsearch writer (bulk)
-    private final StringRedisTemplate redis;          // Redis recents
+    @Nullable
+    private final StringRedisTemplate redis;          // Redis recents, with rtc.redis.enabled
 
-    public MessageSearchIndexer(ObjectMapper om, SearchWriter searchWriter, StringRedisTemplate redis) {
+    public MessageSearchIndexer(ObjectMapper om, SearchWriter searchWriter,
+                                @Nullable StringRedisTemplate redis,
+                                @Nullable InProcessOutboxSink localSink,
+                                @Value("${rtc.redis.enabled:false}") boolean redisEnabled) {
         this.om = om;
         this.searchWriter = searchWriter;
-        this.redis = redis;
+        this.redis = redisEnabled ? redis : null;
+        if (localSink != null) {
+            localSink.subscribe(d -> {
+                if (!d.routingKey().endsWith(".message.created")) return;
+                try {
+                    onMessageCreated(d.payload());
+                } catch (Exception ex) {
+                    log.warn("Search indexing skipped {}: {}", d.messageId(), ex.toString());
+                }
+            });
+        }
     }
 
 //    @RabbitListener(queues = RabbitConfig.Q_READMODEL_MSG_CREATED)
     public void onMessageCreated(String payload) throws Exception {
         MessageCreated ev = om.readValue(payload, MessageCreated.class);
 
-        // 1) OpenSearch/Elasticsearch (async bulk)
-        SearchMessageDoc doc = SearchMessageDoc.from(ev);
-        searchWriter.enqueue(doc);
+        // 1) OpenSearch/Elasticsearch (async bulk); nothing to find in E2EE or empty messages
+        if (SearchMessageDoc.indexable(ev.e2ee, ev.body)) {
+            searchWriter.enqueue(SearchMessageDoc.from(ev));
+        }
+
+        if (redis == null) return;
+        try {
+            indexRecents(ev);
+        } catch (RuntimeException ex) {
+            log.debug("Redis recents update failed for {}: {}", ev.messageId, ex.toString());
+        }
+    }
 
+    private void indexRecents(MessageCreated ev) {
         // 2) Redis secondary indexes (MVP / fast recents)
         // Per-room sorted set of recent messageIds
         String zKey = "room:idx:" + ev.roomId;
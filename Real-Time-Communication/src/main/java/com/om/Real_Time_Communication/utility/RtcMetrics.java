@@ -11,27 +11,111 @@ import java.util.function.Supplier;
 @Component
 public class RtcMetrics {
     private final AtomicInteger wsConnected = new AtomicInteger();
+    private final AtomicInteger wsUsers = new AtomicInteger();
     private final AtomicInteger sendQueueSize = new AtomicInteger();
+    private final AtomicInteger slowSessions = new AtomicInteger();
+    private final AtomicInteger searchQueued = new AtomicInteger();
 
     private final Counter msgDropped;
     private final Timer msgPersistLatency;
+    private final DistributionSummary ackBatchSize;
+    private final Counter ackRowsUpdated;
+    private final Counter receiptFrames;
+    private final Counter receiptsCoalesced;
+    private final Counter outboundCoalesced;
+    private final DistributionSummary sessionQueueBytes;
+    private final DistributionSummary sessionQueueFrames;
+    private final Counter slowConsumerClosed;
+    private final Counter searchIndexed;
+    private final Counter searchRetried;
+    private final Counter searchSpilled;
+    private final Counter searchLost;
+    private final Timer searchBulkLatency;
+    private final DistributionSummary searchBulkDocs;
+    private final Gauge gSearchQueued;
+    private final Gauge gSlowSessions;
     private final Gauge gWsConnected;
+    private final Gauge gWsUsers;
     private final Gauge gSendQueue;
 
     public RtcMetrics(MeterRegistry reg) {
         this.gWsConnected = Gauge.builder("ws.connected", wsConnected, AtomicInteger::get).register(reg);
+        this.gWsUsers     = Gauge.builder("ws.connected.users", wsUsers, AtomicInteger::get)
+                .description("users with at least one session on this node")
+                .register(reg);
         this.gSendQueue   = Gauge.builder("ws.send.queue.size", sendQueueSize, AtomicInteger::get).register(reg);
+        this.gSlowSessions = Gauge.builder("ws.sessions.slow", slowSessions, AtomicInteger::get)
+                .description("sessions currently classed as slow consumers")
+                .register(reg);
         this.msgDropped   = Counter.builder("msg.dropped").register(reg);
         this.msgPersistLatency = Timer.builder("msg.persist.latency")
                 .publishPercentileHistogram()
                 .sla(Duration.ofMillis(10), Duration.ofMillis(25), Duration.ofMillis(50),
                         Duration.ofMillis(100), Duration.ofMillis(250), Duration.ofMillis(500))
                 .register(reg);
+        this.ackBatchSize = DistributionSummary.builder("inbox.ack.batch.size")
+                .description("message acks carried by one ack frame")
+                .publishPercentileHistogram()
+                .register(reg);
+        this.ackRowsUpdated = Counter.builder("inbox.ack.rows.updated").register(reg);
+        this.receiptFrames = Counter.builder("inbox.receipt.frames").register(reg);
+        this.receiptsCoalesced = Counter.builder("inbox.receipt.coalesced")
+                .description("receipts folded into another receipt frame")
+                .register(reg);
+        this.outboundCoalesced = Counter.builder("ws.outbound.coalesced")
+                .description("low-priority frames replaced by a newer one for the same session and destination")
+                .register(reg);
+        this.sessionQueueBytes = DistributionSummary.builder("ws.session.queue.bytes")
+                .description("bytes buffered for one session, sampled")
+                .baseUnit("bytes")
+                .publishPercentileHistogram()
+                .register(reg);
+        this.sessionQueueFrames = DistributionSummary.builder("ws.session.queue.frames")
+                .description("frames buffered for one session, sampled")
+                .publishPercentileHistogram()
+                .register(reg);
+        this.slowConsumerClosed = Counter.builder("ws.session.closed.slow")
+                .description("sessions closed for exceeding their send buffer or send time limit")
+                .register(reg);
+        this.gSearchQueued = Gauge.builder("search.index.queued", searchQueued, AtomicInteger::get)
+                .description("search documents queued, in flight or waiting for a retry")
+                .register(reg);
+        this.searchIndexed = Counter.builder("search.index.indexed").register(reg);
+        this.searchRetried = Counter.builder("search.index.retried")
+                .description("bulk items sent again after a failure")
+                .register(reg);
+        this.searchSpilled = Counter.builder("search.index.spilled")
+                .description("search documents written to the spill journal")
+                .register(reg);
+        this.searchLost = Counter.builder("search.index.lost")
+                .description("search documents left to the chat_message catch-up")
+                .register(reg);
+        this.searchBulkLatency = Timer.builder("search.index.bulk.latency")
+                .publishPercentileHistogram()
+                .register(reg);
+        this.searchBulkDocs = DistributionSummary.builder("search.index.bulk.docs")
+                .publishPercentileHistogram()
+                .register(reg);
     }
 
     public void onWsOpen(){ wsConnected.incrementAndGet(); }
     public void onWsClose(){ wsConnected.decrementAndGet(); }
+    public void onUserOnline(){ wsUsers.incrementAndGet(); }
+    public void onUserOffline(){ wsUsers.decrementAndGet(); }
     public void setSendQueueSize(int n){ sendQueueSize.set(n); }
+    public void setSlowSessions(int n){ slowSessions.set(n); }
+    public void sessionQueue(int bytes, int frames){ sessionQueueBytes.record(bytes); sessionQueueFrames.record(frames); }
+    public void slowConsumerClosed(){ slowConsumerClosed.increment(); }
     public void dropped(){ msgDropped.increment(); }
+    public void dropped(int n){ msgDropped.increment(n); }
+    public void ackBatch(int acks, int rowsUpdated){ ackBatchSize.record(acks); ackRowsUpdated.increment(rowsUpdated); }
+    public void outboundCoalesced(){ outboundCoalesced.increment(); }
+    public void receiptFrame(int receipts){ receiptFrames.increment(); receiptsCoalesced.increment(Math.max(0, receipts - 1)); }
+    public void setSearchQueued(int n){ searchQueued.set(n); }
+    public void searchIndexed(int n){ searchIndexed.increment(n); }
+    public void searchRetried(int n){ searchRetried.increment(n); }
+    public void searchSpilled(){ searchSpilled.increment(); }
+    public void searchLost(){ searchLost.increment(); }
+    public void searchBulk(int docs, long nanos){ searchBulkDocs.record(docs); searchBulkLatency.record(nanos, java.util.concurrent.TimeUnit.NANOSECONDS); }
     public <T> T timePersist(Supplier<T> s) throws Exception { return msgPersistLatency.recordCallable(s::get); }
 }
@@ -0,0 +1,30 @@
+package com.om.Real_Time_Communication.utility;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Opaque search_after cursor over (createdAt, messageId), the order search results come in.
+ * Microsecond precision, like {@link MessageCursor}; the cluster compares dates in milliseconds.
+ */
+public final class SearchCursor {
+
+    public static String encode(Instant createdAt, String messageId) {
+        String raw = ChronoUnit.MICROS.between(Instant.EPOCH, createdAt) + ":" + messageId;
+        return java.util.Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+    public static java.util.AbstractMap.SimpleEntry<Instant, String> decode(String token) {
+        String s;
+        try {
+            s = new String(java.util.Base64.getUrlDecoder().decode(token), java.nio.charset.StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Malformed cursor");
+        }
+        int i = s.indexOf(':');
+        if (i <= 0 || i == s.length() - 1) throw new IllegalArgumentException("Malformed cursor");
+        Instant ts = Instant.EPOCH.plus(Long.parseLong(s.substring(0, i)), ChronoUnit.MICROS);
+        return new java.util.AbstractMap.SimpleEntry<>(ts, s.substring(i + 1));
+    }
+    private SearchCursor() {}
+}
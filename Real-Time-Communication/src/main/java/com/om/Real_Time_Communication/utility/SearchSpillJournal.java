@@ -0,0 +1,201 @@
+package com.om.Real_Time_Communication.utility;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Search documents that did not fit in the indexing queue, as JSON lines in numbered segment files
+ * ({@code spill-<n>.jsonl}) read back oldest first. Bounded by {@code maxBytes}; a segment is
+ * deleted once read, and one half-read at a crash is read again from the start (re-indexing a
+ * message is harmless). Also keeps the catch-up checkpoint: the oldest {@code server_ts} of a
+ * document that could not be queued or spilled.
+ */
+public class SearchSpillJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchSpillJournal.class);
+
+    private static final String PREFIX = "spill-";
+    private static final String SUFFIX = ".jsonl";
+    private static final String CHECKPOINT = "catch-up-from";
+
+    private final Path dir;
+    private final long maxBytes;
+    private final long segmentBytes;
+    private final ObjectMapper om;
+    private final Deque<Path> segments = new ArrayDeque<>(); // oldest first; the last one may be open for writing
+
+    private long bytes;
+    private long nextSeq;
+    private OutputStream writer;
+    private Path writing;
+    private long writingBytes;
+    private BufferedReader reader;
+    private Path reading;
+    private long readingBytes;
+
+    public SearchSpillJournal(Path dir, long maxBytes, long segmentBytes, ObjectMapper om) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        this.maxBytes = maxBytes;
+        this.segmentBytes = segmentBytes;
+        this.om = om;
+        List<Path> existing;
+        try (Stream<Path> files = Files.list(dir)) {
+            existing = files.filter(p -> seq(p) >= 0)
+                    .sorted((a, b) -> Long.compare(seq(a), seq(b)))
+                    .toList();
+        }
+        for (Path p : existing) {
+            segments.add(p);
+            bytes += Files.size(p);
+            nextSeq = seq(p) + 1;
+        }
+        if (!existing.isEmpty()) log.info("Search spill journal holds {} bytes in {} segments", bytes, existing.size());
+    }
+
+    /** Appends {@code doc}; false if the journal is full or the write failed. */
+    public synchronized boolean append(SearchMessageDoc doc) {
+        try {
+            byte[] line = om.writeValueAsBytes(doc);
+            long len = line.length + 1L;
+            if (bytes + len > maxBytes) return false;
+            if (writer == null || writingBytes + len > segmentBytes) roll();
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+            writingBytes += len;
+            bytes += len;
+            return true;
+        } catch (IOException ex) {
+            log.warn("Search spill journal write failed: {}", ex.toString());
+            return false;
+        }
+    }
+
+    /** Up to {@code max} spilled documents, oldest first; they are gone from the journal afterwards. */
+    public synchronized List<SearchMessageDoc> read(int max) {
+        List<SearchMessageDoc> out = new ArrayList<>(Math.min(max, 1024));
+        try {
+            while (out.size() < max) {
+                if (reader == null && !openNextForReading()) break;
+                String line = reader.readLine();
+                if (line == null) {
+                    finishReading();
+                    continue;
+                }
+                if (line.isBlank()) continue;
+                try {
+                    out.add(om.readValue(line, SearchMessageDoc.class));
+                } catch (IOException ex) {
+                    log.warn("Skipping unreadable search spill line: {}", ex.toString());
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("Search spill journal read failed: {}", ex.toString());
+        }
+        return out;
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized boolean isEmpty() {
+        return bytes == 0;
+    }
+
+    /** The persisted catch-up checkpoint, or {@code null}. */
+    public synchronized Instant catchUpFrom() {
+        Path p = dir.resolve(CHECKPOINT);
+        try {
+            return Files.exists(p) ? Instant.parse(Files.readString(p).trim()) : null;
+        } catch (Exception ex) {
+            log.warn("Unreadable search catch-up checkpoint: {}", ex.toString());
+            return null;
+        }
+    }
+
+    /** Persists the catch-up checkpoint; {@code null} removes it. */
+    public synchronized void setCatchUpFrom(Instant from) {
+        Path p = dir.resolve(CHECKPOINT);
+        try {
+            if (from == null) {
+                Files.deleteIfExists(p);
+            } else {
+                Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+                Files.writeString(tmp, from.toString());
+                Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException ex) {
+            log.warn("Could not persist search catch-up checkpoint {}: {}", from, ex.toString());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (writer != null) writer.close();
+        if (reader != null) reader.close();
+        writer = null;
+        reader = null;
+    }
+
+    private void roll() throws IOException {
+        if (writer != null) writer.close();
+        writing = dir.resolve(PREFIX + (nextSeq++) + SUFFIX);
+        writer = new BufferedOutputStream(Files.newOutputStream(writing,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+        writingBytes = Files.size(writing);
+        segments.add(writing);
+    }
+
+    private boolean openNextForReading() throws IOException {
+        Path next = segments.peekFirst();
+        if (next == null) return false;
+        if (next.equals(writing)) { // read the segment being written only after closing it
+            writer.close();
+            writer = null;
+            writing = null;
+        }
+        reading = next;
+        readingBytes = Files.size(next);
+        reader = Files.newBufferedReader(next, StandardCharsets.UTF_8);
+        return true;
+    }
+
+    private void finishReading() throws IOException {
+        reader.close();
+        reader = null;
+        segments.pollFirst();
+        Files.deleteIfExists(reading);
+        bytes -= readingBytes;
+        reading = null;
+    }
+
+    private static long seq(Path p) {
+        String name = p.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) return -1;
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.om.Real_Time_Communication.utility;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time-ordered 53-bit ids: milliseconds since 2024-01-01 (39 bits), the node (5 bits,
+ * {@code rtc.id.node}) and a sequence within the millisecond (9 bits). Ids stay below
+ * 2^53, so JavaScript clients read them exactly, and sort by the time they were made; two nodes
+ * never produce the same id. Lock-free: one compare-and-set per id.
+ *
+ * The ceiling is 512 ids per millisecond per table and node, about 512,000 a second sustained. A
+ * burst beyond that takes ids from the next milliseconds rather than waiting, so ids may run ahead
+ * of the clock: the delivery rows of one message to a 10,000-member room borrow about 20 ms. Past
+ * {@link #MAX_DRIFT_MS} ahead the caller waits for the clock to catch up; a clock stepping back is
+ * treated the same way. Each table gets its own generator ({@link SnowflakeIds#forTable}), so a
+ * delivery fan-out does not push message ids ahead.
+ *
+ * The 39 time bits run out on 2041-06-02 21:56:53 UTC ({@link #HORIZON}); from then on
+ * {@link #nextId} throws rather than hand out ids past 2^53 that would no longer sort or round-trip
+ * through JavaScript. Going further means taking bits from the node or the sequence, or giving up
+ * the 2^53 bound for tables whose ids clients never see.
+ */
+public final class SnowflakeIdGenerator {
+
+    public static final long EPOCH_MS = Instant.parse("2024-01-01T00:00:00Z").toEpochMilli();
+    static final int NODE_BITS = 5;
+    static final int SEQUENCE_BITS = 9;
+    public static final int MAX_NODE = (1 << NODE_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int TIME_SHIFT = NODE_BITS + SEQUENCE_BITS;
+    static final long MAX_DRIFT_MS = 1_000;
+    private static final long MAX_TIME = (1L << (53 - TIME_SHIFT)) - 1;
+    /** The last millisecond ids can be made for. */
+    public static final Instant HORIZON = Instant.ofEpochMilli(EPOCH_MS + MAX_TIME);
+
+    private final int node;
+    private final AtomicLong last; // time << SEQUENCE_BITS | sequence of the last id handed out
+
+    public SnowflakeIdGenerator(int node) {
+        if (node < 0 || node > MAX_NODE) throw new IllegalArgumentException("node must be 0.." + MAX_NODE);
+        this.node = node;
+        this.last = new AtomicLong((System.currentTimeMillis() - EPOCH_MS) << SEQUENCE_BITS);
+    }
+
+    public long nextId() {
+        while (true) {
+            long now = System.currentTimeMillis() - EPOCH_MS;
+            long prev = last.get();
+            long prevTime = prev >>> SEQUENCE_BITS;
+            long next;
+            if (now > prevTime) {
+                next = now << SEQUENCE_BITS;
+            } else if (prevTime - now < MAX_DRIFT_MS || (prev & SEQUENCE_MASK) < SEQUENCE_MASK) {
+                next = prev + 1; // carries into the next millisecond when the sequence is used up
+            } else {
+                LockSupport.parkNanos(100_000);
+                continue;
+            }
+            if (last.compareAndSet(prev, next)) {
+                long time = next >>> SEQUENCE_BITS;
+                if (time > MAX_TIME) throw new IllegalStateException("Snowflake ids ran out at " + HORIZON);
+                return (time << TIME_SHIFT) | ((long) node << SEQUENCE_BITS) | (next & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    /** When {@code id} was made, to the millisecond. */
+    public static Instant timeOf(long id) {
+        return Instant.ofEpochMilli(EPOCH_MS + (id >>> TIME_SHIFT));
+    }
+
+    /** The smallest id made at or after {@code ts}. */
+    public static long minIdAt(Instant ts) {
+        return Math.max(0, ts.toEpochMilli() - EPOCH_MS) << TIME_SHIFT;
+    }
+}
@@ -0,0 +1,47 @@
+package com.om.Real_Time_Communication.utility;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This node's {@link SnowflakeIdGenerator}s, one per table, all with the same node number. Built
+ * once per application context by {@code IdGeneratorConfig} and shared by Hibernate
+ * ({@code SnowflakeIdentifierGenerator}) and the JDBC inserts, so two writers to one table never
+ * run separate sequences for the same node and millisecond.
+ */
+public final class SnowflakeIds {
+
+    private final int node;
+    private final Map<Class<?>, SnowflakeIdGenerator> tables = new ConcurrentHashMap<>();
+
+    public SnowflakeIds(int node) {
+        if (node < 0 || node > SnowflakeIdGenerator.MAX_NODE) {
+            throw new IllegalArgumentException("rtc.id.node must be 0.." + SnowflakeIdGenerator.MAX_NODE);
+        }
+        this.node = node;
+    }
+
+    /** The generator for ids of {@code entity}. */
+    public SnowflakeIdGenerator forTable(Class<?> entity) {
+        return tables.computeIfAbsent(entity, k -> new SnowflakeIdGenerator(node));
+    }
+
+    public int node() {
+        return node;
+    }
+
+    /**
+     * A number from the host name, for when {@code rtc.id.node} is not set; two hosts share it with
+     * odds of one in 32, so it is only good enough for a single node.
+     */
+    public static int nodeFromHost() {
+        String host = System.getenv("HOSTNAME");
+        try {
+            if (host == null) host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "localhost";
+        }
+        return Math.floorMod(host.hashCode(), SnowflakeIdGenerator.MAX_NODE + 1);
+    }
+}
@@ -0,0 +1,200 @@
+package com.om.Real_Time_Communication.utility;
+
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Concurrent map from primitive {@code long} keys: open addressing with linear probing inside a
+ * fixed number of lock stripes. Lookups neither box the key nor walk node chains, and an entry
+ * costs one slot in two arrays instead of a map node plus a boxed key. Null values are not allowed.
+ */
+public final class StripedLongMap<V> {
+
+    /** Remapping for {@link #compute}: returns the new value, or null to remove the entry. */
+    @FunctionalInterface
+    public interface Remapping<V> {
+        V apply(long key, V current);
+    }
+
+    private static final int STRIPES = 64;
+    private static final int MIN_CAPACITY = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public StripedLongMap() {
+        for (int i = 0; i < STRIPES; i++) stripes[i] = new Stripe();
+    }
+
+    public V get(long key) {
+        long h = mix(key);
+        Stripe s = stripe(h);
+        synchronized (s) {
+            return s.get(key, h);
+        }
+    }
+
+    public V put(long key, V value) {
+        if (value == null) throw new NullPointerException("value");
+        long h = mix(key);
+        Stripe s = stripe(h);
+        synchronized (s) {
+            return s.put(key, h, value);
+        }
+    }
+
+    /** Returns the current value, creating it under the stripe lock if absent. */
+    public V computeIfAbsent(long key, LongFunction<? extends V> factory) {
+        long h = mix(key);
+        Stripe s = stripe(h);
+        synchronized (s) {
+            V v = s.get(key, h);
+            if (v == null) {
+                v = factory.apply(key);
+                if (v != null) s.put(key, h, v);
+            }
+            return v;
+        }
+    }
+
+    /** Replaces the value under the stripe lock; the function sees null when absent. */
+    public V compute(long key, Remapping<V> remapping) {
+        long h = mix(key);
+        Stripe s = stripe(h);
+        synchronized (s) {
+            V old = s.get(key, h);
+            V v = remapping.apply(key, old);
+            if (v != null) {
+                if (v != old) s.put(key, h, v);
+            } else if (old != null) {
+                s.remove(key, h, null);
+            }
+            return v;
+        }
+    }
+
+    public V remove(long key) {
+        long h = mix(key);
+        Stripe s = stripe(h);
+        synchronized (s) {
+            return s.remove(key, h, null);
+        }
+    }
+
+    /** Removes the entry only while it still maps to {@code expected} (identity). */
+    public boolean remove(long key, V expected) {
+        long h = mix(key);
+        Stripe s = stripe(h);
+        synchronized (s) {
+            return s.remove(key, h, expected) != null;
+        }
+    }
+
+    public int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.size;
+            }
+        }
+        return n;
+    }
+
+    /** Visits every value, one stripe at a time; the callback must not touch this map. */
+    public void forEachValue(Consumer<? super V> action) {
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                for (Object v : s.vals) {
+                    if (v != null) action.accept(cast(v));
+                }
+            }
+        }
+    }
+
+    private Stripe stripe(long h) {
+        return stripes[(int) (h >>> 58)]; // top 6 bits pick the stripe, low bits the slot
+    }
+
+    private static long mix(long key) {
+        // murmur3 fmix64
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object o) {
+        return (V) o;
+    }
+
+    private static final class Stripe {
+        long[] keys = new long[MIN_CAPACITY];
+        Object[] vals = new Object[MIN_CAPACITY];
+        int size;
+
+        <V> V get(long key, long h) {
+            int mask = vals.length - 1;
+            for (int i = (int) h & mask; vals[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) return cast(vals[i]);
+            }
+            return null;
+        }
+
+        <V> V put(long key, long h, V value) {
+            int mask = vals.length - 1;
+            int i = (int) h & mask;
+            for (; vals[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    V old = cast(vals[i]);
+                    vals[i] = value;
+                    return old;
+                }
+            }
+            keys[i] = key;
+            vals[i] = value;
+            if (++size * 4 > vals.length * 3) resize();
+            return null;
+        }
+
+        <V> V remove(long key, long h, V expected) {
+            int mask = vals.length - 1;
+            int i = (int) h & mask;
+            for (; vals[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key) break;
+            }
+            if (vals[i] == null || (expected != null && vals[i] != expected)) return null;
+            V old = cast(vals[i]);
+            // Backward-shift deletion keeps every probe chain intact without tombstones
+            int hole = i;
+            for (int j = (hole + 1) & mask; vals[j] != null; j = (j + 1) & mask) {
+                int home = (int) mix(keys[j]) & mask;
+                boolean movable = hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+                if (movable) {
+                    keys[hole] = keys[j];
+                    vals[hole] = vals[j];
+                    hole = j;
+                }
+            }
+            vals[hole] = null;
+            size--;
+            return old;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Object[] oldVals = vals;
+            keys = new long[oldVals.length * 2];
+            vals = new Object[oldVals.length * 2];
+            int mask = vals.length - 1;
+            for (int k = 0; k < oldVals.length; k++) {
+                if (oldVals[k] == null) continue;
+                int i = (int) mix(oldKeys[k]) & mask;
+                while (vals[i] != null) i = (i + 1) & mask;
+                keys[i] = oldKeys[k];
+                vals[i] = oldVals[k];
+            }
+        }
+    }
+}
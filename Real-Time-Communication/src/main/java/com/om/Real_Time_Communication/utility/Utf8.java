@@ -0,0 +1,32 @@
+package com.om.Real_Time_Communication.utility;
+
+/** UTF-8 sizes of strings, counted in place instead of encoding a copy. */
+public final class Utf8 {
+
+    /** Bytes {@code str} takes as UTF-8; a lone surrogate counts as the 3-byte replacement. */
+    public static int length(CharSequence str) {
+        return length(str, Integer.MAX_VALUE);
+    }
+
+    /** As {@link #length(CharSequence)}, but stops counting once past {@code max}. */
+    public static int length(CharSequence str, int max) {
+        int n = str.length();
+        int bytes = 0;
+        for (int i = 0; i < n && bytes <= max; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(str.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    private Utf8() {}
+}
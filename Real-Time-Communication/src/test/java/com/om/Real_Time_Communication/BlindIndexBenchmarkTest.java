@@ -0,0 +1,236 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.utility.BlindRoomIndex;
+import com.om.Real_Time_Communication.utility.IntBitmap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Blind search over one E2EE room of 100k messages, tokens made as a client would (HMAC-SHA256 of
+ * each lowercased term under the room's search key, first 8 bytes): index size per message against
+ * the raw tokens, and query latency against the previous way of answering without an index (every
+ * message's token blob scanned, newest first). Also checks that both return the same ids and that
+ * cursor pages cover every match once. JMH is not part of this build, so timings come from
+ * warmed-up loops.
+ */
+@Tag("benchmark")
+class BlindIndexBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(BlindIndexBenchmarkTest.class);
+
+    static final int MESSAGES = 100_000;
+    static final int VOCABULARY = 20_000;
+    static final int WORDS = 10;
+    static final int LIMIT = 50;
+    static final int RUNS = 200;
+    static final String[][] QUERIES = {{"w1"}, {"w1", "w2"}, {"w3", "w40", "w7"}, {"w15000"}, {"w1", "w15000"}};
+
+    static Mac hmac;
+    static BlindRoomIndex index;
+    static LegacyScan legacy;
+    static long rawTokenBytes;
+
+    /** Previous approach: the token blobs as stored, scanned newest first for each query. */
+    static final class LegacyScan {
+        final List<Long> ids = new ArrayList<>();
+        final List<byte[]> blobs = new ArrayList<>();
+
+        void add(long id, byte[] tokens) {
+            ids.add(id);
+            blobs.add(tokens);
+        }
+
+        List<Long> search(long[] query, int limit) {
+            List<Long> out = new ArrayList<>();
+            for (int i = ids.size() - 1; i >= 0 && out.size() < limit; i--) {
+                ByteBuffer buf = ByteBuffer.wrap(blobs.get(i));
+                boolean all = true;
+                for (long q : query) {
+                    boolean found = false;
+                    for (int p = 0; p < buf.limit() && !found; p += 8) found = buf.getLong(p) == q;
+                    if (!found) {
+                        all = false;
+                        break;
+                    }
+                }
+                if (all) out.add(ids.get(i));
+            }
+            return out;
+        }
+    }
+
+    @BeforeAll
+    static void room() throws Exception {
+        hmac = Mac.getInstance("HmacSHA256");
+        hmac.init(new SecretKeySpec("room-42 search key".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        // Zipf-like: term k drawn with weight 1/k
+        double[] cdf = new double[VOCABULARY];
+        double sum = 0;
+        for (int k = 0; k < VOCABULARY; k++) cdf[k] = sum += 1.0 / (k + 1);
+        index = new BlindRoomIndex();
+        legacy = new LegacyScan();
+        Random rnd = new Random(42);
+        long id = 1_000_000L;
+        for (int i = 0; i < MESSAGES; i++) {
+            Set<String> words = new LinkedHashSet<>();
+            for (int w = 0; w < WORDS; w++) {
+                int k = Arrays.binarySearch(cdf, rnd.nextDouble() * sum);
+                words.add("W" + (k < 0 ? -k - 1 : k));
+            }
+            byte[] tokens = tokens(words.toArray(new String[0]));
+            id += 1 + rnd.nextInt(3); // ids of other rooms in between
+            index.add(id, tokens);
+            legacy.add(id, tokens);
+            rawTokenBytes += tokens.length;
+        }
+        index.sealBulk();
+    }
+
+    @Test
+    void indexSizePerMessage() {
+        double indexed = (double) index.sizeInBytes() / index.messages();
+        double raw = (double) rawTokenBytes / MESSAGES;
+        log.info(String.format("%d messages, %d distinct tokens: index %.1f B/message, raw tokens %.1f B/message",
+                index.messages(), index.tokens(), indexed, raw));
+        assertEquals(MESSAGES, index.messages());
+        assertTrue(indexed < raw, "postings cost less than the tokens they index: " + indexed + " vs " + raw);
+    }
+
+    @Test
+    void queryLatency() {
+        log.info(String.format("%-22s %8s %12s %12s %12s %12s", "query", "hits", "legacy p50", "legacy p99", "new p50", "new p99"));
+        long legacyTotal = 0, newTotal = 0;
+        for (String[] terms : QUERIES) {
+            long[] q = query(terms);
+            List<Long> expected = legacy.search(q, LIMIT);
+            assertEquals(expected, index.search(q, LIMIT, null).ids(), "same ids for " + Arrays.toString(terms));
+            long[] old = time(() -> legacy.search(q, LIMIT));
+            long[] now = time(() -> index.search(q, LIMIT, null));
+            log.info(String.format("%-22s %8d %10.1fus %10.1fus %10.1fus %10.1fus", String.join(" ", terms),
+                    expected.size(), old[0] / 1e3, old[1] / 1e3, now[0] / 1e3, now[1] / 1e3));
+            legacyTotal += old[0];
+            newTotal += now[0];
+            if (Arrays.asList(terms).contains("w15000")) {
+                assertTrue(now[0] * 5 < old[0], "a rare term skips what cannot match: " + now[0] + " vs " + old[0] + " ns");
+            }
+        }
+        assertTrue(newTotal < legacyTotal, newTotal + " vs " + legacyTotal + " ns");
+    }
+
+    @Test
+    void cursorPagesCoverEveryMatchOnce() {
+        for (String[] terms : new String[][]{{"w2"}, {"w1", "w3"}}) {
+            long[] q = query(terms);
+            List<Long> all = legacy.search(q, Integer.MAX_VALUE);
+            List<Long> paged = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                BlindRoomIndex.Page page = index.search(q, 500, cursor);
+                paged.addAll(page.ids());
+                cursor = page.next();
+                pages++;
+            } while (cursor != null);
+            log.info(String.format("%s: %d matches in %d pages", String.join(" ", terms), paged.size(), pages));
+            assertTrue(all.size() > 500);
+            assertEquals(all, paged, "every match once, newest first");
+        }
+        assertEquals(List.of(), index.search(query(new String[]{"never said"}), LIMIT, null).ids());
+    }
+
+    @Test
+    void liveAddsAfterLoadAreDeduplicated() {
+        BlindRoomIndex room = new BlindRoomIndex();
+        room.add(10L, tokens("lunch", "noon"));
+        room.add(11L, tokens("lunch", "late"));
+        room.sealBulk();
+        room.add(11L, tokens("lunch", "late")); // committed while the room was loading
+        room.add(12L, tokens("dinner", "late"));
+        assertEquals(3, room.messages());
+        assertEquals(List.of(11L, 10L), room.search(query(new String[]{"lunch"}), 10, null).ids());
+        assertEquals(List.of(12L, 11L), room.search(query(new String[]{"late"}), 10, null).ids());
+
+        BlindRoomIndex.Page first = room.search(query(new String[]{"late"}), 1, null);
+        assertEquals(List.of(12L), first.ids());
+        BlindRoomIndex rebuilt = new BlindRoomIndex(); // an older message came back: numbered differently
+        rebuilt.add(9L, tokens("breakfast"));
+        rebuilt.add(10L, tokens("lunch", "noon"));
+        rebuilt.add(11L, tokens("lunch", "late"));
+        rebuilt.add(12L, tokens("dinner", "late"));
+        rebuilt.sealBulk();
+        assertEquals(List.of(11L, 10L), rebuilt.search(query(new String[]{"lunch"}), 10, null).ids());
+        BlindRoomIndex other = new BlindRoomIndex(); // message 12 is not there at all
+        other.add(10L, tokens("lunch", "late"));
+        other.add(11L, tokens("lunch", "late"));
+        other.sealBulk();
+        assertEquals(List.of(11L), rebuilt.search(query(new String[]{"late"}), 10, first.next()).ids());
+        assertThrows(IllegalArgumentException.class,
+                () -> other.search(query(new String[]{"late"}), 1, first.next()));
+    }
+
+    @Test
+    void bitmapContainers() {
+        IntBitmap sparse = new IntBitmap();
+        IntBitmap dense = new IntBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random rnd = new Random(7);
+        for (int i = 0; i < 20_000; i++) {
+            int v = rnd.nextInt(200_000);
+            dense.add(v);
+            expected.add(v);
+            if (i % 10 == 0) sparse.add(v * 3);
+        }
+        for (int v = 70_000; v < 75_000; v++) {  // one container past 4096 values turns into bits
+            dense.add(v);
+            expected.add(v);
+        }
+        assertEquals(expected.size(), dense.cardinality());
+        for (int v = -1; v < 210_000; v += 7) {
+            assertEquals(expected.contains(v), dense.contains(v), "contains " + v);
+            Integer floor = v < 0 ? null : expected.floor(v);
+            assertEquals(floor == null ? -1 : floor, dense.floor(v), "floor " + v);
+        }
+        assertTrue(sparse.sizeInBytes() < sparse.cardinality() * 4L, "two bytes a value, plus slack");
+        assertEquals(-1, new IntBitmap().floor(5));
+        assertThrows(IllegalArgumentException.class, () -> sparse.add(-1));
+    }
+
+    /** What the client sends: 8 bytes per distinct term. */
+    private static byte[] tokens(String... terms) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String t : terms) distinct.add(t.toLowerCase(Locale.ROOT));
+        ByteBuffer buf = ByteBuffer.allocate(distinct.size() * 8);
+        for (String t : distinct) buf.put(hmac.doFinal(t.getBytes(StandardCharsets.UTF_8)), 0, 8);
+        return buf.array();
+    }
+
+    private static long[] query(String[] terms) {
+        ByteBuffer buf = ByteBuffer.wrap(tokens(terms));
+        long[] q = new long[buf.limit() / 8];
+        for (int i = 0; i < q.length; i++) q[i] = buf.getLong();
+        return q;
+    }
+
+    private static long[] time(Runnable query) {
+        for (int i = 0; i < RUNS / 4; i++) query.run();
+        long[] ns = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long t0 = System.nanoTime();
+            query.run();
+            ns[i] = System.nanoTime() - t0;
+        }
+        Arrays.sort(ns);
+        return new long[]{ns[RUNS / 2], ns[RUNS * 99 / 100]};
+    }
+}
@@ -0,0 +1,329 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.broker.ClusterBrokerBridge;
+import com.om.Real_Time_Communication.broker.ClusterUserDirectory;
+import com.om.Real_Time_Communication.broker.InMemoryClusterBus;
+import com.om.Real_Time_Communication.config.BrokerModeConfigurer;
+import com.om.Real_Time_Communication.security.SessionRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.config.AbstractMessageBrokerConfiguration;
+import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.CloseStatus;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs several broker nodes (one application context each) in this JVM and measures room-topic
+ * fan-out throughput and send-to-receive latency for every {@code rtc.broker.mode}. Clients are
+ * simulated on each node's client channels, so the numbers cover the broker path only.
+ * Relay mode needs a STOMP broker on {@code -Drtc.test.relay.host}/{@code port} and is skipped without one.
+ */
+class BrokerModesMultiNodeTest {
+
+    private static final Logger log = LoggerFactory.getLogger(BrokerModesMultiNodeTest.class);
+
+    static final int SUBSCRIBERS_PER_NODE = 20;
+    static final int MESSAGES = 2_000;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    @AfterEach
+    void close() {
+        nodes.forEach(Node::close);
+        nodes.clear();
+    }
+
+    @Test
+    void simpleBrokerStaysInsideOneNode() throws Exception {
+        String hub = UUID.randomUUID().toString();
+        Node a = node("simple", "a", hub);
+        Node b = node("simple", "b", hub);
+        a.subscribers("/topic/room.1", SUBSCRIBERS_PER_NODE);
+        b.subscribers("/topic/room.1", SUBSCRIBERS_PER_NODE);
+        warmUp(a, "/topic/room.1", a);
+
+        report("simple", a, List.of(a), "/topic/room.1");
+        a.send("/topic/room.1", "once");
+        Thread.sleep(200);
+        assertEquals(0, b.received.get(), "the in-memory broker cannot reach another node");
+    }
+
+    @Test
+    void clusterModeFansOutTopicsAndResolvesUsersAcrossNodes() {
+        String hub = UUID.randomUUID().toString();
+        Node a = node("cluster", "a", hub);
+        Node b = node("cluster", "b", hub);
+        Node c = node("cluster", "c", hub);
+        for (Node n : nodes) n.subscribers("/topic/room.1", SUBSCRIBERS_PER_NODE);
+        warmUp(a, "/topic/room.1", a, b, c);
+
+        report("cluster", a, nodes, "/topic/room.1");
+
+        // A user connected to node c only, addressed from node a
+        String session = c.connect(7L);
+        c.subscribe(session, 7L, "/user/queue/inbox");
+        await(() -> a.directory().nodesFor(7L).equals(List.of("c")), "directory learns user 7 is on c");
+        resetAll();
+        a.sendToUser(7L, "/queue/inbox", "hello-7");
+        await(() -> c.received.get() == 1, "user message crosses nodes");
+        assertEquals(0, a.received.get() + b.received.get());
+        assertEquals("hello-7", c.lastPayload());
+
+        // Once the last session closes the user is no longer routed to c
+        c.disconnect(session, 7L);
+        await(() -> a.directory().nodesFor(7L).isEmpty(), "directory forgets user 7");
+    }
+
+    @Test
+    void relayModeThroughAnExternalBroker() {
+        String host = System.getProperty("rtc.test.relay.host", "localhost");
+        int port = Integer.getInteger("rtc.test.relay.port", 61613);
+        assumeTrue(reachable(host, port), "no STOMP broker at " + host + ":" + port);
+
+        String hub = UUID.randomUUID().toString();
+        Map<String, Object> relay = Map.of("rtc.broker.relay.host", host, "rtc.broker.relay.port", port);
+        Node a = node("relay", "a", hub, relay);
+        Node b = node("relay", "b", hub, relay);
+        for (Node n : nodes) n.subscribers("/topic/room.relay", SUBSCRIBERS_PER_NODE);
+        warmUp(a, "/topic/room.relay", a, b);
+        report("relay", a, nodes, "/topic/room.relay");
+    }
+
+    /** Sends {@link #MESSAGES} from {@code from} and waits until every subscriber on {@code targets} has all of them. */
+    private void report(String mode, Node from, List<Node> targets, String destination) {
+        resetAll();
+        long expected = (long) MESSAGES * SUBSCRIBERS_PER_NODE * targets.size();
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            from.send(destination, Long.toString(System.nanoTime()));
+        }
+        await(() -> targets.stream().mapToLong(n -> n.received.get()).sum() >= expected, mode + " delivers everything");
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        List<Long> latencies = new ArrayList<>();
+        for (Node n : targets) latencies.addAll(n.latenciesNanos);
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        log.info(String.format("mode=%-7s nodes=%d subscribers=%d messages=%d -> %.0f deliveries/s, latency p50=%.2f ms p99=%.2f ms",
+                mode, targets.size(), SUBSCRIBERS_PER_NODE * targets.size(), MESSAGES, expected / seconds,
+                sorted[sorted.length / 2] / 1e6, sorted[(int) (sorted.length * 0.99)] / 1e6));
+    }
+
+    /** Subscriptions are registered asynchronously; repeat a probe until every target sees it. */
+    private void warmUp(Node from, String destination, Node... targets) {
+        await(() -> {
+            resetAll();
+            from.send(destination, Long.toString(System.nanoTime()));
+            sleep(50);
+            return Arrays.stream(targets).allMatch(n -> n.received.get() == SUBSCRIBERS_PER_NODE);
+        }, "subscriptions become active");
+    }
+
+    private void resetAll() {
+        for (Node n : nodes) n.reset();
+    }
+
+    private Node node(String mode, String id, String hub) {
+        return node(mode, id, hub, Map.of());
+    }
+
+    private Node node(String mode, String id, String hub, Map<String, Object> extra) {
+        Node n = new Node(mode, id, hub, extra);
+        nodes.add(n);
+        return n;
+    }
+
+    private static void await(BooleanSupplier condition, String what) {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("timed out waiting: " + what);
+            sleep(5);
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean reachable(String host, int port) {
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(host, port), 300);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    @Configuration
+    static class NodeConfig extends AbstractMessageBrokerConfiguration {
+        @Autowired
+        BrokerModeConfigurer brokerModeConfigurer;
+
+        @Override
+        protected SimpUserRegistry createLocalUserRegistry(Integer order) {
+            DefaultSimpUserRegistry registry = new DefaultSimpUserRegistry();
+            if (order != null) registry.setOrder(order);
+            return registry;
+        }
+
+        @Override
+        protected void configureMessageBroker(MessageBrokerRegistry registry) {
+            brokerModeConfigurer.configure(registry);
+        }
+    }
+
+    /** One application node: broker configuration, session registry and, in cluster mode, the bridge. */
+    static final class Node {
+        final AnnotationConfigApplicationContext ctx = new AnnotationConfigApplicationContext();
+        final AtomicInteger received = new AtomicInteger();
+        final ConcurrentLinkedQueue<Long> latenciesNanos = new ConcurrentLinkedQueue<>();
+        volatile String lastPayload;
+
+        Node(String mode, String id, String hub, Map<String, Object> extra) {
+            Map<String, Object> props = new HashMap<>(extra);
+            props.put("rtc.broker.mode", mode);
+            props.put("rtc.broker.cluster.transport", "local");
+            props.put("rtc.broker.cluster.name", hub);
+            props.put("rtc.broker.cluster.node-id", id);
+            ctx.getEnvironment().getPropertySources().addFirst(new MapPropertySource("node-" + id, props));
+            ctx.register(NodeConfig.class, BrokerModeConfigurer.class, SessionRegistry.class);
+            if ("cluster".equals(mode)) {
+                ctx.register(InMemoryClusterBus.class, ClusterUserDirectory.class, ClusterBrokerBridge.class);
+            }
+            ctx.refresh();
+            ctx.getBean("clientOutboundChannel", SubscribableChannel.class).subscribe(this::onOutbound);
+        }
+
+        private void onOutbound(Message<?> message) {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) return;
+            String body = new String((byte[]) message.getPayload(), StandardCharsets.UTF_8);
+            lastPayload = body;
+            try {
+                latenciesNanos.add(System.nanoTime() - Long.parseLong(body));
+            } catch (NumberFormatException ignore) {
+                // not a timed message
+            }
+            received.incrementAndGet();
+        }
+
+        void reset() {
+            received.set(0);
+            latenciesNanos.clear();
+        }
+
+        String lastPayload() {
+            return lastPayload;
+        }
+
+        ClusterUserDirectory directory() {
+            return ctx.getBean(ClusterUserDirectory.class);
+        }
+
+        void subscribers(String destination, int count) {
+            for (int i = 0; i < count; i++) {
+                long userId = 1_000 + i;
+                subscribe(connect(userId), userId, destination);
+            }
+        }
+
+        /** What the WebSocket layer does on a new session: registry, STOMP CONNECT and the connected event. */
+        String connect(Long userId) {
+            String sessionId = UUID.randomUUID().toString();
+            WebSocketSession ws = mock(WebSocketSession.class);
+            when(ws.getId()).thenReturn(sessionId);
+            when(ws.isOpen()).thenReturn(true);
+            ctx.getBean(SessionRegistry.class).onOpen(userId, ws);
+
+            SimpMessageHeaderAccessor connect = headers(SimpMessageType.CONNECT, sessionId, userId);
+            Message<byte[]> msg = MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders());
+            inbound().send(msg);
+            ctx.publishEvent(new SessionConnectedEvent(this, msg, principal(userId)));
+            return sessionId;
+        }
+
+        void disconnect(String sessionId, Long userId) {
+            WebSocketSession ws = mock(WebSocketSession.class);
+            when(ws.getId()).thenReturn(sessionId);
+            ctx.getBean(SessionRegistry.class).onClose(ws, userId);
+            Message<byte[]> msg = MessageBuilder.createMessage(new byte[0],
+                    headers(SimpMessageType.DISCONNECT, sessionId, userId).getMessageHeaders());
+            ctx.publishEvent(new SessionDisconnectEvent(this, msg, sessionId, CloseStatus.NORMAL, principal(userId)));
+        }
+
+        void subscribe(String sessionId, Long userId, String destination) {
+            SimpMessageHeaderAccessor sub = headers(SimpMessageType.SUBSCRIBE, sessionId, userId);
+            sub.setSubscriptionId("sub-" + sessionId);
+            sub.setDestination(destination);
+            inbound().send(MessageBuilder.createMessage(new byte[0], sub.getMessageHeaders()));
+        }
+
+        void send(String destination, String body) {
+            ctx.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class).convertAndSend(destination, body);
+        }
+
+        void sendToUser(Long userId, String destination, String body) {
+            ctx.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class)
+                    .convertAndSendToUser(String.valueOf(userId), destination, body);
+        }
+
+        private MessageChannel inbound() {
+            return ctx.getBean("clientInboundChannel", MessageChannel.class);
+        }
+
+        private static SimpMessageHeaderAccessor headers(SimpMessageType type, String sessionId, Long userId) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+            accessor.setSessionId(sessionId);
+            accessor.setUser(principal(userId));
+            accessor.setSessionAttributes(new HashMap<>());
+            return accessor;
+        }
+
+        private static Principal principal(Long userId) {
+            String name = String.valueOf(userId);
+            return () -> name;
+        }
+
+        void close() {
+            ctx.close();
+        }
+    }
+}
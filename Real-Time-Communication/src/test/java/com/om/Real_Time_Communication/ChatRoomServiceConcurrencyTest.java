@@ -2,9 +2,12 @@ package com.om.Real_Time_Communication;
 
 import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
 import com.om.Real_Time_Communication.client.UserServiceClient;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
 import com.om.Real_Time_Communication.models.ChatRoom;
 import com.om.Real_Time_Communication.models.ChatRoomType;
 import com.om.Real_Time_Communication.service.ChatRoomService;
+import com.om.Real_Time_Communication.service.LocalRoomCacheInvalidationChannel;
+import com.om.Real_Time_Communication.service.RoomAccessCache;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -24,7 +27,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 @DataJpaTest
-@Import(ChatRoomService.class)
+@Import({ChatRoomService.class, RoomAccessCache.class, LocalRoomCacheInvalidationChannel.class, IdGeneratorConfig.class})
 @TestPropertySource(properties = {
         "spring.datasource.url=jdbc:h2:mem:rtc-test;MODE=MySQL;DB_CLOSE_DELAY=-1",
         "spring.datasource.driverClassName=org.h2.Driver",
@@ -0,0 +1,274 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.JwksCache;
+import com.om.Real_Time_Communication.config.JwksCache.JwkSet;
+import com.om.Real_Time_Communication.config.RsJwtVerifier;
+import com.om.Real_Time_Communication.config.RtcJwtConfig;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPublicKey;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A reconnect storm right after a key rotation: {@value #CONNECTS} CONNECTs at 10k/s from
+ * {@value #USERS} users whose tokens are signed with the new key, 5% of them with forged kids.
+ * Each CONNECT verifies its token twice, at the handshake and at STOMP CONNECT. Compares the
+ * previous verifier (synchronous JWKS refresh on every unknown kid, no claims cache) with the
+ * single-flight JWKS cache with and without the verified-token cache: JWKS requests sent to the
+ * auth service, CPU spent verifying, and CONNECT latency from its scheduled start.
+ */
+@Tag("benchmark")
+class ConnectStormBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectStormBenchmarkTest.class);
+
+    static final int CONNECTS = 10_000;
+    static final int RATE_PER_SEC = 10_000;
+    static final int USERS = 2_000;
+    static final int THREADS = 8;
+    static final long JWKS_LATENCY_MS = 20;
+    static final String ISSUER = "https://auth.test";
+
+    static KeyPair oldKey;
+    static KeyPair newKey;
+    static KeyPair attackerKey;
+    static List<String> tokens;
+
+    /** The auth service's JWKS endpoint. */
+    static final class AuthService {
+        final AtomicInteger fetches = new AtomicInteger();
+        volatile Map<String, RSAPublicKey> published = Map.of("k1", (RSAPublicKey) oldKey.getPublic());
+        volatile long ttlMs = 600_000;
+
+        CompletableFuture<JwkSet> fetch() {
+            fetches.incrementAndGet();
+            Map<String, RSAPublicKey> keys = published;
+            long ttl = ttlMs;
+            return CompletableFuture.supplyAsync(() -> new JwkSet(keys, ttl),
+                    CompletableFuture.delayedExecutor(JWKS_LATENCY_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /** The previous cache: blocking refresh on expiry and on every unknown kid. */
+    static final class LegacyJwksCache {
+        final AuthService auth;
+        final ConcurrentHashMap<String, RSAPublicKey> byKid = new ConcurrentHashMap<>();
+        volatile long expiresAtMs = 0;
+
+        LegacyJwksCache(AuthService auth) { this.auth = auth; }
+
+        RSAPublicKey getKey(String kid) {
+            if (System.currentTimeMillis() > expiresAtMs) refresh();
+            RSAPublicKey k = byKid.get(kid);
+            if (k == null) { refresh(); k = byKid.get(kid); }
+            return k;
+        }
+
+        void refresh() {
+            JwkSet set = auth.fetch().join();
+            byKid.clear(); byKid.putAll(set.keys());
+            expiresAtMs = System.currentTimeMillis() + set.ttlMs();
+        }
+    }
+
+    /** The previous verifier: full parse and signature check on every call. */
+    static Claims legacyValidate(LegacyJwksCache jwks, String token) {
+        String header = new String(Base64.getUrlDecoder().decode(token.split("\\.")[0]), StandardCharsets.UTF_8);
+        String kid = header.replaceAll(".*\"kid\":\"([^\"]+)\".*", "$1");
+        RSAPublicKey pub = jwks.getKey(kid);
+        if (pub == null) throw new IllegalStateException("Unknown kid: " + kid);
+        Claims c = Jwts.parser().verifyWith(pub).requireIssuer(ISSUER).build().parseSignedClaims(token).getPayload();
+        if (c.getExpiration().before(new Date())) throw new IllegalStateException("Expired");
+        return c;
+    }
+
+    record Storm(int accepted, int rejected, int fetches, long cpuNanos, long p50Nanos, long p99Nanos) {}
+
+    @BeforeAll
+    static void keysAndTokens() throws Exception {
+        KeyPairGenerator gen = KeyPairGenerator.getInstance("RSA");
+        gen.initialize(2048);
+        oldKey = gen.generateKeyPair();
+        newKey = gen.generateKeyPair();
+        attackerKey = gen.generateKeyPair();
+        Date exp = new Date(System.currentTimeMillis() + 3_600_000);
+        tokens = new ArrayList<>(USERS);
+        for (int u = 0; u < USERS; u++) {
+            tokens.add(Jwts.builder().header().keyId("k2").and()
+                    .issuer(ISSUER).subject("user-" + u).claim("userId", (long) u).expiration(exp)
+                    .signWith(newKey.getPrivate(), Jwts.SIG.RS256).compact());
+        }
+    }
+
+    @Test
+    void connectStormAfterKeyRotation() throws Exception {
+        AuthService legacyAuth = new AuthService();
+        LegacyJwksCache legacyJwks = new LegacyJwksCache(legacyAuth);
+        legacyJwks.getKey("k1");
+        Storm legacy = storm(legacyAuth, t -> legacyValidate(legacyJwks, t));
+
+        AuthService uncachedAuth = new AuthService();
+        Storm uncached = storm(uncachedAuth, verifier(uncachedAuth, 0)::validate);
+
+        AuthService cachedAuth = new AuthService();
+        RsJwtVerifier cachedVerifier = verifier(cachedAuth, 100_000);
+        Storm cached = storm(cachedAuth, cachedVerifier::validate);
+
+        log.info(String.format("%d CONNECTs at %d/s after key rotation, %d users, 5%% forged kids | "
+                        + "previous: %d JWKS requests, %.0f ms CPU, p50 %.2f ms, p99 %.2f ms, %d valid CONNECTs rejected | "
+                        + "single-flight JWKS: %d requests, %.0f ms CPU, p50 %.2f ms, p99 %.2f ms | "
+                        + "+ verified-token cache: %d requests, %.0f ms CPU, p50 %.2f ms, p99 %.2f ms (%d tokens cached)",
+                CONNECTS, RATE_PER_SEC, USERS,
+                legacy.fetches(), legacy.cpuNanos() / 1e6, legacy.p50Nanos() / 1e6, legacy.p99Nanos() / 1e6,
+                legacy.rejected() - CONNECTS / 20,
+                uncached.fetches(), uncached.cpuNanos() / 1e6, uncached.p50Nanos() / 1e6, uncached.p99Nanos() / 1e6,
+                cached.fetches(), cached.cpuNanos() / 1e6, cached.p50Nanos() / 1e6, cached.p99Nanos() / 1e6,
+                cachedVerifier.verifiedTokens()));
+
+        int forged = CONNECTS / 20;
+        for (Storm s : List.of(uncached, cached)) {
+            assertEquals(CONNECTS - forged, s.accepted());
+            assertEquals(forged, s.rejected());
+        }
+        assertTrue(legacy.fetches() > forged, "the previous cache refreshed on every forged kid: " + legacy.fetches());
+        assertTrue(uncached.fetches() <= 5, "JWKS requests: " + uncached.fetches());
+        assertTrue(cached.fetches() <= 5, "JWKS requests: " + cached.fetches());
+        assertTrue(cachedVerifier.verifiedTokens() <= USERS, "forged tokens are never cached");
+        assertTrue(cached.cpuNanos() * 2 < uncached.cpuNanos(),
+                "verification CPU " + cached.cpuNanos() + " ns cached vs " + uncached.cpuNanos() + " ns");
+    }
+
+    @Test
+    void singleFlightRefreshAndBackgroundRefresh() throws Exception {
+        AuthService auth = new AuthService();
+        auth.ttlMs = 1_000;
+        JwksCache jwks = new JwksCache(auth::fetch, 500, 200, 60_000, 3_000);
+        assertNotNull(jwks.getKey("k1"));
+        assertEquals(1, auth.fetches.get());
+
+        // 64 callers with a kid published after the last refresh: one request
+        auth.published = Map.of("k1", (RSAPublicKey) oldKey.getPublic(), "k2", (RSAPublicKey) newKey.getPublic());
+        Thread.sleep(250);
+        ExecutorService pool = Executors.newFixedThreadPool(64);
+        try {
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<RSAPublicKey>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(pool.submit(() -> { go.await(); return jwks.getKey("k2"); }));
+            }
+            go.countDown();
+            for (Future<RSAPublicKey> f : results) assertNotNull(f.get());
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(2, auth.fetches.get());
+
+        // A forged kid is refused from the negative cache after one refresh
+        Thread.sleep(250);
+        assertNull(jwks.getKey("forged"));
+        assertNull(jwks.getKey("forged"));
+        assertEquals(3, auth.fetches.get());
+
+        // Past refresh-ahead the next lookup starts a refresh without waiting for it
+        Thread.sleep(600);
+        long t0 = System.nanoTime();
+        assertNotNull(jwks.getKey("k1"));
+        assertTrue(System.nanoTime() - t0 < TimeUnit.MILLISECONDS.toNanos(JWKS_LATENCY_MS));
+        Thread.sleep(JWKS_LATENCY_MS * 3);
+        assertEquals(4, auth.fetches.get());
+    }
+
+    @Test
+    void tokenOfAWithdrawnKeyIsNotServedFromTheCache() throws Exception {
+        AuthService auth = new AuthService();
+        auth.ttlMs = 1_000;
+        RsJwtVerifier verifier = verifier(auth, 1_000);
+        String token = Jwts.builder().header().keyId("k1").and()
+                .issuer(ISSUER).claim("userId", 7L).expiration(new Date(System.currentTimeMillis() + 3_600_000))
+                .signWith(oldKey.getPrivate(), Jwts.SIG.RS256).compact();
+        assertEquals(7L, verifier.validate(token).get("userId", Long.class));
+        assertEquals(1, verifier.verifiedTokens());
+
+        // k1 is rotated out; the background refresh picks that up
+        auth.published = Map.of("k2", (RSAPublicKey) newKey.getPublic());
+        Thread.sleep(600);
+        verifier.validate(token); // still cached; starts the refresh
+        Thread.sleep(JWKS_LATENCY_MS * 3);
+        assertThrows(RuntimeException.class, () -> verifier.validate(token));
+        assertEquals(0, verifier.verifiedTokens());
+    }
+
+    private static RsJwtVerifier verifier(AuthService auth, long cacheSize) {
+        JwksCache jwks = new JwksCache(auth::fetch, 60_000, 500, 60_000, 3_000);
+        assertNotNull(jwks.getKey("k1"));
+        return new RsJwtVerifier(new RtcJwtConfig(ISSUER, "https://auth.test/jwks", null, null), jwks, cacheSize);
+    }
+
+    /** Rotates to k2, then runs the storm; each CONNECT verifies at the handshake and at STOMP CONNECT. */
+    private static Storm storm(AuthService auth, Function<String, Claims> validate) throws Exception {
+        auth.published = Map.of("k1", (RSAPublicKey) oldKey.getPublic(), "k2", (RSAPublicKey) newKey.getPublic());
+        Thread.sleep(600); // past the min refresh interval of the warm-up fetch
+        int fetchesBefore = auth.fetches.get();
+        Date exp = new Date(System.currentTimeMillis() + 3_600_000);
+        List<String> forgedTokens = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            forgedTokens.add(Jwts.builder().header().keyId("forged-" + i).and()
+                    .issuer(ISSUER).claim("userId", 1L).expiration(exp)
+                    .signWith(attackerKey.getPrivate(), Jwts.SIG.RS256).compact());
+        }
+
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicLong cpu = new AtomicLong();
+        long[] latencies = new long[CONNECTS];
+        long intervalNanos = 1_000_000_000L / RATE_PER_SEC;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20);
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < THREADS; w++) {
+            int worker = w;
+            Thread t = new Thread(() -> {
+                long cpu0 = mx.getCurrentThreadCpuTime();
+                for (int i = worker; i < CONNECTS; i += THREADS) {
+                    long scheduled = start + i * intervalNanos;
+                    long wait = scheduled - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                    String token = i % 20 == 19 ? forgedTokens.get(i % 100) : tokens.get(i % USERS);
+                    try {
+                        validate.apply(token); // handshake
+                        Claims c = validate.apply(token); // STOMP CONNECT
+                        if (c.get("userId", Long.class) != null) accepted.incrementAndGet();
+                    } catch (RuntimeException ex) {
+                        rejected.incrementAndGet();
+                    }
+                    latencies[i] = System.nanoTime() - scheduled;
+                }
+                cpu.addAndGet(mx.getCurrentThreadCpuTime() - cpu0);
+            }, "connect-" + w);
+            workers.add(t);
+            t.start();
+        }
+        for (Thread t : workers) t.join();
+        Arrays.sort(latencies);
+        return new Storm(accepted.get(), rejected.get(), auth.fetches.get() - fetchesBefore, cpu.get(),
+                latencies[CONNECTS / 2], latencies[(int) (CONNECTS * 0.99)]);
+    }
+}
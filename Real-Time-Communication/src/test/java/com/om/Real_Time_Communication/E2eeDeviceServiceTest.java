@@ -2,6 +2,7 @@ package com.om.Real_Time_Communication;
 
 import com.om.Real_Time_Communication.Repository.E2eeDeviceRepository;
 import com.om.Real_Time_Communication.Repository.E2eeOneTimePrekeyRepository;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
 import com.om.Real_Time_Communication.dto.RegisterDto;
 import com.om.Real_Time_Communication.dto.SessionRecoveryRequest;
 import com.om.Real_Time_Communication.dto.OneTimePrekeyDto;
@@ -11,6 +12,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
 
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
@@ -21,6 +23,7 @@ import java.util.List;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @DataJpaTest
+@Import(IdGeneratorConfig.class)
 class E2eeDeviceServiceTest {
 
     @Autowired
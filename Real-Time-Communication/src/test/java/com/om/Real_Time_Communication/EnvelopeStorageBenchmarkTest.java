@@ -0,0 +1,285 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.MessageEnvelope;
+import com.om.Real_Time_Communication.service.EnvelopeBackfillJob;
+import com.om.Real_Time_Communication.service.EnvelopeService;
+import com.om.Real_Time_Communication.service.FileEnvelopeStore;
+import com.om.Real_Time_Communication.service.JpaEnvelopeStore;
+import com.om.Real_Time_Communication.service.MessagePagingService;
+import com.om.Real_Time_Communication.service.MessagePagingService.PageDto;
+import com.om.Real_Time_Communication.utility.MessageCursor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The same {@value #DEFAULT_ROWS} E2EE messages (override with {@code -Drtc.bench.envelope.rows},
+ * e.g. 10000000) stored two ways: the previous wide {@code chat_message} row with aad, iv and
+ * ciphertext inline, as InnoDB keeps payloads of this size in the row, and the narrow row with
+ * the payload in {@code chat_message_envelope}. Reports the hot table's size per row and at 10M
+ * messages (what the buffer pool must hold to serve history and idempotency checks from memory),
+ * and history page, idempotency lookup and metadata scan latency with a page cache smaller than
+ * the wide table. Also checks that pages carry the same payloads, and the file store and backfill.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({MessagePagingService.class, EnvelopeService.class, JpaEnvelopeStore.class, EnvelopeBackfillJob.class, IdGeneratorConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // bulk load commits in batches
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestPropertySource(properties = {
+        // On disk, with a 32 MB page cache standing in for the buffer pool
+        "spring.datasource.url=jdbc:h2:file:./target/rtc-envelope-bench;MODE=MySQL;CACHE_SIZE=32768",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Tag("benchmark")
+class EnvelopeStorageBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(EnvelopeStorageBenchmarkTest.class);
+
+    static final int DEFAULT_ROWS = 200_000;
+    static final int ROOMS = 100;
+    static final long ROOM = 1L;
+    static final long VIEWER = 2L;
+    static final int PAGE = 50;
+    static final long AT_SCALE = 10_000_000L;
+
+    static final String PAGE_WHERE = " WHERE room_id = ? AND server_ts <= ? AND (server_ts < ? OR id < ?)" +
+            " AND deleted_for_everyone = false" +
+            " AND ((sender_id = ? AND deleted_by_sender = false) OR (sender_id <> ? AND deleted_by_receiver = false))" +
+            " ORDER BY room_id DESC, server_ts DESC, id DESC LIMIT ?";
+
+    @Autowired MessagePagingService paging;
+    @Autowired EnvelopeBackfillJob backfill;
+    @Autowired JdbcTemplate jdbc;
+
+    private int rows;
+    private final Instant base = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeAll
+    void load() {
+        rows = Integer.getInteger("rtc.bench.envelope.rows", DEFAULT_ROWS);
+        long start = System.nanoTime();
+        String cols = "id, room_id, sender_id, message_id, server_ts, type, e2ee, e2ee_ver, algo, key_ref, " +
+                "deleted_by_sender, deleted_by_receiver, deleted_for_everyone, system_message";
+        jdbc.execute("CREATE TABLE legacy_chat_message (id BIGINT PRIMARY KEY, room_id BIGINT NOT NULL, " +
+                "sender_id BIGINT NOT NULL, message_id VARCHAR(36) NOT NULL, server_ts TIMESTAMP(6) NOT NULL, " +
+                "type VARCHAR(16) NOT NULL, e2ee BOOLEAN NOT NULL, e2ee_ver SMALLINT, algo VARCHAR(16), " +
+                "key_ref VARCHAR(64), deleted_by_sender BOOLEAN NOT NULL, deleted_by_receiver BOOLEAN NOT NULL, " +
+                "deleted_for_everyone BOOLEAN NOT NULL, system_message BOOLEAN NOT NULL, " +
+                "aad VARBINARY(1024), iv VARBINARY(64), ciphertext VARBINARY(8192))");
+        jdbc.execute("CREATE INDEX idx_legacy_room_ts_id ON legacy_chat_message (room_id, server_ts, id)");
+        jdbc.execute("CREATE UNIQUE INDEX uq_legacy_room_message ON legacy_chat_message (room_id, message_id)");
+        // What a database migrated in place looks like until the emptied columns are dropped
+        jdbc.execute("ALTER TABLE chat_message ADD COLUMN aad VARBINARY(1024)");
+        jdbc.execute("ALTER TABLE chat_message ADD COLUMN iv VARBINARY(64)");
+        jdbc.execute("ALTER TABLE chat_message ADD COLUMN ciphertext VARBINARY(8192)");
+
+        String meta = "VALUES (?,?,?,?,?,'TEXT',true,1,'AES-GCM','k1',false,?,false,false";
+        String legacySql = "INSERT INTO legacy_chat_message (" + cols + ", aad, iv, ciphertext) " + meta + ",?,?,?)";
+        String narrowSql = "INSERT INTO chat_message (" + cols + ", envelope_ref) " + meta + ",?)";
+        String envelopeSql = "INSERT INTO chat_message_envelope (ref, aad, iv, ciphertext) VALUES (?,?,?,?)";
+        Random rnd = new Random(42);
+        int batch = 2_000;
+        for (int from = 0; from < rows; from += batch) {
+            List<Object[]> legacy = new ArrayList<>(batch), narrow = new ArrayList<>(batch), env = new ArrayList<>(batch);
+            for (int i = from; i < Math.min(rows, from + batch); i++) {
+                long id = i + 1;
+                long room = i % ROOMS + 1;
+                long sender = i % 3 == 0 ? VIEWER : 1L;
+                Timestamp ts = Timestamp.from(base.plus(i, ChronoUnit.MICROS));
+                boolean deletedForViewer = sender != VIEWER && i % 11 == 0;
+                byte[] aad = new byte[16], iv = new byte[12], ct = new byte[200 + rnd.nextInt(1000)];
+                rnd.nextBytes(aad);
+                rnd.nextBytes(iv);
+                rnd.nextBytes(ct);
+                MessageEnvelope e = MessageEnvelope.of(aad, iv, ct);
+                legacy.add(new Object[]{id, room, sender, "m-" + i, ts, deletedForViewer, aad, iv, ct});
+                narrow.add(new Object[]{id, room, sender, "m-" + i, ts, deletedForViewer, e.getRef()});
+                env.add(new Object[]{e.getRef(), aad, iv, ct});
+            }
+            jdbc.batchUpdate(legacySql, legacy);
+            jdbc.batchUpdate(narrowSql, narrow);
+            jdbc.batchUpdate(envelopeSql, env);
+        }
+        log.info(String.format("loaded %d messages twice in %.1f s", rows, (System.nanoTime() - start) / 1e9));
+    }
+
+    @AfterAll
+    void drop() {
+        jdbc.execute("DROP ALL OBJECTS DELETE FILES");
+    }
+
+    @Test
+    void hotTableFootprint() {
+        long wide = diskSpace("LEGACY_CHAT_MESSAGE");
+        long narrow = diskSpace("CHAT_MESSAGE");
+        double wideRow = (double) wide / rows, narrowRow = (double) narrow / rows;
+        log.info(String.format("hot table: legacy %.0f B/row, narrow %.0f B/row", wideRow, narrowRow));
+        log.info(String.format("at %,d messages: legacy %.2f GB, narrow %.2f GB to keep in the buffer pool; " +
+                        "16 KB pages hold %.0f vs %.0f rows",
+                AT_SCALE, wideRow * AT_SCALE / 1e9, narrowRow * AT_SCALE / 1e9, 16384 / wideRow, 16384 / narrowRow));
+        assertTrue(narrow * 4 < wide, "narrow rows: " + narrow + " vs " + wide + " bytes");
+    }
+
+    @Test
+    void pageAndLookupLatency() {
+        Random rnd = new Random(7);
+        int roomRows = rows / ROOMS;
+        log.info(String.format("%-28s %12s %12s", "", "legacy ms", "narrow ms"));
+
+        // History page with payloads: one range scan on the wide rows, against the narrow scan
+        // plus one batched envelope read
+        double legacyPage = medianMs(41, 5, r -> jdbc.queryForList("SELECT * FROM legacy_chat_message" + PAGE_WHERE,
+                pageArgs(rnd.nextInt(roomRows))));
+        double narrowPage = medianMs(41, 5, r -> paging.pageBackward(ROOM, VIEWER, cursorAt(rnd.nextInt(roomRows)), PAGE));
+        log.info(String.format("%-28s %12.3f %12.3f", "history page (+ payloads)", legacyPage, narrowPage));
+
+        // Idempotency check on send: the row is read whole either way
+        double legacyLookup = medianMs(201, 20, r -> jdbc.queryForList(
+                "SELECT * FROM legacy_chat_message WHERE room_id = ? AND message_id = ?", lookupArgs(rnd)));
+        double narrowLookup = medianMs(201, 20, r -> jdbc.queryForList(
+                "SELECT * FROM chat_message WHERE room_id = ? AND message_id = ?", lookupArgs(rnd)));
+        log.info(String.format("%-28s %12.3f %12.3f", "idempotency lookup", legacyLookup, narrowLookup));
+
+        // Metadata scans (read-model rebuild, search catch-up, unread counts) walk rows, not payloads
+        double legacyScan = medianMs(3, 1, r -> jdbc.queryForObject(
+                "SELECT COUNT(*) FROM legacy_chat_message WHERE sender_id = ? AND deleted_by_receiver = true", Long.class, 1L));
+        double narrowScan = medianMs(3, 1, r -> jdbc.queryForObject(
+                "SELECT COUNT(*) FROM chat_message WHERE sender_id = ? AND deleted_by_receiver = true", Long.class, 1L));
+        log.info(String.format("%-28s %12.3f %12.3f", "metadata scan, all rows", legacyScan, narrowScan));
+
+        assertTrue(narrowScan < legacyScan, "scans read fewer pages: " + narrowScan + " vs " + legacyScan + " ms");
+    }
+
+    @Test
+    void pagesCarryTheSamePayloads() {
+        int roomRows = rows / ROOMS;
+        for (int depth : new int[]{0, roomRows / 2, roomRows - 2 * PAGE}) {
+            PageDto page = paging.pageBackward(ROOM, VIEWER, depth == 0 ? null : cursorAt(depth), PAGE);
+            List<Map<String, Object>> legacy = jdbc.queryForList("SELECT * FROM legacy_chat_message" + PAGE_WHERE,
+                    pageArgs(depth));
+            Collections.reverse(legacy); // pages come back ascending
+            assertEquals(legacy.size(), page.data.size());
+            for (int i = 0; i < legacy.size(); i++) {
+                ChatMessage m = page.data.get(i);
+                Map<String, Object> row = legacy.get(i);
+                assertEquals(((Number) row.get("ID")).longValue(), m.getId());
+                assertArrayEquals((byte[]) row.get("CIPHERTEXT"), m.getCiphertext(), "ciphertext of " + m.getId());
+                assertArrayEquals((byte[]) row.get("IV"), m.getIv());
+                assertArrayEquals((byte[]) row.get("AAD"), m.getAad());
+            }
+        }
+    }
+
+    @Test
+    void inlineRowsAreReadThenMovedOut() {
+        byte[] ct = "still inline".getBytes();
+        long room = ROOMS + 77;
+        jdbc.update("INSERT INTO chat_message (id, room_id, sender_id, message_id, server_ts, type, e2ee, algo, key_ref, " +
+                        "deleted_by_sender, deleted_by_receiver, deleted_for_everyone, system_message, iv, ciphertext) " +
+                        "VALUES (?, ?, 1, 'old-1', ?, 'TEXT', true, 'AES-GCM', 'k1', false, false, false, false, ?, ?)",
+                rows + 1L, room, Timestamp.from(base), new byte[]{1, 2, 3}, ct);
+        ChatMessage before = paging.pageBackward(room, VIEWER, null, PAGE).data.get(0);
+        assertNull(before.getEnvelopeRef());
+        assertArrayEquals(ct, before.getCiphertext(), "read from the inline columns");
+
+        assertEquals(1, backfill.backfill());
+        assertEquals(0, backfill.backfill(), "nothing left to move");
+        ChatMessage after = paging.pageBackward(room, VIEWER, null, PAGE).data.get(0);
+        assertEquals(MessageEnvelope.refOf(null, new byte[]{1, 2, 3}, ct), after.getEnvelopeRef());
+        assertArrayEquals(ct, after.getCiphertext(), "read from the store");
+        assertNull(jdbc.queryForObject("SELECT ciphertext FROM chat_message WHERE message_id = 'old-1'", byte[].class));
+    }
+
+    @Test
+    void fileStoreIsContentAddressed(@TempDir Path dir) throws Exception {
+        FileEnvelopeStore store = new FileEnvelopeStore(dir.toString());
+        MessageEnvelope a = MessageEnvelope.of(null, new byte[]{9}, new byte[]{1, 2, 3});
+        MessageEnvelope empty = MessageEnvelope.of(new byte[0], new byte[]{9}, new byte[]{1, 2, 3});
+        store.put(a);
+        store.put(a); // a retried send
+        store.put(empty);
+        assertNotEquals(a.getRef(), empty.getRef(), "no aad and empty aad differ");
+        try (Stream<Path> files = Files.walk(dir)) {
+            assertEquals(2, files.filter(Files::isRegularFile).count());
+        }
+        Map<String, MessageEnvelope> got = store.get(List.of(a.getRef(), empty.getRef(), "0".repeat(64)));
+        assertEquals(2, got.size());
+        assertNull(got.get(a.getRef()).getAad());
+        assertArrayEquals(new byte[0], got.get(empty.getRef()).getAad());
+        assertArrayEquals(new byte[]{1, 2, 3}, got.get(a.getRef()).getCiphertext());
+        assertThrows(IllegalArgumentException.class, () -> store.get(List.of("../../etc/passwd")));
+    }
+
+    /** Cursor just above the message {@code depth} rows below the newest of {@link #ROOM}. */
+    private String cursorAt(int depth) {
+        int i = rowOfRoom(depth);
+        return MessageCursor.encode(base.plus(i, ChronoUnit.MICROS), i + 1L);
+    }
+
+    private Object[] pageArgs(int depth) {
+        if (depth == 0) {
+            Timestamp max = Timestamp.from(base.plus(rows, ChronoUnit.MICROS));
+            return new Object[]{ROOM, max, max, Long.MAX_VALUE, VIEWER, VIEWER, PAGE};
+        }
+        int i = rowOfRoom(depth);
+        Timestamp ts = Timestamp.from(base.plus(i, ChronoUnit.MICROS));
+        return new Object[]{ROOM, ts, ts, i + 1L, VIEWER, VIEWER, PAGE};
+    }
+
+    private Object[] lookupArgs(Random rnd) {
+        int i = rnd.nextInt(rows);
+        return new Object[]{(long) (i % ROOMS + 1), "m-" + i};
+    }
+
+    /** Load index of the message {@code depth} rows below the newest of {@link #ROOM}. */
+    private int rowOfRoom(int depth) {
+        int newest = (rows - 1) - (rows - 1) % ROOMS;   // room 1 holds indexes 0, ROOMS, 2 * ROOMS, ...
+        return newest - depth * ROOMS;
+    }
+
+    private long diskSpace(String table) {
+        return jdbc.queryForObject("SELECT DISK_SPACE_USED('" + table + "')", Long.class);
+    }
+
+    private static double medianMs(int reps, int warmups, IntConsumer work) {
+        for (int i = 0; i < warmups; i++) work.accept(reps + i);
+        double[] samples = new double[reps];
+        for (int i = 0; i < reps; i++) {
+            long start = System.nanoTime();
+            work.accept(i);
+            samples[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(samples);
+        return samples[reps / 2];
+    }
+}
@@ -0,0 +1,407 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.ArchiveSegmentRepository;
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.models.ArchiveSegment;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.service.BlindSearchIndex;
+import com.om.Real_Time_Communication.service.HistoryArchiveService;
+import com.om.Real_Time_Communication.service.HistoryArchiveService.ArchiveRun;
+import com.om.Real_Time_Communication.service.MessagePagingService;
+import com.om.Real_Time_Communication.service.MessagePagingService.PageDto;
+import com.om.Real_Time_Communication.service.SearchService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A year of synthetic history, {@value #DEFAULT_ROWS} messages by default (override with
+ * {@code -Drtc.bench.tiering.rows}, e.g. 100000000), written in {@value #PHASES} phases to two
+ * stores: the previous single {@code legacy_chat_message} table, which only grows, and the tiered
+ * one, where the archiver moves everything older than {@value #HOT_DAYS} days out of
+ * {@code chat_message} after each phase. Per phase it reports single-row insert and newest-page
+ * latency for both; then checks that the hot table stays bounded, that the archive costs less per
+ * message than a table row, and that paging across the tiers returns exactly what the single
+ * table does, before and after compaction, and that blind search still finds archived messages.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({MessagePagingService.class, HistoryArchiveService.class, IdGeneratorConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // bulk load commits in batches
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/rtc-tiering-bench;MODE=MySQL",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "rtc.history.archive.enabled=true",
+        "rtc.history.archive.dir=./target/rtc-tiering-archive",
+        "rtc.history.archive.shared=true"
+})
+@Tag("benchmark")
+class HistoryTieringBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(HistoryTieringBenchmarkTest.class);
+
+    static final int DEFAULT_ROWS = 500_000;
+    static final int PHASES = 4;
+    static final int HOT_DAYS = 30;
+    static final int TIMED_INSERTS = 200;
+    static final int PAGE = 50;
+    static final Instant BASE = Instant.parse("2024-01-01T00:00:00Z");
+    static final Duration SPAN = Duration.ofDays(364);
+    static final Path ARCHIVE_DIR = Path.of("./target/rtc-tiering-archive");
+
+    static final String COLS = "id, room_id, sender_id, message_id, server_ts, type, body, e2ee, e2ee_ver, algo, " +
+            "key_ref, envelope_ref, deleted_by_sender, deleted_by_receiver, deleted_for_everyone, system_message";
+    static final String VALUES = " VALUES (?,?,?,?,?,'TEXT',?,?,?,?,?,?,?,?,?,false)";
+    static final String VISIBLE = " WHERE room_id = ? AND deleted_for_everyone = false" +
+            " AND ((sender_id = ? AND deleted_by_sender = false) OR (sender_id <> ? AND deleted_by_receiver = false))" +
+            " ORDER BY room_id DESC, server_ts DESC, id DESC";
+
+    @Autowired MessagePagingService paging;
+    @Autowired HistoryArchiveService archive;
+    @Autowired ArchiveSegmentRepository segments;
+    @Autowired ChatMessageRepository chatMessages;
+    @Autowired JdbcTemplate jdbc;
+
+    private SyntheticHistory history;
+    private final List<String> report = new ArrayList<>();
+    private final long[] hotRows = new long[PHASES];
+    private final double[] tieredRecentMs = new double[PHASES];
+    private int dropped;
+
+    /**
+     * Chat traffic for the benchmark: {@link #ROOMS} rooms of two members each, picked with Zipf
+     * weights (a few busy rooms, a long tail), opening over the year so late months have more
+     * active rooms; short texts from a small vocabulary, a tenth E2EE, and a few percent of
+     * messages deleted per member or for everyone. Deterministic for a given row count.
+     */
+    static final class SyntheticHistory {
+        static final int ROOMS = 2_000;
+        static final String[] WORDS = ("ok see you at the office tomorrow lunch meeting call later thanks " +
+                "sure sounds good where when what time running late on my way can we move it to friday " +
+                "sent the doc please review done great").split(" ");
+
+        final int rows;
+        final long stepMicros;
+        private final double[] cdf = new double[ROOMS];
+        private final Random rnd = new Random(42);
+
+        SyntheticHistory(int rows) {
+            this.rows = rows;
+            this.stepMicros = SPAN.toNanos() / 1_000 / rows;
+            double sum = 0;
+            for (int k = 0; k < ROOMS; k++) cdf[k] = sum += 1.0 / (k + 1);
+        }
+
+        /** Row {@code i} in the column order of {@link #COLS}; rows must be drawn in order. */
+        Object[] row(int i) {
+            Instant ts = ts(i);
+            int month = (int) (Duration.between(BASE, ts).toDays() / 30);
+            long room;
+            do {
+                int k = Arrays.binarySearch(cdf, rnd.nextDouble() * cdf[ROOMS - 1]);
+                room = (k < 0 ? -k - 1 : k) + 1;
+            } while (opens(room) > month);
+            long sender = member(room, rnd.nextInt(2));
+            boolean e2ee = rnd.nextInt(10) == 0;
+            String body = null, envelopeRef = null;
+            if (e2ee) {
+                envelopeRef = String.format("%064x", rnd.nextLong() & Long.MAX_VALUE);
+            } else {
+                StringBuilder b = new StringBuilder();
+                for (int w = 3 + rnd.nextInt(20); w > 0; w--) b.append(WORDS[rnd.nextInt(WORDS.length)]).append(' ');
+                body = b.toString().trim();
+            }
+            int d = rnd.nextInt(100);
+            return new Object[]{(long) i + 1, room, sender, "m-" + i, Timestamp.from(ts), body, e2ee,
+                    e2ee ? (short) 1 : null, e2ee ? "AES-GCM" : null, e2ee ? "k1" : null, envelopeRef,
+                    d < 3, d >= 3 && d < 8, d >= 98};
+        }
+
+        Instant ts(int i) {
+            return BASE.plus(i * stepMicros, ChronoUnit.MICROS);
+        }
+
+        static int opens(long room) {
+            return (int) ((room - 1) * 7 % 12);
+        }
+
+        static long member(long room, int which) {
+            return room * 2 + which;
+        }
+    }
+
+    /** A fresh archive directory, before the context starts: the service refuses one that is missing. */
+    @DynamicPropertySource
+    static void archiveDir(DynamicPropertyRegistry registry) throws IOException {
+        FileSystemUtils.deleteRecursively(ARCHIVE_DIR.toFile());
+        Files.createDirectories(ARCHIVE_DIR);
+    }
+
+    @BeforeAll
+    void grow() {
+        int rows = Integer.getInteger("rtc.bench.tiering.rows", DEFAULT_ROWS);
+        history = new SyntheticHistory(rows);
+        jdbc.execute("CREATE TABLE legacy_chat_message AS SELECT * FROM chat_message WITH NO DATA");
+        jdbc.execute("ALTER TABLE legacy_chat_message ADD PRIMARY KEY (id)");
+        jdbc.execute("CREATE UNIQUE INDEX uq_legacy_room_message ON legacy_chat_message (room_id, message_id)");
+        jdbc.execute("CREATE INDEX idx_legacy_room_ts_id ON legacy_chat_message (room_id, server_ts, id)");
+        jdbc.execute("CREATE INDEX idx_legacy_ts_id ON legacy_chat_message (server_ts, id)");
+
+        report.add(String.format("%6s %12s %10s %12s %12s %12s %12s %10s", "phase", "total rows", "hot rows",
+                "legacy ins", "tiered ins", "legacy page", "tiered page", "archive s"));
+        int batch = 5_000;
+        for (int p = 0; p < PHASES; p++) {
+            long start = System.nanoTime();
+            int from = (int) ((long) rows * p / PHASES), to = (int) ((long) rows * (p + 1) / PHASES);
+            int bulkTo = Math.max(from, to - TIMED_INSERTS);
+            for (int b = from; b < bulkTo; b += batch) {
+                List<Object[]> args = new ArrayList<>(batch);
+                for (int i = b; i < Math.min(bulkTo, b + batch); i++) args.add(history.row(i));
+                jdbc.batchUpdate("INSERT INTO legacy_chat_message (" + COLS + ")" + VALUES, args);
+                jdbc.batchUpdate("INSERT INTO chat_message (" + COLS + ")" + VALUES, args);
+            }
+            // The phase ends as live traffic: one insert per statement, alternating between the stores
+            double[] legacyIns = new double[to - bulkTo], tieredIns = new double[to - bulkTo];
+            for (int i = bulkTo; i < to; i++) {
+                Object[] row = history.row(i);
+                long t0 = System.nanoTime();
+                jdbc.update("INSERT INTO legacy_chat_message (" + COLS + ")" + VALUES, row);
+                long t1 = System.nanoTime();
+                jdbc.update("INSERT INTO chat_message (" + COLS + ")" + VALUES, row);
+                legacyIns[i - bulkTo] = (t1 - t0) / 1e6;
+                tieredIns[i - bulkTo] = (System.nanoTime() - t1) / 1e6;
+            }
+
+            long room = 1L, viewer = SyntheticHistory.member(1L, 0);
+            double legacyPage = medianMs(31, 10, r -> jdbc.queryForList(
+                    "SELECT id FROM legacy_chat_message" + VISIBLE + " LIMIT ?", room, viewer, viewer, PAGE));
+            double tieredPage = medianMs(31, 10, r -> paging.list(room, viewer, null, null, PAGE));
+            tieredRecentMs[p] = tieredPage;
+
+            long archiveStart = System.nanoTime();
+            ArchiveRun run = archive.archiveBefore(history.ts(to - 1).minus(Duration.ofDays(HOT_DAYS)),
+                    System.nanoTime() + Duration.ofHours(24).toNanos());
+            assertTrue(run.complete());
+            dropped += run.dropped();
+            hotRows[p] = count("chat_message");
+            report.add(String.format("%6d %12d %10d %10.3fms %10.3fms %10.3fms %10.3fms %10.1f", p + 1, to, hotRows[p],
+                    median(legacyIns), median(tieredIns), legacyPage, tieredPage,
+                    (System.nanoTime() - archiveStart) / 1e9));
+            log.info(String.format("phase %d: %d messages in %.1f s", p + 1, to - from, (System.nanoTime() - start) / 1e9));
+        }
+        report.forEach(log::info);
+    }
+
+    @AfterAll
+    void drop() {
+        jdbc.execute("DROP ALL OBJECTS DELETE FILES");
+        FileSystemUtils.deleteRecursively(ARCHIVE_DIR.toFile());
+    }
+
+    @Test
+    void hotTableStaysBounded() {
+        long total = count("legacy_chat_message");
+        log.info(String.format("hot rows per phase %s of %d; %d deleted for everyone dropped",
+                Arrays.toString(hotRows), total, dropped));
+        assertTrue(hotRows[PHASES - 1] < total / 4, "the hot table holds about the last " + HOT_DAYS + " days");
+        assertTrue(hotRows[PHASES - 1] < hotRows[1] * 3 / 2, "and does not grow with the total");
+        assertTrue(dropped > 0);
+        assertTrue(tieredRecentMs[PHASES - 1] < tieredRecentMs[0] * 3 + 1, "newest page stays flat");
+    }
+
+    @Test
+    void archiveCostsLessThanTableRows() {
+        long legacyBytes = diskSpace("LEGACY_CHAT_MESSAGE");
+        double legacyRow = (double) legacyBytes / count("legacy_chat_message");
+        long messages = 0, bytes = 0;
+        for (ArchiveSegment s : segments.findAll()) {
+            messages += s.getMessages();
+            bytes += s.getBytes();
+        }
+        double archived = (double) (bytes + diskSpace("HISTORY_ARCHIVE_SEGMENT")) / messages;
+        log.info(String.format("legacy table %.0f B/row with indexes; archive %.1f B/message (%d messages, %d segments)",
+                legacyRow, archived, messages, segments.count()));
+        assertTrue(messages > 0);
+        assertTrue(archived * 3 < legacyRow, archived + " vs " + legacyRow);
+    }
+
+    @Test
+    void pagingAcrossTiersMatchesTheSingleTable() {
+        assertSameHistory();
+    }
+
+    @Test
+    void compactionMergesMonthsAndKeepsHistory() {
+        long before = segments.count();
+        int removed = archive.compact(Integer.MAX_VALUE);
+        long after = segments.count();
+        log.info(String.format("compaction: %d segments -> %d", before, after));
+        assertEquals(before - removed, after);
+        assertTrue(after < before);
+        assertEquals(0, archive.compact(Integer.MAX_VALUE), "nothing left to merge");
+        assertSameHistory();
+    }
+
+    @Test
+    void deletesOfArchivedMessagesAreApplied() {
+        long room = 2L, viewer = SyntheticHistory.member(room, 0), other = SyntheticHistory.member(room, 1);
+        List<ChatMessage> oldest = paging.pageForward(room, viewer, null, 200).data;
+        Set<Long> theirs = new HashSet<>();
+        for (ChatMessage m : paging.pageForward(room, other, null, 200).data) theirs.add(m.getId());
+        ChatMessage received = oldest.stream().filter(m -> m.getSenderId() == other).findFirst().orElseThrow();
+        ChatMessage sent = oldest.stream()
+                .filter(m -> m.getSenderId() == viewer && theirs.contains(m.getId())).findFirst().orElseThrow();
+        assertEquals(0, jdbc.queryForObject("SELECT COUNT(*) FROM chat_message WHERE id IN (?, ?)", Long.class,
+                received.getId(), sent.getId()), "both are archived");
+
+        assertTrue(archive.tombstone(received.getMessageId(), viewer, false));
+        assertFalse(archive.tombstone(received.getMessageId(), viewer, false), "recorded once");
+        assertFalse(ids(room, viewer).contains(received.getId()), "gone for the viewer");
+        assertTrue(ids(room, other).contains(received.getId()), "kept for its sender");
+
+        archive.tombstone(sent.getMessageId(), other, true);
+        assertTrue(ids(room, other).contains(sent.getId()), "only the sender deletes for everyone");
+        archive.tombstone(sent.getMessageId(), viewer, true);
+        assertFalse(ids(room, viewer).contains(sent.getId()));
+        assertFalse(ids(room, other).contains(sent.getId()));
+        assertEquals(200, paging.pageForward(room, viewer, null, 200).data.size(), "pages stay full");
+    }
+
+    @Test
+    void archivedMessagesStayInBlindSearch() {
+        long room = 9_000_000L, sender = 7L, viewer = 8L;
+        long[][] tokens = {{1L, 2L}, {1L}, {1L}, {1L}}; // the last one, the room's latest, stays hot
+        for (int i = 0; i < tokens.length; i++) {
+            ByteBuffer t = ByteBuffer.allocate(tokens[i].length * 8);
+            for (long token : tokens[i]) t.putLong(token);
+            jdbc.update("INSERT INTO chat_message (" + COLS + ", search_tokens)" + VALUES.replace(",false)", ",false,?)"),
+                    9_000_000_001L + i, room, sender, "blind-" + i, Timestamp.from(BASE.minus(Duration.ofDays(10 - i))),
+                    null, true, (short) 1, "AES-GCM", "k1", "env-" + i, false, false, false, t.array());
+        }
+        assertTrue(archive.archiveBefore(BASE, System.nanoTime() + Duration.ofMinutes(1).toNanos()).complete());
+        assertEquals(1, jdbc.queryForObject("SELECT COUNT(*) FROM chat_message WHERE room_id = ?", Long.class, room));
+
+        BlindSearchIndex blind = new BlindSearchIndex(chatMessages, archive, 256, 1 << 20, 100);
+        SearchService search = new SearchService(null, blind, chatMessages, null, archive);
+        List<String> found = new ArrayList<>();
+        for (ChatMessage m : search.searchBlind(viewer, room, ByteBuffer.allocate(8).putLong(1L).array(), 10, null).data()) {
+            found.add(m.getEnvelopeRef());
+        }
+        assertEquals(List.of("env-3", "env-2", "env-1", "env-0"), found, "archived hits follow the hot one");
+        List<ChatMessage> both = search.searchBlind(viewer, room,
+                ByteBuffer.allocate(16).putLong(1L).putLong(2L).array(), 10, null).data();
+        assertEquals(List.of(9_000_000_001L), both.stream().map(ChatMessage::getId).toList());
+
+        archive.tombstone("blind-1", viewer, false);
+        assertEquals(3, search.searchBlind(viewer, room, ByteBuffer.allocate(8).putLong(1L).array(), 10, null).data().size(),
+                "a delete of an archived message applies");
+    }
+
+    private Set<Long> ids(long room, long viewer) {
+        Set<Long> ids = new HashSet<>();
+        for (ChatMessage m : paging.pageForward(room, viewer, null, 200).data) ids.add(m.getId());
+        return ids;
+    }
+
+    /** Walks a busy, a middling and a quiet room both ways, for each member, against the legacy table. */
+    private void assertSameHistory() {
+        for (long room : new long[]{1L, 40L, 1_500L}) {
+            for (int which = 0; which < 2; which++) {
+                long viewer = SyntheticHistory.member(room, which);
+                List<String> expected = jdbc.queryForList("SELECT CONCAT(id, ':', COALESCE(body, envelope_ref)) " +
+                        "FROM legacy_chat_message" + VISIBLE, String.class, room, viewer, viewer);
+
+                List<String> backward = new ArrayList<>();
+                String cursor = null;
+                do {
+                    PageDto page = paging.pageBackward(room, viewer, cursor, 200);
+                    for (int i = page.data.size() - 1; i >= 0; i--) backward.add(key(page.data.get(i)));
+                    cursor = page.prev;
+                } while (cursor != null);
+                assertEquals(expected, backward, "room " + room + " backward for " + viewer);
+
+                List<String> forward = new ArrayList<>();
+                cursor = null;
+                PageDto page;
+                do {
+                    page = paging.pageForward(room, viewer, cursor, 200);
+                    for (ChatMessage m : page.data) forward.add(key(m));
+                    cursor = page.next;
+                } while (page.hasMore);
+                Collections.reverse(forward);
+                assertEquals(expected, forward, "room " + room + " forward for " + viewer);
+
+                List<String> listed = new ArrayList<>();
+                List<ChatMessage> rows = paging.list(room, viewer, null, null, 200);
+                while (!rows.isEmpty()) {
+                    rows.forEach(m -> listed.add(key(m)));
+                    ChatMessage oldest = rows.get(rows.size() - 1);
+                    rows = paging.list(room, viewer, oldest.getServerTs(), oldest.getId(), 200);
+                }
+                assertEquals(expected, listed, "room " + room + " list for " + viewer);
+            }
+        }
+    }
+
+    private static String key(ChatMessage m) {
+        return m.getId() + ":" + (m.getBody() != null ? m.getBody() : m.getEnvelopeRef());
+    }
+
+    private long count(String table) {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM " + table, Long.class);
+    }
+
+    private long diskSpace(String table) {
+        return jdbc.queryForObject("SELECT DISK_SPACE_USED('" + table + "')", Long.class);
+    }
+
+    private static double median(double[] samples) {
+        double[] s = samples.clone();
+        Arrays.sort(s);
+        return s[s.length / 2];
+    }
+
+    private static double medianMs(int reps, int warmups, IntConsumer work) {
+        for (int i = 0; i < warmups; i++) work.accept(reps + i);
+        double[] samples = new double[reps];
+        for (int i = 0; i < reps; i++) {
+            long start = System.nanoTime();
+            work.accept(i);
+            samples[i] = (System.nanoTime() - start) / 1e6;
+        }
+        return median(samples);
+    }
+}
@@ -0,0 +1,254 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.models.MessageDelivery;
+import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import com.om.Real_Time_Communication.utility.MessageCursor;
+import com.om.Real_Time_Communication.utility.SnowflakeIdGenerator;
+import com.om.Real_Time_Communication.utility.SnowflakeIds;
+import jakarta.persistence.*;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Id generation throughput of {@link SnowflakeIdGenerator}, bursts from one thread and the
+ * sustained rate with 8 threads sharing a generator; and fan-out inserts of {@value #GROUP}
+ * delivery rows per message through JPA, with ids assigned before the insert (batched by
+ * {@code hibernate.jdbc.batch_size}) against the previous IDENTITY mapping (one statement and
+ * round trip per row). Counts the JDBC statements Hibernate prepares for each. JMH is not part of
+ * this build, so timings come from warmed-up loops.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(IdGeneratorConfig.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // each message's fan-out commits on its own
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/rtc-id-bench;MODE=MySQL",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+        "spring.jpa.properties.hibernate.order_inserts=true",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Tag("benchmark")
+class IdGenerationBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(IdGenerationBenchmarkTest.class);
+
+    static final int BURST = 100_000;
+    static final int THREADS = 8;
+    static final long SUSTAINED_MS = 2_000;
+    static final int GROUP = 500;
+    static final int MESSAGES = 40;
+
+    /** Previous mapping of message_delivery: the database numbers each row as it is inserted. */
+    @Entity
+    @Table(name = "legacy_identity_delivery")
+    static class LegacyDelivery {
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Long id;
+        @Column(name = "msg_id", nullable = false, length = 64) String msgId;
+        @Column(name = "user_id", nullable = false) Long userId;
+        @Column(name = "room_id") Long roomId;
+        @Column(name = "status", nullable = false, length = 32) String status = "PENDING";
+        @Column(name = "created_at", nullable = false) Instant createdAt = Instant.now();
+        @Column(name = "updated_at", nullable = false) Instant updatedAt = createdAt;
+    }
+
+    static volatile long blackhole; // keeps the generated ids observable to the JIT
+
+    @Autowired EntityManager em;
+    @Autowired EntityManagerFactory emf;
+    @Autowired PlatformTransactionManager txManager;
+    @Autowired JdbcTemplate jdbc;
+    @Autowired SnowflakeIds ids;
+
+    @AfterAll
+    void drop() {
+        jdbc.execute("DROP ALL OBJECTS DELETE FILES");
+    }
+
+    @Test
+    void generationThroughput() {
+        for (int warm = 0; warm < 3; warm++) burst(new SnowflakeIdGenerator(1));
+        double[] perId = new double[5];
+        for (int r = 0; r < perId.length; r++) perId[r] = burst(new SnowflakeIdGenerator(1));
+        Arrays.sort(perId);
+        double uuid = nsPerCall(() -> UUID.randomUUID());
+        log.info(String.format("burst of %d: %.1f ns/id (%.1f M ids/s); UUID.randomUUID for reference %.1f ns",
+                BURST, perId[2], 1e3 / perId[2], uuid));
+        assertTrue(perId[2] < 1_000, "bursts cost well under a microsecond per id");
+    }
+
+    @Test
+    void sustainedIdsAreUniqueOrderedAndJsonSafe() throws Exception {
+        SnowflakeIdGenerator gen = new SnowflakeIdGenerator(7);
+        long[][] made = new long[THREADS][];
+        int[] counts = new int[THREADS];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        long until = System.currentTimeMillis() + SUSTAINED_MS;
+        for (int t = 0; t < THREADS; t++) {
+            int me = t;
+            made[t] = new long[1 << 18];
+            Thread th = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long[] out = made[me];
+                int n = 0;
+                while (n < out.length && System.currentTimeMillis() < until) out[n++] = gen.nextId();
+                counts[me] = n;
+            });
+            threads.add(th);
+            th.start();
+        }
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread th : threads) th.join();
+        double seconds = (System.nanoTime() - t0) / 1e9;
+
+        int total = 0;
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 1; i < counts[t]; i++) assertTrue(made[t][i] > made[t][i - 1], "increasing per thread");
+            total += counts[t];
+        }
+        long[] all = new long[total];
+        int k = 0;
+        for (int t = 0; t < THREADS; t++) {
+            System.arraycopy(made[t], 0, all, k, counts[t]);
+            k += counts[t];
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) assertNotEquals(all[i - 1], all[i], "unique across threads");
+        long max = all[all.length - 1];
+        Instant ahead = SnowflakeIdGenerator.timeOf(max);
+        log.info(String.format("%d threads for %.1f s: %d ids, %.0f ids/s; newest id %d is %d ms ahead of the clock",
+                THREADS, seconds, total, total / seconds, max, ahead.toEpochMilli() - System.currentTimeMillis()));
+        assertTrue(max < (1L << 53), "below 2^53");
+        assertTrue(total / seconds > 400_000, "most of 512 ids per millisecond sustained");
+        assertTrue(ahead.toEpochMilli() - System.currentTimeMillis() <= 1_000 + 50, "bounded drift");
+
+        long id = ids.forTable(MessageDelivery.class).nextId();
+        Instant at = SnowflakeIdGenerator.timeOf(id);
+        assertTrue(SnowflakeIdGenerator.minIdAt(at) <= id && id < SnowflakeIdGenerator.minIdAt(at.plusMillis(1)));
+        var cursor = MessageCursor.decode(MessageCursor.encode(at, id));
+        assertEquals(at, cursor.getKey());
+        assertEquals(id, cursor.getValue());
+        assertTrue(MessageCursor.encode(at, id).length() < MessageCursor.encode(at.plusNanos(1_000), id).length(),
+                "an id-only cursor when server_ts is the id's time");
+        assertNotNull(MessageCursor.encode(at, null), "no id: the timestamp form");
+    }
+
+    @Test
+    void unnumberedNodesOnlyStartAlone() {
+        IdGeneratorConfig config = new IdGeneratorConfig();
+        assertThrows(IllegalStateException.class, () -> config.snowflakeIds(-1, 2),
+                "host-name numbers collide between nodes");
+        assertEquals(SnowflakeIds.nodeFromHost(), config.snowflakeIds(-1, 1).node());
+        assertEquals(3, config.snowflakeIds(3, 4).node());
+        assertNotSame(ids.forTable(MessageDelivery.class), config.snowflakeIds(ids.node(), 1).forTable(MessageDelivery.class),
+                "generators belong to one context, not the class");
+        assertEquals(Instant.parse("2041-06-02T21:56:53.887Z"), SnowflakeIdGenerator.HORIZON);
+    }
+
+    @Test
+    void fanOutInsertsBatchWithAssignedIds() {
+        Statistics stats = emf.unwrap(SessionFactory.class).getStatistics();
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        // warm up both mappings
+        fanOut(tx, 5, u -> legacy("warm", u));
+        fanOut(tx, 5, u -> delivery("warm", u));
+
+        stats.clear();
+        long legacyNs = fanOut(tx, MESSAGES, u -> legacy("old", u));
+        long legacyStatements = stats.getPrepareStatementCount();
+        stats.clear();
+        long newNs = fanOut(tx, MESSAGES, u -> delivery("new", u));
+        long newStatements = stats.getPrepareStatementCount();
+
+        int rows = MESSAGES * GROUP;
+        log.info(String.format("%d messages x %d recipients: IDENTITY %.0f rows/s in %d statements, " +
+                        "assigned ids %.0f rows/s in %d statements",
+                MESSAGES, GROUP, rows / (legacyNs / 1e9), legacyStatements, rows / (newNs / 1e9), newStatements));
+        assertEquals(rows, jdbc.queryForObject(
+                "SELECT COUNT(*) FROM message_delivery WHERE msg_id LIKE 'new-%'", Integer.class));
+        assertTrue(legacyStatements >= rows, "IDENTITY inserts one row per statement");
+        assertTrue(newStatements * 10 < legacyStatements, newStatements + " vs " + legacyStatements);
+        assertTrue(newNs < legacyNs, newNs + " vs " + legacyNs + " ns");
+    }
+
+    /** Inserts {@code messages} fan-outs of {@link #GROUP} rows, one transaction each; returns elapsed ns. */
+    private long fanOut(TransactionTemplate tx, int messages, IntFunction<Object> row) {
+        long start = System.nanoTime();
+        for (int m = 0; m < messages; m++) {
+            int msg = m;
+            tx.executeWithoutResult(s -> {
+                for (int u = 0; u < GROUP; u++) em.persist(row.apply(msg * GROUP + u));
+            });
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static LegacyDelivery legacy(String prefix, int n) {
+        LegacyDelivery d = new LegacyDelivery();
+        d.msgId = prefix + "-" + n / GROUP;
+        d.userId = (long) n % GROUP;
+        d.roomId = 1L;
+        return d;
+    }
+
+    private static MessageDelivery delivery(String prefix, int n) {
+        MessageDelivery d = new MessageDelivery();
+        d.setMsgId(prefix + "-" + n / GROUP);
+        d.setUserId((long) n % GROUP);
+        d.setRoomId(1L);
+        d.setStatus(MessageDeliveryStatus.PENDING);
+        return d;
+    }
+
+    private static double burst(SnowflakeIdGenerator gen) {
+        long sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < BURST; i++) sink ^= gen.nextId();
+        double ns = (double) (System.nanoTime() - start) / BURST;
+        blackhole = sink;
+        return ns;
+    }
+
+    private static double nsPerCall(Runnable r) {
+        for (int i = 0; i < BURST; i++) r.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < BURST; i++) r.run();
+        return (double) (System.nanoTime() - start) / BURST;
+    }
+}
@@ -0,0 +1,232 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.InboundSizeAndRateInterceptor;
+import com.om.Real_Time_Communication.config.StompRateLimiter;
+import com.om.Real_Time_Communication.utility.GcraLimiter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Per-frame cost of the inbound size and rate guard against the previous one (StompHeaderAccessor
+ * per frame, string keys, fixed windows in a map that never evicts), and the heap held by 1M
+ * distinct keys in each, before and after the new limiter's sweep. Also checks the GCRA budget,
+ * the overflow bound, per-destination rules and per-user factors. JMH is not part of this build,
+ * so timings come from a warmed-up loop.
+ */
+class InboundRateLimitBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(InboundRateLimitBenchmarkTest.class);
+
+    static final int FRAMES = 500_000;
+    static final int KEYS = 1_000_000;
+    static final long MS = 1_000_000L;
+
+    /** The previous limiter. */
+    static final class LegacyLimiter {
+        static final class Window {
+            final long windowMs;
+            volatile long start;
+            final AtomicInteger count = new AtomicInteger(0);
+            Window(long now, long windowMs) { this.start = now; this.windowMs = windowMs; }
+        }
+
+        final ConcurrentMap<String, Window> buckets = new ConcurrentHashMap<>();
+
+        void checkOrThrow(String key, int limit, long windowMs) {
+            long now = System.currentTimeMillis();
+            Window w = buckets.compute(key, (k, cur) -> (cur == null || now - cur.start >= windowMs)
+                    ? new Window(now, windowMs) : cur);
+            if (now - w.start >= w.windowMs) {
+                w.start = now;
+                w.count.set(0);
+            }
+            int n = w.count.incrementAndGet();
+            if (n > limit) throw new IllegalArgumentException("Rate limit exceeded: " + key);
+        }
+    }
+
+    /** The previous interceptor's work for a SEND frame. */
+    static final class LegacyGuard {
+        final LegacyLimiter limiter = new LegacyLimiter();
+
+        Message<?> preSend(Message<?> msg) {
+            StompHeaderAccessor acc = StompHeaderAccessor.wrap(msg);
+            if (acc.getCommand() == null) return msg;
+            Object payload = msg.getPayload();
+            int size = 0;
+            if (payload instanceof byte[]) size = ((byte[]) payload).length;
+            else if (payload instanceof String) size = ((String) payload).getBytes(StandardCharsets.UTF_8).length;
+            if (size > 64 * 1024) throw new IllegalArgumentException("Payload too large: " + size + " bytes");
+            String user = acc.getUser() != null ? acc.getUser().getName() : "anon";
+            String dest = acc.getDestination();
+            String roomId = dest.substring("/app/rooms/".length(), dest.indexOf('/', "/app/rooms/".length()));
+            limiter.checkOrThrow("u:" + user + ":r:" + roomId + ":send", Integer.MAX_VALUE, 5000);
+            limiter.checkOrThrow("u:" + user + ":send", Integer.MAX_VALUE, 5000);
+            return msg;
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void perFrameOverhead() {
+        Message<byte[]> frame = send("7", "/app/rooms/42/send");
+        MessageChannel channel = new ExecutorSubscribableChannel();
+
+        LegacyGuard legacy = new LegacyGuard();
+        double[] legacyCost = measure(() -> legacy.preSend(frame));
+
+        StompRateLimiter limiter = new StompRateLimiter(30, 10_000, 50, 10_000, 1_000_000_000, 1_000,
+                "/app/rooms/=1000000000/1000", 1_000_000);
+        InboundSizeAndRateInterceptor guard = new InboundSizeAndRateInterceptor(limiter);
+        double[] cost = measure(() -> guard.preSend(frame, channel));
+
+        log.info(String.format("inbound size+rate guard per SEND frame | previous: %.0f ns %.0f B | GCRA, primitive keys: %.0f ns %.1f B",
+                legacyCost[0], legacyCost[1], cost[0], cost[1]));
+        assertTrue(cost[1] < 1, "allocates " + cost[1] + " B/frame");
+        assertTrue(cost[0] < legacyCost[0], cost[0] + " ns vs previous " + legacyCost[0] + " ns");
+    }
+
+    @Test
+    @Tag("benchmark")
+    void millionDistinctKeysAreBoundedAndSweptAway() {
+        long base = usedHeap();
+        LegacyLimiter legacy = new LegacyLimiter();
+        for (int u = 0; u < KEYS; u++) legacy.checkOrThrow("u:" + (1_000_000 + u) + ":send", 200, 5000);
+        long legacyBytes = usedHeap() - base;
+        assertEquals(KEYS, legacy.buckets.size(), "never evicted");
+        legacy = null;
+
+        long[] now = {0};
+        base = usedHeap();
+        GcraLimiter limiter = new GcraLimiter(KEYS, () -> now[0]);
+        for (int u = 0; u < KEYS; u++) assertTrue(limiter.tryAcquire(1_000_000 + u, 25 * MS, 4975 * MS));
+        long gcraBytes = usedHeap() - base;
+        assertEquals(KEYS, limiter.size());
+
+        now[0] += 5000 * MS;
+        long t0 = System.nanoTime();
+        assertEquals(KEYS, limiter.evictExpired());
+        double sweepMs = (System.nanoTime() - t0) / 1e6;
+        long afterSweep = usedHeap() - base;
+
+        log.info(String.format("%d distinct keys | previous map: %.1f MB, never evicted | GCRA table: %.1f MB, %.1f MB after a %.0f ms sweep",
+                KEYS, legacyBytes / 1e6, gcraBytes / 1e6, afterSweep / 1e6, sweepMs));
+        assertEquals(0, limiter.size());
+        assertTrue(gcraBytes * 2 < legacyBytes, "GCRA " + gcraBytes + " B vs previous " + legacyBytes + " B");
+        assertTrue(afterSweep < gcraBytes / 10, "swept stripes shrink: " + afterSweep + " B");
+    }
+
+    @Test
+    void keysBeyondTheCapShareAnOverflowBudget() {
+        long[] now = {0};
+        GcraLimiter limiter = new GcraLimiter(1024, () -> now[0]);
+        for (int k = 0; k < 100_000; k++) limiter.tryAcquire(k, MS, 1000 * MS);
+        assertTrue(limiter.size() <= 2048, "tracked: " + limiter.size());
+        assertTrue(limiter.overflowed() > 0);
+
+        // Once the tracked keys' budgets have refilled, new keys get their own slot again
+        now[0] += 2000 * MS;
+        long overflowed = limiter.overflowed();
+        assertTrue(limiter.tryAcquire(-1, MS, 1000 * MS));
+        assertEquals(overflowed, limiter.overflowed());
+    }
+
+    @Test
+    void burstThenSustainedRate() {
+        long[] now = {0};
+        GcraLimiter limiter = new GcraLimiter(100, () -> now[0]);
+        long emission = 100 * MS, tolerance = 400 * MS; // 5 per 500 ms
+        for (int i = 0; i < 5; i++) assertTrue(limiter.tryAcquire(7, emission, tolerance), "burst " + i);
+        assertFalse(limiter.tryAcquire(7, emission, tolerance));
+        assertTrue(limiter.tryAcquire(8, emission, tolerance), "other keys are unaffected");
+        now[0] += 99 * MS;
+        assertFalse(limiter.tryAcquire(7, emission, tolerance));
+        now[0] += MS;
+        assertTrue(limiter.tryAcquire(7, emission, tolerance), "one emission interval refills one event");
+        assertFalse(limiter.tryAcquire(7, emission, tolerance));
+    }
+
+    @Test
+    void destinationRulesAndUserFactorsChangeAtRuntime() {
+        StompRateLimiter limiter = new StompRateLimiter(30, 10_000, 50, 10_000, 1000, 60_000,
+                "/app/rooms/=3/60000", 10_000);
+        for (int i = 0; i < 3; i++) limiter.checkSend(7, "/app/rooms/42/send");
+        assertThrows(IllegalArgumentException.class, () -> limiter.checkSend(7, "/app/rooms/42/send"));
+        limiter.checkSend(7, "/app/rooms/43/send"); // per room
+        limiter.checkSend(8, "/app/rooms/42/send"); // per user
+        limiter.checkSend(7, "/app/ack");           // no rule, only the per-user budget
+
+        limiter.setUserFactor(9, 2.0);
+        for (int i = 0; i < 6; i++) limiter.checkSend(9, "/app/rooms/42/send");
+        assertThrows(IllegalArgumentException.class, () -> limiter.checkSend(9, "/app/rooms/42/send"));
+
+        limiter.setDestinationRules("/app/rooms.=1/60000");
+        limiter.checkSend(7, "/app/rooms/42/send");
+        limiter.checkSend(7, "/app/rooms.5.send");
+        assertThrows(IllegalArgumentException.class, () -> limiter.checkSend(7, "/app/rooms.5.send"));
+
+        assertEquals(7L, StompRateLimiter.userKey("7"));
+        assertTrue(StompRateLimiter.userKey("alice") < 0, "non-numeric names are hashed apart from ids");
+    }
+
+    @Test
+    void sizeCapCountsUtf8WithoutCopying() {
+        InboundSizeAndRateInterceptor guard = new InboundSizeAndRateInterceptor(
+                new StompRateLimiter(30, 10_000, 50, 10_000, 1000, 1000, "", 1000));
+        MessageChannel channel = new ExecutorSubscribableChannel();
+        assertThrows(IllegalArgumentException.class,
+                () -> guard.preSend(send("7", "/app/ack", new byte[64 * 1024 + 1]), channel));
+        String threeByteChars = "€".repeat(22_000); // 66,000 bytes in UTF-8
+        assertThrows(IllegalArgumentException.class,
+                () -> guard.preSend(send("7", "/app/ack", threeByteChars), channel));
+        assertNotNull(guard.preSend(send("7", "/app/ack", "€".repeat(21_000)), channel));
+    }
+
+    private static Message<byte[]> send(String user, String destination) {
+        byte[] body = ("{\"roomId\":42,\"ciphertext\":\"" + "A".repeat(400) + "\"}").getBytes(StandardCharsets.UTF_8);
+        return send(user, destination, body);
+    }
+
+    private static <T> Message<T> send(String user, String destination, T body) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.SEND);
+        acc.setDestination(destination);
+        acc.setSessionId("s-" + user);
+        acc.setUser((Principal) () -> user);
+        acc.setNativeHeader("content-type", "application/json");
+        return MessageBuilder.createMessage(body, acc.getMessageHeaders());
+    }
+
+    /** Returns {ns per frame, bytes allocated per frame} after a warm-up pass. */
+    private static double[] measure(Runnable perFrame) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < FRAMES; i++) perFrame.run();
+        long bytes0 = mx.getCurrentThreadAllocatedBytes();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) perFrame.run();
+        long ns = System.nanoTime() - t0;
+        long bytes = mx.getCurrentThreadAllocatedBytes() - bytes0;
+        return new double[]{(double) ns / FRAMES, (double) bytes / FRAMES};
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,322 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
+import com.om.Real_Time_Communication.Repository.MessageDeliveryRepository;
+import com.om.Real_Time_Communication.client.UserServiceClient;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import com.om.Real_Time_Communication.models.ChatRoomParticipant;
+import com.om.Real_Time_Communication.models.ChatRoomType;
+import com.om.Real_Time_Communication.models.MessageDelivery;
+import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import com.om.Real_Time_Communication.models.MessageType;
+import com.om.Real_Time_Communication.models.Role;
+import com.om.Real_Time_Communication.service.InboxDeliveryService;
+import com.om.Real_Time_Communication.service.InboxDeliveryService.PendingPage;
+import com.om.Real_Time_Communication.service.JpaReadModelStore;
+import com.om.Real_Time_Communication.service.LocalRoomCacheInvalidationChannel;
+import com.om.Real_Time_Communication.service.ReadModelService;
+import com.om.Real_Time_Communication.service.ReceiptCoalescer;
+import com.om.Real_Time_Communication.service.RoomAccessCache;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import com.om.Real_Time_Communication.utility.RtcMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Drains a reconnecting user's backlog of {@value #ROOMS} x {@value #PER_ROOM} pending deliveries
+ * and compares statements and time for the paged, set-based path against the old per-row lookups,
+ * then acknowledges it with ranged batch acks and checks that sender receipts are coalesced.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({InboxDeliveryService.class, RoomMembershipService.class, RoomAccessCache.class,
+        LocalRoomCacheInvalidationChannel.class, ReceiptCoalescer.class, RtcMetrics.class,
+        ReadModelService.class, JpaReadModelStore.class, InboxBacklogBenchmarkTest.Config.class, IdGeneratorConfig.class})
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:rtc-backlog;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "rtc.receipts.flush-ms=3600000" // the tests flush receipts themselves
+})
+class InboxBacklogBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(InboxBacklogBenchmarkTest.class);
+
+    static final int ROOMS = 50;
+    static final int PER_ROOM = 40;
+    static final int PAGE = 100;
+    static final long USER = 7L;
+
+    @Autowired InboxDeliveryService inboxDeliveryService;
+    @Autowired RoomAccessCache roomAccessCache;
+    @Autowired MessageDeliveryRepository deliveryRepository;
+    @Autowired ChatMessageRepository chatMessageRepository;
+    @Autowired ChatRoomRepository chatRoomRepository;
+    @Autowired ChatRoomParticipantRepository participantRepository;
+    @Autowired EntityManagerFactory emf;
+    @Autowired ReceiptCoalescer receiptCoalescer;
+    @Autowired MeterRegistry meterRegistry;
+
+    @MockitoBean UserServiceClient userServiceClient;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        SimpMessagingTemplate messagingTemplate() {
+            ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+            channel.subscribe(msg -> INBOX_FRAMES.incrementAndGet());
+            return new SimpMessagingTemplate(channel);
+        }
+    }
+
+    static final AtomicInteger INBOX_FRAMES = new AtomicInteger();
+
+    private Statistics stats;
+    private List<ChatRoom> rooms;
+
+    @BeforeEach
+    void seed() {
+        stats = emf.unwrap(SessionFactory.class).getStatistics();
+        roomAccessCache.invalidateAll();
+        rooms = new ArrayList<>(ROOMS);
+        List<ChatMessage> messages = new ArrayList<>(ROOMS * PER_ROOM);
+        List<MessageDelivery> deliveries = new ArrayList<>(ROOMS * PER_ROOM);
+        for (int r = 0; r < ROOMS; r++) {
+            // Alternate 1:1 and group rooms so both payload shapes are built
+            boolean group = r % 2 == 1;
+            ChatRoom room = room("backlog-" + r, group, group ? new Long[] {1L, USER, 8L} : new Long[] {1L, USER});
+            rooms.add(room);
+            for (int i = 0; i < PER_ROOM; i++) {
+                ChatMessage m = new ChatMessage();
+                m.setRoomId(room.getId());
+                m.setSenderId(1L);
+                m.setMessageId("b" + r + "-" + i);
+                m.setType(MessageType.TEXT);
+                m.setBody("hello " + i);
+                messages.add(m);
+
+                MessageDelivery d = new MessageDelivery();
+                d.setMsgId(m.getMessageId());
+                d.setUserId(USER);
+                d.setRoomId(room.getId());
+                deliveries.add(d);
+            }
+        }
+        chatMessageRepository.saveAll(messages);
+        // Interleave rooms in delivery order, as a real backlog would be
+        deliveries.sort((a, b) -> {
+            int ia = Integer.parseInt(a.getMsgId().substring(a.getMsgId().indexOf('-') + 1));
+            int ib = Integer.parseInt(b.getMsgId().substring(b.getMsgId().indexOf('-') + 1));
+            return ia != ib ? Integer.compare(ia, ib) : Long.compare(a.getRoomId(), b.getRoomId());
+        });
+        deliveryRepository.saveAll(deliveries);
+        deliveryRepository.flush();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void pagedDrainBeatsPerRowLookups() {
+        int total = ROOMS * PER_ROOM;
+
+        // The legacy path costs three statements a row; a slice is enough to measure it
+        int sample = 2 * PAGE;
+        long start = System.nanoTime();
+        long legacyStatements = statementsFor(() -> assertEquals(sample, legacyPerRowDrain(sample).size()));
+        double legacyMsPerItem = (System.nanoTime() - start) / 1e6 / sample;
+
+        Set<String> drained = new HashSet<>();
+        int pages = 0;
+        long maxPerPage = 0;
+        String cursor = null;
+        start = System.nanoTime();
+        long pagedStatements = 0;
+        PendingPage page;
+        do {
+            String from = cursor;
+            PendingPage[] holder = new PendingPage[1];
+            long s = statementsFor(() -> holder[0] = inboxDeliveryService.pendingPage(USER, null, from, PAGE));
+            page = holder[0];
+            pagedStatements += s;
+            if (pages > 0) maxPerPage = Math.max(maxPerPage, s); // the first page also warms the room cache
+            pages++;
+            for (Map<String, Object> item : page.items()) {
+                assertTrue(drained.add((String) item.get("msgId")), "no item twice");
+            }
+            cursor = page.next();
+        } while (page.hasMore());
+        double pagedMs = (System.nanoTime() - start) / 1e6;
+
+        log.info(String.format("backlog=%d legacy: %.2f statements/item %.3f ms/item | paged: %d pages %.3f statements/item %.3f ms/item",
+                total, (double) legacyStatements / sample, legacyMsPerItem,
+                pages, (double) pagedStatements / total, pagedMs / total));
+        assertEquals(total, drained.size());
+        assertEquals(total / PAGE, pages);
+        // Page rows, their messages, one bulk status update; rooms come from the warm cache
+        assertTrue(maxPerPage <= 3, "statements per warm page: " + maxPerPage);
+        assertTrue((double) pagedStatements / total < (double) legacyStatements / sample / 10);
+        assertTrue(deliveryRepository.findAll().stream()
+                .allMatch(d -> d.getStatus() == MessageDeliveryStatus.SENT_TO_WS));
+    }
+
+    @Test
+    void directPayloadsCarryThePeerAndCursorRejectsGarbage() {
+        PendingPage page = inboxDeliveryService.pendingPage(USER, null, null, ROOMS);
+        for (Map<String, Object> item : page.items()) {
+            Long roomDbId = (Long) item.get("roomDbId");
+            boolean direct = rooms.stream().anyMatch(r -> r.getId().equals(roomDbId) && !r.getGroup());
+            assertEquals(direct ? 1L : null, item.get("peerId"));
+        }
+        assertThrows(IllegalArgumentException.class,
+                () -> inboxDeliveryService.pendingPage(USER, null, "not-a-cursor", PAGE));
+    }
+
+    @Test
+    void streamingSendsEveryItemThenACompletionFrame() {
+        int before = INBOX_FRAMES.get();
+        int sent = inboxDeliveryService.streamPending(USER, null, PAGE);
+        assertEquals(ROOMS * PER_ROOM, sent);
+        assertEquals(sent + 1, INBOX_FRAMES.get() - before);
+        // Already SENT_TO_WS rows are still offered until acknowledged, but nothing new is pending
+        assertTrue(deliveryRepository.findAll().stream()
+                .noneMatch(d -> d.getStatus() == MessageDeliveryStatus.PENDING));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void rangeAcksUpdateTheBacklogInAFewStatements() {
+        for (ChatRoom room : rooms) roomAccessCache.room(room.getId()); // rooms are warm once a client is catching up
+
+        // One ack frame per message
+        List<String> firstIds = new ArrayList<>();
+        for (int i = 0; i < PAGE / ROOMS; i++) {
+            for (int r = 0; r < ROOMS; r++) firstIds.add("b" + r + "-" + i);
+        }
+        long start = System.nanoTime();
+        long perMessage = statementsFor(() -> firstIds.forEach(id -> inboxDeliveryService.markDelivered(id, USER, "d1", false)));
+        double perMessageMs = (System.nanoTime() - start) / 1e6;
+
+        // One frame with a range per room for the rest of the backlog
+        List<InboxDeliveryService.AckRange> ranges = new ArrayList<>();
+        for (int r = 0; r < ROOMS; r++) ranges.add(new InboxDeliveryService.AckRange(null, "b" + r + "-" + (PER_ROOM - 1)));
+        int[] updated = new int[1];
+        start = System.nanoTime();
+        long batched = statementsFor(() -> updated[0] = inboxDeliveryService.acknowledge(USER, "d1", false, List.of(), ranges));
+        double batchedMs = (System.nanoTime() - start) / 1e6;
+
+        int rest = ROOMS * PER_ROOM - firstIds.size();
+        log.info(String.format("acks per message: %.2f statements/ack %.3f ms/ack | ranged batch of %d: %d statements %.1f ms",
+                (double) perMessage / firstIds.size(), perMessageMs / firstIds.size(), rest, batched, batchedMs));
+        assertEquals(rest, updated[0], "acked rows are not updated twice");
+        // One range lookup per room, one bulk update, one message lookup for receipts
+        assertEquals(ROOMS + 2, batched);
+        assertTrue(deliveryRepository.findAll().stream()
+                .allMatch(d -> d.getStatus() == MessageDeliveryStatus.DELIVERED_TO_DEVICE && "d1".equals(d.getDeviceId())));
+
+        // A delivery ack arriving after a read never moves the row back
+        inboxDeliveryService.acknowledge(USER, "d1", true, List.of("b0-0"), List.of());
+        assertEquals(0, inboxDeliveryService.acknowledge(USER, "d1", false, List.of("b0-0"), List.of()));
+        assertEquals(MessageDeliveryStatus.READ, deliveryRepository.findByMsgIdAndUserId("b0-0", USER).orElseThrow().getStatus());
+    }
+
+    @Test
+    void receiptsAreCoalescedIntoOneFramePerSenderAndRoom() {
+        receiptCoalescer.flush();
+        inboxDeliveryService.acknowledge(USER, "d1", false, List.of(),
+                List.of(new InboxDeliveryService.AckRange(null, "b0-" + (PER_ROOM - 1)),
+                        new InboxDeliveryService.AckRange(null, "b1-" + (PER_ROOM - 1))));
+        inboxDeliveryService.acknowledge(USER, "d1", true, List.of("b0-0", "b0-1"), List.of());
+        inboxDeliveryService.markDelivered("b2-0", USER, "d1", false);
+
+        int before = INBOX_FRAMES.get();
+        receiptCoalescer.flush();
+        // Rooms 0 and 1 as batches, room 2 as a single receipt, all to sender 1
+        assertEquals(3, INBOX_FRAMES.get() - before);
+        receiptCoalescer.flush();
+        assertEquals(3, INBOX_FRAMES.get() - before, "nothing left after a flush");
+
+        assertEquals(3, meterRegistry.get("inbox.ack.batch.size").summary().count());
+        assertEquals(2 * PER_ROOM + 2 + 1, meterRegistry.get("inbox.ack.rows.updated").counter().count());
+        assertEquals(2 * PER_ROOM + 1 - 3, meterRegistry.get("inbox.receipt.coalesced").counter().count());
+    }
+
+    /** The previous shape: one list of everything, then a room, message and member lookup plus a save per row. */
+    private List<Map<String, Object>> legacyPerRowDrain(int limit) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (MessageDelivery d : deliveryRepository.findAll()) {
+            if (d.getUserId() != USER) continue;
+            if (out.size() == limit) break;
+            ChatRoom room = chatRoomRepository.findById(d.getRoomId()).orElseThrow();
+            ChatMessage msg = chatMessageRepository.findByRoomIdAndMessageId(room.getId(), d.getMsgId()).orElseThrow();
+            List<Long> members = participantRepository.findUserIdsByRoomId(room.getId());
+            out.add(Map.of("msgId", msg.getMessageId(), "roomKey", room.getRoomId(), "members", members));
+            d.setUpdatedAt(Instant.now());
+            deliveryRepository.saveAndFlush(d);
+        }
+        return out;
+    }
+
+    private long statementsFor(Runnable work) {
+        stats.clear();
+        work.run();
+        return stats.getPrepareStatementCount();
+    }
+
+    private ChatRoom room(String key, boolean group, Long... members) {
+        ChatRoom room = new ChatRoom();
+        room.setRoomId(key);
+        room.setType(group ? ChatRoomType.GROUP : ChatRoomType.DIRECT);
+        room.setGroup(group);
+        room.setCreatedAt(LocalDateTime.now());
+        ChatRoom saved = chatRoomRepository.save(room);
+        for (Long userId : members) {
+            ChatRoomParticipant p = new ChatRoomParticipant();
+            p.setUserId(userId);
+            p.setChatRoom(saved);
+            p.setJoinedAt(LocalDateTime.now());
+            p.setRole(Role.MEMBER);
+            participantRepository.save(p);
+        }
+        return saved;
+    }
+}
@@ -0,0 +1,182 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.MessageDeliveryRepository;
+import com.om.Real_Time_Communication.client.UserServiceClient;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import com.om.Real_Time_Communication.models.MessageDelivery;
+import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import com.om.Real_Time_Communication.models.MessageType;
+import com.om.Real_Time_Communication.service.InboxDeliveryService;
+import com.om.Real_Time_Communication.service.JpaReadModelStore;
+import com.om.Real_Time_Communication.service.LocalRoomCacheInvalidationChannel;
+import com.om.Real_Time_Communication.service.ReadModelService;
+import com.om.Real_Time_Communication.service.ReceiptCoalescer;
+import com.om.Real_Time_Communication.service.RoomAccessCache;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import com.om.Real_Time_Communication.utility.RtcMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Measures single-pass inbox fan-out throughput (messages/s) against group size
+ * on the embedded database, and checks that re-running a fan-out is idempotent.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({InboxDeliveryService.class, RoomMembershipService.class, RoomAccessCache.class,
+        LocalRoomCacheInvalidationChannel.class, ReceiptCoalescer.class, RtcMetrics.class,
+        ReadModelService.class, JpaReadModelStore.class, InboxFanOutBenchmarkTest.Config.class, IdGeneratorConfig.class})
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:rtc-fanout;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+class InboxFanOutBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(InboxFanOutBenchmarkTest.class);
+
+    @Autowired
+    InboxDeliveryService inboxDeliveryService;
+
+    @Autowired
+    MessageDeliveryRepository deliveryRepository;
+
+    @TestConfiguration
+    static class Config {
+        // Real template on an in-memory channel; a mock would dominate the timings by recording calls
+        @Bean
+        SimpleMeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        SimpMessagingTemplate messagingTemplate() {
+            ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+            channel.subscribe(msg -> INBOX_FRAMES.incrementAndGet());
+            return new SimpMessagingTemplate(channel);
+        }
+    }
+
+    static final AtomicInteger INBOX_FRAMES = new AtomicInteger();
+
+    @MockitoBean
+    UserServiceClient userServiceClient;
+
+    @Test
+    @Tag("benchmark")
+    void messagesPerSecondByGroupSize() {
+        long roomId = 1;
+        for (int groupSize : new int[] {2, 10, 100, 500}) {
+            ChatRoom room = room(roomId++, groupSize > 2);
+            List<Long> members = members(groupSize);
+            int messages = Math.max(20, 2_000 / groupSize);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < messages; i++) {
+                ChatMessage m = message(room.getId(), "g" + groupSize + "-" + i);
+                inboxDeliveryService.recordAndDispatch(room, m, Map.of("messageId", m.getMessageId()), members);
+            }
+            double batched = messages / ((System.nanoTime() - start) / 1e9);
+
+            // The legacy path is orders of magnitude slower on big groups; a few samples are enough
+            int legacyMessages = groupSize >= 100 ? 3 : messages;
+            start = System.nanoTime();
+            for (int i = 0; i < legacyMessages; i++) {
+                legacyTwoPassFanOut(room, message(room.getId(), "l" + groupSize + "-" + i), members);
+            }
+            double legacy = legacyMessages / ((System.nanoTime() - start) / 1e9);
+            log.info(String.format("groupSize=%d messages=%d batched=%.0f msg/s legacy=%.1f msg/s",
+                    groupSize, messages, batched, legacy));
+            String prefix = "g" + groupSize + "-";
+            assertEquals((long) messages * (groupSize - 1), deliveryRepository.findAll().stream()
+                    .filter(d -> d.getMsgId().startsWith(prefix)).count(), "one row per recipient");
+            if (groupSize >= 100) {
+                assertTrue(batched > legacy, groupSize + " members: " + batched + " vs " + legacy + " msg/s");
+            }
+        }
+    }
+
+    /** The previous shape: two passes, each with a lookup and a save per member. */
+    private void legacyTwoPassFanOut(ChatRoom room, ChatMessage m, List<Long> members) {
+        for (int pass = 0; pass < 2; pass++) {
+            for (Long memberId : members) {
+                if (memberId.equals(m.getSenderId())) continue;
+                MessageDelivery d = deliveryRepository.findByMsgIdAndUserId(m.getMessageId(), memberId).orElseGet(() -> {
+                    MessageDelivery created = new MessageDelivery();
+                    created.setMsgId(m.getMessageId());
+                    created.setUserId(memberId);
+                    created.setRoomId(room.getId());
+                    return deliveryRepository.save(created);
+                });
+                d.setStatus(MessageDeliveryStatus.SENT_TO_WS);
+                deliveryRepository.saveAndFlush(d);
+            }
+        }
+    }
+
+    @Test
+    void fanOutIsSinglePassAndIdempotent() {
+        ChatRoom room = room(900L, true);
+        List<Long> members = members(100);
+        ChatMessage m = message(room.getId(), "idem-1");
+        int framesBefore = INBOX_FRAMES.get();
+
+        inboxDeliveryService.recordAndDispatch(room, m, null, members);
+        inboxDeliveryService.recordAndDispatch(room, m, null, members);
+
+        // Author is skipped; one row per recipient survives the retry
+        assertEquals(99, deliveryRepository.findAll().stream().filter(d -> "idem-1".equals(d.getMsgId())).count());
+        assertEquals(MessageDeliveryStatus.SENT_TO_WS, deliveryRepository.findByMsgIdAndUserId("idem-1", 2L).orElseThrow().getStatus());
+        assertEquals(2 * 99, INBOX_FRAMES.get() - framesBefore);
+    }
+
+    private static ChatRoom room(Long id, boolean group) {
+        ChatRoom room = new ChatRoom();
+        room.setId(id);
+        room.setRoomId("room-" + id);
+        room.setGroup(group);
+        return room;
+    }
+
+    private static List<Long> members(int n) {
+        List<Long> members = new ArrayList<>(n);
+        for (long u = 1; u <= n; u++) members.add(u);
+        return members;
+    }
+
+    private static ChatMessage message(Long roomId, String messageId) {
+        ChatMessage m = new ChatMessage();
+        m.setRoomId(roomId);
+        m.setSenderId(1L);
+        m.setMessageId(messageId);
+        m.setType(MessageType.TEXT);
+        m.setServerTs(Instant.now());
+        return m;
+    }
+}
@@ -1,72 +1,205 @@
 package com.om.Real_Time_Communication;
 
 import com.om.Real_Time_Communication.controller.MessageController;
+import com.om.Real_Time_Communication.dto.AckDto;
 import com.om.Real_Time_Communication.dto.ChatSendDto;
 import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
 import com.om.Real_Time_Communication.models.MessageType;
+import com.om.Real_Time_Communication.presence.PerRoomDispatcher;
+import com.om.Real_Time_Communication.presence.PerRoomDispatcher.OverflowPolicy;
+import com.om.Real_Time_Communication.service.InboxDeliveryService;
 import com.om.Real_Time_Communication.service.MessageService;
+import com.om.Real_Time_Communication.service.OrderedMessageService;
+import com.om.Real_Time_Communication.service.RoomAccessCache;
+import com.om.Real_Time_Communication.service.RoomAccessCache.RoomAccess;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.messaging.support.ExecutorSubscribableChannel;
 import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.core.task.TaskExecutor;
 
 import java.security.Principal;
+import java.time.Instant;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 /**
  * Simple load test that simulates 100 users each sending 20 messages
- * rapidly to the MessageController.
+ * rapidly to the MessageController, comparing the blocking send path
+ * against the asynchronous one with a simulated 2ms persistence cost.
  */
 public class MessageBroadcastPerformanceTest {
 
+    private static final Logger log = LoggerFactory.getLogger(MessageBroadcastPerformanceTest.class);
+
+    private static final int USERS = 100;
+    private static final int MESSAGES_PER_USER = 20;
+    private static final int ROOMS = 50;
+    private static final int INBOUND_THREADS = 8; // stands in for the clientInboundChannel pool
+
     @Test
+    @Tag("benchmark")
     void simulateConcurrentSend() throws Exception {
-        // Mock dependencies
-        MessageService service = mock(MessageService.class);
-        ChatMessage saved = new ChatMessage();
-        saved.setRoomId(1L);
-        saved.setMessageId("id");
-        when(service.saveInbound(anyLong(), anyLong(), any(ChatSendDto.class))).thenReturn(saved);
-        when(service.toRoomEvent(any(ChatMessage.class))).thenReturn(Map.of("type", "test"));
-
-        // Real messaging template with in-memory channel
-        SimpMessagingTemplate template = new SimpMessagingTemplate(new ExecutorSubscribableChannel());
-        TaskExecutor executor = new ConcurrentTaskExecutor(Executors.newFixedThreadPool(8));
-
-        MessageController controller = new MessageController();
-        ReflectionTestUtils.setField(controller, "messageService", service);
-        ReflectionTestUtils.setField(controller, "messagingTemplate", template);
-        ReflectionTestUtils.setField(controller, "messageTaskExecutor", executor);
-
-        int users = 100;
-        int messagesPerUser = 20;
-        ExecutorService pool = Executors.newFixedThreadPool(32);
-        CountDownLatch latch = new CountDownLatch(users);
-
-        for (int u = 0; u < users; u++) {
+        double blocking = run(false);
+        double async = run(true);
+        log.info(String.format("sends/s blocking=%.0f async=%.0f (x%.1f)", blocking, async, async / blocking));
+        assertTrue(async > blocking, "async " + async + " vs blocking " + blocking + " sends/s");
+    }
+
+    @Test
+    void overloadIsSignalledInsteadOfBlocking() throws Exception {
+        AtomicInteger retries = new AtomicInteger();
+        CountDownLatch persistence = new CountDownLatch(1); // persistence stays blocked until the sends return
+        Harness h = new Harness(new PerRoomDispatcher(1, 1, 64, OverflowPolicy.REJECT, 60_000L), persistence, retries);
+        Principal p = () -> "7";
+        CountDownLatch sent = new CountDownLatch(1);
+        Thread inbound = new Thread(() -> {
+            for (int m = 0; m < 10; m++) {
+                h.controller.sendToRoom("1", newDto(), p, null);
+            }
+            sent.countDown();
+        });
+        inbound.start();
+        try {
+            // The blocking path would hold the caller until persistence is released
+            assertTrue(sent.await(10, TimeUnit.SECONDS), "inbound thread must not wait for persistence");
+            assertEquals(0, h.acks.get(), "nothing was persisted while the sends returned");
+            assertTrue(retries.get() >= 8, "full mailbox should answer RETRY");
+        } finally {
+            persistence.countDown();
+        }
+    }
+
+    @Test
+    void droppedFromAFullMailboxIsAnsweredWithRetry() throws Exception {
+        AtomicInteger retries = new AtomicInteger();
+        CountDownLatch persistence = new CountDownLatch(1);
+        Harness h = new Harness(new PerRoomDispatcher(1, 1, 64, OverflowPolicy.DROP_OLDEST, 60_000L), persistence, retries);
+        try {
+            for (int m = 0; m < 5; m++) h.ordered.saveAndBroadcastAsync("1", 7L, newDto());
+            assertTrue(retries.get() >= 3, "each send dropped under DROP_OLDEST is answered RETRY: " + retries.get());
+            assertEquals(0, h.failures.get(), "and never FAILED");
+        } finally {
+            persistence.countDown();
+        }
+    }
+
+    private double run(boolean async) throws Exception {
+        int total = USERS * MESSAGES_PER_USER;
+        Harness h = new Harness(new PerRoomDispatcher(32, 2_000, 64, OverflowPolicy.REJECT, 60_000L), 2, null, null);
+
+        ExecutorService pool = Executors.newFixedThreadPool(INBOUND_THREADS);
+        CountDownLatch latch = new CountDownLatch(USERS);
+        long start = System.nanoTime();
+        for (int u = 0; u < USERS; u++) {
             final long userId = u;
             pool.submit(() -> {
                 Principal p = () -> String.valueOf(userId);
-                for (int m = 0; m < messagesPerUser; m++) {
-                    ChatSendDto dto = new ChatSendDto();
-                    dto.setMessageId(UUID.randomUUID().toString());
-                    dto.setType(MessageType.TEXT);
-                    controller.sendToRoom("1L", dto, p, null);
+                String roomId = String.valueOf(userId % ROOMS);
+                try {
+                    for (int m = 0; m < MESSAGES_PER_USER; m++) {
+                        if (async) {
+                            h.controller.sendToRoom(roomId, newDto(), p, null);
+                        } else {
+                            h.ordered.saveAndBroadcastOrdered(roomId, userId, newDto());
+                        }
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    latch.countDown();
                 }
-                latch.countDown();
             });
         }
 
-        latch.await();
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 60_000;
+        while (h.acks.get() < total && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        long elapsed = System.nanoTime() - start;
         pool.shutdown();
+        assertEquals(total, h.acks.get());
+        return total / (elapsed / 1e9);
+    }
+
+    private static ChatSendDto newDto() {
+        ChatSendDto dto = new ChatSendDto();
+        dto.setMessageId(UUID.randomUUID().toString());
+        dto.setType(MessageType.TEXT);
+        return dto;
+    }
+
+    private static final class Harness {
+        final AtomicInteger acks = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final OrderedMessageService ordered;
+        final MessageController controller = new MessageController();
+
+        Harness(PerRoomDispatcher dispatcher, CountDownLatch persistGate, AtomicInteger retries) {
+            this(dispatcher, 0, persistGate, retries);
+        }
+
+        Harness(PerRoomDispatcher dispatcher, long persistMs, CountDownLatch persistGate, AtomicInteger retries) {
+            // Mock dependencies
+            MessageService service = mock(MessageService.class);
+            when(service.saveInbound(anyLong(), anyLong(), any(ChatSendDto.class))).thenAnswer(inv -> {
+                if (persistGate != null) persistGate.await(30, TimeUnit.SECONDS);
+                else Thread.sleep(persistMs);
+                ChatSendDto dto = inv.getArgument(2);
+                ChatMessage saved = new ChatMessage();
+                saved.setRoomId(inv.getArgument(0));
+                saved.setMessageId(dto.getMessageId());
+                saved.setServerTs(Instant.now());
+                return saved;
+            });
+            when(service.toRoomEvent(any(ChatMessage.class))).thenReturn(Map.of("type", "test"));
+
+            RoomAccessCache rooms = mock(RoomAccessCache.class);
+            when(rooms.room(anyString())).thenAnswer(inv -> {
+                ChatRoom room = new ChatRoom();
+                room.setId(Long.valueOf(inv.<String>getArgument(0)));
+                return new RoomAccess(room, List.of(1L, 2L), Set.of(1L, 2L));
+            });
+            RoomMembershipService membership = mock(RoomMembershipService.class);
+            when(membership.memberIds(anyLong())).thenReturn(List.of(1L, 2L));
+
+            // Messaging template that counts what the sender receives on /queue/ack
+            SimpMessagingTemplate template = mock(SimpMessagingTemplate.class);
+            doAnswer(inv -> {
+                Object payload = inv.getArgument(2);
+                if (payload instanceof AckDto) acks.incrementAndGet();
+                else if (retries != null && payload instanceof Map<?, ?> m && "RETRY".equals(m.get("deliveryStatus"))) {
+                    retries.incrementAndGet();
+                } else if (payload instanceof Map<?, ?> m && "FAILED".equals(m.get("deliveryStatus"))) {
+                    failures.incrementAndGet();
+                }
+                return null;
+            }).when(template).convertAndSendToUser(anyString(), eq("/queue/ack"), any());
+            TaskExecutor executor = new ConcurrentTaskExecutor(Executors.newFixedThreadPool(8));
+
+            ordered = new OrderedMessageService(dispatcher, service, template, rooms, membership,
+                    mock(InboxDeliveryService.class), 10_000, 500);
+
+            ReflectionTestUtils.setField(controller, "messageService", service);
+            ReflectionTestUtils.setField(controller, "messagingTemplate", template);
+            ReflectionTestUtils.setField(controller, "orderedMessageService", ordered);
+            ReflectionTestUtils.setField(controller, "messageTaskExecutor", executor);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,187 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.service.MessagePagingService;
+import com.om.Real_Time_Communication.service.MessagePagingService.PageDto;
+import com.om.Real_Time_Communication.utility.MessageCursor;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Fetches history pages from a room holding {@value #DEFAULT_ROWS} messages (override with
+ * {@code -Drtc.bench.history.rows}) and compares keyset paging with OFFSET paging at growing
+ * depth. Keyset latency should stay flat; OFFSET grows with the depth.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({MessagePagingService.class, IdGeneratorConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // bulk load commits in batches
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@TestPropertySource(properties = {
+        // On disk: a million rows would otherwise live on the test heap
+        "spring.datasource.url=jdbc:h2:file:./target/rtc-history-bench;MODE=MySQL",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@Tag("benchmark")
+class MessageHistoryPagingBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageHistoryPagingBenchmarkTest.class);
+
+    static final int DEFAULT_ROWS = 1_000_000;
+    static final long ROOM = 1L;
+    static final long VIEWER = 2L;
+    static final int PAGE = 50;
+
+    @Autowired MessagePagingService paging;
+    @Autowired JdbcTemplate jdbc;
+
+    private int rows;
+    private long firstId;
+    private final Instant base = Instant.parse("2024-01-01T00:00:00Z");
+
+    @BeforeAll
+    void load() {
+        rows = Integer.getInteger("rtc.bench.history.rows", DEFAULT_ROWS);
+        long start = System.nanoTime();
+        String sql = "INSERT INTO chat_message (id, room_id, sender_id, message_id, server_ts, type, e2ee, " +
+                "deleted_by_sender, deleted_by_receiver, deleted_for_everyone, system_message) " +
+                "VALUES (?,?,?,?,?,'TEXT',false,false,?,?,false)";
+        int batch = 5_000;
+        for (int from = 0; from < rows; from += batch) {
+            List<Object[]> args = new ArrayList<>(batch);
+            for (int i = from; i < Math.min(rows, from + batch); i++) {
+                // Pairs of messages share a timestamp so the id tie-breaker is exercised
+                Timestamp ts = Timestamp.from(base.plus(i / 2, ChronoUnit.MICROS));
+                long sender = (i % 2 == 0) ? 1L : VIEWER;
+                boolean deletedForViewer = sender != VIEWER && i % 10 == 0;
+                boolean deletedForEveryone = i % 97 == 0;
+                args.add(new Object[] {i + 1L, ROOM, sender, "m-" + i, ts, deletedForViewer, deletedForEveryone});
+            }
+            jdbc.batchUpdate(sql, args);
+        }
+        // A neighbouring room that must never leak into pages
+        jdbc.update("INSERT INTO chat_message (id, room_id, sender_id, message_id, server_ts, type, e2ee, " +
+                "deleted_by_sender, deleted_by_receiver, deleted_for_everyone, system_message) " +
+                "VALUES (?, 2, 1, 'other', ?, 'TEXT', false, false, false, false, false)", rows + 1L, Timestamp.from(base));
+        firstId = jdbc.queryForObject("SELECT MIN(id) FROM chat_message WHERE room_id = ?", Long.class, ROOM);
+        log.info(String.format("loaded %d messages in %.1f s", rows, (System.nanoTime() - start) / 1e9));
+    }
+
+    @AfterAll
+    void drop() {
+        jdbc.execute("DROP ALL OBJECTS DELETE FILES");
+    }
+
+    @Test
+    void pageFetchIsFlatAcrossDepth() {
+        log.info(String.format("%10s %12s %12s", "depth", "keyset ms", "offset ms"));
+        double deepestKeyset = 0, deepestOffset = 0;
+        for (double fraction : new double[] {0.0, 0.1, 0.5, 0.9, 0.999}) {
+            int depth = (int) (rows * fraction);
+
+            // A slightly different page each run so no result cache can answer
+            double keyset = medianMs(15, 5, r -> paging.pageBackward(ROOM, VIEWER, cursorAtDepth(depth + r), PAGE));
+            // Same index order, but every skipped row is still read
+            double offset = medianMs(1, 0, r -> jdbc.queryForList(
+                    "SELECT * FROM chat_message WHERE room_id = ? " +
+                            "ORDER BY room_id DESC, server_ts DESC, id DESC LIMIT ? OFFSET ?",
+                    ROOM, PAGE, depth + r));
+            log.info(String.format("%10d %12.3f %12.3f", depth, keyset, offset));
+            deepestKeyset = keyset;
+            deepestOffset = offset;
+        }
+        assertTrue(deepestKeyset < deepestOffset, "keyset must beat OFFSET at depth");
+    }
+
+    @Test
+    void pagesAreContiguousAndFilteredForTheViewer() {
+        String cursor = cursorAtDepth(rows / 2);
+        PageDto page = paging.pageBackward(ROOM, VIEWER, cursor, PAGE);
+        ChatMessage previousOldest = null;
+        for (int p = 0; p < 5; p++) {
+            assertEquals(PAGE, page.data.size(), "filtered rows must not shorten a page");
+            for (int i = 1; i < page.data.size(); i++) {
+                assertTrue(before(page.data.get(i - 1), page.data.get(i)), "ascending within a page");
+            }
+            if (previousOldest != null) {
+                assertTrue(before(page.data.get(page.data.size() - 1), previousOldest), "no overlap between pages");
+                assertEquals(expectedNewerVisible(page.data.get(page.data.size() - 1)), previousOldest.getMessageId(),
+                        "no visible message skipped between pages");
+            }
+            for (ChatMessage m : page.data) {
+                assertEquals(ROOM, m.getRoomId());
+                assertFalse(m.isDeletedForEveryone());
+                assertFalse(!m.getSenderId().equals(VIEWER) && m.isDeletedByReceiver());
+            }
+            previousOldest = page.data.get(0);
+            page = paging.pageBackward(ROOM, VIEWER, page.prev, PAGE);
+        }
+
+        // Forward from the same point walks the other way
+        PageDto forward = paging.pageForward(ROOM, VIEWER, cursor, PAGE);
+        assertEquals(PAGE, forward.data.size());
+        assertTrue(forward.hasMore);
+
+        // Newest page with no cursor
+        PageDto newest = paging.pageBackward(ROOM, VIEWER, null, PAGE);
+        assertEquals(PAGE, newest.data.size());
+        assertNotNull(newest.prev);
+    }
+
+    /** Cursor of the message {@code depth} rows below the newest, from the load pattern. */
+    private String cursorAtDepth(int depth) {
+        int i = rows - 1 - Math.min(depth, rows - 1);
+        return MessageCursor.encode(base.plus(i / 2, ChronoUnit.MICROS), firstId + i);
+    }
+
+    /** Next message after {@code m} that the viewer can see, from the load pattern. */
+    private String expectedNewerVisible(ChatMessage m) {
+        int i = Integer.parseInt(m.getMessageId().substring(2)) + 1;
+        while (i % 97 == 0 || (i % 2 == 0 && i % 10 == 0)) i++;
+        return "m-" + i;
+    }
+
+    private static boolean before(ChatMessage a, ChatMessage b) {
+        int c = a.getServerTs().compareTo(b.getServerTs());
+        return c < 0 || (c == 0 && a.getId() < b.getId());
+    }
+
+    private static double medianMs(int reps, int warmups, IntConsumer work) {
+        for (int i = 0; i < warmups; i++) work.accept(reps + i);
+        double[] samples = new double[reps];
+        for (int i = 0; i < reps; i++) {
+            long start = System.nanoTime();
+            work.accept(i);
+            samples[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(samples);
+        return samples[reps / 2];
+    }
+}
@@ -2,6 +2,7 @@ package com.om.Real_Time_Communication;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.om.Real_Time_Communication.Repository.*;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
 import com.om.Real_Time_Communication.dto.MessageDto;
 import com.om.Real_Time_Communication.models.Message;
 import com.om.Real_Time_Communication.models.MessageType;
@@ -29,7 +30,7 @@ import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @DataJpaTest
-@Import({MessageService.class, MessageServiceIntegrationTest.Config.class})
+@Import({MessageService.class, MessageServiceIntegrationTest.Config.class, IdGeneratorConfig.class})
 class MessageServiceIntegrationTest {
 
     @TestConfiguration
@@ -70,13 +71,8 @@ class MessageServiceIntegrationTest {
         }
 
         @Bean
-        PendingMessageService pendingMessageService() {
-            return mock(PendingMessageService.class);
-        }
-
-        @Bean
-        UndeliveredMessageStore undeliveredMessageStore() {
-            return mock(UndeliveredMessageStore.class);
+        OfflineMessageQueue offlineMessageQueue() {
+            return mock(OfflineMessageQueue.class);
         }
 
         @Bean
@@ -91,6 +87,9 @@ class MessageServiceIntegrationTest {
     @MockitoBean
     UserServiceClient userServiceClient;
 
+    @MockitoBean
+    RoomAccessCache roomAccessCache;
+
     @Autowired
     MessageService messageService;
 
@@ -47,7 +47,7 @@ class MessageServiceTest {
     @Mock ChatRoomService aclService;
     @Mock DirectRoomPolicy directPolicy;
     @Mock RoomMembershipService membership;
-    @Mock UndeliveredMessageStore undeliveredStore;
+    @Mock OfflineMessageQueue offlineQueue;
     @Mock InboxDeliveryService inboxDeliveryService;
 
     @InjectMocks
@@ -111,7 +111,7 @@ class MessageServiceTest {
         service.handlePrivateMessage(dto);
 
         verify(eventPublisher).publish(any());
-        verify(undeliveredStore).record(eq(3L), anyString(), any());
+        verify(offlineQueue).enqueue(3L, saved);
         verify(messagingTemplate).convertAndSendToUser(eq("1"), anyString(), eq(dto));
         verify(messagingTemplate, never()).convertAndSendToUser(eq("3"), anyString(), eq(dto), any(Map.class));
     }
@@ -201,8 +201,9 @@ class MessageServiceTest {
 
         ArgumentCaptor<List<Long>> captor = ArgumentCaptor.forClass(List.class);
         verify(eventPublisher).publishNewMessage(eq(10L), eq("g1"), eq(1L), captor.capture(), eq(true), isNull());
-        verify(inboxDeliveryService).sendInboxEvent(saved);
         assertEquals(List.of(2L,3L), captor.getValue());
+        // Delivery rows are written with the message, not left to the best-effort live fan-out
+        verify(inboxDeliveryService).recordPending(saved, List.of(1L,2L,3L));
     }
 }
 
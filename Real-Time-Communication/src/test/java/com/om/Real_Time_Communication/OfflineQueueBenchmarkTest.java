@@ -0,0 +1,229 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.MessageDeliveryRepository;
+import com.om.Real_Time_Communication.Repository.MessageRepository;
+import com.om.Real_Time_Communication.client.UserServiceClient;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.dto.MessageDto;
+import com.om.Real_Time_Communication.models.Message;
+import com.om.Real_Time_Communication.models.MessageDeliveryStatus;
+import com.om.Real_Time_Communication.models.MessageType;
+import com.om.Real_Time_Communication.service.OfflineMessageQueue;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Queues private messages for {@code -Drtc.bench.offline.users} offline users (default 100k) and
+ * compares the heap the queue keeps against the previous per-receiver in-memory lists, then times
+ * reconnect drains and checks ordering, the ack-driven window and both overflow policies.
+ * The database is file-backed with a small page cache so its own tables do not count as heap.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({OfflineMessageQueue.class, OfflineQueueBenchmarkTest.Config.class, IdGeneratorConfig.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // rows are committed as in production
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/rtc-offline-bench;MODE=MySQL;CACHE_SIZE=8192",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "rtc.offline.max-per-user=250",
+        "rtc.offline.drain.page-size=100",
+        "rtc.offline.drain.window=200"
+})
+class OfflineQueueBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OfflineQueueBenchmarkTest.class);
+
+    static final int USERS = Integer.getInteger("rtc.bench.offline.users", 100_000);
+    static final int PER_USER = 2;
+    static final int DEEP_USERS = 200;
+    static final int DEEP = 240;
+
+    @Autowired OfflineMessageQueue queue;
+    @Autowired MessageRepository messageRepository;
+    @Autowired MessageDeliveryRepository deliveryRepository;
+
+    @MockitoBean UserServiceClient userServiceClient;
+
+    static final Map<String, List<MessageDto>> FRAMES = new ConcurrentHashMap<>();
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        SimpMessagingTemplate messagingTemplate() {
+            ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+            channel.subscribe(msg -> {
+                String user = SimpMessageHeaderAccessor.wrap(msg).getDestination();
+                FRAMES.computeIfAbsent(user, k -> new CopyOnWriteArrayList<>()).add((MessageDto) msg.getPayload());
+            });
+            SimpMessagingTemplate template = new SimpMessagingTemplate(channel);
+            template.setMessageConverter(new SimpleMessageConverter());
+            return template;
+        }
+    }
+
+    /** The previous store: every pending DTO kept per receiver in the heap until acked. */
+    static final class LegacyPending {
+        final ConcurrentMap<String, List<MessageDto>> pending = new ConcurrentHashMap<>();
+
+        void store(MessageDto dto) {
+            pending.computeIfAbsent(dto.getReceiverId(), k -> new CopyOnWriteArrayList<>()).add(dto);
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void heapAndDrainLatencyAtScale() {
+        List<Message> shared = messages("bulk", PER_USER);
+        List<Message> deep = messages("deep", DEEP);
+
+        long base = usedHeap();
+        LegacyPending legacy = new LegacyPending();
+        for (int u = 0; u < USERS; u++) {
+            for (Message m : shared) legacy.store(dto(m, 1_000_000L + u));
+        }
+        long legacyBytes = usedHeap() - base;
+        assertEquals(USERS, legacy.pending.size());
+        legacy = null;
+
+        base = usedHeap();
+        long t0 = System.nanoTime();
+        for (int u = 0; u < USERS; u++) {
+            for (Message m : shared) assertTrue(queue.enqueue(1_000_000L + u, m));
+        }
+        double enqueueUs = (System.nanoTime() - t0) / 1e3 / (USERS * PER_USER);
+        long queueBytes = usedHeap() - base;
+
+        for (int u = 0; u < DEEP_USERS; u++) {
+            for (Message m : deep) queue.enqueue(5_000_000L + u, m);
+        }
+
+        long[] drainNs = new long[DEEP_USERS];
+        for (int u = 0; u < DEEP_USERS; u++) {
+            long userId = 5_000_000L + u;
+            long s = System.nanoTime();
+            int sent = queue.drain(userId);
+            drainNs[u] = System.nanoTime() - s;
+            assertEquals(200, sent, "first window");
+        }
+        Arrays.sort(drainNs);
+
+        log.info(String.format("offline queue, %d users x %d messages | legacy heap %.1f MB | row-backed heap %.1f MB, enqueue %.1f us | "
+                        + "reconnect drain of first %d of %d: p50 %.2f ms p99 %.2f ms",
+                USERS, PER_USER, legacyBytes / 1e6, queueBytes / 1e6, enqueueUs,
+                200, DEEP, drainNs[DEEP_USERS / 2] / 1e6, drainNs[(int) (DEEP_USERS * 0.99)] / 1e6));
+        assertTrue(queueBytes < legacyBytes, "queue " + queueBytes + " B vs legacy " + legacyBytes + " B");
+
+        // Ordered, and the rest only follows acks
+        long userId = 5_000_000L;
+        List<MessageDto> got = FRAMES.get("/user/" + userId + "/queue/private");
+        assertEquals(200, got.size());
+        for (int i = 0; i < got.size(); i++) assertEquals(deep.get(i).getId(), got.get(i).getId());
+        for (int i = 0; i < 99; i++) queue.ack(userId, deep.get(i).getId());
+        assertEquals(200, got.size(), "window still more than half full");
+        queue.ack(userId, deep.get(99).getId());
+        assertEquals(DEEP, got.size());
+        assertEquals(deep.get(DEEP - 1).getId(), got.get(DEEP - 1).getId());
+        assertEquals(DEEP - 100, queue.inFlight(userId));
+        for (int i = 100; i < DEEP; i++) queue.ack(userId, deep.get(i).getId());
+        assertEquals(0, queue.inFlight(userId));
+        assertEquals(0, deliveryRepository.countOffline(userId,
+                EnumSet.of(MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS)));
+
+        // Sent but never acked: delivered again on the next connect
+        long other = 5_000_001L;
+        FRAMES.remove("/user/" + other + "/queue/private");
+        queue.onUserOffline(other);
+        assertEquals(200, queue.drain(other));
+        assertEquals(deep.get(0).getId(), FRAMES.get("/user/" + other + "/queue/private").get(0).getId());
+    }
+
+    @Test
+    void overflowDropsTheOldest() {
+        List<Message> many = messages("over", 300);
+        long userId = 9_000_001L;
+        for (Message m : many) assertTrue(queue.enqueue(userId, m));
+        Collection<MessageDeliveryStatus> queued = EnumSet.of(MessageDeliveryStatus.PENDING, MessageDeliveryStatus.SENT_TO_WS);
+        long left = deliveryRepository.countOffline(userId, queued);
+        // Trimmed back to the cap each time it runs 1/8 over
+        assertTrue(left >= 250 && left <= 250 + 250 / 8, "queued: " + left);
+        String oldest = deliveryRepository.findOfflinePage(userId, queued, 0L, PageRequest.of(0, 1)).get(0).getMsgId();
+        assertEquals("pm:" + many.get((int) (300 - left)).getId(), oldest);
+    }
+
+    @Test
+    void rejectKeepsTheQueueAndRefusesNewMessages() {
+        OfflineMessageQueue strict = new OfflineMessageQueue(deliveryRepository, messageRepository,
+                new SimpMessagingTemplate(new ExecutorSubscribableChannel()), null, null, 3, "reject", 10, 10, 100);
+        List<Message> four = messages("reject", 4);
+        long userId = 9_000_002L;
+        assertTrue(strict.enqueue(userId, four.get(0)));
+        assertTrue(strict.enqueue(userId, four.get(0)), "a retried enqueue is accepted");
+        for (int i = 1; i < 3; i++) assertTrue(strict.enqueue(userId, four.get(i)), "and did not take a slot");
+        assertFalse(strict.enqueue(userId, four.get(3)));
+        strict.ack(userId, four.get(0).getId());
+        assertTrue(strict.enqueue(userId, four.get(3)), "an ack frees a slot");
+    }
+
+    private List<Message> messages(String prefix, int n) {
+        List<Message> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            Message m = new Message();
+            m.setMessageId(prefix + "-" + i + "-" + UUID.randomUUID());
+            m.setSenderId("1");
+            m.setReceiverId("2");
+            m.setType(MessageType.TEXT);
+            m.setContent("offline message " + i + " ".repeat(48));
+            m.setGroupMessage(false);
+            m.setTimestamp(LocalDateTime.now());
+            out.add(messageRepository.save(m));
+        }
+        return out;
+    }
+
+    private static MessageDto dto(Message m, long receiverId) {
+        MessageDto dto = new MessageDto();
+        dto.setId(m.getId());
+        dto.setSenderId(m.getSenderId());
+        dto.setReceiverId(String.valueOf(receiverId));
+        dto.setContent(new String(m.getContent().toCharArray())); // each receiver's copy came off the wire separately
+        dto.setType(m.getType());
+        dto.setTimestamp(m.getTimestamp());
+        dto.setGroupMessage(false);
+        dto.setMessageId(m.getMessageId());
+        return dto;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,266 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.OutboundFloodGuardInterceptor;
+import com.om.Real_Time_Communication.config.OutboundFloodGuardInterceptor.Priority;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Slow-consumer simulation on an executor-backed outbound channel: one session takes 0.5 ms per
+ * frame and is flooded with typing frames, while it and a fast session also get private messages.
+ * Compares the previous guard (its permit came back as soon as the frame was queued, so it never
+ * pushed back) with the credit-based one: typing frames handed to the slow session, whether the
+ * newest typing state still arrives, every private message delivered, and the fast session's
+ * private-message latency. Also checks that credit state ends with the session.
+ */
+class OutboundFloodGuardBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboundFloodGuardBenchmarkTest.class);
+
+    static final int TYPING = 4000;
+    static final int CRITICAL_EVERY = 20;
+    static final long SLOW_FRAME_NANOS = 500_000;
+
+    /** The previous guard. */
+    static final class LegacyGuard implements ChannelInterceptor {
+        static final Pattern LOW_PRIORITY = Pattern.compile("^/topic/(typing|presence|heartbeat)(\\.|/).*");
+        final ConcurrentMap<String, Semaphore> permits = new ConcurrentHashMap<>();
+
+        @Override
+        public Message<?> preSend(Message<?> msg, MessageChannel ch) {
+            SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.wrap(msg);
+            String sessionId = acc.getSessionId();
+            if (sessionId == null) return msg;
+            String dest = acc.getDestination();
+            Semaphore sem = permits.computeIfAbsent(sessionId, k -> new Semaphore(1000));
+            boolean acquired = sem.tryAcquire();
+            if (!acquired) {
+                if (dest != null && LOW_PRIORITY.matcher(dest).matches()) return null;
+                try { acquired = sem.tryAcquire(25, TimeUnit.MILLISECONDS); } catch (InterruptedException ignored) {}
+                if (!acquired) return null;
+            }
+            return MessageBuilder.fromMessage(msg).setHeader("x-release-permit", Boolean.TRUE).build();
+        }
+
+        @Override
+        public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+            SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.wrap(message);
+            String sessionId = acc.getSessionId();
+            if (sessionId != null && Boolean.TRUE.equals(acc.getHeader("x-release-permit"))) {
+                Semaphore sem = permits.get(sessionId);
+                if (sem != null) sem.release();
+            }
+        }
+    }
+
+    /** What each session's consumer received. */
+    static final class Consumer {
+        final Map<String, List<String>> typing = new ConcurrentHashMap<>();
+        final Map<String, List<String>> critical = new ConcurrentHashMap<>();
+        final List<Long> fastCriticalLatencyNs = Collections.synchronizedList(new ArrayList<>());
+
+        void handle(Message<?> msg) {
+            String sid = SimpMessageHeaderAccessor.getSessionId(msg.getHeaders());
+            if ("slow".equals(sid)) LockSupport.parkNanos(SLOW_FRAME_NANOS);
+            String dest = SimpMessageHeaderAccessor.getDestination(msg.getHeaders());
+            String body = (String) msg.getPayload();
+            if (dest.endsWith("/typing")) {
+                typing.computeIfAbsent(sid, k -> Collections.synchronizedList(new ArrayList<>())).add(body);
+            } else {
+                critical.computeIfAbsent(sid, k -> Collections.synchronizedList(new ArrayList<>())).add(body);
+                if ("fast".equals(sid)) {
+                    fastCriticalLatencyNs.add(System.nanoTime() - (Long) msg.getHeaders().get("sentAt"));
+                }
+            }
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void slowConsumerSimulation() throws Exception {
+        Consumer legacy = simulate(new LegacyGuard(), null);
+        OutboundFloodGuardInterceptor guard = guard();
+        Consumer credit = simulate(guard, guard);
+
+        int criticalPerSession = TYPING / CRITICAL_EVERY;
+        long legacyP99 = p99(legacy.fastCriticalLatencyNs);
+        long creditP99 = p99(credit.fastCriticalLatencyNs);
+        log.info(String.format("slow consumer, %d typing frames | previous guard: %d typing frames handled, fast p99 %.1f ms | "
+                        + "credit guard: %d typing frames handled (newest kept), fast p99 %.1f ms",
+                TYPING, legacy.typing.get("slow").size(), legacyP99 / 1e6,
+                credit.typing.get("slow").size(), creditP99 / 1e6));
+
+        assertEquals(TYPING, legacy.typing.get("slow").size(), "the previous guard never pushed back");
+        assertEquals(criticalPerSession, credit.critical.get("slow").size(), "private messages are never shed");
+        assertEquals(criticalPerSession, credit.critical.get("fast").size());
+        List<String> slowTyping = credit.typing.get("slow");
+        assertTrue(slowTyping.size() < TYPING / 2, "typing frames handled: " + slowTyping.size());
+        assertTrue(slowTyping.contains("t" + (TYPING - 1)), "the newest typing state arrives");
+        assertTrue(creditP99 < legacyP99, "fast p99 " + creditP99 + " ns vs previous " + legacyP99 + " ns");
+
+        guard.onDisconnect(disconnect("slow"));
+        guard.onDisconnect(disconnect("fast"));
+        assertEquals(0, guard.trackedSessions());
+    }
+
+    @Test
+    void creditStateEndsWithTheSession() {
+        OutboundFloodGuardInterceptor guard = guard();
+        LegacyGuard legacy = new LegacyGuard();
+        MessageChannel channel = new ExecutorSubscribableChannel();
+        for (int i = 0; i < 10_000; i++) {
+            String sid = "s-" + i;
+            guard.onConnect(connect(sid));
+            guard.preSend(frame(sid, "/queue/private-user" + sid, "m"), channel);
+            legacy.preSend(frame(sid, "/queue/private-user" + sid, "m"), channel);
+            guard.onDisconnect(disconnect(sid));
+        }
+        assertEquals(0, guard.trackedSessions());
+        assertEquals(10_000, legacy.permits.size(), "the previous guard kept a semaphore per session ever seen");
+
+        // Frames after disconnect pass through without recreating state
+        guard.preSend(frame("s-1", "/topic/room/1", "late"), channel);
+        assertEquals(0, guard.trackedSessions());
+    }
+
+    @Test
+    void roomMessagesSurviveAFlood() throws Exception {
+        OutboundFloodGuardInterceptor guard = guard();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        try {
+            ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+            channel.addInterceptor(guard);
+            Consumer consumer = new Consumer();
+            channel.subscribe(consumer::handle);
+            guard.onConnect(connect("slow"));
+            int rooms = 0;
+            for (int i = 0; i < 2000; i++) {
+                channel.send(frame("slow", "/topic/room/1/typing", "t" + i));
+                if (i % 5 == 0) {
+                    channel.send(frame("slow", "/topic/room/1", "r" + i));
+                    rooms++;
+                }
+            }
+            awaitIdle(executor);
+
+            List<String> received = consumer.critical.get("slow");
+            assertEquals(rooms, received.size(), "every room message reaches the flooded session");
+            assertTrue(consumer.typing.get("slow").size() < 2000, "typing frames were shed instead");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void prioritiesAndHeaderInjection() {
+        OutboundFloodGuardInterceptor guard = guard();
+        assertEquals(Priority.LOW, guard.priorityOf("/topic/room/42/typing"));
+        assertEquals(Priority.LOW, guard.priorityOf("/topic/room/42/presence"));
+        assertEquals(Priority.LOW, guard.priorityOf("/topic/typing.42"));
+        assertEquals(Priority.CRITICAL, guard.priorityOf("/topic/room/42"));
+        assertEquals(Priority.CRITICAL, guard.priorityOf("/topic/room/42/reads"));
+        assertEquals(Priority.CRITICAL, guard.priorityOf("/topic/call.room.42"));
+        assertEquals(Priority.CRITICAL, guard.priorityOf("/queue/private-userabc"));
+        assertEquals(Priority.CRITICAL, guard.priorityOf(null));
+
+        guard.onConnect(connect("s"));
+        Message<?> mutable = frame("s", "/topic/room/42", "m");
+        Message<?> out = guard.preSend(mutable, new ExecutorSubscribableChannel());
+        assertSame(mutable, out, "header added in place");
+        assertEquals(Boolean.TRUE, out.getHeaders().get("x-release-permit"));
+    }
+
+    private static OutboundFloodGuardInterceptor guard() {
+        return new OutboundFloodGuardInterceptor(16,
+                "/topic/typing,/topic/presence,/topic/heartbeat,*/typing,*/presence", 32, 1000, null);
+    }
+
+    /** Runs the traffic through an outbound channel on four threads; {@code guard} gets the session events if non-null. */
+    private static Consumer simulate(ChannelInterceptor interceptor, OutboundFloodGuardInterceptor guard) throws Exception {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        try {
+            ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+            channel.setBeanName("clientOutboundChannel");
+            channel.addInterceptor(interceptor);
+            Consumer consumer = new Consumer();
+            channel.subscribe(consumer::handle);
+            if (guard != null) {
+                guard.onConnect(connect("slow"));
+                guard.onConnect(connect("fast"));
+            }
+            for (int i = 0; i < TYPING; i++) {
+                channel.send(frame("slow", "/topic/room/1/typing", "t" + i));
+                if (i % CRITICAL_EVERY == 0) {
+                    channel.send(frame("slow", "/queue/private-userslow", "m" + i));
+                    channel.send(frame("fast", "/queue/private-userfast", "m" + i));
+                }
+            }
+            awaitIdle(executor);
+            return consumer;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void awaitIdle(ThreadPoolExecutor executor) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        int idle = 0;
+        while (idle < 5 && System.nanoTime() < deadline) {
+            idle = executor.getActiveCount() == 0 && executor.getQueue().isEmpty() ? idle + 1 : 0;
+            Thread.sleep(10);
+        }
+    }
+
+    private static long p99(List<Long> latencies) {
+        List<Long> sorted = new ArrayList<>(latencies);
+        Collections.sort(sorted);
+        return sorted.get((int) (sorted.size() * 0.99));
+    }
+
+    /** An outbound MESSAGE the way the broker builds one: headers left mutable for interceptors. */
+    private static Message<String> frame(String sessionId, String destination, String body) {
+        SimpMessageHeaderAccessor acc = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        acc.setSessionId(sessionId);
+        acc.setDestination(destination);
+        acc.setHeader("sentAt", System.nanoTime());
+        acc.setLeaveMutable(true);
+        return MessageBuilder.createMessage(body, acc.getMessageHeaders());
+    }
+
+    private static SessionConnectEvent connect(String sessionId) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.CONNECT);
+        acc.setSessionId(sessionId);
+        return new SessionConnectEvent(OutboundFloodGuardBenchmarkTest.class, MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders()));
+    }
+
+    private static SessionDisconnectEvent disconnect(String sessionId) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        acc.setSessionId(sessionId);
+        return new SessionDisconnectEvent(OutboundFloodGuardBenchmarkTest.class,
+                MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders()), sessionId, CloseStatus.NORMAL);
+    }
+}
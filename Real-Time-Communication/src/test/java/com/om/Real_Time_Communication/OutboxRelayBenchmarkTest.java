@@ -0,0 +1,254 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.Repository.OutboxEventRepository;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.models.OutboxEvent;
+import com.om.Real_Time_Communication.presence.InProcessOutboxSink;
+import com.om.Real_Time_Communication.presence.OutboxPublisher;
+import com.om.Real_Time_Communication.presence.OutboxWriter;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Relays outbox rows through the in-process broker stand-in: statements per batch against the old
+ * per-row completion, commit-to-delivery latency with the relay running, retry/FAILED handling for
+ * unconfirmed events and the purge of published rows.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // the relay commits its own transactions
+@Import({OutboxPublisher.class, OutboxWriter.class, InProcessOutboxSink.class, OutboxRelayBenchmarkTest.Config.class, IdGeneratorConfig.class})
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:rtc-outbox;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "outbox.enabled=true",
+        "outbox.sink=local",
+        "outbox.batch-size=" + OutboxRelayBenchmarkTest.BATCH,
+        "outbox.max-attempts=3",
+        "outbox.purge.retention-ms=60000"
+})
+class OutboxRelayBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelayBenchmarkTest.class);
+
+    static final int BATCH = 500;
+    static final int BACKLOG = 4 * BATCH;
+    static final int LATENCY_EVENTS = 300;
+
+    @Autowired OutboxPublisher publisher;
+    @Autowired OutboxWriter writer;
+    @Autowired InProcessOutboxSink sink;
+    @Autowired OutboxEventRepository repo;
+    @Autowired PlatformTransactionManager txManager;
+    @Autowired EntityManagerFactory emf;
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+
+    private static final AtomicBoolean SUBSCRIBED = new AtomicBoolean();
+    private static volatile Consumer<InProcessOutboxSink.Delivery> handler = d -> {};
+
+    private Statistics stats;
+
+    @BeforeEach
+    void reset() {
+        publisher.stop(); // each test drives the relay itself
+        if (SUBSCRIBED.compareAndSet(false, true)) {
+            sink.subscribe(d -> handler.accept(d));
+        }
+        handler = d -> {};
+        repo.deleteAllInBatch();
+        stats = emf.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @AfterEach
+    void stopRelay() {
+        publisher.stop();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void batchSettlesInTwoStatementsInsteadOfTwoPerRow() {
+        seed(BACKLOG);
+
+        // The previous shape: one lookup and one update per row, in its own transaction
+        int sample = BATCH / 5;
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        long start = System.nanoTime();
+        long legacyStatements = statementsFor(() -> {
+            List<OutboxEvent> batch = repo.claimBatch(Instant.now(), sample);
+            for (OutboxEvent ev : batch) {
+                tx.executeWithoutResult(s -> repo.findById(ev.getId()).ifPresent(e -> {
+                    e.setStatus("SENT");
+                    e.setPublishedAt(Instant.now());
+                    e.setAttempts(e.getAttempts() + 1);
+                }));
+            }
+        });
+        double legacyMsPerEvent = (System.nanoTime() - start) / 1e6 / sample;
+
+        int passes = 0;
+        long batchedStatements = 0;
+        int relayed = 0;
+        start = System.nanoTime();
+        OutboxPublisher.Pass pass;
+        do {
+            OutboxPublisher.Pass[] holder = new OutboxPublisher.Pass[1];
+            long s = statementsFor(() -> holder[0] = publisher.pumpOnce());
+            pass = holder[0];
+            if (pass.claimed() > 0) {
+                passes++;
+                batchedStatements += s;
+                relayed += pass.confirmed();
+                assertEquals(2, s, "claim plus one bulk SENT update per batch");
+            }
+        } while (pass.claimed() > 0);
+        double batchedMsPerEvent = (System.nanoTime() - start) / 1e6 / relayed;
+
+        log.info(String.format("outbox backlog=%d per-row: %.2f statements/event %.3f ms/event | batched: %d passes %.4f statements/event %.3f ms/event",
+                BACKLOG, (double) legacyStatements / sample, legacyMsPerEvent,
+                passes, (double) batchedStatements / relayed, batchedMsPerEvent));
+        assertEquals(BACKLOG - sample, relayed);
+        assertEquals((BACKLOG - sample + BATCH - 1) / BATCH, passes);
+        assertTrue(repo.findAll().stream().allMatch(e -> "SENT".equals(e.getStatus()) && e.getAttempts() == 1));
+    }
+
+    @Test
+    @Tag("benchmark")
+    void endToEndLatencyWithTheRelayRunning() throws Exception {
+        Map<String, Long> committedAt = new ConcurrentHashMap<>();
+        Map<String, Long> receivedAt = new ConcurrentHashMap<>();
+        CountDownLatch received = new CountDownLatch(LATENCY_EVENTS);
+        handler = d -> {
+            if (receivedAt.putIfAbsent(d.messageId(), System.nanoTime()) == null) received.countDown();
+        };
+        publisher.start();
+
+        TransactionTemplate tx = new TransactionTemplate(txManager);
+        for (int i = 0; i < LATENCY_EVENTS; i++) {
+            int n = i;
+            long[] id = new long[1];
+            // Stamp before commit: the wake-up fires in afterCommit, so delivery can beat the return
+            long t0 = System.nanoTime();
+            tx.executeWithoutResult(s -> id[0] = writer.append("room", (long) (n % 10), "MessageCreated",
+                    Map.of("roomId", n % 10, "messageId", "m" + n)).getId());
+            committedAt.put("obx-" + id[0], t0);
+            if (i % 50 == 49) Thread.sleep(20); // bursts with idle gaps, so back-off and wake-up both happen
+        }
+
+        assertTrue(received.await(10, TimeUnit.SECONDS), "all events relayed");
+        long[] sorted = committedAt.entrySet().stream()
+                .mapToLong(e -> receivedAt.get(e.getKey()) - e.getValue())
+                .sorted()
+                .toArray();
+        double p50 = sorted[LATENCY_EVENTS / 2] / 1e6;
+        double p99 = sorted[(int) (LATENCY_EVENTS * 0.99)] / 1e6;
+        log.info(String.format("outbox commit-to-delivery over %d events: p50 %.2f ms p99 %.2f ms max %.2f ms",
+                LATENCY_EVENTS, p50, p99, sorted[LATENCY_EVENTS - 1] / 1e6));
+        // The old relay polled every 4 s; a wake-up on commit should be orders of magnitude below that
+        assertTrue(p99 < 500, "p99 commit-to-delivery: " + p99 + " ms");
+    }
+
+    @Test
+    void unconfirmedEventsAreRetriedThenFailed() {
+        List<OutboxEvent> seeded = seed(10);
+        String rejected = "obx-" + seeded.get(3).getId();
+        handler = d -> {
+            if (d.messageId().equals(rejected)) throw new IllegalStateException("consumer down");
+        };
+
+        OutboxPublisher.Pass first = publisher.pumpOnce();
+        assertEquals(new OutboxPublisher.Pass(10, 9), first);
+        assertEquals("PENDING", repo.findById(seeded.get(3).getId()).orElseThrow().getStatus());
+
+        // Only the rejected row is claimed again, until max-attempts moves it out of the way
+        assertEquals(new OutboxPublisher.Pass(1, 0), publisher.pumpOnce());
+        assertEquals(new OutboxPublisher.Pass(1, 0), publisher.pumpOnce());
+        assertEquals(new OutboxPublisher.Pass(0, 0), publisher.pumpOnce());
+
+        OutboxEvent failed = repo.findById(seeded.get(3).getId()).orElseThrow();
+        assertEquals("FAILED", failed.getStatus());
+        assertEquals(3, failed.getAttempts());
+        assertEquals(9, repo.findAll().stream().filter(e -> "SENT".equals(e.getStatus())).count());
+    }
+
+    @Test
+    void purgeRemovesOnlyExpiredPublishedRows() {
+        List<OutboxEvent> old = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            OutboxEvent e = event(i);
+            e.setOccurredAt(Instant.now().minus(2, ChronoUnit.HOURS));
+            e.setStatus(i % 5 == 0 ? "FAILED" : "SENT");
+            old.add(e);
+        }
+        repo.saveAll(old);
+        seed(100);
+        publisher.pumpOnce(); // recent rows become SENT but stay within the retention
+
+        assertEquals(2_000, publisher.purgeExpired());
+        assertEquals(500 + 100, repo.count());
+        assertEquals(0, publisher.purgeExpired());
+    }
+
+    private List<OutboxEvent> seed(int n) {
+        List<OutboxEvent> events = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) events.add(event(i));
+        return repo.saveAll(events);
+    }
+
+    private OutboxEvent event(int i) {
+        OutboxEvent e = new OutboxEvent();
+        e.setAggregateType("room");
+        e.setAggregateId((long) (i % 10));
+        e.setEventType("MessageCreated");
+        e.setPayload("{\"roomId\":" + (i % 10) + ",\"messageId\":\"m" + i + "\"}");
+        return e;
+    }
+
+    private long statementsFor(Runnable work) {
+        stats.clear();
+        work.run();
+        return stats.getPrepareStatementCount();
+    }
+}
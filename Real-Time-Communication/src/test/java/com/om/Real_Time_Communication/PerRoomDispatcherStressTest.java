@@ -0,0 +1,138 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.presence.PerRoomDispatcher;
+import com.om.Real_Time_Communication.presence.PerRoomDispatcher.OverflowPolicy;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test for the mailbox dispatcher: 10k rooms active at once on a small
+ * worker pool, checking per-room FIFO and reporting throughput and p99 latency.
+ */
+public class PerRoomDispatcherStressTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PerRoomDispatcherStressTest.class);
+
+    @Test
+    @Tag("benchmark")
+    void tenThousandActiveRoomsKeepFifoOrder() throws Exception {
+        int rooms = 10_000;
+        int perRoom = 20;
+        int total = rooms * perRoom;
+        PerRoomDispatcher dispatcher = new PerRoomDispatcher(8, 2_000, 64, OverflowPolicy.REJECT, 60_000L);
+
+        int[] lastSeen = new int[rooms];
+        Arrays.fill(lastSeen, -1);
+        AtomicInteger outOfOrder = new AtomicInteger();
+        long[] latencyNanos = new long[total];
+        CountDownLatch done = new CountDownLatch(total);
+
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        long start = System.nanoTime();
+        for (int p = 0; p < 4; p++) {
+            final int slice = p;
+            producers.submit(() -> {
+                for (int seq = 0; seq < perRoom; seq++) {
+                    for (int room = slice; room < rooms; room += 4) {
+                        final int r = room, s = seq, idx = room * perRoom + seq;
+                        final long enqueued = System.nanoTime();
+                        dispatcher.execute((long) r, () -> {
+                            // Only this room's mailbox touches lastSeen[r], one task at a time
+                            if (lastSeen[r] != s - 1) outOfOrder.incrementAndGet();
+                            lastSeen[r] = s;
+                            latencyNanos[idx] = System.nanoTime() - enqueued;
+                            done.countDown();
+                        });
+                    }
+                }
+            });
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS), "all tasks should complete");
+        long elapsed = System.nanoTime() - start;
+        producers.shutdown();
+
+        Arrays.sort(latencyNanos);
+        long p99 = latencyNanos[(int) (total * 0.99)];
+        log.info(String.format("rooms=%d tasks=%d throughput=%.0f tasks/s p99=%.2f ms",
+                rooms, total, total / (elapsed / 1e9), p99 / 1e6));
+
+        assertEquals(0, outOfOrder.get());
+        assertEquals(rooms, dispatcher.activeRooms());
+        dispatcher.close();
+    }
+
+    @Test
+    void blockedRoomsDoNotStarveOthers() throws Exception {
+        // Old design pinned one pool thread per room; busy rooms would starve every room queued behind them
+        PerRoomDispatcher dispatcher = new PerRoomDispatcher(4, 100, 1, OverflowPolicy.REJECT, 60_000L);
+        int blockedRooms = 3;
+        CountDownLatch gate = new CountDownLatch(1);
+        CountDownLatch blocking = new CountDownLatch(blockedRooms);
+        AtomicInteger behindGate = new AtomicInteger();
+        for (long room = 0; room < blockedRooms; room++) {
+            dispatcher.execute(room, () -> { blocking.countDown(); await(gate); });
+            dispatcher.execute(room, behindGate::incrementAndGet);
+        }
+        assertTrue(blocking.await(5, TimeUnit.SECONDS), "blocked rooms hold their workers");
+
+        CountDownLatch done = new CountDownLatch(500);
+        for (long room = blockedRooms; room < blockedRooms + 500; room++) {
+            dispatcher.execute(room, done::countDown);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS), "other rooms complete while " + blockedRooms + " rooms are blocked");
+        assertEquals(0, behindGate.get(), "blocked rooms keep their FIFO order");
+
+        gate.countDown();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (behindGate.get() < blockedRooms && System.currentTimeMillis() < deadline) Thread.sleep(1);
+        assertEquals(blockedRooms, behindGate.get());
+        dispatcher.close();
+    }
+
+    @Test
+    void overflowPoliciesAndIdleReclamation() throws Exception {
+        PerRoomDispatcher reject = new PerRoomDispatcher(1, 2, 64, OverflowPolicy.REJECT, 0L);
+        CountDownLatch gate = new CountDownLatch(1);
+        reject.execute(1L, () -> await(gate)); // occupies the worker
+        awaitQueueDrained(reject, 1L);
+        reject.execute(1L, () -> { });
+        reject.execute(1L, () -> { });
+        assertThrows(RejectedExecutionException.class, () -> reject.execute(1L, () -> { }));
+        assertEquals(1, reject.rejectedCount());
+        gate.countDown();
+
+        PerRoomDispatcher dropOldest = new PerRoomDispatcher(1, 1, 64, OverflowPolicy.DROP_OLDEST, 0L);
+        CountDownLatch gate2 = new CountDownLatch(1);
+        dropOldest.execute(2L, () -> await(gate2));
+        awaitQueueDrained(dropOldest, 2L);
+        FutureTask<String> first = new FutureTask<>(() -> "first");
+        dropOldest.execute(2L, first);
+        String second = dropOldest.executeAndWait(2L, () -> { gate2.countDown(); return "second"; });
+        assertTrue(first.isCancelled());
+        assertEquals("second", second);
+        assertEquals(1, dropOldest.droppedCount());
+
+        Thread.sleep(5);
+        dropOldest.cleanupIdle(0L);
+        assertEquals(0, dropOldest.activeRooms());
+        reject.close();
+        dropOldest.close();
+    }
+
+    private static void awaitQueueDrained(PerRoomDispatcher d, Long roomId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (d.queuedTasks(roomId) > 0 && System.currentTimeMillis() < deadline) Thread.sleep(1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try { latch.await(5, TimeUnit.SECONDS); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+}
@@ -0,0 +1,178 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.presence.InMemoryPresenceStore;
+import com.om.Real_Time_Communication.presence.PresenceRegistry;
+import com.om.Real_Time_Communication.presence.PresenceRegistry.Presence;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sweep cost and snapshot latency of the presence registry at {@code -Drtc.bench.presence.devices}
+ * connected devices (default 20,000, two per user; run with one million to see the gap at scale)
+ * against the previous single map keyed by "userId:deviceId", plus online/offline transitions
+ * across two nodes sharing the in-process store.
+ */
+class PresenceRegistryBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceRegistryBenchmarkTest.class);
+
+    static final int DEVICES = Integer.getInteger("rtc.bench.presence.devices", 20_000);
+    static final int USERS = DEVICES / 2;
+    static final long EXPIRE_MS = 30_000;
+    static final long HEARTBEAT_MS = 15_000;
+    static final String[] DEVICE_IDS = {"phone", "web"};
+
+    @Test
+    @Tag("benchmark")
+    void sweepAndSnapshotAtScale() {
+        AtomicInteger online = new AtomicInteger();
+        AtomicInteger offline = new AtomicInteger();
+        PresenceRegistry registry = new PresenceRegistry(
+                new InMemoryPresenceStore(), null, EXPIRE_MS, 1_000, "bench");
+        registry.addListener((userId, isOnline, at) -> (isOnline ? online : offline).incrementAndGet());
+
+        // Heartbeats are spread over the 15 s interval, as real clients drift apart
+        long base = System.currentTimeMillis();
+        for (int u = 0; u < USERS; u++) {
+            for (String device : DEVICE_IDS) registry.touch(u, device, base + phase(u));
+        }
+        assertEquals(USERS, online.get());
+
+        // The previous shape: one map, swept in full every 10 s and scanned for each snapshot
+        Map<String, Presence> legacy = new ConcurrentHashMap<>();
+        for (int u = 0; u < USERS; u++) {
+            for (String device : DEVICE_IDS) {
+                legacy.put(u + ":" + device, new Presence((long) u, device, Instant.ofEpochMilli(base + phase(u)), true));
+            }
+        }
+        long start = System.nanoTime();
+        int expiredLegacy = 0;
+        long sweepAt = base + 20_000;
+        for (Presence p : legacy.values()) {
+            if (p.isOnline() && sweepAt - p.getLastSeen().toEpochMilli() > EXPIRE_MS) {
+                p.setOnline(false);
+                expiredLegacy++;
+            }
+        }
+        double legacySweepMs = (System.nanoTime() - start) / 1e6;
+        assertEquals(0, expiredLegacy);
+
+        // Two minutes of one-second ticks with everyone heartbeating on schedule
+        long maxTickNs = 0;
+        long totalTickNs = 0;
+        long visited = 0;
+        int ticks = 0;
+        for (long now = base + 1_000; now <= base + 120_000; now += 1_000) {
+            for (int u = 0; u < USERS; u++) {
+                long due = base + phase(u);
+                if (now - due >= 0 && (now - due) % HEARTBEAT_MS < 1_000) {
+                    for (String device : DEVICE_IDS) registry.touch(u, device, now);
+                }
+            }
+            long t0 = System.nanoTime();
+            visited += registry.advance(now);
+            long dt = System.nanoTime() - t0;
+            totalTickNs += dt;
+            maxTickNs = Math.max(maxTickNs, dt);
+            ticks++;
+        }
+        assertEquals(0, offline.get(), "no heartbeating device expires");
+        assertEquals(USERS, registry.localUserCount());
+
+        Random rnd = new Random(42);
+        long[] snapNs = new long[10_000];
+        for (int i = 0; i < snapNs.length; i++) {
+            long userId = rnd.nextInt(USERS);
+            long t0 = System.nanoTime();
+            List<Presence> snap = registry.snapshotForUser(userId);
+            snapNs[i] = System.nanoTime() - t0;
+            assertEquals(DEVICE_IDS.length, snap.size());
+        }
+        Arrays.sort(snapNs);
+
+        int legacySamples = 5;
+        start = System.nanoTime();
+        for (int i = 0; i < legacySamples; i++) {
+            long userId = rnd.nextInt(USERS);
+            List<Presence> out = new ArrayList<>();
+            for (Presence p : legacy.values()) if (p.getUserId().equals(userId)) out.add(p);
+            assertEquals(DEVICE_IDS.length, out.size());
+        }
+        double legacySnapUs = (System.nanoTime() - start) / 1e3 / legacySamples;
+
+        log.info(String.format("presence devices=%d | legacy: full sweep %.1f ms every 10 s, snapshot %.0f us | wheel: "
+                        + "tick mean %.2f ms max %.2f ms, %.0f devices visited/tick, snapshot p50 %.2f us p99 %.2f us",
+                DEVICES, legacySweepMs, legacySnapUs,
+                totalTickNs / 1e6 / ticks, maxTickNs / 1e6, (double) visited / ticks,
+                snapNs[snapNs.length / 2] / 1e3, snapNs[(int) (snapNs.length * 0.99)] / 1e3));
+        assertTrue(snapNs[snapNs.length / 2] * 10 < legacySnapUs * 1e3,
+                "snapshot p50 " + snapNs[snapNs.length / 2] + " ns vs a scan of every device " + legacySnapUs + " us");
+        // Each device is looked at about once per heartbeat, not once per sweep of everything
+        assertTrue((double) visited / ticks <= DEVICES * 1_000.0 / HEARTBEAT_MS * 1.5,
+                "visited per tick: " + (double) visited / ticks);
+
+        // Half the users go silent: exactly their transitions come out, one per user
+        long now = base + 120_000;
+        for (long end = now + EXPIRE_MS + 2_000; now <= end; now += 1_000) {
+            for (int u = 0; u < USERS; u += 2) {
+                long due = base + phase(u);
+                if ((now - due) % HEARTBEAT_MS < 1_000) {
+                    for (String device : DEVICE_IDS) registry.touch(u, device, now);
+                }
+            }
+            registry.advance(now);
+        }
+        assertEquals(USERS / 2, offline.get());
+        assertEquals(USERS - USERS / 2, registry.localUserCount());
+        assertTrue(registry.snapshotForUser(1L).isEmpty());
+        assertEquals(DEVICE_IDS.length, registry.snapshotForUser(0L).size());
+    }
+
+    @Test
+    void transitionsAreAnnouncedOnceAcrossNodes() {
+        InMemoryPresenceStore storeA = new InMemoryPresenceStore();
+        List<String> events = new ArrayList<>();
+        PresenceRegistry a = new PresenceRegistry(storeA, null, EXPIRE_MS, 1_000, "a");
+        PresenceRegistry b = new PresenceRegistry(storeA, null, EXPIRE_MS, 1_000, "b");
+        a.addListener((u, on, at) -> events.add("a:" + u + ":" + on));
+        b.addListener((u, on, at) -> events.add("b:" + u + ":" + on));
+
+        long now = System.currentTimeMillis();
+        a.touch(7L, "phone", now);
+        b.touch(7L, "web", now);
+        a.touch(7L, "phone", now + 1_000); // heartbeat: nothing to announce
+        assertEquals(List.of("a:7:true"), events);
+        assertEquals(2, b.snapshotForUser(7L).size(), "each node sees devices held by the other");
+        assertTrue(b.isOnline(7L));
+
+        a.markOffline(7L, "phone");
+        assertEquals(List.of("a:7:true"), events, "still online on node b");
+        b.onUserOffline(7L); // last session on b closed
+        assertEquals(List.of("a:7:true", "b:7:false"), events);
+        assertFalse(a.isOnline(7L));
+
+        // A device that stops heartbeating expires on the wheel
+        a.touch(8L, "phone", now);
+        assertEquals(0, a.advance(now + EXPIRE_MS - 1_000));
+        a.advance(now + EXPIRE_MS + 1_000);
+        assertEquals("a:8:false", events.get(events.size() - 1));
+        assertEquals(0, a.localUserCount());
+    }
+
+    private static long phase(int userId) {
+        return (userId * 7919L) % HEARTBEAT_MS;
+    }
+}
@@ -0,0 +1,176 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.presence.InMemoryPresenceStore;
+import com.om.Real_Time_Communication.presence.PresenceRegistry;
+import com.om.Real_Time_Communication.presence.TypingRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Simulates two minutes of a {@value #MEMBERS}-member room (two devices each, pinging every 15 s,
+ * members typing in 6 s bursts with a keystroke event per second) and reports the room's outbound
+ * frames per second when every ping and typing event is rebroadcast, against coalesced presence
+ * transitions and aggregate typing frames; and checks that legacy subscribers of the per-user
+ * typing destination still get their start, refresh and stop frames.
+ */
+class PresenceTypingCoalescingBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PresenceTypingCoalescingBenchmarkTest.class);
+
+    static final int MEMBERS = 100;
+    static final long ROOM = 42L;
+    static final String[] DEVICE_IDS = {"phone", "web"};
+    static final long HEARTBEAT_MS = 15_000;
+    static final long TYPING_EVERY_MS = 60_000;
+    static final long BURST_MS = 6_000;
+    static final long TYPING_TTL_MS = 5_000;
+    static final long FLUSH_MS = 500;
+    static final long MIN_GAP_MS = 1_000;
+    static final long STEP_MS = 100;
+    static final long DURATION_MS = 120_000;
+
+    @Test
+    @Tag("benchmark")
+    void roomFramesPerSecondBeforeAndAfter() {
+        List<Map<?, ?>> typingFrames = new ArrayList<>();
+        List<Long> typingFrameTimes = new ArrayList<>();
+        long[] clock = new long[1];
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+        channel.subscribe(msg -> {
+            if (!SimpMessageHeaderAccessor.getDestination(msg.getHeaders()).endsWith(TypingRegistry.AGGREGATE_SUFFIX)) return;
+            typingFrames.add((Map<?, ?>) msg.getPayload());
+            typingFrameTimes.add(clock[0]);
+        });
+        SimpMessagingTemplate messaging = new SimpMessagingTemplate(channel);
+        messaging.setMessageConverter(new SimpleMessageConverter());
+        TypingRegistry typing = new TypingRegistry(messaging, MIN_GAP_MS);
+
+        AtomicInteger presenceFrames = new AtomicInteger();
+        PresenceRegistry presence = new PresenceRegistry(
+                new InMemoryPresenceStore(), null, 30_000, 1_000, "bench");
+        presence.addListener((userId, online, at) -> presenceFrames.incrementAndGet()); // one room per member
+
+        long legacyFrames = 0;
+        long base = System.currentTimeMillis();
+        for (long t = 0; t < DURATION_MS; t += STEP_MS) {
+            long now = base + t;
+            clock[0] = now;
+            for (int u = 0; u < MEMBERS; u++) {
+                if (t % HEARTBEAT_MS == (u * 7_900L) % HEARTBEAT_MS) {
+                    for (String device : DEVICE_IDS) {
+                        presence.touch(u, device, now);
+                        legacyFrames++; // previously: every ping rebroadcast to the room
+                    }
+                }
+                long inBurst = Math.floorMod(t - typingPhase(u), TYPING_EVERY_MS);
+                if (inBurst < BURST_MS && inBurst % 1_000 == 0) {
+                    typing.start(ROOM, u, "phone", TYPING_TTL_MS, now);
+                    legacyFrames++;
+                } else if (inBurst == BURST_MS) {
+                    typing.stop(ROOM, (long) u, "phone");
+                    legacyFrames++;
+                }
+            }
+            if (t % FLUSH_MS == 0) typing.flush(now);
+            if (t % 1_000 == 0) presence.advance(now);
+        }
+
+        long coalescedFrames = presenceFrames.get() + typingFrames.size();
+        double seconds = DURATION_MS / 1_000.0;
+        int subscribers = MEMBERS * DEVICE_IDS.length;
+        log.info(String.format("room of %d members over %.0f s | rebroadcast: %.1f frames/s (%.0f deliveries/s) | "
+                        + "coalesced: %.2f frames/s (%.0f deliveries/s; %d presence transitions, %d typing frames)",
+                MEMBERS, seconds, legacyFrames / seconds, legacyFrames * subscribers / seconds,
+                coalescedFrames / seconds, coalescedFrames * subscribers / seconds,
+                presenceFrames.get(), typingFrames.size()));
+
+        assertEquals(MEMBERS, presenceFrames.get(), "only the first heartbeat of each member is announced");
+        for (int i = 1; i < typingFrameTimes.size(); i++) {
+            assertTrue(typingFrameTimes.get(i) - typingFrameTimes.get(i - 1) >= MIN_GAP_MS, "room rate limit");
+        }
+        assertTrue(coalescedFrames * 10 < legacyFrames, "coalesced " + coalescedFrames + " vs " + legacyFrames);
+
+        // Everyone stops: the next flush clears the room with one empty frame and drops its state
+        for (int u = 0; u < MEMBERS; u++) typing.stop(ROOM, (long) u, "phone");
+        long end = base + DURATION_MS + MIN_GAP_MS;
+        clock[0] = end;
+        typing.flush(end);
+        Map<?, ?> last = typingFrames.get(typingFrames.size() - 1);
+        assertEquals(ROOM, last.get("roomId"));
+        assertEquals(List.of(), last.get("userIds"));
+        assertEquals(0, typing.flush(end + FLUSH_MS), "idle room is not visited again");
+    }
+
+    @Test
+    void devicesAggregateAndExpire() {
+        List<Map<?, ?>> frames = new ArrayList<>();
+        List<Map<?, ?>> legacy = new ArrayList<>();
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+        channel.subscribe(msg -> {
+            String destination = SimpMessageHeaderAccessor.getDestination(msg.getHeaders());
+            if (destination.equals("/topic/room/" + ROOM + TypingRegistry.AGGREGATE_SUFFIX)) {
+                frames.add((Map<?, ?>) msg.getPayload());
+            } else if (destination.equals("/topic/room/" + ROOM + TypingRegistry.LEGACY_SUFFIX)) {
+                legacy.add((Map<?, ?>) msg.getPayload());
+            }
+        });
+        SimpMessagingTemplate messaging = new SimpMessagingTemplate(channel);
+        messaging.setMessageConverter(new SimpleMessageConverter());
+        TypingRegistry typing = new TypingRegistry(messaging, MIN_GAP_MS);
+
+        long now = System.currentTimeMillis();
+        typing.start(ROOM, 2L, "phone", TYPING_TTL_MS, now);
+        typing.start(ROOM, 2L, "web", TYPING_TTL_MS, now);
+        typing.start(ROOM, 1L, "web", TYPING_TTL_MS, now);
+        assertEquals(1, typing.flush(now));
+        assertEquals(List.of(1L, 2L), frames.get(0).get("userIds"));
+        assertEquals(2, legacy.size(), "one legacy start per user");
+        assertEquals(Set.of("type", "userId", "deviceId", "typing", "expiresAt"), legacy.get(0).keySet());
+        assertEquals(true, legacy.get(0).get("typing"));
+
+        // One of two devices stopping changes nothing; an unchanged set is not resent
+        typing.stop(ROOM, 2L, "phone");
+        assertEquals(0, typing.flush(now + 1_000));
+
+        // A change inside the gap waits for it; legacy subscribers hear the stop right away
+        typing.stop(ROOM, 1L, "web");
+        assertEquals(0, typing.flush(now + 1_500));
+        assertEquals(Map.of("type", "typing", "userId", 1L, "deviceId", "web", "typing", false), legacy.get(2));
+        assertEquals(1, typing.flush(now + 2_000));
+        assertEquals(List.of(2L), frames.get(1).get("userIds"));
+
+        // Still typing on the web: legacy subscribers get a fresh expiresAt before theirs runs out
+        typing.start(ROOM, 2L, "web", TYPING_TTL_MS, now + 3_000);
+        assertEquals(0, typing.flush(now + 3_000));
+        assertEquals(3, legacy.size(), "announced expiry is not close yet");
+        assertEquals(0, typing.flush(now + TYPING_TTL_MS - MIN_GAP_MS));
+        assertEquals(4, legacy.size());
+        assertEquals(Instant.ofEpochMilli(now + 3_000 + TYPING_TTL_MS), legacy.get(3).get("expiresAt"));
+
+        // The remaining typist expires without a stop
+        assertEquals(1, typing.flush(now + 3_000 + TYPING_TTL_MS));
+        assertEquals(List.of(), frames.get(2).get("userIds"));
+        assertEquals(3, frames.size());
+        assertEquals(false, legacy.get(4).get("typing"));
+        assertEquals(5, legacy.size());
+    }
+
+    private static long typingPhase(int member) {
+        return (member * 6_100L) % TYPING_EVERY_MS;
+    }
+}
@@ -0,0 +1,233 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
+import com.om.Real_Time_Communication.Repository.UserRoomStateRepository;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import com.om.Real_Time_Communication.models.ChatRoomParticipant;
+import com.om.Real_Time_Communication.models.ChatRoomType;
+import com.om.Real_Time_Communication.models.MessageType;
+import com.om.Real_Time_Communication.models.Role;
+import com.om.Real_Time_Communication.models.UserRoomState;
+import com.om.Real_Time_Communication.service.JpaReadModelStore;
+import com.om.Real_Time_Communication.service.ReadModelRebuildJob;
+import com.om.Real_Time_Communication.service.ReadModelService;
+import com.om.Real_Time_Communication.service.ReadModelService.RoomBadge;
+import com.om.Real_Time_Communication.service.ReadReceiptService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Loads a chat list of {@value #ROOMS} rooms with badges, once from the read model and once the
+ * way clients did it (a history page plus the read marker per room), then checks that fan-out
+ * bumps, read receipts reset and the rebuild job reproduces the same badges.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ReadModelService.class, JpaReadModelStore.class, ReadModelRebuildJob.class, ReadReceiptService.class, IdGeneratorConfig.class})
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:rtc-readmodel;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "rtc.read-model.rebuild.chunk=40"
+})
+class ReadModelBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadModelBenchmarkTest.class);
+
+    static final int ROOMS = 100;
+    static final int PER_ROOM = 30;
+    static final long USER = 7L;
+    static final long PEER = 1L;
+
+    @Autowired ReadModelService readModel;
+    @Autowired ReadModelRebuildJob rebuildJob;
+    @Autowired ReadReceiptService readReceiptService;
+    @Autowired ChatMessageRepository chatMessageRepository;
+    @Autowired ChatRoomRepository chatRoomRepository;
+    @Autowired ChatRoomParticipantRepository participantRepository;
+    @Autowired UserRoomStateRepository userRoomStateRepository;
+    @Autowired EntityManagerFactory emf;
+
+    private Statistics stats;
+    private List<ChatRoom> rooms;
+
+    @BeforeEach
+    void seed() {
+        stats = emf.unwrap(SessionFactory.class).getStatistics();
+        readModel.invalidateAll();
+        Instant base = Instant.now().minus(1, ChronoUnit.DAYS).truncatedTo(ChronoUnit.MICROS);
+        rooms = new ArrayList<>(ROOMS);
+        List<ChatMessage> messages = new ArrayList<>(ROOMS * PER_ROOM);
+        for (int r = 0; r < ROOMS; r++) {
+            ChatRoom room = room("list-" + r, r % 3 == 0, PEER, USER);
+            rooms.add(room);
+            for (int i = 0; i < PER_ROOM; i++) {
+                ChatMessage m = new ChatMessage();
+                m.setRoomId(room.getId());
+                m.setSenderId(i % 10 == 0 ? USER : PEER); // own messages never count
+                m.setMessageId("l" + r + "-" + i);
+                m.setType(MessageType.TEXT);
+                m.setBody("hello " + i);
+                m.setServerTs(base.plus(i, ChronoUnit.MINUTES));
+                messages.add(m);
+            }
+            if (r % 2 == 0) {
+                // Read up to the 10th message
+                UserRoomState s = new UserRoomState();
+                s.setUserId(USER);
+                s.setRoomId(room.getId());
+                s.setLastReadMessageId("l" + r + "-9");
+                s.setLastReadAt(base.plus(9, ChronoUnit.MINUTES));
+                userRoomStateRepository.save(s);
+            }
+        }
+        chatMessageRepository.saveAll(messages);
+        chatMessageRepository.flush();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void roomListIsAFewStatementsInsteadOfAHistoryScanPerRoom() {
+        long start = System.nanoTime();
+        Map<Long, Long>[] legacy = new Map[1];
+        long legacyStatements = statementsFor(() -> legacy[0] = legacyBadgesFromHistory());
+        double legacyMs = (System.nanoTime() - start) / 1e6;
+
+        List<RoomBadge>[] cold = new List[1];
+        start = System.nanoTime();
+        long coldStatements = statementsFor(() -> cold[0] = readModel.roomList(USER));
+        double coldMs = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        long warmStatements = statementsFor(() -> readModel.roomList(USER));
+        double warmMs = (System.nanoTime() - start) / 1e6;
+
+        log.info(String.format("chat list of %d rooms: history scan %d statements %.1f ms | read model cold %d statements %.1f ms, warm %d statements %.2f ms",
+                ROOMS, legacyStatements, legacyMs, coldStatements, coldMs, warmStatements, warmMs));
+        assertEquals(ROOMS, cold[0].size());
+        for (RoomBadge badge : cold[0]) {
+            assertEquals(legacy[0].get(badge.roomId()), badge.unread(), "room " + badge.roomId());
+            assertEquals(PEER, badge.last().senderId());
+            assertTrue(badge.last().messageId().endsWith("-" + (PER_ROOM - 1)));
+        }
+        // Memberships, last messages, unread counts; then memberships only
+        assertEquals(3, coldStatements);
+        assertEquals(1, warmStatements);
+        assertEquals(2L * ROOMS, legacyStatements);
+    }
+
+    @Test
+    void fanOutBumpsAndReadResets() {
+        ChatRoom room = rooms.get(1); // never read: every message from the peer is unread
+        long before = readModel.unread(USER, room.getId());
+        assertEquals(PER_ROOM - PER_ROOM / 10, before);
+
+        ChatMessage m = new ChatMessage();
+        m.setRoomId(room.getId());
+        m.setSenderId(PEER);
+        m.setMessageId("l1-new");
+        m.setType(MessageType.TEXT);
+        m.setBody("x".repeat(500));
+        ChatMessage saved = chatMessageRepository.save(m);
+
+        long statements = statementsFor(() -> readModel.messageAdded(saved, List.of(USER)));
+        assertEquals(0, statements, "fan-out only touches memory");
+        RoomBadge badge = readModel.badges(USER, List.of(room.getId())).get(0);
+        assertEquals(before + 1, badge.unread());
+        assertEquals("l1-new", badge.last().messageId());
+        assertEquals(120, badge.last().preview().length());
+
+        readReceiptService.updateLastRead(USER, room.getId(), "l1-new");
+        assertEquals(0, readModel.unread(USER, room.getId()));
+
+        // The database agrees once the tier is dropped
+        readModel.invalidateAll();
+        assertEquals(0, readModel.unread(USER, room.getId()));
+        assertEquals("l1-new", readModel.last(room.getId()).messageId());
+    }
+
+    @Test
+    void rebuildReproducesTheBadgesInThreeStatementsPerChunk() {
+        Map<Long, Long> expected = legacyBadgesFromHistory();
+        readModel.roomList(USER); // load the user, then let the rebuild overwrite it
+        readModel.invalidateAll();
+        readModel.roomList(USER);
+
+        long statements = statementsFor(() -> assertEquals(ROOMS, rebuildJob.rebuildAll()));
+        int chunks = (ROOMS + 39) / 40;
+        // One id page per chunk (plus the empty probe when the last chunk is full) and three aggregates
+        assertTrue(statements <= 4L * chunks + 1, "rebuild statements: " + statements);
+
+        Map<Long, Long> rebuilt = new HashMap<>();
+        for (RoomBadge badge : readModel.roomList(USER)) rebuilt.put(badge.roomId(), badge.unread());
+        assertEquals(expected, rebuilt);
+    }
+
+    /** The previous shape: read marker and a history page per room, unread counted client-side. */
+    private Map<Long, Long> legacyBadgesFromHistory() {
+        Map<Long, Long> out = new HashMap<>();
+        for (ChatRoom room : rooms) {
+            Instant lastRead = userRoomStateRepository.findByUserIdAndRoomId(USER, room.getId())
+                    .map(UserRoomState::getLastReadAt).orElse(Instant.EPOCH);
+            long unread = chatMessageRepository.newestVisible(room.getId(), USER, PageRequest.of(0, 50)).stream()
+                    .filter(m -> m.getSenderId() != USER && m.getServerTs().isAfter(lastRead))
+                    .count();
+            out.put(room.getId(), unread);
+        }
+        return out;
+    }
+
+    private long statementsFor(Runnable work) {
+        stats.clear();
+        work.run();
+        return stats.getPrepareStatementCount();
+    }
+
+    private ChatRoom room(String key, boolean group, Long... members) {
+        ChatRoom room = new ChatRoom();
+        room.setRoomId(key);
+        room.setType(group ? ChatRoomType.GROUP : ChatRoomType.DIRECT);
+        room.setGroup(group);
+        room.setCreatedAt(LocalDateTime.now());
+        ChatRoom saved = chatRoomRepository.save(room);
+        for (Long userId : Set.of(members)) {
+            ChatRoomParticipant p = new ChatRoomParticipant();
+            p.setUserId(userId);
+            p.setChatRoom(saved);
+            p.setJoinedAt(LocalDateTime.now());
+            p.setRole(Role.MEMBER);
+            participantRepository.save(p);
+        }
+        return saved;
+    }
+}
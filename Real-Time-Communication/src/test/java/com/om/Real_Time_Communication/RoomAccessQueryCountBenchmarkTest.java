@@ -0,0 +1,163 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.Repository.ChatRoomParticipantRepository;
+import com.om.Real_Time_Communication.Repository.ChatRoomRepository;
+import com.om.Real_Time_Communication.client.UserServiceClient;
+import com.om.Real_Time_Communication.config.IdGeneratorConfig;
+import com.om.Real_Time_Communication.config.StompSecurityInterceptor;
+import com.om.Real_Time_Communication.models.ChatRoom;
+import com.om.Real_Time_Communication.models.ChatRoomParticipant;
+import com.om.Real_Time_Communication.models.ChatRoomType;
+import com.om.Real_Time_Communication.models.Role;
+import com.om.Real_Time_Communication.security.JwtService;
+import com.om.Real_Time_Communication.service.BlockService;
+import com.om.Real_Time_Communication.service.ChatRoomService;
+import com.om.Real_Time_Communication.service.LocalRoomCacheInvalidationChannel;
+import com.om.Real_Time_Communication.service.RoomAccessCache;
+import com.om.Real_Time_Communication.service.RoomMembershipService;
+import com.om.Real_Time_Communication.utility.AclService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Counts SQL statements per authorized SEND frame: the interceptor checks (room key, ACL,
+ * direct peer, block) plus the publish and member lookups of the persist path. Once the room
+ * cache is warm a frame must not touch the database; membership and block changes must be
+ * visible on the very next frame.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({StompSecurityInterceptor.class, AclService.class, BlockService.class, ChatRoomService.class,
+        RoomMembershipService.class, RoomAccessCache.class, LocalRoomCacheInvalidationChannel.class, IdGeneratorConfig.class})
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:rtc-room-cache;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.driverClassName=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class RoomAccessQueryCountBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(RoomAccessQueryCountBenchmarkTest.class);
+
+    @Autowired StompSecurityInterceptor interceptor;
+    @Autowired ChatRoomService chatRoomService;
+    @Autowired RoomMembershipService membership;
+    @Autowired BlockService blockService;
+    @Autowired RoomAccessCache roomAccessCache;
+    @Autowired ChatRoomRepository chatRoomRepository;
+    @Autowired ChatRoomParticipantRepository participantRepository;
+    @Autowired EntityManagerFactory emf;
+
+    @MockitoBean JwtService jwtService;
+    @MockitoBean UserServiceClient userServiceClient;
+
+    private Statistics stats;
+
+    @BeforeEach
+    void setUp() {
+        stats = emf.unwrap(SessionFactory.class).getStatistics();
+        roomAccessCache.invalidateAll();
+    }
+
+    @Test
+    @Tag("benchmark")
+    void warmSendMakesNoAuthorizationQueries() {
+        ChatRoom direct = room(ChatRoomType.DIRECT, false, 1L, 2L);
+        ChatRoom group = room(ChatRoomType.GROUP, true, 1L, 2L, 3L, 4L, 5L);
+
+        for (ChatRoom room : new ChatRoom[] {direct, group}) {
+            long cold = statementsFor(() -> sendFrame(room, 1L));
+            int frames = 1_000;
+            long start = System.nanoTime();
+            long warm = statementsFor(() -> {
+                for (int i = 0; i < frames; i++) sendFrame(room, 1L);
+            });
+            double perFrameUs = (System.nanoTime() - start) / 1e3 / frames;
+            log.info(String.format("type=%s cold=%d queries/frame warm=%.3f queries/frame (%.1f us/frame)",
+                    room.getType(), cold, (double) warm / frames, perFrameUs));
+            assertTrue(cold > 0);
+            assertEquals(0, warm, "steady-state send must not query the database");
+        }
+    }
+
+    @Test
+    void membershipAndBlockChangesApplyToTheNextFrame() throws Exception {
+        ChatRoom group = room(ChatRoomType.GROUP, true, 1L, 2L);
+        sendFrame(group, 1L);
+        assertThrows(IllegalArgumentException.class, () -> sendFrame(group, 9L));
+
+        chatRoomService.addParticipantToGroup("1", 9L, group.getId());
+        sendFrame(group, 9L);
+        assertTrue(membership.memberIds(group.getId()).contains(9L));
+
+        chatRoomService.removeMember("1", 9L, group.getId());
+        assertThrows(IllegalArgumentException.class, () -> sendFrame(group, 9L));
+
+        ChatRoom direct = room(ChatRoomType.DIRECT, false, 21L, 22L);
+        sendFrame(direct, 21L);
+        blockService.blockUser("22", "21");
+        assertThrows(IllegalArgumentException.class, () -> sendFrame(direct, 21L));
+        blockService.unblockUser("22", "21");
+        sendFrame(direct, 21L);
+    }
+
+    /** What one SEND costs on the auth path: interceptor, then the persist path's publish and member checks. */
+    private void sendFrame(ChatRoom room, Long userId) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.SEND);
+        acc.setDestination("/app/rooms/" + room.getRoomId() + "/send");
+        acc.setUser(() -> String.valueOf(userId));
+        acc.setLeaveMutable(true);
+        Message<byte[]> frame = MessageBuilder.createMessage(new byte[0], acc.getMessageHeaders());
+        interceptor.preSend(frame, null);
+        assertTrue(chatRoomService.canPublish(userId, room.getId()));
+        assertFalse(membership.memberIds(room.getId()).isEmpty());
+    }
+
+    private long statementsFor(Runnable work) {
+        stats.clear();
+        work.run();
+        return stats.getPrepareStatementCount();
+    }
+
+    private ChatRoom room(ChatRoomType type, boolean isGroup, Long... members) {
+        ChatRoom room = new ChatRoom();
+        room.setRoomId(UUID.randomUUID().toString());
+        room.setType(type);
+        room.setGroup(isGroup);
+        room.setAllowMembersToAddMembers(true);
+        room.setCreatedAt(LocalDateTime.now());
+        ChatRoom saved = chatRoomRepository.save(room);
+        for (Long userId : members) {
+            ChatRoomParticipant p = new ChatRoomParticipant();
+            p.setUserId(userId);
+            p.setChatRoom(saved);
+            p.setJoinedAt(LocalDateTime.now());
+            p.setRole(Role.MEMBER);
+            participantRepository.save(p);
+        }
+        return saved;
+    }
+}
@@ -0,0 +1,376 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.Repository.ChatMessageRepository;
+import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import com.om.Real_Time_Communication.models.ChatMessage;
+import com.om.Real_Time_Communication.service.SearchCatchUpJob;
+import com.om.Real_Time_Communication.utility.BulkIndexer;
+import com.om.Real_Time_Communication.utility.ElasticsearchSearchWriter;
+import com.om.Real_Time_Communication.utility.SearchSpillJournal;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Search indexing against a fake bulk endpoint (in process: a {@link BulkIndexer} with a fixed
+ * latency, an outage switch and items that fail once): end-to-end throughput against the previous
+ * writer, which flushed on the producer's thread; heap held during an outage, where the previous
+ * writer re-buffered every failed batch; and recovery, where every document must arrive once, as
+ * enqueued, with only the failed items sent again. Also covers the spill journal and the catch-up
+ * checkpoint, and that catch-up leaves out what the live path does not index.
+ */
+class SearchIndexingBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndexingBenchmarkTest.class);
+
+    static final int DOCS = 20_000;
+    static final int TEXT_CHARS = 1000;
+    static final String FILLER = "x".repeat(TEXT_CHARS);
+    static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+    /** The previous writer: one buffer, flushed inline at 1000 docs or every 500ms, re-filled on failure. */
+    static final class LegacyWriter {
+        private final BulkIndexer es;
+        private final List<SearchMessageDoc> buffer = new ArrayList<>();
+
+        LegacyWriter(BulkIndexer es) {
+            this.es = es;
+        }
+
+        synchronized void enqueue(SearchMessageDoc doc) {
+            buffer.add(doc);
+            if (buffer.size() >= 1000) flushUnsafe();
+        }
+
+        void flush() { synchronized (this) { flushUnsafe(); } }
+
+        synchronized int buffered() {
+            return buffer.size();
+        }
+
+        private void flushUnsafe() {
+            if (buffer.isEmpty()) return;
+            var batch = new ArrayList<>(buffer);
+            buffer.clear();
+            try {
+                es.bulkIndex(batch);
+            } catch (Exception e) {
+                buffer.addAll(batch);
+            }
+        }
+    }
+
+    /** Bulk endpoint stand-in: records what it stored, how often each id was sent, and by which threads. */
+    static final class FakeBulk implements BulkIndexer {
+        final long latencyMs;
+        final Set<String> failOnce;
+        volatile boolean down;
+        final ConcurrentMap<String, SearchMessageDoc> stored = new ConcurrentHashMap<>();
+        final ConcurrentMap<String, AtomicInteger> sentWhileUp = new ConcurrentHashMap<>();
+        final AtomicInteger duplicates = new AtomicInteger();
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final Set<Thread> callers = ConcurrentHashMap.newKeySet();
+
+        FakeBulk(long latencyMs, Set<String> failOnce) {
+            this.latencyMs = latencyMs;
+            this.failOnce = ConcurrentHashMap.newKeySet();
+            this.failOnce.addAll(failOnce);
+        }
+
+        @Override
+        public Set<String> bulkIndex(List<SearchMessageDoc> docs) {
+            requests.incrementAndGet();
+            callers.add(Thread.currentThread());
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                return store(docs);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        private Set<String> store(List<SearchMessageDoc> docs) {
+            if (down) throw new IllegalStateException("connection refused");
+            if (latencyMs > 0) {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            Set<String> failed = new HashSet<>();
+            for (SearchMessageDoc d : docs) {
+                sentWhileUp.computeIfAbsent(d.getMessageId(), k -> new AtomicInteger()).incrementAndGet();
+                if (failOnce.remove(d.getMessageId())) {
+                    failed.add(d.getMessageId()); // es_rejected_execution on this item only
+                } else if (stored.putIfAbsent(d.getMessageId(), d) != null) {
+                    duplicates.incrementAndGet();
+                }
+            }
+            return failed;
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void asyncPipelineOutrunsInlineFlushes() throws Exception {
+        FakeBulk legacyEs = new FakeBulk(20, Set.of());
+        LegacyWriter legacy = new LegacyWriter(legacyEs);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < DOCS; i++) legacy.enqueue(doc(i));
+        legacy.flush();
+        double legacyMs = (System.nanoTime() - t0) / 1e6;
+        assertEquals(DOCS, legacyEs.stored.size());
+
+        FakeBulk es = new FakeBulk(20, Set.of());
+        ElasticsearchSearchWriter writer = new ElasticsearchSearchWriter(es, null,
+                new ElasticsearchSearchWriter.Settings(50_000, 256L << 20, 1000, 5L << 20, 20, 4, 8, 10, 200), null);
+        try {
+            t0 = System.nanoTime();
+            int maxSeen = 0;
+            for (int i = 0; i < DOCS; i++) {
+                writer.enqueue(doc(i));
+                maxSeen = Math.max(maxSeen, writer.queued());
+            }
+            double enqueueMs = (System.nanoTime() - t0) / 1e6;
+            await(() -> writer.indexed() == DOCS, 30_000);
+            double newMs = (System.nanoTime() - t0) / 1e6;
+
+            log.info(String.format("indexing %d docs at 20ms/bulk: legacy %.0f ms (%.0f docs/s, producer blocked throughout), "
+                            + "new %.0f ms (%.0f docs/s, producer done after %.1f ms), %d bulks, up to %d in flight",
+                    DOCS, legacyMs, DOCS / legacyMs * 1000, newMs, DOCS / newMs * 1000, enqueueMs, es.requests.get(),
+                    es.maxInFlight.get()));
+            assertEquals(DOCS, es.stored.size());
+            assertEquals(0, es.duplicates.get());
+            assertEquals(0, writer.spilled());
+            assertEquals(0, writer.lost());
+            assertTrue(maxSeen <= 50_000, "queue bounded: " + maxSeen);
+            assertEquals(Set.of(Thread.currentThread()), legacyEs.callers, "the legacy writer flushed on the producer");
+            assertFalse(es.callers.contains(Thread.currentThread()), "enqueue does not wait for the cluster");
+            assertEquals(1, legacyEs.maxInFlight.get());
+            assertTrue(es.maxInFlight.get() > 1 && es.maxInFlight.get() <= 4, "concurrent bulks, capped: " + es.maxInFlight.get());
+            assertTrue(es.requests.get() <= DOCS / 100, "batched: " + es.requests.get() + " bulks");
+        } finally {
+            writer.destroy();
+        }
+    }
+
+    @Test
+    void outageStaysBoundedSpillsAndRecoversWithoutLoss(@TempDir Path dir) throws Exception {
+        long base = usedHeap();
+        FakeBulk legacyEs = new FakeBulk(0, Set.of());
+        legacyEs.down = true;
+        LegacyWriter legacy = new LegacyWriter(legacyEs);
+        long t0 = System.nanoTime();
+        for (int i = 0; i < DOCS; i++) legacy.enqueue(doc(i));
+        double legacyEnqueueMs = (System.nanoTime() - t0) / 1e6;
+        long legacyBytes = usedHeap() - base;
+        assertEquals(DOCS, legacy.buffered(), "every failed batch went back into the buffer");
+        int legacyRequests = legacyEs.requests.get();
+        legacy = null;
+
+        Set<String> flaky = new HashSet<>();
+        for (int i = 0; i < DOCS; i += 100) flaky.add(id(i));
+        FakeBulk es = new FakeBulk(2, flaky);
+        es.down = true;
+        int maxQueued = 2000;
+        SearchSpillJournal journal = new SearchSpillJournal(dir, 256L << 20, 1L << 20, new ObjectMapper().findAndRegisterModules());
+        ElasticsearchSearchWriter writer = new ElasticsearchSearchWriter(es, journal,
+                new ElasticsearchSearchWriter.Settings(maxQueued, 64L << 20, 500, 5L << 20, 20, 4, 4, 10, 200), null);
+        try {
+            base = usedHeap();
+            t0 = System.nanoTime();
+            int maxSeen = 0;
+            for (int i = 0; i < DOCS; i++) {
+                writer.enqueue(doc(i));
+                maxSeen = Math.max(maxSeen, writer.queued());
+            }
+            double enqueueMs = (System.nanoTime() - t0) / 1e6;
+            Thread.sleep(300); // let the outage run a few backoff rounds
+            long newBytes = usedHeap() - base;
+            long journalBytes = journal.bytes();
+
+            log.info(String.format("outage, %d docs of %d chars: legacy +%d KB heap, %d failed bulks, enqueue %.0f ms; "
+                            + "new +%d KB heap, queued<=%d, spilled %d (%d KB on disk), enqueue %.0f ms",
+                    DOCS, TEXT_CHARS, legacyBytes >> 10, legacyRequests, legacyEnqueueMs,
+                    newBytes >> 10, maxSeen, writer.spilled(), journalBytes >> 10, enqueueMs));
+            assertTrue(maxSeen <= maxQueued, "queue bounded: " + maxSeen);
+            assertTrue(writer.spilled() >= DOCS - maxQueued, "the rest went to disk");
+            assertTrue(journalBytes > 0);
+            assertTrue(newBytes < legacyBytes / 4, "heap bounded: " + (newBytes >> 10) + " KB vs " + (legacyBytes >> 10) + " KB");
+            assertTrue(es.stored.isEmpty());
+
+            long retriedBeforeRecovery = writer.retried();
+            es.down = false;
+            await(() -> es.stored.size() == DOCS && writer.queued() == 0 && journal.isEmpty(), 60_000);
+
+            log.info(String.format("recovered: %d indexed, %d retries, %d bulks in all, lost %d",
+                    writer.indexed(), writer.retried() - retriedBeforeRecovery, es.requests.get(), writer.lost()));
+            assertEquals(0, writer.lost());
+            assertNull(writer.catchUpFrom());
+            assertEquals(0, es.duplicates.get(), "each document stored once");
+            for (int i = 0; i < DOCS; i++) {
+                assertEquals(doc(i), es.stored.get(id(i)), "stored as enqueued");
+                int sends = es.sentWhileUp.get(id(i)).get();
+                assertEquals(flaky.contains(id(i)) ? 2 : 1, sends, "only failed items are sent again: " + id(i));
+            }
+        } finally {
+            writer.destroy();
+        }
+    }
+
+    @Test
+    void journalKeepsOrderAcrossSegmentsAndRestarts(@TempDir Path dir) throws IOException {
+        ObjectMapper om = new ObjectMapper().findAndRegisterModules();
+        SearchSpillJournal journal = new SearchSpillJournal(dir, 1L << 20, 8 << 10, om);
+        int n = 0;
+        while (journal.append(doc(n))) n++;
+        assertTrue(n > 100, "filled up to maxBytes");
+        assertTrue(segments(dir) > 1, "rolled over segments");
+        journal.setCatchUpFrom(T0);
+        journal.close();
+
+        SearchSpillJournal reopened = new SearchSpillJournal(dir, 1L << 20, 8 << 10, om);
+        assertEquals(T0, reopened.catchUpFrom());
+        List<SearchMessageDoc> first = reopened.read(50);
+        assertEquals(50, first.size());
+        assertFalse(reopened.isEmpty());
+        assertTrue(reopened.append(doc(n)), "room again once a segment is read");
+        List<SearchMessageDoc> all = new ArrayList<>(first);
+        for (List<SearchMessageDoc> page; !(page = reopened.read(64)).isEmpty(); ) all.addAll(page);
+        assertEquals(n + 1, all.size());
+        for (int i = 0; i <= n; i++) assertEquals(doc(i), all.get(i));
+        assertTrue(reopened.isEmpty());
+        assertEquals(0, segments(dir));
+
+        reopened.setCatchUpFrom(null);
+        assertNull(reopened.catchUpFrom());
+        reopened.close();
+    }
+
+    @Test
+    void lostDocumentsMoveTheCatchUpCheckpoint() throws Exception {
+        FakeBulk es = new FakeBulk(0, Set.of());
+        es.down = true;
+        ElasticsearchSearchWriter writer = new ElasticsearchSearchWriter(es, null,
+                new ElasticsearchSearchWriter.Settings(10, 1L << 20, 10, 1L << 20, 5, 1, 2, 5, 20), null);
+        try {
+            for (int i = 0; i < 50; i++) writer.enqueue(doc(i));
+            assertTrue(writer.lost() >= 40, "no journal: past the queue documents are lost");
+            Instant from = writer.catchUpFrom();
+            assertNotNull(from);
+            assertFalse(from.isAfter(T0.plusSeconds(10)), "oldest lost server_ts: " + from);
+            assertFalse(writer.hasCapacity());
+
+            es.down = false;
+            await(() -> writer.queued() == 0, 10_000);
+            long lost = writer.lost();
+            from = writer.catchUpFrom();
+
+            writer.catchUpProgress(from, T0.plusSeconds(30), lost - 1);
+            assertEquals(from, writer.catchUpFrom(), "a loss during the run keeps the checkpoint");
+            writer.catchUpProgress(T0.minusSeconds(1), null, lost);
+            assertEquals(from, writer.catchUpFrom(), "another run's start is ignored");
+            writer.catchUpProgress(from, T0.plusSeconds(30), lost);
+            assertEquals(T0.plusSeconds(30), writer.catchUpFrom());
+            writer.catchUpProgress(T0.plusSeconds(30), null, lost);
+            assertNull(writer.catchUpFrom());
+            assertTrue(writer.hasCapacity());
+        } finally {
+            writer.destroy();
+        }
+    }
+
+    @Test
+    void catchUpSkipsWhatTheLivePathDoesNotIndex() throws Exception {
+        FakeBulk es = new FakeBulk(0, Set.of());
+        ElasticsearchSearchWriter writer = new ElasticsearchSearchWriter(es, null,
+                new ElasticsearchSearchWriter.Settings(100, 1L << 20, 10, 1L << 20, 5, 1, 2, 5, 20), null);
+        try {
+            ChatMessageRepository repo = mock(ChatMessageRepository.class);
+            when(repo.pageByServerTs(any(), anyLong(), any())).thenReturn(List.of(
+                    message(1, false, "hello"), message(2, true, null), message(3, false, " ")));
+            SearchCatchUpJob job = new SearchCatchUpJob(repo, writer, 10, 60_000);
+
+            assertEquals(1, job.catchUp(T0));
+            await(() -> writer.queued() == 0, 10_000);
+            assertEquals(Set.of(id(1)), es.stored.keySet(), "E2EE and empty messages stay out of the index");
+        } finally {
+            writer.destroy();
+        }
+    }
+
+    static ChatMessage message(int i, boolean e2ee, String body) {
+        ChatMessage m = new ChatMessage();
+        m.setId((long) i);
+        m.setMessageId(id(i));
+        m.setRoomId(1L);
+        m.setServerTs(T0.plusSeconds(i));
+        m.setE2ee(e2ee);
+        m.setBody(body);
+        return m;
+    }
+
+    static String id(int i) {
+        return "m-" + i;
+    }
+
+    static SearchMessageDoc doc(int i) {
+        SearchMessageDoc d = new SearchMessageDoc();
+        d.setMessageId(id(i));
+        d.setRoomId((long) (i % 64));
+        d.setSenderId((long) (i % 500));
+        d.setType("TEXT");
+        d.setCreatedAt(T0.plusSeconds(i));
+        d.setText(i + " " + FILLER); // a distinct string per document, as in production
+        d.setParticipants(List.of("u" + (i % 500), "u" + ((i + 1) % 500)));
+        d.setVisibility("room");
+        return d;
+    }
+
+    private static long segments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().startsWith("spill-")).count();
+        }
+    }
+
+    private static void await(BooleanSupplier done, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!done.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) fail("timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
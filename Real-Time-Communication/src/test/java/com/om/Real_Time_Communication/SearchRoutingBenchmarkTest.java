@@ -0,0 +1,310 @@
+package com.om.Real_Time_Communication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.om.Real_Time_Communication.dto.SearchMessageDoc;
+import com.om.Real_Time_Communication.service.ElasticsearchSearchEngine;
+import com.om.Real_Time_Communication.service.LocalSearchIndex;
+import com.om.Real_Time_Communication.service.RoomAccessCache;
+import com.om.Real_Time_Communication.service.SearchService;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.Query;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Query latency for users in 10, 1k and 10k rooms on the in-process index against the previous
+ * query shape (a terms filter over every room id, the full match set evaluated and ranked, as each
+ * shard did), plus the request body each sends to the cluster. Also checks that both return the
+ * same hits, that search_after pages cover every match exactly once (also on the cluster engine
+ * when it drops a hit the user may not see), in-room search and re-indexing. JMH is not part of this build, so timings come from warmed-up loops.
+ */
+@Tag("benchmark")
+class SearchRoutingBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchRoutingBenchmarkTest.class);
+
+    static final int ROOMS = 12_000;
+    static final int DOCS = 240_000;
+    static final int VOCABULARY = 2_000;
+    static final int WORDS = 8;
+    static final int LIMIT = 50;
+    static final int RUNS = 100;
+    static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+    static final String[] QUERIES = {"w1", "w1 w2", "w60", "w1900", ""};
+
+    static LocalSearchIndex index;
+    static LegacySearch legacy;
+    static Map<Integer, List<Long>> users = new LinkedHashMap<>();
+
+    /** The previous search: every room id in the filter, every match collected, then ordered. */
+    static final class LegacySearch {
+        final List<SearchMessageDoc> docs = new ArrayList<>();
+        final List<int[]> docTerms = new ArrayList<>();
+        final Map<String, Integer> dictionary = new HashMap<>();
+        final Map<Integer, List<Integer>> postings = new HashMap<>();
+
+        void add(SearchMessageDoc d) {
+            int n = docs.size();
+            docs.add(d);
+            Set<String> terms = LocalSearchIndex.terms(d.getText());
+            terms.add("");
+            int[] ids = new int[terms.size()];
+            int i = 0;
+            for (String t : terms) {
+                ids[i] = dictionary.computeIfAbsent(t, k -> dictionary.size());
+                postings.computeIfAbsent(ids[i], k -> new ArrayList<>()).add(n);
+                i++;
+            }
+            Arrays.sort(ids);
+            docTerms.add(ids);
+        }
+
+        List<SearchMessageDoc> search(List<Long> roomIds, String query, int limit) {
+            Set<Long> rooms = new HashSet<>(roomIds); // the terms filter, built for every query
+            Set<String> words = query.isBlank() ? Set.of("") : LocalSearchIndex.terms(query);
+            int[] ids = new int[words.size()];
+            int i = 0;
+            List<Integer> lead = null;
+            for (String w : words) {
+                Integer id = dictionary.get(w);
+                if (id == null) return List.of();
+                ids[i++] = id;
+                List<Integer> p = postings.get(id);
+                if (lead == null || p.size() < lead.size()) lead = p;
+            }
+            List<SearchMessageDoc> matches = new ArrayList<>();
+            for (int n : lead) {
+                SearchMessageDoc d = docs.get(n);
+                if (!rooms.contains(d.getRoomId())) continue;
+                boolean all = true;
+                for (int id : ids) all &= Arrays.binarySearch(docTerms.get(n), id) >= 0;
+                if (all) matches.add(d);
+            }
+            matches.sort(Comparator.comparing(SearchMessageDoc::getCreatedAt)
+                    .thenComparing(SearchMessageDoc::getMessageId).reversed());
+            return matches.subList(0, Math.min(limit, matches.size()));
+        }
+    }
+
+    @BeforeAll
+    static void corpus() {
+        index = new LocalSearchIndex();
+        legacy = new LegacySearch();
+        Random rnd = new Random(42);
+        for (int i = 0; i < DOCS; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int w = 0; w < WORDS; w++) {
+                text.append(w == 0 ? "" : " ").append('w').append((int) (Math.pow(rnd.nextDouble(), 3) * VOCABULARY));
+            }
+            SearchMessageDoc d = new SearchMessageDoc();
+            d.setMessageId(String.format("m-%07d", rnd.nextInt(10_000_000)) + "-" + i);
+            d.setRoomId((long) rnd.nextInt(ROOMS));
+            d.setSenderId((long) rnd.nextInt(50_000));
+            d.setType("TEXT");
+            // a few arrive late, as catch-up and spill replays do
+            d.setCreatedAt(T0.plusMillis(i * 100L - (i % 97 == 0 ? rnd.nextInt(600_000) : 0)));
+            d.setText(text.toString());
+            index.enqueue(d);
+            legacy.add(d);
+        }
+        for (int n : new int[]{10, 1_000, 10_000}) {
+            List<Long> rooms = new ArrayList<>(n);
+            for (int r = 0; r < n; r++) rooms.add((long) (r * (ROOMS / n)));
+            users.put(n, rooms);
+        }
+    }
+
+    @Test
+    void queryLatencyByRoomCount() {
+        log.info(String.format("%-7s %-8s %12s %12s %12s %12s", "rooms", "query", "legacy p50", "legacy p99", "new p50", "new p99"));
+        for (Map.Entry<Integer, List<Long>> u : users.entrySet()) {
+            List<Long> rooms = u.getValue();
+            long legacyTotal = 0, newTotal = 0;
+            for (String q : QUERIES) {
+                assertEquals(ids(legacy.search(rooms, q, LIMIT)), ids(index.search(1L, rooms, q, LIMIT, null, null)),
+                        "same hits for '" + q + "' in " + u.getKey() + " rooms");
+                long[] old = time(() -> legacy.search(rooms, q, LIMIT));
+                long[] now = time(() -> index.search(1L, rooms, q, LIMIT, null, null));
+                log.info(String.format("%-7d %-8s %10.1fus %10.1fus %10.1fus %10.1fus", u.getKey(), "'" + q + "'",
+                        old[0] / 1e3, old[1] / 1e3, now[0] / 1e3, now[1] / 1e3));
+                legacyTotal += old[0];
+                newTotal += now[0];
+                if (q.equals("w1") && u.getKey() >= 1_000) {
+                    assertTrue(now[0] * 2 < old[0], "a common term stops after a page, not after every match");
+                }
+            }
+            assertTrue(newTotal < legacyTotal, u.getKey() + " rooms: " + newTotal + " vs " + legacyTotal + " ns");
+        }
+    }
+
+    @Test
+    void requestBodyNoLongerGrowsWithMembership() throws Exception {
+        ObjectMapper om = new ObjectMapper();
+        for (Map.Entry<Integer, List<Long>> u : users.entrySet()) {
+            List<Long> rooms = u.getValue();
+            Map<String, Object> allIds = Map.of("terms", Map.of("roomId", rooms));
+            Map<String, Object> lookup = Map.of("terms", Map.of("roomId", Map.of(
+                    "index", ElasticsearchSearchEngine.MEMBERSHIP_INDEX, "id", "123456", "path", "rooms")));
+            int legacyBytes = om.writeValueAsBytes(body(allIds, false)).length;
+            int newBytes = om.writeValueAsBytes(body(rooms.size() <= 64 ? allIds : lookup, true)).length;
+            String shards = rooms.size() <= 64 ? "routed to <= " + rooms.size() : "all, filter cached";
+            log.info(String.format("%d rooms: legacy body %d B to every shard, new body %d B (%s shards)",
+                    rooms.size(), legacyBytes, newBytes, shards));
+            if (rooms.size() > 64) {
+                assertTrue(newBytes < 512, "constant size: " + newBytes);
+                assertTrue(legacyBytes > 20 * newBytes);
+            }
+        }
+    }
+
+    @Test
+    void searchAfterPagesCoverEveryMatchOnce() {
+        SearchService service = new SearchService(index);
+        List<Long> rooms = users.get(1_000);
+        for (String q : new String[]{"w60", "w1 w2"}) {
+            List<String> all = ids(legacy.search(rooms, q, Integer.MAX_VALUE));
+            List<String> paged = new ArrayList<>();
+            String cursor = null;
+            int pages = 0;
+            do {
+                SearchService.SearchPage page = service.searchAll(1L, rooms, q, 37, cursor);
+                paged.addAll(ids(page.hits()));
+                cursor = page.next();
+                pages++;
+            } while (cursor != null);
+            log.info(String.format("'%s' in 1000 rooms: %d matches in %d pages", q, paged.size(), pages));
+            assertTrue(all.size() > 37);
+            assertEquals(all, paged, "every match once, newest first");
+        }
+
+        Long room = 5L;
+        List<String> inRoom = new ArrayList<>();
+        String cursor = null;
+        do {
+            SearchService.SearchPage page = service.searchInRoom(1L, room, "", 10, cursor);
+            inRoom.addAll(ids(page.hits()));
+            cursor = page.next();
+        } while (cursor != null);
+        assertEquals(ids(legacy.search(List.of(room), "", Integer.MAX_VALUE)), inRoom);
+        assertEquals(ids(legacy.search(List.of(room), "w1", LIMIT)), ids(service.searchInRoom(1L, room, "W1!", LIMIT, null).hits()));
+    }
+
+    @Test
+    void hitsDroppedByTheMembershipCheckDoNotEndThePages() {
+        ElasticsearchOperations es = mock(ElasticsearchOperations.class);
+        ElasticsearchSearchEngine engine = new ElasticsearchSearchEngine(es, mock(RoomAccessCache.class), 64, 1_000);
+        List<Long> rooms = new ArrayList<>();
+        for (long r = 1; r <= 100; r++) rooms.add(r);
+        // A membership document another node wrote still lists room 999, which the user has left
+        SearchHits<SearchMessageDoc> first = hits(hit("m9", 999L, 9), hit("m8", 1L, 8), hit("m7", 999L, 7));
+        SearchHits<SearchMessageDoc> second = hits(hit("m6", 2L, 6), hit("m5", 3L, 5), hit("m4", 4L, 4));
+        when(es.search(any(Query.class), eq(SearchMessageDoc.class), any(IndexCoordinates.class))).thenReturn(first, second);
+
+        SearchService.SearchPage page = new SearchService(engine).searchAll(1L, rooms, "w1", 3, null);
+
+        assertEquals(List.of("m8", "m6", "m5"), ids(page.hits()), "a full page of the user's rooms");
+        assertNotNull(page.next());
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(es, times(2)).search(queries.capture(), eq(SearchMessageDoc.class), any(IndexCoordinates.class));
+        assertEquals(List.of(T0.plusSeconds(7).toEpochMilli(), "m7"), queries.getAllValues().get(1).getSearchAfter(),
+                "continues after the last hit the cluster returned");
+    }
+
+    @SafeVarargs
+    private static SearchHits<SearchMessageDoc> hits(SearchHit<SearchMessageDoc>... hits) {
+        @SuppressWarnings("unchecked")
+        SearchHits<SearchMessageDoc> page = mock(SearchHits.class);
+        when(page.getSearchHits()).thenReturn(List.of(hits));
+        return page;
+    }
+
+    private static SearchHit<SearchMessageDoc> hit(String id, Long roomId, int second) {
+        SearchMessageDoc d = new SearchMessageDoc();
+        d.setMessageId(id);
+        d.setRoomId(roomId);
+        d.setCreatedAt(T0.plusSeconds(second));
+        @SuppressWarnings("unchecked")
+        SearchHit<SearchMessageDoc> hit = mock(SearchHit.class);
+        when(hit.getContent()).thenReturn(d);
+        when(hit.getSortValues()).thenReturn(List.of(d.getCreatedAt().toEpochMilli(), id));
+        return hit;
+    }
+
+    @Test
+    void reindexingReplacesTheDocument() {
+        LocalSearchIndex small = new LocalSearchIndex();
+        SearchMessageDoc d = new SearchMessageDoc();
+        d.setMessageId("m-1");
+        d.setRoomId(7L);
+        d.setCreatedAt(T0);
+        d.setText("Lunch at noon?");
+        small.enqueue(d);
+        SearchMessageDoc other = new SearchMessageDoc();
+        other.setMessageId("m-2");
+        other.setRoomId(8L);
+        other.setCreatedAt(T0.plusSeconds(1));
+        other.setText("lunch is late");
+        small.enqueue(other);
+        assertEquals(List.of("m-2", "m-1"), ids(small.search(1L, List.of(7L, 8L), "lunch", 10, null, null)));
+
+        SearchMessageDoc edited = new SearchMessageDoc();
+        edited.setMessageId("m-1");
+        edited.setRoomId(7L);
+        edited.setCreatedAt(T0);
+        edited.setText("dinner at eight");
+        small.enqueue(edited);
+        assertEquals(2, small.size());
+        assertEquals(List.of("m-2"), ids(small.search(1L, List.of(7L, 8L), "lunch", 10, null, null)));
+        assertEquals(List.of("m-1"), ids(small.search(1L, List.of(7L), "DINNER eight", 10, null, null)));
+        assertEquals(List.of(), ids(small.search(1L, List.of(8L), "dinner", 10, null, null)), "other rooms stay out");
+        assertEquals(List.of(), ids(small.search(1L, List.of(7L), "?!", 10, null, null)));
+    }
+
+    private static Map<String, Object> body(Map<String, Object> roomFilter, boolean sorted) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("query", Map.of("bool", Map.of("filter", List.of(roomFilter),
+                "must", List.of(Map.of("match", Map.of("text", Map.of("query", "lunch plans", "operator", "and")))))));
+        body.put("size", LIMIT);
+        if (sorted) {
+            body.put("sort", List.of(Map.of("createdAt", "desc"), Map.of("messageId", "desc")));
+            body.put("search_after", List.of(T0.toEpochMilli(), "m-0000001-1"));
+            body.put("track_total_hits", false);
+        }
+        return body;
+    }
+
+    private static long[] time(Runnable query) {
+        for (int i = 0; i < RUNS / 4; i++) query.run();
+        long[] ns = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long t0 = System.nanoTime();
+            query.run();
+            ns[i] = System.nanoTime() - t0;
+        }
+        Arrays.sort(ns);
+        return new long[]{ns[RUNS / 2], ns[RUNS * 99 / 100]};
+    }
+
+    private static List<String> ids(List<SearchMessageDoc> docs) {
+        return docs.stream().map(SearchMessageDoc::getMessageId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,249 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.security.SessionRegistry;
+import com.om.Real_Time_Communication.security.SessionRegistry.SessionInfo;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.*;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Lookup throughput of the session registry while writer threads keep connecting and
+ * disconnecting sessions, against the previous string-keyed maps that built a new set per
+ * lookup, plus the bytes allocated per lookup on the reader threads.
+ */
+class SessionRegistryBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SessionRegistryBenchmarkTest.class);
+
+    static final int USERS = 50_000;
+    static final int READERS = 4;
+    static final int WRITERS = 2;
+    static final long RUN_MS = 1_500;
+
+    private static final class Session implements WebSocketSession {
+        private final String id;
+        private final Map<String, Object> attributes = new HashMap<>();
+        private volatile boolean open = true;
+        Session(String id, String deviceId) {
+            this.id = id;
+            attributes.put("deviceId", deviceId);
+        }
+        @Override public String getId() { return id; }
+        @Override public URI getUri() { return null; }
+        @Override public HttpHeaders getHandshakeHeaders() { return new HttpHeaders(); }
+        @Override public Map<String, Object> getAttributes() { return attributes; }
+        @Override public Principal getPrincipal() { return null; }
+        @Override public InetSocketAddress getLocalAddress() { return null; }
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public String getAcceptedProtocol() { return null; }
+        @Override public void setTextMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getTextMessageSizeLimit() { return 0; }
+        @Override public void setBinaryMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getBinaryMessageSizeLimit() { return 0; }
+        @Override public List<WebSocketExtension> getExtensions() { return Collections.emptyList(); }
+        @Override public void sendMessage(WebSocketMessage<?> message) { }
+        @Override public boolean isOpen() { return open; }
+        @Override public void close() { open = false; }
+        @Override public void close(CloseStatus status) { open = false; }
+    }
+
+    /** The previous registry: session ids per boxed user id, a new set built per lookup. */
+    private static final class LegacyRegistry {
+        final ConcurrentMap<String, WebSocketSession> bySession = new ConcurrentHashMap<>();
+        final ConcurrentMap<Long, Set<String>> sessionsByUser = new ConcurrentHashMap<>();
+
+        void onOpen(Long userId, WebSocketSession s) {
+            bySession.put(s.getId(), s);
+            sessionsByUser.compute(userId, (k, set) -> {
+                if (set == null) set = Collections.newSetFromMap(new ConcurrentHashMap<>());
+                set.add(s.getId());
+                return set;
+            });
+        }
+
+        void onClose(WebSocketSession s, Long userId) {
+            bySession.remove(s.getId());
+            sessionsByUser.computeIfPresent(userId, (k, set) -> {
+                set.remove(s.getId());
+                return set.isEmpty() ? null : set;
+            });
+        }
+
+        Set<WebSocketSession> getSessions(Long userId) {
+            Set<String> ids = sessionsByUser.get(userId);
+            if (ids == null || ids.isEmpty()) return Collections.emptySet();
+            Set<WebSocketSession> sessions = new HashSet<>();
+            for (String sid : ids) {
+                WebSocketSession s = bySession.get(sid);
+                if (s != null && s.isOpen()) sessions.add(s);
+            }
+            return sessions;
+        }
+    }
+
+    interface Ops {
+        void open(long userId, WebSocketSession s);
+        void close(long userId, WebSocketSession s);
+        int lookup(long userId);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void lookupsUnderChurn() throws Exception {
+        LegacyRegistry legacy = new LegacyRegistry();
+        double[] legacyResult = run(new Ops() {
+            public void open(long u, WebSocketSession s) { legacy.onOpen(u, s); }
+            public void close(long u, WebSocketSession s) { legacy.onClose(s, u); }
+            public int lookup(long u) { return legacy.getSessions(u).size(); }
+        });
+
+        SessionRegistry registry = new SessionRegistry();
+        double[] collectionResult = run(new Ops() {
+            public void open(long u, WebSocketSession s) { registry.onOpen(u, s); }
+            public void close(long u, WebSocketSession s) { registry.onClose(s, u); }
+            public int lookup(long u) { return registry.getSessions(u).size(); }
+        });
+
+        SessionRegistry arrays = new SessionRegistry();
+        double[] arrayResult = run(new Ops() {
+            public void open(long u, WebSocketSession s) { arrays.onOpen(u, s); }
+            public void close(long u, WebSocketSession s) { arrays.onClose(s, u); }
+            public int lookup(long u) {
+                int n = 0;
+                for (SessionInfo info : arrays.sessions(u)) if (info.session().isOpen()) n++;
+                return n;
+            }
+        });
+
+        log.info(String.format("session lookups with %d readers / %d churning writers over %d users | legacy: %.1f M/s %.0f B/op "
+                        + "| getSessions: %.1f M/s %.1f B/op | sessions(): %.1f M/s %.1f B/op",
+                READERS, WRITERS, USERS, legacyResult[0] / 1e6, legacyResult[1],
+                collectionResult[0] / 1e6, collectionResult[1], arrayResult[0] / 1e6, arrayResult[1]));
+        assertTrue(arrayResult[1] < 8, "sessions() allocates " + arrayResult[1] + " B/op");
+        assertTrue(collectionResult[1] < legacyResult[1] / 4,
+                "getSessions " + collectionResult[1] + " B/op vs legacy " + legacyResult[1]);
+
+        // Churn balanced out: each user is back to its two resident sessions
+        assertEquals(USERS, arrays.connectedUsers());
+        assertEquals(2 * USERS, arrays.connectedSessions());
+        assertEquals(USERS, arrays.localUserIds().size());
+    }
+
+    @Test
+    void sessionMetadataAndCounters() {
+        List<Long> events = new ArrayList<>();
+        SessionRegistry reg = new SessionRegistry();
+        reg.addListener(new SessionRegistry.Listener() {
+            public void onUserOnline(Long userId) { events.add(userId); }
+            public void onUserOffline(Long userId) { events.add(-userId); }
+        });
+        Session phone = new Session("a", "phone");
+        Session web = new Session("b", "web");
+        long before = System.currentTimeMillis();
+        reg.onOpen(5L, phone);
+        reg.onOpen(5L, web);
+        assertEquals(List.of(5L), events);
+        assertEquals(1, reg.connectedUsers());
+        assertEquals(2, reg.connectedSessions());
+        assertSame(reg.getSessions(5L), reg.getSessions(5L), "lookups share one snapshot");
+
+        SessionInfo info = reg.session("b");
+        assertEquals("web", info.deviceId());
+        assertEquals(5L, info.userId());
+        assertTrue(info.connectedAtMs() >= before);
+        info.queueDepth().addAndGet(3);
+        assertEquals(3, reg.sessions(5L)[1].queueDepth().get());
+
+        web.close();
+        assertEquals(List.of(phone), List.copyOf(reg.getSessions(5L)), "closed sessions are filtered");
+        assertTrue(reg.hasActive(5L));
+        reg.onClose(web, 5L);
+        reg.onClose(web, 5L); // duplicate close is ignored
+        assertEquals(1, reg.connectedSessions());
+        reg.onClose(phone, 5L);
+        assertEquals(List.of(5L, -5L), events);
+        assertEquals(0, reg.connectedUsers());
+        assertEquals(0, reg.sessions(5L).length);
+        assertFalse(reg.hasActive(5L));
+    }
+
+    /** Returns {lookups per second, bytes allocated per lookup on reader threads}. */
+    private static double[] run(Ops ops) throws Exception {
+        for (long u = 0; u < USERS; u++) {
+            ops.open(u, new Session(u + "-phone", "phone"));
+            ops.open(u, new Session(u + "-web", "web"));
+        }
+        AtomicBoolean measuring = new AtomicBoolean();
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong lookups = new AtomicLong();
+        AtomicLong allocated = new AtomicLong();
+        AtomicLong seq = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(READERS + WRITERS);
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                long n = 0;
+                long sink = 0;
+                long bytes0 = 0;
+                boolean counting = false;
+                while (!stop.get()) {
+                    if (!counting && measuring.get()) {
+                        counting = true;
+                        n = 0;
+                        bytes0 = mx.getCurrentThreadAllocatedBytes();
+                    }
+                    for (int i = 0; i < 1_000; i++) sink += ops.lookup(rnd.nextInt(USERS));
+                    n += 1_000;
+                }
+                if (counting) {
+                    allocated.addAndGet(mx.getCurrentThreadAllocatedBytes() - bytes0);
+                    lookups.addAndGet(n);
+                }
+                if (sink < 0) throw new IllegalStateException();
+                done.countDown();
+            }));
+        }
+        for (int w = 0; w < WRITERS; w++) {
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                while (!stop.get()) {
+                    long u = rnd.nextInt(USERS);
+                    Session s = new Session("churn-" + seq.incrementAndGet(), "tablet");
+                    ops.open(u, s);
+                    s.close();
+                    ops.close(u, s);
+                }
+                done.countDown();
+            }));
+        }
+        threads.forEach(Thread::start);
+        Thread.sleep(RUN_MS / 3); // warm-up
+        long t0 = System.nanoTime();
+        measuring.set(true);
+        Thread.sleep(RUN_MS);
+        stop.set(true);
+        done.await();
+        double seconds = (System.nanoTime() - t0) / 1e9;
+        return new double[]{lookups.get() / seconds, (double) allocated.get() / Math.max(1, lookups.get())};
+    }
+}
@@ -0,0 +1,281 @@
+package com.om.Real_Time_Communication;
+
+import com.om.Real_Time_Communication.config.AdaptiveSessionDecorator;
+import com.om.Real_Time_Communication.config.AdaptiveSessionDecorator.ConsumerClass;
+import com.om.Real_Time_Communication.config.OutboundFloodGuardInterceptor;
+import com.om.Real_Time_Communication.config.SessionOutboundMonitor;
+import com.om.Real_Time_Communication.utility.RtcMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.*;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Broadcast load over {@value #FAST_CLIENTS} fast and {@value #THROTTLED_CLIENTS} throttled clients
+ * (2 ms per write) from {@value #PRODUCERS} broker-like threads, each client getting 300 room
+ * messages mixed into 1700 typing frames. Compares Spring's fixed 512KB / 10 s session decorator
+ * with the adaptive one: broker-thread time spent writing to throttled clients (the fixed decorator
+ * flushes on whichever sender holds its lock), room messages they still received, and whether they
+ * were disconnected.
+ */
+class SlowConsumerLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowConsumerLoadTest.class);
+
+    static final int FAST_CLIENTS = 40;
+    static final int THROTTLED_CLIENTS = 6;
+    static final int PRODUCERS = 4;
+    static final int FRAMES = 2000;
+    static final long THROTTLE_NANOS = 2_000_000;
+
+    /** A client connection that takes {@code writeNanos} per frame. */
+    static class ClientSession implements WebSocketSession {
+        final String id;
+        final long writeNanos;
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        volatile CloseStatus closed;
+
+        ClientSession(String id, long writeNanos) {
+            this.id = id;
+            this.writeNanos = writeNanos;
+        }
+
+        @Override public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (closed != null) throw new IOException("closed");
+            if (writeNanos > 0) LockSupport.parkNanos(writeNanos);
+            received.add(((TextMessage) message).getPayload());
+        }
+        @Override public boolean isOpen() { return closed == null; }
+        @Override public void close() { close(CloseStatus.NORMAL); }
+        @Override public void close(CloseStatus status) { if (closed == null) closed = status; }
+        @Override public String getId() { return id; }
+        @Override public URI getUri() { return null; }
+        @Override public HttpHeaders getHandshakeHeaders() { return new HttpHeaders(); }
+        @Override public Map<String, Object> getAttributes() { return new HashMap<>(); }
+        @Override public Principal getPrincipal() { return null; }
+        @Override public InetSocketAddress getLocalAddress() { return null; }
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public String getAcceptedProtocol() { return "v12.stomp"; }
+        @Override public void setTextMessageSizeLimit(int messageSizeLimit) {}
+        @Override public int getTextMessageSizeLimit() { return 64 * 1024; }
+        @Override public void setBinaryMessageSizeLimit(int messageSizeLimit) {}
+        @Override public int getBinaryMessageSizeLimit() { return 64 * 1024; }
+        @Override public List<WebSocketExtension> getExtensions() { return List.of(); }
+    }
+
+    record Result(List<ClientSession> clients, List<WebSocketSession> decorated, long throttledWriteNanos) {}
+
+    /** An encoded frame and the headers the outbound channel saw it with. */
+    record Frame(Message<byte[]> message, TextMessage text) {}
+
+    @Test
+    @Tag("benchmark")
+    void fastAndThrottledClients() throws Exception {
+        List<Frame> traffic = traffic();
+        long critical = traffic.stream().filter(f -> !f.text().getPayload().contains("/typing")).count();
+
+        Result fixed = run(traffic, null, c -> new ConcurrentWebSocketSessionDecorator(c, 10_000, 512 * 1024));
+
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        OutboundFloodGuardInterceptor priorities = new OutboundFloodGuardInterceptor(200,
+                "/topic/typing,/topic/presence,*/typing,*/presence", 32, 1000, null);
+        SessionOutboundMonitor monitor = new SessionOutboundMonitor(1 << 20, 10_000, 256 * 1024, 5_000, 0.25, 1, 4,
+                priorities, null, new RtcMetrics(registry));
+        Result adaptive;
+        try {
+            adaptive = run(traffic, priorities, monitor::decorate);
+            awaitDrained(adaptive);
+            monitor.sample();
+        } finally {
+            monitor.destroy();
+        }
+
+        long fixedThrottledClosed = throttled(fixed).stream().filter(c -> c.closed != null).count();
+        long adaptiveThrottledClosed = throttled(adaptive).stream().filter(c -> c.closed != null).count();
+        log.info(String.format("%d fast + %d throttled clients, %d frames each (%d room messages) | fixed 512KB: "
+                        + "%.0f ms of broker-thread writes to throttled clients, %d of them closed, %d room messages reached them | "
+                        + "adaptive: %.0f ms, %d closed, %d room messages reached them, %d typing frames shed",
+                FAST_CLIENTS, THROTTLED_CLIENTS, FRAMES, critical,
+                fixed.throttledWriteNanos() / 1e6, fixedThrottledClosed, roomMessages(throttled(fixed)),
+                adaptive.throttledWriteNanos() / 1e6, adaptiveThrottledClosed, roomMessages(throttled(adaptive)),
+                adaptive.decorated().stream().mapToLong(s -> ((AdaptiveSessionDecorator) s).droppedFrames()).sum()));
+
+        for (int i = 0; i < FAST_CLIENTS; i++) {
+            ClientSession c = adaptive.clients().get(i);
+            assertNull(c.closed, c.id);
+            assertEquals(critical, roomMessages(List.of(c)), c.id);
+        }
+        for (int i = FAST_CLIENTS; i < FAST_CLIENTS + THROTTLED_CLIENTS; i++) {
+            ClientSession c = adaptive.clients().get(i);
+            AdaptiveSessionDecorator d = (AdaptiveSessionDecorator) adaptive.decorated().get(i);
+            assertNull(c.closed, "typing frames are shed before the session is closed: " + c.id);
+            assertEquals(critical, roomMessages(List.of(c)), "every room message reached " + c.id);
+            assertEquals(ConsumerClass.SLOW, d.consumerClass());
+            assertTrue(d.droppedFrames() > 0);
+            assertEquals(0, d.bufferedFrames());
+        }
+        assertTrue(adaptive.throttledWriteNanos() * 4 < fixed.throttledWriteNanos(),
+                "broker threads writing to throttled clients: " + adaptive.throttledWriteNanos() + " vs " + fixed.throttledWriteNanos() + " ns");
+        assertEquals(FAST_CLIENTS + THROTTLED_CLIENTS, registry.find("ws.session.queue.bytes").summary().count());
+        assertTrue(registry.find("ws.sessions.slow").gauge().value() >= THROTTLED_CLIENTS);
+    }
+
+    @Test
+    void watchdogClosesASessionStuckInAWrite() throws Exception {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        ClientSession stuck = new ClientSession("stuck", 0) {
+            @Override public void sendMessage(WebSocketMessage<?> message) throws IOException {
+                writing.countDown();
+                try {
+                    unblock.await(); // a client that stopped reading: the write returns once the transport is closed
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IOException("closed");
+            }
+            @Override public void close(CloseStatus status) {
+                super.close(status);
+                unblock.countDown();
+            }
+        };
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        SessionOutboundMonitor monitor = new SessionOutboundMonitor(1 << 20, 100, 256 * 1024, 100, 0.25, 50, 1,
+                null, null, new RtcMetrics(registry));
+        try {
+            WebSocketSession session = monitor.decorate(stuck);
+            Thread sender = new Thread(() -> {
+                try {
+                    session.sendMessage(new TextMessage("MESSAGE\ndestination:/topic/room/1\n\n{}\u0000"));
+                } catch (IOException ignored) {
+                    // closed under it
+                }
+            });
+            sender.start();
+            assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+            monitor.sample();
+            assertNull(stuck.closed, "within the time limit");
+            Thread.sleep(150);
+            monitor.sample();
+            assertTrue(unblock.await(5, TimeUnit.SECONDS), "the watchdog closed the session");
+            assertEquals(CloseStatus.SESSION_NOT_RELIABLE, stuck.closed);
+            assertEquals(1, registry.counter("ws.session.closed.slow").count());
+            sender.join(5_000);
+            assertFalse(sender.isAlive(), "the blocked writer is released");
+        } finally {
+            monitor.destroy();
+        }
+    }
+
+    /** Broadcasts {@code traffic}; with {@code priorities}, each frame is handed over the way the outbound executor does. */
+    private static Result run(List<Frame> traffic, OutboundFloodGuardInterceptor priorities,
+                              Function<ClientSession, WebSocketSession> decorate) throws Exception {
+        List<ClientSession> clients = new ArrayList<>();
+        List<WebSocketSession> decorated = new ArrayList<>();
+        for (int i = 0; i < FAST_CLIENTS + THROTTLED_CLIENTS; i++) {
+            ClientSession c = new ClientSession("c-" + i, i < FAST_CLIENTS ? 0 : THROTTLE_NANOS);
+            clients.add(c);
+            decorated.add(decorate.apply(c));
+        }
+        AtomicLong throttledWriteNanos = new AtomicLong();
+        Set<WebSocketSession> throttled = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        throttled.addAll(decorated.subList(FAST_CLIENTS, decorated.size()));
+
+        // Each producer takes the next frame and broadcasts it, like broker threads sharing a subscription fan-out
+        AtomicLong next = new AtomicLong();
+        List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            Thread t = new Thread(() -> {
+                for (long i; (i = next.getAndIncrement()) < traffic.size(); ) {
+                    Frame frame = traffic.get((int) i);
+                    for (WebSocketSession s : decorated) {
+                        long t0 = System.nanoTime();
+                        if (priorities != null) priorities.beforeHandle(frame.message(), null, null);
+                        try {
+                            s.sendMessage(frame.text());
+                        } catch (SessionLimitExceededException ex) {
+                            try { s.close(ex.getStatus()); } catch (IOException ignored) {}
+                        } catch (IOException ignored) {
+                            // closed
+                        } finally {
+                            if (priorities != null) priorities.afterMessageHandled(frame.message(), null, null, null);
+                        }
+                        if (throttled.contains(s)) throttledWriteNanos.addAndGet(System.nanoTime() - t0);
+                    }
+                }
+            }, "producer-" + p);
+            producers.add(t);
+            t.start();
+        }
+        for (Thread t : producers) t.join(TimeUnit.MINUTES.toMillis(2));
+        return new Result(clients, decorated, throttledWriteNanos.get());
+    }
+
+    private static void awaitDrained(Result r) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            boolean drained = true;
+            for (WebSocketSession s : r.decorated()) {
+                if (s.isOpen() && ((AdaptiveSessionDecorator) s).bufferedFrames() > 0) drained = false;
+            }
+            if (drained) return;
+            Thread.sleep(20);
+        }
+    }
+
+    /** 300 room messages (~520 B) spread through 1700 typing frames (~320 B), as STOMP MESSAGE frames. */
+    private static List<Frame> traffic() {
+        List<Frame> out = new ArrayList<>(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            boolean room = i % 20 < 3;
+            String dest = room ? "/topic/room/1" : "/topic/room/1/typing";
+            String body = room ? "{\"seq\":" + i + ",\"ciphertext\":\"" + "A".repeat(400) + "\"}"
+                    : "{\"type\":\"typing\",\"roomId\":1,\"userIds\":[" + i + "],\"pad\":\"" + "B".repeat(200) + "\"}";
+            StompHeaderAccessor headers = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            headers.setDestination(dest);
+            out.add(new Frame(MessageBuilder.createMessage(body.getBytes(StandardCharsets.UTF_8), headers.getMessageHeaders()),
+                    new TextMessage("MESSAGE\ndestination:" + dest + "\nsubscription:sub-0\nmessage-id:m-" + i
+                            + "\ncontent-type:application/json\n\n" + body + "\u0000")));
+        }
+        return out;
+    }
+
+    private static List<ClientSession> throttled(Result r) {
+        return r.clients().subList(FAST_CLIENTS, r.clients().size());
+    }
+
+    private static long roomMessages(List<ClientSession> clients) {
+        long n = 0;
+        for (ClientSession c : clients) {
+            synchronized (c.received) {
+                for (String frame : c.received) if (!frame.contains("/typing")) n++;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,193 @@
+package com.om.Real_Time_Communication;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.OutputStreamAppender;
+import ch.qos.logback.core.read.ListAppender;
+import com.om.Real_Time_Communication.config.StompLoggingInterceptor;
+import net.logstash.logback.encoder.LogstashEncoder;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.AbstractMessageChannel;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Per-frame cost of STOMP frame logging: the previous interceptor (every frame at INFO with a
+ * regex-cleaned preview and the native header map, JSON-encoded synchronously; here into a null
+ * stream, so console I/O is not even counted) against the tracer at its default (off) and with 1%
+ * sampling into a never-blocking async appender. Reports nanoseconds and bytes allocated per frame.
+ */
+class StompTraceBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(StompTraceBenchmarkTest.class);
+
+    static final int FRAMES = 200_000;
+
+    /** The previous interceptor's work per frame, logging through {@code log}. */
+    static final class LegacyLogger {
+        final org.slf4j.Logger log;
+
+        LegacyLogger(org.slf4j.Logger log) {
+            this.log = log;
+        }
+
+        Message<?> preSend(Message<?> message, MessageChannel channel) {
+            StompHeaderAccessor acc = StompHeaderAccessor.wrap(message);
+            if (acc.getCommand() == null) return message;
+            String user = acc.getUser() != null ? acc.getUser().getName() : "anon";
+            String raw = new String((byte[]) message.getPayload(), StandardCharsets.UTF_8);
+            String cleaned = raw.replaceAll("\\s+", " ").trim();
+            String preview = cleaned.length() > 200 ? cleaned.substring(0, 200) + "…" : cleaned;
+            String direction = ((AbstractMessageChannel) channel).getBeanName().toLowerCase().contains("inbound") ? "INBOUND" : "OUTBOUND";
+            log.info("[STOMP][{}] sid={} user={} cmd={} dest={} size={}B preview={} headers={}",
+                    direction, acc.getSessionId(), user, acc.getCommand(), acc.getDestination(),
+                    ((byte[]) message.getPayload()).length, preview, acc.toNativeHeaderMap());
+            return message;
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void perFrameCost() throws Exception {
+        Message<byte[]> frame = frame("/app/room/42/send");
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+        channel.setBeanName("clientInboundChannel");
+
+        LoggerContext legacyContext = new LoggerContext();
+        ch.qos.logback.classic.Logger legacyLog = legacyContext.getLogger("legacy");
+        legacyLog.setLevel(Level.INFO);
+        legacyLog.addAppender(nullJsonAppender(legacyContext));
+        LegacyLogger legacy = new LegacyLogger(legacyLog);
+        double[] legacyCost = measure(() -> legacy.preSend(frame, channel));
+
+        StompLoggingInterceptor tracer = new StompLoggingInterceptor(false, 1.0, "", 0);
+        double[] offCost = measure(() -> tracer.preSend(frame, channel));
+
+        // The production routing of rtc.stomp.trace: JSON into a bounded, never-blocking async appender
+        LoggerContext ctx = (LoggerContext) LoggerFactory.getILoggerFactory();
+        ch.qos.logback.classic.Logger traceLog = ctx.getLogger("rtc.stomp.trace");
+        AsyncAppender async = new AsyncAppender();
+        async.setContext(ctx);
+        async.setQueueSize(4096);
+        async.setDiscardingThreshold(0);
+        async.setNeverBlock(true);
+        async.addAppender(nullJsonAppender(ctx));
+        async.start();
+        traceLog.setLevel(Level.INFO);
+        traceLog.setAdditive(false);
+        traceLog.addAppender(async);
+        double[] sampledCost;
+        try {
+            tracer.setRates("/app/room=0.01");
+            tracer.setEnabled(true);
+            sampledCost = measure(() -> tracer.preSend(frame, channel));
+        } finally {
+            traceLog.detachAppender(async);
+            async.stop();
+            traceLog.setAdditive(true);
+        }
+
+        log.info(String.format("STOMP frame logging | previous (INFO, every frame): %.0f ns %.0f B/frame | tracer off (default): "
+                        + "%.1f ns %.1f B/frame | tracer 1%% sampled, async: %.0f ns %.0f B/frame",
+                legacyCost[0], legacyCost[1], offCost[0], offCost[1], sampledCost[0], sampledCost[1]));
+        assertTrue(offCost[1] < 1, "off allocates " + offCost[1] + " B/frame");
+        assertTrue(offCost[0] * 20 < legacyCost[0], "off " + offCost[0] + " ns vs previous " + legacyCost[0] + " ns");
+        assertTrue(sampledCost[0] * 5 < legacyCost[0], "sampled " + sampledCost[0] + " ns vs previous " + legacyCost[0] + " ns");
+    }
+
+    @Test
+    void longestPrefixWinsAndHeadersStayOut() {
+        LoggerContext ctx = (LoggerContext) LoggerFactory.getILoggerFactory();
+        ch.qos.logback.classic.Logger traceLog = ctx.getLogger("rtc.stomp.trace");
+        ListAppender<ILoggingEvent> events = new ListAppender<>();
+        events.setContext(ctx);
+        events.start();
+        traceLog.setLevel(Level.INFO);
+        traceLog.addAppender(events);
+        try {
+            ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+            channel.setBeanName("clientInboundChannel");
+            StompLoggingInterceptor tracer = new StompLoggingInterceptor(true, 0.0, "/app=0, /app/room=1", 16);
+
+            for (int i = 0; i < 100; i++) tracer.preSend(frame("/app/ack"), channel);
+            assertEquals(0, events.list.size(), "/app is off");
+            for (int i = 0; i < 100; i++) tracer.preSend(frame("/topic/room/42"), channel);
+            assertEquals(0, events.list.size(), "default rate 0");
+            tracer.preSend(frame("/app/room/42/send"), channel);
+            assertEquals(1, events.list.size());
+
+            ILoggingEvent e = events.list.get(0);
+            String args = Arrays.toString(e.getArgumentArray());
+            assertTrue(args.contains("dir=INBOUND") && args.contains("user=7") && args.contains("dest=/app/room/42/send"), args);
+            assertTrue(args.contains("preview={\"roomId\":42,\"c"), args);
+            assertFalse(args.contains("secret-token"), "native headers are not logged");
+
+            // String payloads are sized as the UTF-8 bytes they take on the wire
+            StompHeaderAccessor text = StompHeaderAccessor.create(StompCommand.SEND);
+            text.setDestination("/app/room/42/send");
+            tracer.preSend(MessageBuilder.createMessage("h\u00e9\u20ac\uD83D\uDE00", text.getMessageHeaders()), channel);
+            String textArgs = Arrays.toString(events.list.get(1).getArgumentArray());
+            assertTrue(textArgs.contains("bytes=10"), textArgs);
+
+            tracer.setEnabled(false);
+            tracer.preSend(frame("/app/room/42/send"), channel);
+            assertEquals(2, events.list.size());
+        } finally {
+            traceLog.detachAppender(events);
+        }
+    }
+
+    private static Message<byte[]> frame(String destination) {
+        StompHeaderAccessor acc = StompHeaderAccessor.create(StompCommand.SEND);
+        acc.setDestination(destination);
+        acc.setSessionId("s-1");
+        acc.setUser((Principal) () -> "7");
+        acc.setNativeHeader("Authorization", "Bearer secret-token");
+        acc.setNativeHeader("content-type", "application/json");
+        acc.setNativeHeader("receipt", "r-1");
+        byte[] body = ("{\"roomId\":42,\"ciphertext\":\"" + "A".repeat(400) + "\",\n  \"messageId\":\"m-1\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        return MessageBuilder.createMessage(body, acc.getMessageHeaders());
+    }
+
+    private static OutputStreamAppender<ILoggingEvent> nullJsonAppender(LoggerContext ctx) {
+        LogstashEncoder encoder = new LogstashEncoder();
+        encoder.setContext(ctx);
+        encoder.start();
+        OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<>();
+        appender.setContext(ctx);
+        appender.setEncoder(encoder);
+        appender.setOutputStream(OutputStream.nullOutputStream());
+        appender.start();
+        return appender;
+    }
+
+    /** Returns {ns per frame, bytes allocated per frame} after a warm-up pass. */
+    private static double[] measure(Runnable perFrame) {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < FRAMES; i++) perFrame.run();
+        long bytes0 = mx.getCurrentThreadAllocatedBytes();
+        long t0 = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) perFrame.run();
+        long ns = System.nanoTime() - t0;
+        long bytes = mx.getCurrentThreadAllocatedBytes() - bytes0;
+        return new double[]{(double) ns / FRAMES, (double) bytes / FRAMES};
+    }
+}
@@ -16,8 +16,10 @@ public class DebugAllRequestsFilter implements GlobalFilter, Ordered {
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
-        var req = exchange.getRequest();
-        log.info("[DEBUG-FILTER] {} {}", req.getMethod(), req.getURI());
+        if (log.isDebugEnabled()) {
+            var req = exchange.getRequest();
+            log.debug("[DEBUG-FILTER] {} {}", req.getMethod(), req.getURI());
+        }
         return chain.filter(exchange);
     }
 
@@ -45,7 +45,7 @@ public class JwtFilter extends OncePerRequestFilter {
         String token = resolveToken(request);
         String sub = null; // holds the JWT subject (user id)
 
-        log.info("authorization token resolved from headers/query={} for {} {}",
+        log.debug("authorization token resolved from headers/query={} for {} {}",
                 token == null ? "<missing>" : "<present>", request.getMethod(), request.getRequestURI());
         if (token != null) {
             sub = jwtService.extractPhonenumber(token); // subject = userId
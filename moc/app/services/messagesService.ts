@@ -15,8 +15,19 @@ export const deleteMessageForEveryone = async (messageId: string | number) => {
   await stompClient.publish(sendDeleteForEveryone(messageId), {});
 };
 
+// The backlog comes in pages; X-Next-Cursor and X-Has-More say where the next one starts
 export const fetchPendingMessages = async (since?: string) => {
-  const params = since ? { params: { since } } : undefined;
-  const { data } = await apiClient.get('/api/messages/pending', params);
-  return Array.isArray(data) ? data : [];
+  const all: any[] = [];
+  let cursor: string | undefined;
+  let hasMore = true;
+  while (hasMore) {
+    const params: Record<string, string> = {};
+    if (since) params.since = since;
+    if (cursor) params.cursor = cursor;
+    const { data, headers } = await apiClient.get('/api/messages/pending', { params });
+    if (Array.isArray(data)) all.push(...data);
+    cursor = headers?.['x-next-cursor'];
+    hasMore = headers?.['x-has-more'] === 'true' && !!cursor;
+  }
+  return all;
 };
\ No newline at end of file